@@ -0,0 +1,109 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.archive.cdxserver.filter.BatchCDXAccessFilter;
+import org.archive.cdxserver.format.CDXLineView;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Iterator of CDX lines that reads a window of lines ahead of the consumer,
+ * and passes original URLs in the window to
+ * {@link BatchCDXAccessFilter#prefetch(List)} before handing out its lines.
+ * <p>
+ * This lets access filter look up rules for all hosts in the window in one
+ * batch, instead of one lookup for each new host as lines come in.
+ * Window starts small, so that queries reading just a few lines do not read
+ * much ahead, and doubles up to {@code maxWindowSize}.
+ * </p>
+ * <p>
+ * Lines must be in space-delimited format.
+ * </p>
+ * @see CDXServer#setAccessPrefetchSize(int)
+ */
+public class AccessPrefetchIterator implements CloseableIterator<String> {
+
+	static final int INITIAL_WINDOW_SIZE = 64;
+
+	private final CloseableIterator<String> inner;
+	private final BatchCDXAccessFilter accessFilter;
+	private final int originalIndex;
+	private final int maxWindowSize;
+	private long readLimit;
+
+	private int windowSize;
+	private final LinkedList<String> window = new LinkedList<String>();
+	private final CDXLineView view = new CDXLineView();
+
+	/**
+	 * Initialize with iterator and access filter.
+	 * @param inner iterator of CDX lines
+	 * @param accessFilter access filter to prefetch for
+	 * @param originalIndex index of original URL field
+	 * @param maxWindowSize maximum number of lines to read ahead
+	 * @param readLimit maximum number of lines to read from {@code inner}
+	 */
+	public AccessPrefetchIterator(CloseableIterator<String> inner,
+			BatchCDXAccessFilter accessFilter, int originalIndex,
+			int maxWindowSize, long readLimit) {
+		this.inner = inner;
+		this.accessFilter = accessFilter;
+		this.originalIndex = originalIndex;
+		this.maxWindowSize = maxWindowSize;
+		this.readLimit = readLimit;
+		this.windowSize = Math.min(INITIAL_WINDOW_SIZE, maxWindowSize);
+	}
+
+	private void fill() {
+		List<String> originalUrls = new ArrayList<String>();
+		String lastOriginal = null;
+		while (window.size() < windowSize && readLimit > 0 && inner.hasNext()) {
+			String line = inner.next();
+			readLimit--;
+			window.add(line);
+			view.reset(line);
+			if (view.hasField(originalIndex)) {
+				// consecutive lines are often for the same URL
+				String original = view.getField(originalIndex);
+				if (!original.equals(lastOriginal)) {
+					originalUrls.add(original);
+					lastOriginal = original;
+				}
+			}
+		}
+		windowSize = Math.min(windowSize * 2, maxWindowSize);
+		if (!originalUrls.isEmpty()) {
+			accessFilter.prefetch(originalUrls);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (window.isEmpty()) {
+			fill();
+		}
+		return !window.isEmpty();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return window.removeFirst();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		inner.close();
+	}
+}
@@ -32,6 +32,8 @@ public class CDXQuery {
 
     SortType sort = null;
 
+    boolean closestWindow = false;
+
     int collapseTime = -1;
 
     Boolean gzip = null;
@@ -206,6 +208,25 @@ public class CDXQuery {
         this.sort = sort;
     }
 
+    public boolean isClosestWindow() {
+        return closestWindow;
+    }
+
+    /**
+     * If set to {@code true}, query with {@code closest} and {@code limit}
+     * returns {@code limit} captures closest to {@code closest}, in
+     * chronological order (or reverse chronological order with
+     * {@code sort=reverse}). Timestamp collapsing and revisit resolution
+     * are applied to those captures only.
+     * <p>Effective only if {@code CDXServer} supports closest scan.
+     * Not settable through request parameter.</p>
+     * @param closestWindow {@code true} to enable
+     * @see CDXServer#setClosestScan(boolean)
+     */
+    public void setClosestWindow(boolean closestWindow) {
+        this.closestWindow = closestWindow;
+    }
+
     public boolean isReverse() {
         return this.sort == SortType.reverse;
     }
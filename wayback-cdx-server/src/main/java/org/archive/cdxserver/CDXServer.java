@@ -13,11 +13,14 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.httpclient.URIException;
 import org.archive.cdxserver.CDXQuery.SortType;
 import org.archive.cdxserver.auth.AuthToken;
+import org.archive.cdxserver.filter.BatchCDXAccessFilter;
 import org.archive.cdxserver.filter.CDXAccessFilter;
 import org.archive.cdxserver.filter.CollapseFieldFilter;
 import org.archive.cdxserver.filter.FieldRegexFilter;
 import org.archive.cdxserver.format.CDX9Format;
 import org.archive.cdxserver.format.CDXFormat;
+import org.archive.cdxserver.format.CDXLineView;
+import org.archive.cdxserver.format.StandardCDXFormat;
 import org.archive.cdxserver.processor.BaseProcessor;
 import org.archive.cdxserver.processor.ClosestTimestampSorted;
 import org.archive.cdxserver.processor.DupeCountProcessor;
@@ -28,6 +31,7 @@ import org.archive.cdxserver.processor.ForwardRevisitResolver;
 import org.archive.cdxserver.processor.GroupCountProcessor;
 import org.archive.cdxserver.processor.LastNLineProcessor;
 import org.archive.cdxserver.processor.ReverseRevisitResolver;
+import org.archive.cdxserver.processor.TimestampSorted;
 import org.archive.cdxserver.writer.CDXListWriter;
 import org.archive.cdxserver.writer.CDXWriter;
 import org.archive.cdxserver.writer.JsonWriter;
@@ -89,6 +93,8 @@ public class CDXServer extends BaseCDXServer {
 
 	protected String[] noCollapsePrefix = null;
 	protected boolean collapseToLast = false;
+	protected boolean closestScan = true;
+	protected int accessPrefetchSize = 1000;
 
 	protected ZipNumParams defaultParams;
 
@@ -185,6 +191,51 @@ public class CDXServer extends BaseCDXServer {
 		this.collapseToLast = collapseToLast;
 	}
 
+	public boolean isClosestScan() {
+		return closestScan;
+	}
+
+	/**
+	 * If set to {@code true}, closest-sorted queries ({@code sort=closest})
+	 * for a single URL read captures outward from the {@code closest}
+	 * timestamp in both directions, and stop as soon as {@code limit}
+	 * closest captures have been found, instead of reading the whole
+	 * timeline of the URL.
+	 * <p>It is also used for queries with {@link CDXQuery#setClosestWindow(boolean)
+	 * closestWindow} set (replay lookups), which read {@code limit} closest
+	 * captures the same way, and then put them in chronological order
+	 * before {@code collapseTime}, {@code resolveRevisits} and
+	 * {@code showDupeCount} processing.</p>
+	 * <p>It is not used for other queries with options that need captures in
+	 * chronological order, such as {@code collapse}, {@code collapseTime},
+	 * {@code resolveRevisits} and {@code showDupeCount}, nor with
+	 * {@code closest} having a direction prefix ({@code -} or {@code ^}).</p>
+	 * <p>Initial value is true.</p>
+	 * @param closestScan {@code true} to enable
+	 * @see ClosestCaptureIterator
+	 */
+	public void setClosestScan(boolean closestScan) {
+		this.closestScan = closestScan;
+	}
+
+	public int getAccessPrefetchSize() {
+		return accessPrefetchSize;
+	}
+
+	/**
+	 * Maximum number of CDX lines to read ahead for batch access check.
+	 * If access filter is a {@link BatchCDXAccessFilter}, domain, host and
+	 * prefix queries read up to this many lines ahead, and let the filter
+	 * look up access rules for their hosts in one batch.
+	 * Zero disables look-ahead.
+	 * <p>Initial value is 1000.</p>
+	 * @param accessPrefetchSize number of lines
+	 * @see AccessPrefetchIterator
+	 */
+	public void setAccessPrefetchSize(int accessPrefetchSize) {
+		this.accessPrefetchSize = accessPrefetchSize;
+	}
+
 	public CDXInputSource getCdxSource() {
 		return cdxSource;
 	}
@@ -399,6 +450,10 @@ public class CDXServer extends BaseCDXServer {
 
 		params.setReverse(query.isReverse());
 
+		if (pageResult == null && isClosestScanQuery(query)) {
+			return createClosestCdxIterator(startEndUrl, query, params);
+		}
+
 		if (!query.resumeKey.isEmpty()) {
 			searchKey = URLDecoder.decode(query.resumeKey, "UTF-8");
             startEndUrl[0] = searchKey;
@@ -430,6 +485,65 @@ public class CDXServer extends BaseCDXServer {
         }
     }
 
+	/**
+	 * Return {@code true} if {@code query} can be served by
+	 * {@link ClosestCaptureIterator}, which returns captures in
+	 * order of distance from {@code closest}.
+	 * @param query query
+	 * @return {@code true} if closest scan is applicable
+	 * @see #setClosestScan(boolean)
+	 */
+	protected boolean isClosestScanQuery(CDXQuery query) {
+		if (!closestScan || query.closest.isEmpty() || query.limit <= 0 ||
+				query.matchType != MatchType.exact) {
+			return false;
+		}
+		// closest with direction prefix sorts by different distance
+		char c = query.closest.charAt(0);
+		if (c == '-' || c == '^') {
+			return false;
+		}
+		if (!query.resumeKey.isEmpty() || !query.from.isEmpty() ||
+				!query.to.isEmpty() || query.offset > 0 ||
+				(query.collapse != null && query.collapse.length > 0)) {
+			return false;
+		}
+		// closest window is sorted back in chronological order
+		// (see writeCdxResponse)
+		if (query.closestWindow) {
+			return true;
+		}
+		// options requiring all captures in chronological order
+		if (!query.isSortClosest() || query.collapseTime > 0 ||
+				query.resolveRevisits || query.showDupeCount) {
+			return false;
+		}
+		return true;
+	}
+
+	protected CloseableIterator<String> createClosestCdxIterator(
+			String[] startEndUrl, CDXQuery query, ZipNumParams params)
+			throws IOException {
+		final String searchKey = startEndUrl[0] + " " + query.closest;
+
+		ZipNumParams reverseParams = new ZipNumParams(params);
+		reverseParams.setReverse(true);
+		params.setReverse(false);
+
+		CloseableIterator<String> forward = cdxSource.getCDXIterator(
+			searchKey, startEndUrl[0], startEndUrl[1], params);
+		CloseableIterator<String> backward;
+		try {
+			backward = cdxSource.getCDXIterator(startEndUrl[0],
+				startEndUrl[0], searchKey, reverseParams);
+		} catch (IOException ex) {
+			forward.close();
+			throw ex;
+		}
+		return new ClosestCaptureIterator(forward, backward, startEndUrl[0],
+			query.closest);
+	}
+
 	// TODO: Support idx/summary in json?
     protected void writeIdxResponse(CDXWriter responseWriter,
             CloseableIterator<String> iter) {
@@ -516,6 +630,15 @@ public class CDXServer extends BaseCDXServer {
 			}
 		}
 
+		// closest scan returns captures in order of distance. put the
+		// window back in chronological order for the processors above.
+		// it must be the first in the pipeline, so that limit counts
+		// lines read into the window.
+		if (query.closestWindow && cdx instanceof ClosestCaptureIterator) {
+			outputProcessor = new TimestampSorted(outputProcessor,
+				query.isReverse());
+		}
+
 		CDXFormat parseFormat = outputProcessor.modifyOutputFormat(cdxFormat);
 
 		FieldRegexFilter filterMatcher = null;
@@ -530,7 +653,43 @@ public class CDXServer extends BaseCDXServer {
 			collapser = new CollapseFieldFilter(query.collapse, parseFormat);
 		}
 
-		// boolean prevUrlAllowed = true;
+		// Lines are first examined through CDXLineView, which does not split
+		// the line into field Strings. CDXLine is created only for lines
+		// passing cheap tests. This is possible only with standard
+		// space-delimited format.
+		final int timestampIndex = parseFormat.getFieldIndex(CDXFieldConstants.timestamp);
+		final int mimetypeIndex = parseFormat.getFieldIndex(CDXFieldConstants.mimetype);
+		final boolean lazyParse = (parseFormat instanceof StandardCDXFormat) &&
+				timestampIndex >= 0 && mimetypeIndex >= 0;
+		final CDXLineView view = lazyParse ? new CDXLineView() : null;
+
+		// trackLine() must see every line passing access check, so regex
+		// filter and collapser cannot be applied before CDXLine is created
+		// if processors are tracking lines.
+		final boolean tracking = query.showGroupCount || query.showUniqCount;
+		// regex filter is stateless, and may be applied before access check,
+		// unless it looks at robotflags, which access check may modify
+		// (soft-block).
+		final boolean earlyRegexFilter = lazyParse && !tracking &&
+				filterMatcher != null &&
+				(accessChecker == null || !filterMatcher.dependsOnField(
+					parseFormat.getFieldIndex(CDXFieldConstants.robotflags)));
+		// collapser is stateful; it must be applied after access check.
+		final boolean earlyCollapse = lazyParse && !tracking &&
+				collapser != null && accessChecker == null;
+
+		// look ahead over lines for batch access check. not worth it for
+		// single URL.
+		if (accessChecker instanceof BatchCDXAccessFilter &&
+				accessPrefetchSize > 0 && query.matchType != MatchType.exact &&
+				parseFormat instanceof StandardCDXFormat) {
+			final int originalIndex = parseFormat.getFieldIndex(CDXFieldConstants.original);
+			if (originalIndex >= 0) {
+				cdx = new AccessPrefetchIterator(cdx,
+					(BatchCDXAccessFilter)accessChecker, originalIndex,
+					accessPrefetchSize, readLimit);
+			}
+		}
 
 		outputProcessor.begin();
 
@@ -539,13 +698,14 @@ public class CDXServer extends BaseCDXServer {
 
 		final int writeLimit = query.limit;
 
-		// CDXLine prev = null;
 		// declared here because resumeKey code uses after the loop.
 		CDXLine line = null;
 
-		while (cdx.hasNext() &&
-				((writeLimit == 0) || (writeCount < writeLimit)) &&
-				(allCount < readLimit) && !responseWriter.isAborted()) {
+		// check limits first, so that a closest scan does not read
+		// ahead once limit is reached.
+		while (((writeLimit == 0) || (writeCount < writeLimit)) &&
+				(allCount < readLimit) && !responseWriter.isAborted() &&
+				cdx.hasNext()) {
 
 			String rawLine = cdx.next();
 			allCount++;
@@ -555,30 +715,63 @@ public class CDXServer extends BaseCDXServer {
 				continue;
 			}
 
-			// prev = line;
+			if (lazyParse) {
+				view.reset(rawLine);
 
-			line = parseFormat.createCDXLine(rawLine);
+				// TODO: better way to handle this special case?
+				if (view.fieldEquals(mimetypeIndex, "alexa/dat")) {
+					continue;
+				}
 
-			// TODO: better way to handle this special case?
-			if (line.getMimeType().equals("alexa/dat")) {
-				continue;
+				// Timestamp Range Filtering
+				if (!query.from.isEmpty() &&
+						(view.compareField(timestampIndex, query.from) < 0)) {
+					continue;
+				}
+
+				if (!query.to.isEmpty() &&
+						(view.compareField(timestampIndex, query.to) > 0) &&
+						!view.fieldStartsWith(timestampIndex, query.to)) {
+					if (query.matchType == MatchType.exact) {
+						break;
+					} else {
+						continue;
+					}
+				}
+
+				if (earlyRegexFilter && !filterMatcher.include(view)) {
+					continue;
+				}
+
+				if (earlyCollapse && !collapser.include(view)) {
+					continue;
+				}
+
+				line = parseFormat.createCDXLine(rawLine);
+			} else {
+				line = parseFormat.createCDXLine(rawLine);
+
+				// TODO: better way to handle this special case?
+				if (line.getMimeType().equals("alexa/dat")) {
+					continue;
+				}
+
+				// Timestamp Range Filtering
+				String timestamp = line.getTimestamp();
+
+				if (!query.from.isEmpty() && (timestamp.compareTo(query.from) < 0)) {
+					continue;
+				}
+
+				if (!query.to.isEmpty() && (timestamp.compareTo(query.to) > 0)
+						&& !timestamp.startsWith(query.to)) {
+					if (query.matchType == MatchType.exact) {
+						break;
+					} else {
+						continue;
+					}
+				}
 			}
-            
-            		// Timestamp Range Filtering
-            		String timestamp = line.getTimestamp();
-            
-            		if (!query.from.isEmpty() && (timestamp.compareTo(query.from) < 0)) {
-                		continue;
-            		}
-            
-            		if (!query.to.isEmpty() && (timestamp.compareTo(query.to) > 0)
-                    		&& !timestamp.startsWith(query.to)) {
-                		if (query.matchType == MatchType.exact) {
-                    			break;
-                		} else {
-                    			continue;
-                		}
-            		}
 
 			// Additional access check, per capture
 			if (accessChecker != null) {
@@ -587,30 +780,16 @@ public class CDXServer extends BaseCDXServer {
 				}
 			}
 
-			//			if (!authChecker.isAllUrlAccessAllowed(authToken)) {
-//				if ((query.matchType != MatchType.exact) && ((prev == null) || !line.getUrlKey().equals(prev.getUrlKey()))) {
-//					prevUrlAllowed = authChecker.isUrlAllowed(line.getOriginalUrl(), authToken);
-//				}
-//
-//				if (!prevUrlAllowed) {
-//					continue;
-//				}
-//			}
-//			
-//			if (!authChecker.isCaptureAllowed(line, authToken)) {
-//				continue;
-//			}
-//			
 			outputProcessor.trackLine(line);
 
-
 			// Check regex matcher if it exists
-			if ((filterMatcher != null) && !filterMatcher.include(line)) {
+			if (!earlyRegexFilter && (filterMatcher != null) &&
+					!filterMatcher.include(line)) {
 				continue;
 			}
 
 			// Check collapser
-			if ((collapser != null) && !collapser.include(line)) {
+			if (!earlyCollapse && (collapser != null) && !collapser.include(line)) {
 				continue;
 			}
 
@@ -621,6 +800,13 @@ public class CDXServer extends BaseCDXServer {
 			}
 		}
 
+		// output is incomplete (client is gone, or too slow). don't write
+		// resume key and closing part of the output, so that it doesn't look
+		// like a complete response.
+		if (responseWriter.isAborted()) {
+			return;
+		}
+
 		if (query.showResumeKey && (line != null) && (writeLimit > 0) &&
 				(writeCount >= writeLimit)) {
 			StringBuilder sb = new StringBuilder();
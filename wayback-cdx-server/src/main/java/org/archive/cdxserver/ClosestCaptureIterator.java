@@ -0,0 +1,168 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.archive.cdxserver.format.CDXTimestamp;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Iterator of CDX lines for a single URL, in the order of distance from
+ * a target timestamp, closest first.
+ * <p>
+ * It merges two iterators starting at {@code urlkey + " " + target}: one
+ * walking forward (ascending timestamps) and the other walking backward
+ * (descending timestamps). As each of them is already sorted by distance from
+ * the target, picking the closer head of the two yields all captures in order
+ * of distance, while reading only as many lines as the consumer asks for
+ * (plus one look-ahead line on each side). Each side stops at the first line
+ * for a different URL key.
+ * </p>
+ * <p>
+ * This lets the consumer stop as soon as it has top-N closest captures,
+ * instead of reading the whole timeline of the URL, which makes closest
+ * lookups for URLs with very many captures take time independent of
+ * timeline length.
+ * </p>
+ * <p>
+ * When two lines are equally distant from the target, the earlier one
+ * comes first.
+ * </p>
+ * @see CDXServer#setClosestScan(boolean)
+ */
+public class ClosestCaptureIterator implements CloseableIterator<String> {
+
+	private final Iterator<String> forward;
+	private final Iterator<String> backward;
+	private final String keyPrefix;
+	private final long target;
+
+	private String nextForward;
+	private long forwardDistance;
+	private String nextBackward;
+	private long backwardDistance;
+	private boolean forwardDone = false;
+	private boolean backwardDone = false;
+
+	/**
+	 * Initialize with iterators and target timestamp.
+	 * @param forward iterator of lines starting at the first line greater
+	 * than or equal to {@code urlkey + " " + target}, in ascending order.
+	 * @param backward iterator of lines starting at the last line less than
+	 * {@code urlkey + " " + target}, in descending order.
+	 * @param urlkey URL key (first field of CDX lines)
+	 * @param target target timestamp (up to 14 digits)
+	 */
+	public ClosestCaptureIterator(Iterator<String> forward,
+			Iterator<String> backward, String urlkey, String target) {
+		this(forward, backward, urlkey, CDXTimestamp.toSeconds(target));
+	}
+
+	/**
+	 * Initialize with iterators and target time.
+	 * @param forward iterator of lines in ascending order
+	 * @param backward iterator of lines in descending order
+	 * @param urlkey URL key (first field of CDX lines)
+	 * @param target target time in seconds since epoch
+	 * @see #ClosestCaptureIterator(Iterator, Iterator, String, String)
+	 */
+	public ClosestCaptureIterator(Iterator<String> forward,
+			Iterator<String> backward, String urlkey, long target) {
+		this.forward = forward;
+		this.backward = backward;
+		this.keyPrefix = urlkey + " ";
+		this.target = target;
+	}
+
+	/**
+	 * Return distance of {@code line} from the target, or {@code -1}
+	 * if {@code line} is not for the URL.
+	 */
+	private long distance(String line) {
+		if (!line.startsWith(keyPrefix)) {
+			return -1;
+		}
+		final int start = keyPrefix.length();
+		int end = line.indexOf(' ', start);
+		if (end < 0) {
+			end = line.length();
+		}
+		return Math.abs(CDXTimestamp.toSeconds(line, start, end) - target);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextForward == null && !forwardDone) {
+			if (forward.hasNext()) {
+				String line = forward.next();
+				forwardDistance = distance(line);
+				if (forwardDistance >= 0) {
+					nextForward = line;
+				} else {
+					// past the last capture of the URL
+					forwardDone = true;
+				}
+			} else {
+				forwardDone = true;
+			}
+		}
+		if (nextBackward == null && !backwardDone) {
+			if (backward.hasNext()) {
+				String line = backward.next();
+				backwardDistance = distance(line);
+				if (backwardDistance >= 0) {
+					nextBackward = line;
+				} else {
+					backwardDone = true;
+				}
+			} else {
+				backwardDone = true;
+			}
+		}
+		return nextForward != null || nextBackward != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String line;
+		if (nextBackward != null &&
+				(nextForward == null || backwardDistance <= forwardDistance)) {
+			line = nextBackward;
+			nextBackward = null;
+		} else {
+			line = nextForward;
+			nextForward = null;
+		}
+		return line;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		try {
+			closeIterator(forward);
+		} catch (IOException ex) {
+			error = ex;
+		}
+		closeIterator(backward);
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void closeIterator(Iterator<String> it) throws IOException {
+		if (it instanceof CloseableIterator) {
+			((CloseableIterator<String>)it).close();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.archive.cdxserver.filter;
+
+import java.util.List;
+
+/**
+ * {@link CDXAccessFilter} that can prepare for checking many captures at
+ * once, for example by looking up access rules for all hosts in one batch.
+ */
+public interface BatchCDXAccessFilter extends CDXAccessFilter {
+
+	/**
+	 * Called with original URLs of captures that are about to be checked
+	 * with {@link #includeCapture}. This is just a hint; it shall not
+	 * change the outcome of access checks.
+	 * @param originalUrls original URLs, possibly with duplicates
+	 */
+	public void prefetch(List<String> originalUrls);
+}
@@ -7,6 +7,7 @@ import java.util.List;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.archive.cdxserver.format.CDXFormat;
+import org.archive.cdxserver.format.CDXLineView;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitLine;
 
@@ -16,6 +17,10 @@ import org.archive.format.cdx.FieldSplitLine;
  * <field> = if <field> matches previous match, then its a dupe <field>:<n> = if
  * first <n> character of <field> match, then its a dupe
  * 
+ * Can also be applied to {@link CDXLineView}, in which case previous value is
+ * compared against the line in place, and a new String is created only when
+ * the value changes.
+ * 
  * 
  * @author ilya
  * 
@@ -81,6 +86,31 @@ public class CollapseFieldFilter implements CDXFilter {
 			return unique;
 		}
 		
+		boolean isUnique(CDXLineView line) {
+			boolean same;
+
+			if (prevValue == null) {
+				same = false;
+			} else if (substrLength > 0) {
+				same = line.fieldPrefixEquals(fieldIndex, substrLength, prevValue);
+			} else {
+				same = line.fieldEquals(fieldIndex, prevValue);
+			}
+
+			if (same) {
+				return false;
+			}
+
+			String currValue = line.getField(fieldIndex);
+
+			if ((substrLength > 0) && (substrLength <= currValue.length())) {
+				currValue = currValue.substring(0, substrLength);
+			}
+
+			prevValue = currValue;
+			return true;
+		}
+		
 		void clear()
 		{
 			prevValue = null;
@@ -120,4 +150,21 @@ public class CollapseFieldFilter implements CDXFilter {
 //
 //		return anyUnique;
 	}
+
+	/**
+	 * Same as {@link #include(CDXLine)}, but works on {@link CDXLineView}.
+	 * Note this method updates the state of the filter just as
+	 * {@code include(CDXLine)} does. Call only one of them for each line.
+	 * @param line CDX line view
+	 * @return {@code true} if {@code line} is not a dupe
+	 */
+	public boolean include(CDXLineView line) {
+		for (DupeMatch duper : dupeMatchers) {		
+			if (!duper.isUnique(line)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
 }
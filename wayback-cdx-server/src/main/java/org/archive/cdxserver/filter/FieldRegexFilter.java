@@ -2,9 +2,11 @@ package org.archive.cdxserver.filter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.archive.cdxserver.format.CDXFormat;
+import org.archive.cdxserver.format.CDXLineView;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitLine;
 
@@ -20,6 +22,9 @@ import org.archive.format.cdx.FieldSplitLine;
  * 
  * Supports !<regex> for not matching
  * 
+ * Can also be applied to {@link CDXLineView}, in which case matching is
+ * done without splitting the line into field Strings.
+ * 
  * @author ilya
  *
  */
@@ -38,6 +43,9 @@ public class FieldRegexFilter implements CDXFilter {
 		final String containsStr;
 		final int fieldIndex;
 		
+		// reused across calls to matches(CDXLineView)
+		Matcher viewMatcher;
+		
 		RegexMatch(String str)
 		{
 			boolean contains = false;
@@ -121,6 +129,41 @@ public class FieldRegexFilter implements CDXFilter {
 			
 			return matched;
 		}
+		
+		boolean matches(CDXLineView line)
+		{
+			boolean matched;
+			
+			if (fieldIndex < 0) {
+				if (containsStr != null) {
+					matched = line.toString().contains(containsStr);
+				} else {
+					matched = matcher(line.toString()).matches();
+				}
+			} else {
+				if (containsStr != null) {
+					matched = line.fieldContains(fieldIndex, containsStr);
+				} else {
+					matched = matcher(line.getFieldChars(fieldIndex)).matches();
+				}
+			}
+			
+			if (inverted) {
+				matched = !matched;
+			}
+			
+			return matched;
+		}
+		
+		private Matcher matcher(CharSequence input)
+		{
+			if (viewMatcher == null) {
+				viewMatcher = regex.matcher(input);
+			} else {
+				viewMatcher.reset(input);
+			}
+			return viewMatcher;
+		}
 	}
 	
 	
@@ -147,4 +190,39 @@ public class FieldRegexFilter implements CDXFilter {
 		
 		return true;
 	}
+	
+	/**
+	 * Same as {@link #include(CDXLine)}, but works on {@link CDXLineView}.
+	 * @param line CDX line view
+	 * @return {@code true} if {@code line} passes all matchers
+	 */
+	public boolean include(CDXLineView line)
+	{
+		for (RegexMatch regexMatch : regexMatchers) 
+		{
+			if (!regexMatch.matches(line)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Return {@code true} if any of the matchers looks at field
+	 * {@code fieldIndex}, including those matching the whole line.
+	 * @param fieldIndex zero-based field index
+	 * @return boolean
+	 */
+	public boolean dependsOnField(int fieldIndex)
+	{
+		for (RegexMatch regexMatch : regexMatchers) 
+		{
+			if (regexMatch.fieldIndex < 0 || regexMatch.fieldIndex == fieldIndex) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
 }
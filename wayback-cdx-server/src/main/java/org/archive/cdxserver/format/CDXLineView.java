@@ -0,0 +1,317 @@
+package org.archive.cdxserver.format;
+
+import org.archive.format.cdx.CDXLine;
+
+/**
+ * Lightweight, reusable view over a raw space-delimited CDX line.
+ * <p>
+ * Unlike {@link CDXLine}, which splits the whole line into field Strings
+ * upon construction, {@code CDXLineView} locates field boundaries on demand,
+ * only as far as the highest field index asked for so far. Comparison methods
+ * work directly on the characters of the original line and do not allocate.
+ * </p>
+ * <p>
+ * {@code CDXServer} uses this class to apply cheap rejection tests (timestamp
+ * range, mimetype, regex filters and collapsing) before materializing
+ * {@code CDXLine} objects, so that only lines surviving those tests are parsed
+ * fully.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, and are meant to be reused for every line
+ * through {@link #reset(String)}.
+ * </p>
+ * @see StandardCDXFormat
+ */
+public class CDXLineView {
+
+	public final static char FIELD_DELIM = ' ';
+
+	protected String line;
+
+	/**
+	 * {@code bounds[2*i]} is the start offset, and {@code bounds[2*i+1]} the
+	 * end offset (exclusive) of field {@code i}.
+	 */
+	protected int[] bounds = new int[32];
+
+	/**
+	 * Number of fields located so far.
+	 */
+	protected int numLocated;
+
+	/**
+	 * Offset at which scanning for the next field starts, or {@code -1}
+	 * if the end of line has been reached.
+	 */
+	protected int scanPos;
+
+	private final FieldChars fieldChars = new FieldChars();
+
+	public CDXLineView() {
+	}
+
+	public CDXLineView(String line) {
+		reset(line);
+	}
+
+	/**
+	 * Point this view at new CDX line.
+	 * @param line raw CDX line
+	 */
+	public void reset(String line) {
+		this.line = line;
+		this.numLocated = 0;
+		this.scanPos = 0;
+	}
+
+	/**
+	 * Locate fields up to {@code index}.
+	 * @param index field index
+	 * @return {@code true} if line has field {@code index}
+	 */
+	protected final boolean locate(int index) {
+		if (index < 0) {
+			return false;
+		}
+		while (numLocated <= index) {
+			if (scanPos < 0) {
+				return false;
+			}
+			int end = line.indexOf(FIELD_DELIM, scanPos);
+			if (numLocated * 2 + 1 >= bounds.length) {
+				int[] expanded = new int[bounds.length * 2];
+				System.arraycopy(bounds, 0, expanded, 0, bounds.length);
+				bounds = expanded;
+			}
+			bounds[numLocated * 2] = scanPos;
+			if (end < 0) {
+				bounds[numLocated * 2 + 1] = line.length();
+				scanPos = -1;
+			} else {
+				bounds[numLocated * 2 + 1] = end;
+				scanPos = end + 1;
+			}
+			numLocated++;
+		}
+		return true;
+	}
+
+	/**
+	 * Return {@code true} if line has field {@code index}.
+	 * @param index zero-based field index
+	 * @return boolean
+	 */
+	public boolean hasField(int index) {
+		return locate(index);
+	}
+
+	/**
+	 * Return the number of fields in the line.
+	 * This requires a scan of the whole line.
+	 * @return number of fields
+	 */
+	public int getNumFields() {
+		locate(Integer.MAX_VALUE - 1);
+		return numLocated;
+	}
+
+	/**
+	 * Return start offset of field {@code index} in the line.
+	 * @param index zero-based field index
+	 * @return start offset, or {@code -1} if there's no such field
+	 */
+	public int fieldStart(int index) {
+		return locate(index) ? bounds[index * 2] : -1;
+	}
+
+	/**
+	 * Return end offset (exclusive) of field {@code index} in the line.
+	 * @param index zero-based field index
+	 * @return end offset, or {@code -1} if there's no such field
+	 */
+	public int fieldEnd(int index) {
+		return locate(index) ? bounds[index * 2 + 1] : -1;
+	}
+
+	/**
+	 * Return length of field {@code index}.
+	 * @param index zero-based field index
+	 * @return length, {@code 0} if there's no such field
+	 */
+	public int fieldLength(int index) {
+		return locate(index) ? bounds[index * 2 + 1] - bounds[index * 2] : 0;
+	}
+
+	/**
+	 * Return value of field {@code index} as a new String.
+	 * Prefer comparison methods where possible, as this method allocates.
+	 * @param index zero-based field index
+	 * @return field value, empty string if there's no such field
+	 */
+	public String getField(int index) {
+		if (!locate(index)) {
+			return "";
+		}
+		return line.substring(bounds[index * 2], bounds[index * 2 + 1]);
+	}
+
+	/**
+	 * Return value of field {@code index} as a {@link CharSequence}
+	 * backed by the original line.
+	 * <p>
+	 * Returned object is shared, and becomes invalid on next call to this
+	 * method or {@link #reset(String)}.
+	 * </p>
+	 * @param index zero-based field index
+	 * @return CharSequence, empty if there's no such field
+	 */
+	public CharSequence getFieldChars(int index) {
+		if (!locate(index)) {
+			fieldChars.set(0, 0);
+		} else {
+			fieldChars.set(bounds[index * 2], bounds[index * 2 + 1]);
+		}
+		return fieldChars;
+	}
+
+	/**
+	 * Return {@code true} if field {@code index} is equal to {@code value}.
+	 * @param index zero-based field index
+	 * @param value value to compare with
+	 * @return boolean
+	 */
+	public boolean fieldEquals(int index, String value) {
+		if (!locate(index)) {
+			return value.isEmpty();
+		}
+		int start = bounds[index * 2];
+		int len = bounds[index * 2 + 1] - start;
+		return len == value.length() &&
+				line.regionMatches(start, value, 0, len);
+	}
+
+	/**
+	 * Return {@code true} if the first {@code length} characters of field
+	 * {@code index} are equal to {@code value}. If the field is shorter than
+	 * {@code length}, the whole field is compared.
+	 * @param index zero-based field index
+	 * @param length prefix length
+	 * @param value value to compare with
+	 * @return boolean
+	 */
+	public boolean fieldPrefixEquals(int index, int length, String value) {
+		int len = fieldLength(index);
+		if (length < len) {
+			len = length;
+		}
+		if (len != value.length()) {
+			return false;
+		}
+		return len == 0 || line.regionMatches(bounds[index * 2], value, 0, len);
+	}
+
+	/**
+	 * Return {@code true} if field {@code index} starts with {@code prefix}.
+	 * @param index zero-based field index
+	 * @param prefix prefix
+	 * @return boolean
+	 */
+	public boolean fieldStartsWith(int index, String prefix) {
+		if (!locate(index)) {
+			return prefix.isEmpty();
+		}
+		int start = bounds[index * 2];
+		int len = bounds[index * 2 + 1] - start;
+		return prefix.length() <= len &&
+				line.regionMatches(start, prefix, 0, prefix.length());
+	}
+
+	/**
+	 * Return {@code true} if field {@code index} contains {@code str}.
+	 * @param index zero-based field index
+	 * @param str substring to look for
+	 * @return boolean
+	 */
+	public boolean fieldContains(int index, String str) {
+		if (!locate(index)) {
+			return str.isEmpty();
+		}
+		final int start = bounds[index * 2];
+		final int last = bounds[index * 2 + 1] - str.length();
+		for (int i = start; i <= last; i++) {
+			if (line.regionMatches(i, str, 0, str.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compare field {@code index} with {@code value} lexicographically,
+	 * just like {@link String#compareTo(String)} would do.
+	 * @param index zero-based field index
+	 * @param value value to compare with
+	 * @return negative, zero or positive integer as the field is less than,
+	 * equal to, or greater than {@code value}
+	 */
+	public int compareField(int index, String value) {
+		int start = 0, len = 0;
+		if (locate(index)) {
+			start = bounds[index * 2];
+			len = bounds[index * 2 + 1] - start;
+		}
+		final int n = Math.min(len, value.length());
+		for (int i = 0; i < n; i++) {
+			char c1 = line.charAt(start + i);
+			char c2 = value.charAt(i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return len - value.length();
+	}
+
+	/**
+	 * Return the whole line.
+	 */
+	@Override
+	public String toString() {
+		return line;
+	}
+
+	/**
+	 * Flyweight {@code CharSequence} over a region of {@code line}.
+	 */
+	private final class FieldChars implements CharSequence {
+		private int start;
+		private int end;
+
+		void set(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			}
+			return line.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return line.substring(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return line.substring(start, end);
+		}
+	}
+}
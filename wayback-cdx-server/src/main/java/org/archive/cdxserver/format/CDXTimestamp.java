@@ -0,0 +1,147 @@
+package org.archive.cdxserver.format;
+
+/**
+ * Conversion of CDX timestamps ({@code yyyyMMddHHmmss}, UTC) into primitive
+ * {@code long}s, without going through {@code Date} or {@code Calendar}.
+ * <p>
+ * Timestamps shorter than 14 digits are padded the same way as
+ * {@code ArchiveUtils.getDate()} does: missing month and day are {@code 01},
+ * and missing time fields are {@code 00}. Out-of-range fields are handled
+ * leniently (ex. day 31 in April is May 1st).
+ * </p>
+ * <p>
+ * Methods take {@link CharSequence} so that timestamps can be converted
+ * directly from {@link CDXLineView#getFieldChars(int)}, without extracting
+ * a {@code String}.
+ * </p>
+ */
+public final class CDXTimestamp {
+
+	/**
+	 * Value returned by {@link #groupKey(CharSequence, int)} for timestamps
+	 * having non-digit characters.
+	 */
+	public final static long INVALID_KEY = -1;
+
+	private final static String PADDING = "00000101000000";
+
+	private CDXTimestamp() {
+	}
+
+	/**
+	 * Return seconds since epoch (UTC) for {@code timestamp}.
+	 * Parsing stops at the first non-digit character, and the rest
+	 * is padded with defaults.
+	 * @param timestamp timestamp in {@code yyyyMMddHHmmss} format
+	 * (possibly shorter)
+	 * @return seconds since epoch
+	 */
+	public static long toSeconds(CharSequence timestamp) {
+		return toSeconds(timestamp, 0, timestamp.length());
+	}
+
+	/**
+	 * Return seconds since epoch (UTC) for timestamp in
+	 * {@code timestamp[start:end]}.
+	 * @param timestamp character sequence containing timestamp
+	 * @param start start index of timestamp
+	 * @param end end index of timestamp (exclusive)
+	 * @return seconds since epoch
+	 * @see #toSeconds(CharSequence)
+	 */
+	public static long toSeconds(CharSequence timestamp, int start, int end) {
+		final int len = Math.min(end - start, 14);
+		int valid = 0;
+		while (valid < len && isDigit(timestamp.charAt(start + valid))) {
+			valid++;
+		}
+		return toSeconds(field(timestamp, start, valid, 0, 4),
+			field(timestamp, start, valid, 4, 2),
+			field(timestamp, start, valid, 6, 2),
+			field(timestamp, start, valid, 8, 2),
+			field(timestamp, start, valid, 10, 2),
+			field(timestamp, start, valid, 12, 2));
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Parse digits in {@code [pos, pos + width)} of timestamp starting at
+	 * {@code start}, taking those at {@code valid} and after from
+	 * {@link #PADDING}.
+	 */
+	private static int field(CharSequence timestamp, int start, int valid,
+			int pos, int width) {
+		int n = 0;
+		for (int i = pos; i < pos + width; i++) {
+			char c = i < valid ? timestamp.charAt(start + i) : PADDING.charAt(i);
+			n = n * 10 + (c - '0');
+		}
+		return n;
+	}
+
+	/**
+	 * Return seconds since epoch (UTC) for the date and time.
+	 * Fields are handled leniently.
+	 * @param year year
+	 * @param month month, 1-12
+	 * @param day day of month, 1-31
+	 * @param hour hour
+	 * @param minute minute
+	 * @param second second
+	 * @return seconds since epoch
+	 */
+	public static long toSeconds(int year, int month, int day, int hour,
+			int minute, int second) {
+		// normalize month into 1..12 (month 0 is December of previous year)
+		int m0 = month - 1;
+		if (m0 < 0) {
+			year -= (11 - m0) / 12;
+			m0 = ((m0 % 12) + 12) % 12;
+		} else if (m0 > 11) {
+			year += m0 / 12;
+			m0 %= 12;
+		}
+		final long days = daysFromCivil(year, m0 + 1, 1) + (day - 1);
+		return days * 86400L + hour * 3600L + minute * 60L + second;
+	}
+
+	/**
+	 * Days since 1970-01-01 for proleptic Gregorian date.
+	 * (H. Hinnant's {@code days_from_civil} algorithm)
+	 */
+	private static long daysFromCivil(int y, int m, int d) {
+		y -= m <= 2 ? 1 : 0;
+		final long era = (y >= 0 ? y : y - 399) / 400;
+		final long yoe = y - era * 400;
+		final long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+		final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/**
+	 * Return a primitive key for the first {@code length} characters of
+	 * {@code timestamp}. Two timestamps have the same key if and only if
+	 * their prefixes of {@code length} (or shorter, if the timestamp is
+	 * shorter) are identical.
+	 * @param timestamp timestamp
+	 * @param length prefix length, up to 17
+	 * @return key, or {@link #INVALID_KEY} if the prefix has non-digit
+	 * characters
+	 */
+	public static long groupKey(CharSequence timestamp, int length) {
+		final int n = Math.min(Math.min(length, 17), timestamp.length());
+		long key = 0;
+		for (int i = 0; i < n; i++) {
+			char c = timestamp.charAt(i);
+			if (!isDigit(c)) {
+				return INVALID_KEY;
+			}
+			key = key * 10 + (c - '0');
+		}
+		// distinguish "0" from "00"
+		return (key << 5) | n;
+	}
+}
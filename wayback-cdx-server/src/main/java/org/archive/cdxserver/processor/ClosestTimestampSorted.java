@@ -1,34 +1,46 @@
 package org.archive.cdxserver.processor;
 
-import java.util.Date;
-import java.util.TreeMap;
-
+import org.archive.cdxserver.format.CDXTimestamp;
 import org.archive.format.cdx.CDXLine;
-import org.archive.util.ArchiveUtils;
 
 public class ClosestTimestampSorted extends WrappedProcessor {
-    
+
     enum Dir
     {
         ANY,
         PREV,
         NEXT,
     };
-    
+
     Dir dir;
-    TreeMap<Long, CDXLine> closestLines;
-    Long target;
+    long target;
     int limit;
     boolean done = false;
-    
-    protected Long convTimestamp(String timestamp)
-    {        
-        return ArchiveUtils.getDate(timestamp, new Date()).getTime();
+
+    /**
+     * Bounded max-heap of closest lines so far, ordered by distance from
+     * target, then by arrival order. Root is the farthest one, which is
+     * replaced when a closer line comes in.
+     */
+    long[] distances;
+    int[] seqs;
+    CDXLine[] lines;
+    int size = 0;
+    int seq = 0;
+
+    /**
+     * Convert timestamp to seconds since epoch.
+     * @param timestamp 14-digit timestamp
+     * @return seconds since epoch
+     */
+    protected long convTimestamp(String timestamp)
+    {
+        return CDXTimestamp.toSeconds(timestamp);
     }
-    
+
     public ClosestTimestampSorted(BaseProcessor output, String target, int limit) {
         super(output);
-        
+
         if (target.startsWith("-")) {
             target = target.substring(1);
             dir = Dir.PREV;
@@ -38,10 +50,13 @@ public class ClosestTimestampSorted extends WrappedProcessor {
         } else {
             dir = Dir.ANY;
         }
-        
+
         this.target = convTimestamp(target);
         this.limit = (limit > 0 ? limit : Integer.MAX_VALUE);
-        closestLines = new TreeMap<Long, CDXLine>();
+        int capacity = Math.min(this.limit, 16);
+        distances = new long[capacity];
+        seqs = new int[capacity];
+        lines = new CDXLine[capacity];
     }
 
     @Override
@@ -49,11 +64,11 @@ public class ClosestTimestampSorted extends WrappedProcessor {
         if (done) {
             return Integer.MAX_VALUE;
         }
-        
-        Long curr = convTimestamp(line.getTimestamp());
-        Long diff;
-        
-        switch (dir) {            
+
+        long curr = convTimestamp(line.getTimestamp());
+        long diff;
+
+        switch (dir) {
         case PREV:
             if (curr < target) {
                 diff = target - curr;
@@ -61,7 +76,7 @@ public class ClosestTimestampSorted extends WrappedProcessor {
                 diff = target + curr;
             }
             break;
-            
+
         case NEXT:
             if (curr > target) {
                 diff = curr - target;
@@ -69,37 +84,116 @@ public class ClosestTimestampSorted extends WrappedProcessor {
                 diff = (target - curr) + target * 2;
             }
             break;
-            
+
         case ANY:
         default:
             diff = Math.abs(curr - target);
             break;
         }
-        
-        if (closestLines.size() == limit) {
-            // Assumes ascending timestamp input 
-            if (diff > closestLines.lastKey()) {
+
+        if (size == limit) {
+            // Assumes ascending timestamp input
+            if (diff > distances[0]) {
                 done = true;
                 return writeSorted();
             }
+            // equally distant, but arrived later than the farthest
+            if (diff == distances[0]) {
+                return 0;
+            }
+            distances[0] = diff;
+            seqs[0] = seq++;
+            lines[0] = line;
+            siftDown(0);
+            return 0;
         }
-        
-        closestLines.put(diff, line);
-      
-        if (closestLines.size() > limit) {
-            closestLines.remove(closestLines.lastKey());
+
+        if (size == distances.length) {
+            grow();
         }
-        
+        distances[size] = diff;
+        seqs[size] = seq++;
+        lines[size] = line;
+        siftUp(size++);
+
         return 0;
     }
 
+    private void grow() {
+        int capacity = (int)Math.min((long)limit, distances.length * 2L);
+        long[] newDistances = new long[capacity];
+        int[] newSeqs = new int[capacity];
+        CDXLine[] newLines = new CDXLine[capacity];
+        System.arraycopy(distances, 0, newDistances, 0, size);
+        System.arraycopy(seqs, 0, newSeqs, 0, size);
+        System.arraycopy(lines, 0, newLines, 0, size);
+        distances = newDistances;
+        seqs = newSeqs;
+        lines = newLines;
+    }
+
+    /**
+     * @return {@code true} if entry {@code i} is farther than entry {@code j}
+     */
+    private boolean farther(int i, int j) {
+        if (distances[i] != distances[j]) {
+            return distances[i] > distances[j];
+        }
+        return seqs[i] > seqs[j];
+    }
+
+    private void swap(int i, int j) {
+        long d = distances[i];
+        distances[i] = distances[j];
+        distances[j] = d;
+        int s = seqs[i];
+        seqs[i] = seqs[j];
+        seqs[j] = s;
+        CDXLine l = lines[i];
+        lines[i] = lines[j];
+        lines[j] = l;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!farther(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && farther(child + 1, child)) {
+                child++;
+            }
+            if (!farther(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
     protected int writeSorted() {
-        int count = 0;
-        for (CDXLine line : closestLines.values()) {
-            super.writeLine(line);
-            ++count;
+        final int count = size;
+        // heap-sort in place: move the farthest to the end, repeatedly.
+        while (size > 1) {
+            swap(0, --size);
+            siftDown(0);
+        }
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            super.writeLine(lines[i]);
+            lines[i] = null;
         }
-        closestLines.clear();
         return count;
     }
 
@@ -2,6 +2,7 @@ package org.archive.cdxserver.processor;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.archive.cdxserver.CDXServer;
+import org.archive.cdxserver.format.CDXTimestamp;
 import org.archive.format.cdx.CDXLine;
 
 /**
@@ -22,7 +23,11 @@ import org.archive.format.cdx.CDXLine;
 public class DupeTimestampBestStatusFilter extends WrappedProcessor {
 	final static int WORST_HTTP_CODE = 9999;
 
-	protected String lastTimestamp;
+	/**
+	 * {@link CDXTimestamp#groupKey(CharSequence, int)} of the last line,
+	 * or {@link CDXTimestamp#INVALID_KEY} if none.
+	 */
+	protected long lastTimestamp = CDXTimestamp.INVALID_KEY;
 
 	protected int bestHttpCode = WORST_HTTP_CODE;
 	protected int timestampDedupLength;
@@ -65,6 +70,29 @@ public class DupeTimestampBestStatusFilter extends WrappedProcessor {
 		return false;
 	}
 
+	/**
+	 * return group key of {@code line}.
+	 * @param line CDX line
+	 * @return primitive key for the first {@code timestampDedupLength}
+	 * digits of {@code timestamp}
+	 * @see CDXTimestamp#groupKey(CharSequence, int)
+	 */
+	protected final long groupKey(CDXLine line) {
+		return CDXTimestamp.groupKey(line.getTimestamp(), timestampDedupLength);
+	}
+
+	/**
+	 * Return {@code true} if group keys {@code a} and {@code b} are
+	 * of the same collapse group. Lines with non-digit timestamp form
+	 * a group by themselves.
+	 * @param a group key
+	 * @param b group key
+	 * @return boolean
+	 */
+	protected static final boolean sameGroup(long a, long b) {
+		return a != CDXTimestamp.INVALID_KEY && a == b;
+	}
+
 	@Override
 	public int writeLine(CDXLine line) {
 		if (include(line)) {
@@ -83,14 +111,13 @@ public class DupeTimestampBestStatusFilter extends WrappedProcessor {
 		// If starts with special no collapse prefix, then always include
 		if (passThrough(line)) return true;
 
-		String timestamp = line.getTimestamp();
-		timestamp = timestamp.substring(0, Math.min(timestampDedupLength, timestamp.length()));
+		final long timestamp = groupKey(line);
 		final String statusCode = line.getStatusCode();
 		int httpCode = "-".equals(statusCode) ? WORST_HTTP_CODE : NumberUtils.toInt(statusCode, WORST_HTTP_CODE);
 
 		boolean isDupe = false;
 
-		if ((lastTimestamp != null) && timestamp.equals(lastTimestamp)) {
+		if (sameGroup(timestamp, lastTimestamp)) {
 			if (httpCode < bestHttpCode) {
 				bestHttpCode = httpCode;
 			} else {
@@ -48,18 +48,6 @@ public class DupeTimestampLastBestStatusFilter extends DupeTimestampBestStatusFi
 		pendingPassThroughs.clear();
 	}
 
-	/**
-	 * return group key of {@code line}.
-	 * @param line CDX line
-	 * @return first {@code timestampDedupLength} digits
-	 * of {@code timestamp}
-	 */
-	protected final String groupKey(CDXLine line) {
-		String timestamp = line.getTimestamp();
-		return timestamp.substring(0,
-			Math.min(timestampDedupLength, timestamp.length()));
-	}
-
 	@Override
 	public int writeLine(CDXLine line) {
 		if (timestampDedupLength <= 0) {
@@ -75,9 +63,9 @@ public class DupeTimestampLastBestStatusFilter extends DupeTimestampBestStatusFi
 				return inner.writeLine(line);
 			}
 		}
-		String key = groupKey(line);
+		long key = groupKey(line);
 		int httpCode = NumberUtils.toInt(line.getStatusCode(), WORST_HTTP_CODE);
-		if (lastTimestamp != null && key.equals(lastTimestamp)) {
+		if (sameGroup(key, lastTimestamp)) {
 			// within a collapse group
 			if (httpCode <= bestHttpCode) {
 				flushPassThrough();
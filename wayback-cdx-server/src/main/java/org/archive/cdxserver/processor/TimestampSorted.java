@@ -0,0 +1,78 @@
+package org.archive.cdxserver.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.archive.format.cdx.CDXLine;
+
+/**
+ * Buffers all lines and sends them to the nested processor in timestamp
+ * order at the end.
+ * <p>
+ * Used for putting a bounded window of captures read in order of distance
+ * from the target timestamp (see {@code ClosestCaptureIterator}) back in
+ * chronological order, for processors expecting it, like timestamp
+ * collapsing and revisit resolution. Every line counts as written, so that
+ * the query limit bounds the size of the window.
+ * </p>
+ * <p>
+ * Lines with the same timestamp keep the order they came in.
+ * </p>
+ */
+public class TimestampSorted extends WrappedProcessor {
+
+	private static final Comparator<CDXLine> ASCENDING = new Comparator<CDXLine>() {
+		@Override
+		public int compare(CDXLine o1, CDXLine o2) {
+			return o1.getTimestamp().compareTo(o2.getTimestamp());
+		}
+	};
+
+	private static final Comparator<CDXLine> DESCENDING = Collections
+		.reverseOrder(ASCENDING);
+
+	private final Comparator<CDXLine> order;
+
+	private List<CDXLine> lines = new ArrayList<CDXLine>();
+
+	/**
+	 * @param output nested processor
+	 * @param reverse {@code true} for descending timestamp order
+	 */
+	public TimestampSorted(BaseProcessor output, boolean reverse) {
+		super(output);
+		this.order = reverse ? DESCENDING : ASCENDING;
+	}
+
+	@Override
+	public int writeLine(CDXLine line) {
+		lines.add(line);
+		return 1;
+	}
+
+	protected void writeSorted() {
+		if (lines.isEmpty()) {
+			return;
+		}
+		// stable sort
+		Collections.sort(lines, order);
+		for (CDXLine line : lines) {
+			super.writeLine(line);
+		}
+		lines.clear();
+	}
+
+	@Override
+	public void writeResumeKey(String resumeKey) {
+		writeSorted();
+		super.writeResumeKey(resumeKey);
+	}
+
+	@Override
+	public void end() {
+		writeSorted();
+		super.end();
+	}
+}
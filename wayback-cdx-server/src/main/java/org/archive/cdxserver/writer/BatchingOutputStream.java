@@ -0,0 +1,110 @@
+package org.archive.cdxserver.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} that collects output into a reusable byte buffer, and
+ * writes it to the underlying stream only in batches of {@code batchSize}
+ * bytes (or upon {@link #flush()}).
+ * <p>
+ * Each batch write is timed. If writing one batch takes longer than
+ * {@code stallTimeout} milliseconds, i.e. the client is not reading fast
+ * enough, the stream is marked <em>stalled</em>. {@link HttpCDXWriter}
+ * reports stalled stream as aborted, so that {@code CDXServer} stops reading
+ * the index and releases its iterators early, instead of being paced by the
+ * slowest client.
+ * </p>
+ * <p>
+ * Note stall is detected only after the slow write returns. Blocking write
+ * itself is not interrupted, and request thread is held until the
+ * container's connection timeout at worst.
+ * </p>
+ */
+public class BatchingOutputStream extends OutputStream {
+
+	public final static int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+	protected final OutputStream out;
+	protected final byte[] buf;
+	protected final long stallTimeout;
+
+	protected int count = 0;
+	protected boolean stalled = false;
+
+	/**
+	 * Initialize with underlying stream.
+	 * @param out underlying stream
+	 * @param batchSize size of the buffer, in bytes
+	 * @param stallTimeout maximum milliseconds a batch write may take before
+	 *        the stream is considered stalled. 0 disables stall detection.
+	 */
+	public BatchingOutputStream(OutputStream out, int batchSize,
+			long stallTimeout) {
+		this.out = out;
+		this.buf = new byte[batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE];
+		this.stallTimeout = stallTimeout;
+	}
+
+	/**
+	 * Return {@code true} if any batch write took longer than
+	 * {@code stallTimeout}.
+	 * @return {@code true} if stalled
+	 */
+	public boolean isStalled() {
+		return stalled;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buf.length) {
+			writeBatch();
+		}
+		buf[count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == buf.length) {
+				writeBatch();
+			}
+			final int n = Math.min(len, buf.length - count);
+			System.arraycopy(b, off, buf, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	protected void writeBatch() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		final long start = System.currentTimeMillis();
+		try {
+			out.write(buf, 0, count);
+			out.flush();
+		} finally {
+			count = 0;
+		}
+		if (stallTimeout > 0 &&
+				System.currentTimeMillis() - start > stallTimeout) {
+			stalled = true;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writeBatch();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBatch();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package org.archive.cdxserver.writer;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.zip.GZIPOutputStream;
 
@@ -16,9 +19,22 @@ public abstract class HttpCDXWriter extends CDXWriter {
 	public final static String X_CLUSTER_URI = "X-CDX-Cluster-Uri";
 	
 	public final static String RUNTIME_ERROR_HEADER = "X-Archive-Wayback-Runtime-Error";
+
+	/**
+	 * Line appended to batched output cut short for a stalled client.
+	 */
+	public final static String ABORTED_MARKER = "# ERROR: output aborted, response is incomplete";
 	
 	protected HttpServletResponse response;
 	protected PrintWriter writer;
+	protected BatchingOutputStream batchOut;
+	/**
+	 * Byte stream under {@link #writer}, to which subclasses may write
+	 * UTF-8 bytes directly with {@link #writeBytes(Utf8LineBuffer)}.
+	 * {@code null} if writer is container-provided.
+	 */
+	protected OutputStream out;
+	protected boolean outError = false;
 
 	protected boolean includeBlockedCaptures = false;
 	
@@ -31,18 +47,104 @@ public abstract class HttpCDXWriter extends CDXWriter {
 	    	this.writer = response.getWriter();
 	    }
     }
+
+	/**
+	 * Initialize with batched output.
+	 * <p>
+	 * Output is encoded in UTF-8, compressed if {@code gzip} is {@code true},
+	 * and written to the response output stream in batches of
+	 * {@code batchSize} bytes, through a reusable buffer. If writing a batch
+	 * takes longer than {@code stallTimeout} milliseconds, the writer reports
+	 * itself as aborted, so that the request stops reading the index early
+	 * for slow clients.
+	 * </p>
+	 * @param response servlet response
+	 * @param gzip {@code true} for gzip-compressed output
+	 * @param batchSize batch size in bytes
+	 * @param stallTimeout stall timeout in milliseconds, 0 to disable
+	 * @throws IOException error getting response output stream
+	 * @see BatchingOutputStream
+	 */
+	public HttpCDXWriter(HttpServletResponse response, boolean gzip,
+			int batchSize, long stallTimeout) throws IOException {
+		this.response = response;
+
+		this.batchOut = new BatchingOutputStream(response.getOutputStream(),
+			batchSize, stallTimeout);
+		this.out = batchOut;
+		if (gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+			this.out = new GZIPOutputStream(out, 8192);
+		}
+		// writer.flush() only moves pending chars down to out, so that
+		// byte output can follow. batchOut decides when to hit the socket.
+		this.writer = new PrintWriter(new OutputStreamWriter(
+			new FilterOutputStream(out) {
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					out.write(b, off, len);
+				}
+
+				@Override
+				public void flush() {
+				}
+			}, "UTF-8"));
+	}
+
+	/**
+	 * Write contents of {@code buffer} to the output, after anything
+	 * printed to {@link #writer} so far. Buffer is reset.
+	 * Only available if {@link #out} is non-{@code null}.
+	 * @param buffer encoded bytes
+	 */
+	protected void writeBytes(Utf8LineBuffer buffer) {
+		writer.flush();
+		try {
+			buffer.writeTo(out);
+		} catch (IOException ex) {
+			// same as PrintWriter: remember the error, report by isAborted()
+			outError = true;
+			buffer.reset();
+		}
+	}
 	
 	@Override
 	public void close()
 	{
+		if (batchOut != null && isAborted()) {
+			closeAborted();
+			return;
+		}
 		writer.flush();
 		writer.close();
 	}
+
+	/**
+	 * Send what is buffered of batched output cut short, without
+	 * completing it: if the client is still connected, {@link #ABORTED_MARKER}
+	 * is appended, and gzip stream is left without its trailer, so that
+	 * client cannot mistake it for a complete response.
+	 */
+	protected void closeAborted() {
+		if (!outError && !writer.checkError()) {
+			writer.println();
+			writer.println(ABORTED_MARKER);
+		}
+		writer.flush();
+		try {
+			// not out.close(), which would finish gzip stream
+			batchOut.flush();
+		} catch (IOException ex) {
+			// client is gone
+		}
+	}
 	
 	@Override
 	public boolean isAborted()
 	{
-		return writer.checkError();
+		return writer.checkError() || outError ||
+				(batchOut != null && batchOut.isStalled());
 	}
 
 	@Override
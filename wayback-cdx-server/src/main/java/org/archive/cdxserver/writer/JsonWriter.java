@@ -1,10 +1,10 @@
 package org.archive.cdxserver.writer;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.StringEscapeUtils;
 import org.archive.format.cdx.CDXLine;
 import org.archive.format.cdx.FieldSplitFormat;
 
@@ -13,11 +13,19 @@ public class JsonWriter extends HttpCDXWriter {
     boolean writeHeader = true;
     boolean firstLine = true;
 
+    protected final Utf8LineBuffer lineBuffer = new Utf8LineBuffer();
+
     public JsonWriter(HttpServletResponse response, boolean gzip) throws IOException {
     	super(response, gzip);
 		setContentType("application/json");
     }
 
+    public JsonWriter(HttpServletResponse response, boolean gzip,
+    		int batchSize, long stallTimeout) throws IOException {
+    	super(response, gzip, batchSize, stallTimeout);
+    	setContentType("application/json");
+    }
+
     @Override
     public void begin() {
         firstLine = true;
@@ -55,10 +63,26 @@ public class JsonWriter extends HttpCDXWriter {
                 writer.println(',');
             }
             firstLine = false;
+        } else if (out != null) {
+            lineBuffer.appendAscii(",\n");
         } else {
             writer.println(',');
         }
 
+        if (out != null) {
+            lineBuffer.appendAscii('[');
+            for (int i = 0; i < line.getNumFields(); i++) {
+                lineBuffer.appendAscii(i > 0 ? "\", \"" : "\"");
+                lineBuffer.appendJsonString(line.getField(i));
+            }
+            if (line.getNumFields() > 0) {
+                lineBuffer.appendAscii('\"');
+            }
+            lineBuffer.appendAscii(']');
+            writeBytes(lineBuffer);
+            return 1;
+        }
+
         writer.print('[');
 
         boolean firstField = true;
@@ -71,7 +95,7 @@ public class JsonWriter extends HttpCDXWriter {
             } else {
                 writer.print("\", \"");
             }
-            writer.print(StringEscapeUtils.escapeJava(field));
+            writeJsonString(writer, field);
         }
 
         if (!firstField) {
@@ -82,6 +106,59 @@ public class JsonWriter extends HttpCDXWriter {
         return 1;
     }
 
+    /**
+     * Write {@code s} escaped for JSON string literal (without surrounding
+     * quotes). Non-ASCII characters are written as {@code \}{@code uXXXX}
+     * escapes, as the response charset of container-provided writer is not
+     * necessarily UTF-8.
+     * @param writer output
+     * @param s text
+     */
+    protected static void writeJsonString(PrintWriter writer, String s) {
+        final int len = s.length();
+        int start = 0;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                continue;
+            }
+            writer.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            case '\b':
+                writer.write("\\b");
+                break;
+            case '\f':
+                writer.write("\\f");
+                break;
+            default:
+                writer.write("\\u");
+                String hex = Integer.toHexString(c);
+                for (int j = hex.length(); j < 4; j++) {
+                    writer.write('0');
+                }
+                writer.write(hex);
+            }
+        }
+        // no escapes (common case) writes s in one go
+        writer.write(s, start, len - start);
+    }
+
     @Override
     public void end() {
         writer.println(']');
@@ -7,12 +7,20 @@ import javax.servlet.http.HttpServletResponse;
 import org.archive.format.cdx.CDXLine;
 
 public class PlainTextWriter extends HttpCDXWriter {
+
+	protected final Utf8LineBuffer lineBuffer = new Utf8LineBuffer();
 	
 	public PlainTextWriter(HttpServletResponse response, boolean gzip) throws IOException
 	{
 		super(response, gzip);
 		setContentType("text/plain; charset=\"UTF-8\"");
 	}
+
+	public PlainTextWriter(HttpServletResponse response, boolean gzip,
+			int batchSize, long stallTimeout) throws IOException {
+		super(response, gzip, batchSize, stallTimeout);
+		setContentType("text/plain; charset=\"UTF-8\"");
+	}
 	
 	@Override
 	public void begin() {
@@ -23,7 +31,12 @@ public class PlainTextWriter extends HttpCDXWriter {
 	public int writeLine(CDXLine line) {
 		if (!includeBlockedCaptures && isBlocked(line))
 			return 0;
-		writer.println(line.toString());
+		if (out != null) {
+			lineBuffer.appendUtf8(line.toString()).appendAscii('\n');
+			writeBytes(lineBuffer);
+		} else {
+			writer.println(line.toString());
+		}
 		return 1;
 	}
 
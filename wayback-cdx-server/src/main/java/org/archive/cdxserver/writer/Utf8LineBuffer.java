@@ -0,0 +1,209 @@
+package org.archive.cdxserver.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reusable byte buffer for encoding output lines directly into UTF-8,
+ * without intermediate {@code String}s or a char-to-byte encoder.
+ * <p>
+ * ASCII characters, which make up almost all of CDX output, are copied
+ * as single bytes. Other characters are encoded into UTF-8 inline, and
+ * unpaired surrogates are replaced with {@code '?'}.
+ * </p>
+ */
+public class Utf8LineBuffer {
+
+	private final static byte[] HEX = "0123456789abcdef".getBytes();
+
+	protected byte[] buf;
+	protected int count = 0;
+
+	public Utf8LineBuffer() {
+		this(1024);
+	}
+
+	public Utf8LineBuffer(int initialCapacity) {
+		this.buf = new byte[initialCapacity];
+	}
+
+	/**
+	 * Discard buffer contents, keeping buffer for reuse.
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private void ensure(int extra) {
+		if (count + extra > buf.length) {
+			byte[] newBuf = new byte[Math.max(buf.length * 2, count + extra)];
+			System.arraycopy(buf, 0, newBuf, 0, count);
+			buf = newBuf;
+		}
+	}
+
+	/**
+	 * Append an ASCII character.
+	 * @param c character, must be in {@code 0x00-0x7f}
+	 * @return this buffer
+	 */
+	public Utf8LineBuffer appendAscii(char c) {
+		ensure(1);
+		buf[count++] = (byte)c;
+		return this;
+	}
+
+	/**
+	 * Append an ASCII string, such as separators and numbers.
+	 * @param s string consisting of ASCII characters only
+	 * @return this buffer
+	 */
+	public Utf8LineBuffer appendAscii(String s) {
+		final int len = s.length();
+		ensure(len);
+		for (int i = 0; i < len; i++) {
+			buf[count++] = (byte)s.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Append {@code s} encoded in UTF-8.
+	 * @param s text
+	 * @return this buffer
+	 */
+	public Utf8LineBuffer appendUtf8(CharSequence s) {
+		final int len = s.length();
+		ensure(len);
+		int i = 0;
+		// fast path: ASCII prefix (usually the whole text)
+		for (; i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				break;
+			}
+			buf[count++] = (byte)c;
+		}
+		for (; i < len; i++) {
+			i = encodeChar(s, i, len);
+		}
+		return this;
+	}
+
+	/**
+	 * Append {@code s} escaped for a JSON string literal (without surrounding
+	 * quotes), encoded in UTF-8.
+	 * <p>
+	 * {@code "} and {@code \} are backslash-escaped, and control characters
+	 * are written as {@code \n}, {@code \t} etc. or {@code \}{@code u00XX}.
+	 * Everything else, including non-ASCII characters, is written as is.
+	 * </p>
+	 * @param s text
+	 * @return this buffer
+	 */
+	public Utf8LineBuffer appendJsonString(CharSequence s) {
+		final int len = s.length();
+		ensure(len);
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+				// buffer may have grown short due to escapes
+				if (count == buf.length) {
+					ensure(len - i);
+				}
+				buf[count++] = (byte)c;
+			} else if (c >= 0x80) {
+				i = encodeChar(s, i, len);
+			} else {
+				appendJsonEscape(c);
+			}
+		}
+		return this;
+	}
+
+	private void appendJsonEscape(char c) {
+		ensure(6);
+		buf[count++] = '\\';
+		switch (c) {
+		case '"':
+		case '\\':
+			buf[count++] = (byte)c;
+			break;
+		case '\n':
+			buf[count++] = 'n';
+			break;
+		case '\r':
+			buf[count++] = 'r';
+			break;
+		case '\t':
+			buf[count++] = 't';
+			break;
+		case '\b':
+			buf[count++] = 'b';
+			break;
+		case '\f':
+			buf[count++] = 'f';
+			break;
+		default:
+			buf[count++] = 'u';
+			buf[count++] = '0';
+			buf[count++] = '0';
+			buf[count++] = HEX[(c >> 4) & 0xf];
+			buf[count++] = HEX[c & 0xf];
+		}
+	}
+
+	/**
+	 * Encode non-ASCII character at {@code s[i]} (and its low surrogate,
+	 * if {@code s[i]} is a high surrogate).
+	 * @return index of the last char consumed
+	 */
+	private int encodeChar(CharSequence s, int i, int len) {
+		char c = s.charAt(i);
+		ensure(4);
+		if (c < 0x80) {
+			buf[count++] = (byte)c;
+		} else if (c < 0x800) {
+			buf[count++] = (byte)(0xc0 | (c >> 6));
+			buf[count++] = (byte)(0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c) && i + 1 < len &&
+				Character.isLowSurrogate(s.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(++i));
+			buf[count++] = (byte)(0xf0 | (cp >> 18));
+			buf[count++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+			buf[count++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+			buf[count++] = (byte)(0x80 | (cp & 0x3f));
+		} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+			buf[count++] = '?';
+		} else {
+			buf[count++] = (byte)(0xe0 | (c >> 12));
+			buf[count++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			buf[count++] = (byte)(0x80 | (c & 0x3f));
+		}
+		return i;
+	}
+
+	/**
+	 * Write buffer contents to {@code out}, and reset the buffer.
+	 * @param out output stream
+	 * @throws IOException error writing to {@code out}
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buf, 0, count);
+		count = 0;
+	}
+
+	/**
+	 * Return copy of buffer contents.
+	 * @return buffer contents
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[count];
+		System.arraycopy(buf, 0, bytes, 0, count);
+		return bytes;
+	}
+}
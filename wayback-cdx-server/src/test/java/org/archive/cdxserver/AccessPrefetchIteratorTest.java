@@ -0,0 +1,144 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.filter.BatchCDXAccessFilter;
+import org.archive.format.cdx.CDXLine;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test for {@link AccessPrefetchIterator}.
+ */
+public class AccessPrefetchIteratorTest extends TestCase {
+
+	static final int ORIGINAL_INDEX = 2;
+
+	/**
+	 * CloseableIterator over a List, counting lines read.
+	 */
+	static class ListIterator implements CloseableIterator<String> {
+		final Iterator<String> inner;
+		int count = 0;
+		boolean closed = false;
+
+		ListIterator(List<String> lines) {
+			this.inner = lines.iterator();
+		}
+
+		public boolean hasNext() {
+			return inner.hasNext();
+		}
+
+		public String next() {
+			count++;
+			return inner.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	/**
+	 * BatchCDXAccessFilter recording prefetch calls, and lines read at
+	 * each call.
+	 */
+	static class RecordingFilter implements BatchCDXAccessFilter {
+		final List<List<String>> prefetched = new ArrayList<List<String>>();
+		final List<Integer> readAt = new ArrayList<Integer>();
+		ListIterator source;
+
+		public boolean includeUrl(String urlKey, String originalUrl) {
+			return true;
+		}
+
+		public boolean includeCapture(CDXLine line) {
+			return true;
+		}
+
+		public void prefetch(List<String> originalUrls) {
+			prefetched.add(originalUrls);
+			readAt.add(source.count);
+		}
+	}
+
+	static List<String> lines(int n, int capturesPerUrl) {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < n; i++) {
+			int host = i / capturesPerUrl;
+			lines.add("com,example" + host + ")/ 2014010100000" + (i % 10) +
+					" http://example" + host + ".com/ text/html 200 X - - 0 0 a.warc.gz");
+		}
+		return lines;
+	}
+
+	public void testPrefetch() throws Exception {
+		List<String> lines = lines(300, 2);
+		RecordingFilter filter = new RecordingFilter();
+		ListIterator source = new ListIterator(lines);
+		filter.source = source;
+		AccessPrefetchIterator cut = new AccessPrefetchIterator(source, filter,
+			ORIGINAL_INDEX, 100, Long.MAX_VALUE);
+
+		List<String> result = new ArrayList<String>();
+		while (cut.hasNext()) {
+			result.add(cut.next());
+		}
+		// all lines, in the same order
+		assertEquals(lines, result);
+
+		// windows: 64, 100, 100, 36
+		assertEquals(4, filter.prefetched.size());
+		assertEquals(Arrays.asList(64, 164, 264, 300), filter.readAt);
+		// consecutive duplicates are dropped
+		assertEquals(32, filter.prefetched.get(0).size());
+		assertEquals("http://example0.com/", filter.prefetched.get(0).get(0));
+		assertEquals("http://example1.com/", filter.prefetched.get(0).get(1));
+		assertEquals(50, filter.prefetched.get(1).size());
+		assertEquals("http://example32.com/", filter.prefetched.get(1).get(0));
+
+		cut.close();
+		assertTrue(source.closed);
+	}
+
+	/**
+	 * look-ahead does not read more than {@code readLimit} lines,
+	 * nor until consumer asks for more.
+	 * @throws Exception
+	 */
+	public void testReadLimit() throws Exception {
+		RecordingFilter filter = new RecordingFilter();
+		ListIterator source = new ListIterator(lines(300, 1));
+		filter.source = source;
+		AccessPrefetchIterator cut = new AccessPrefetchIterator(source, filter,
+			ORIGINAL_INDEX, 1000, 10);
+
+		assertTrue(cut.hasNext());
+		assertEquals(10, source.count);
+		assertEquals(10, filter.prefetched.get(0).size());
+		for (int i = 0; i < 10; i++) {
+			cut.next();
+		}
+		assertFalse(cut.hasNext());
+		assertEquals(10, source.count);
+		assertEquals(1, filter.prefetched.size());
+
+		filter = new RecordingFilter();
+		source = new ListIterator(lines(300, 1));
+		filter.source = source;
+		cut = new AccessPrefetchIterator(source, filter, ORIGINAL_INDEX, 1000,
+			Long.MAX_VALUE);
+		cut.next();
+		assertEquals(AccessPrefetchIterator.INITIAL_WINDOW_SIZE, source.count);
+	}
+}
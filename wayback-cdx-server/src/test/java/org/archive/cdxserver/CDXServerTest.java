@@ -0,0 +1,371 @@
+package org.archive.cdxserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.auth.AuthToken;
+import org.archive.cdxserver.filter.CDXAccessFilter;
+import org.archive.cdxserver.format.CDXFormat;
+import org.archive.cdxserver.format.StandardCDXFormat;
+import org.archive.cdxserver.writer.CDXListWriter;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.CDXLineFactory;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.archive.format.cdx.StandardCDXLineFactory;
+import org.archive.url.UrlSurtRangeComputer.MatchType;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test of {@link CDXServer#writeCdxResponse}, comparing lines examined
+ * through {@code CDXLineView} against the same query run on fully parsed
+ * {@link CDXLine}s.
+ */
+public class CDXServerTest extends TestCase {
+
+	static final String[] CDX = {
+		"com,example)/ 20100101000000 http://example.com/ text/html 200 AAAA - - 100 0 a.warc.gz",
+		"com,example)/ 20100101000000 http://example.com/ alexa/dat 200 AAAA - - 100 100 a.warc.gz",
+		"com,example)/ 20100615000000 http://example.com/ text/html 200 AAAA - A 100 200 a.warc.gz",
+		"com,example)/ 20110101000000 http://example.com/ warc/revisit - AAAA - - 100 300 b.warc.gz",
+		"com,example)/ 20110101120000 http://example.com/ text/html 404 BBBB - - 100 400 b.warc.gz",
+		"com,example)/ 20120229000000 http://example.com/ text/html 200 CCCC - - 100 500 b.warc.gz",
+		"com,example)/ 2012022900 http://example.com/ text/html 200 CCCC - - 100 600 b.warc.gz",
+		"com,example)/ 20130101000000 http://example.com/ text/html 301 DDDD http://example.com/a - 100 700 c.warc.gz",
+		"com,example)/a 20100101000000 http://example.com/a image/png 200 EEEE - - 100 800 c.warc.gz",
+		"com,example)/a 20120101000000 http://example.com/a image/png 200 EEEE - - 100 900 c.warc.gz",
+		"com,example)/private/x 20110101000000 http://example.com/private/x text/html 200 FFFF - - 100 1000 c.warc.gz",
+		"com,example)/private/x 20110102000000 http://example.com/private/x text/html 200 FFFF - NOFOLLOW 100 1100 c.warc.gz",
+		"com,example)/z 20120101000000 http://example.com/z text/plain 200 GGGG - - 100 1200 d.warc.gz",
+	};
+
+	/**
+	 * StandardCDXFormat counting {@link CDXLine}s created.
+	 */
+	static class CountingFormat extends StandardCDXFormat {
+		final CDXLineFactory factory;
+		final int[] count;
+
+		CountingFormat(CDXLineFactory factory, List<String> names, int[] count) {
+			super(factory, names);
+			this.factory = factory;
+			this.count = count;
+		}
+
+		@Override
+		protected StandardCDXFormat copy() {
+			return new CountingFormat(factory, new ArrayList<String>(names),
+				count);
+		}
+
+		@Override
+		public CDXLine createCDXLine(String input) {
+			count[0]++;
+			return super.createCDXLine(input);
+		}
+	}
+
+	/**
+	 * CDXFormat that is not a StandardCDXFormat, so that every line is
+	 * parsed before it is examined.
+	 */
+	static class OpaqueFormat implements CDXFormat {
+		final CDXFormat format;
+
+		OpaqueFormat(CDXFormat format) {
+			this.format = format;
+		}
+
+		public CDXLine createCDXLine(String input) {
+			return format.createCDXLine(input);
+		}
+
+		public FieldSplitFormat getFields() {
+			return format.getFields();
+		}
+
+		public int getFieldIndex(String fieldName) {
+			return format.getFieldIndex(fieldName);
+		}
+
+		public CDXFormat extend(String... newFields) {
+			return new OpaqueFormat(format.extend(newFields));
+		}
+
+		public boolean isRevisit(CDXLine line) {
+			return format.isRevisit(line);
+		}
+	}
+
+	static class ListIterator implements CloseableIterator<String> {
+		final Iterator<String> inner;
+		int count = 0;
+
+		ListIterator(List<String> lines) {
+			this.inner = lines.iterator();
+		}
+
+		public boolean hasNext() {
+			return inner.hasNext();
+		}
+
+		public String next() {
+			count++;
+			return inner.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException {
+		}
+	}
+
+	/**
+	 * Excludes captures under {@code /private/}.
+	 */
+	static class PrivateAccessFilter implements CDXAccessFilter {
+		public boolean includeUrl(String urlKey, String originalUrl) {
+			return true;
+		}
+
+		public boolean includeCapture(CDXLine line) {
+			return !line.getOriginalUrl().contains("/private/");
+		}
+	}
+
+	static final int NUM_QUERIES = 14;
+
+	/**
+	 * @return new CDXQuery #{@code i}, as {@code writeCdxResponse}
+	 * modifies it.
+	 */
+	static CDXQuery query(int i) {
+		CDXQuery query = new CDXQuery("example.com");
+		query.setMatchType(MatchType.prefix);
+		switch (i) {
+		case 0:
+			break;
+		case 1:
+			query.setFrom("2011");
+			query.setTo("2012");
+			break;
+		case 2:
+			query.setFilter(new String[] { "statuscode:200" });
+			break;
+		case 3:
+			query.setFilter(new String[] { "!mimetype:warc/revisit",
+					"~example.com/a" });
+			break;
+		case 4:
+			query.setCollapse(new String[] { "urlkey" });
+			break;
+		case 5:
+			query.setCollapse(new String[] { "timestamp:4" });
+			query.setFilter(new String[] { "!statuscode:404" });
+			break;
+		case 6:
+			query.setFilter(new String[] { "robotflags:.*A.*" });
+			break;
+		case 7:
+			query.setFilter(new String[] { "original:.*/a$" });
+			query.setShowGroupCount(true);
+			break;
+		case 8:
+			query.setLimit(3);
+			query.setOffset(2);
+			break;
+		case 9:
+			query.setMatchType(MatchType.exact);
+			query.setTo("2011");
+			break;
+		case 10:
+			query.setLimit(-2);
+			query.setFilter(new String[] { "mimetype:text/.*" });
+			break;
+		case 11:
+			query.setCollapseTime(4);
+			break;
+		case 12:
+			query.setFrom("20120229");
+			query.setTo("201202290");
+			break;
+		case 13:
+			query.setCollapse(new String[] { "digest" });
+			query.setFrom("2010");
+			query.setTo("2012");
+			query.setFilter(new String[] { "~!private" });
+			break;
+		}
+		return query;
+	}
+
+	int[] parsed;
+
+	CDXFormat cdx11Format() {
+		parsed = new int[1];
+		return new CountingFormat(new StandardCDXLineFactory("cdx11"),
+			Arrays.asList(StandardCDXFormat.urlkey, StandardCDXFormat.timestamp,
+				StandardCDXFormat.original, StandardCDXFormat.mimetype,
+				StandardCDXFormat.statuscode, StandardCDXFormat.digest,
+				StandardCDXFormat.redirect, StandardCDXFormat.robotflags,
+				StandardCDXFormat.length, StandardCDXFormat.offset,
+				StandardCDXFormat.filename), parsed);
+	}
+
+	List<String> run(CDXFormat format, CDXQuery query,
+			CDXAccessFilter accessChecker) {
+		CDXServer cdxServer = new CDXServer();
+		cdxServer.setCdxFormat(format);
+		AuthToken authToken = new AuthToken();
+		authToken.setAllCdxFieldAccessAllowed(true);
+		CDXListWriter writer = new CDXListWriter();
+		cdxServer.writeCdxResponse(writer,
+			new ListIterator(Arrays.asList(CDX)), Integer.MAX_VALUE, query,
+			authToken, accessChecker);
+		List<String> output = new ArrayList<String>();
+		for (CDXLine line : writer.getCDXLines()) {
+			output.add(line.toString());
+		}
+		return output;
+	}
+
+	/**
+	 * Lines examined through CDXLineView give the same output as lines
+	 * parsed first, with and without access check.
+	 */
+	public void testSameAsParsed() {
+		CDXAccessFilter[] checkers = { null, new PrivateAccessFilter() };
+		for (CDXAccessFilter checker : checkers) {
+			for (int i = 0; i < NUM_QUERIES; i++) {
+				List<String> expected = run(new OpaqueFormat(cdx11Format()),
+					query(i), checker);
+				List<String> actual = run(cdx11Format(), query(i), checker);
+				assertEquals("query " + i + " checker " + checker, expected,
+					actual);
+			}
+		}
+	}
+
+	public void testTimestampRange() {
+		List<String> output = run(cdx11Format(), query(1), null);
+		assertEquals(Arrays.asList(CDX[3], CDX[4], CDX[5], CDX[6], CDX[9],
+			CDX[10], CDX[11], CDX[12]), output);
+		// lines out of range are not parsed
+		assertEquals(output.size(), parsed[0]);
+	}
+
+	public void testFilterAndCollapse() {
+		// alexa/dat is skipped
+		assertEquals(Arrays.asList(CDX[0], CDX[2], CDX[5], CDX[6], CDX[8],
+			CDX[9], CDX[10], CDX[11], CDX[12]), run(cdx11Format(), query(2),
+			null));
+		assertEquals(output(0, 8, 10, 12), run(cdx11Format(), query(4), null));
+		assertEquals(4, parsed[0]);
+
+		// collapsing is applied after access check
+		assertEquals(output(0, 8, 12), run(cdx11Format(), query(4),
+			new PrivateAccessFilter()));
+	}
+
+	/**
+	 * regex filter on robotflags is applied after access check, which may
+	 * modify robotflags.
+	 */
+	public void testRobotflagsFilter() {
+		assertEquals(output(2), run(cdx11Format(), query(6),
+			new PrivateAccessFilter()));
+		// all but alexa/dat
+		assertEquals(CDX.length - 1, parsed[0]);
+	}
+
+	public void testExactMatchTo() {
+		assertEquals(output(0, 2, 3, 4), run(cdx11Format(), query(9), null));
+	}
+
+	static final String[] TIMELINE = {
+		"com,example)/ 20100101000000 http://example.com/ text/html 200 AAAA - - 100 0 a.warc.gz",
+		"com,example)/ 20100601000000 http://example.com/ text/html 200 BBBB - - 100 100 a.warc.gz",
+		"com,example)/ 20110101000000 http://example.com/ text/html 200 CCCC - - 100 200 a.warc.gz",
+		"com,example)/ 20110101000100 http://example.com/ text/html 200 DDDD - - 100 300 a.warc.gz",
+		"com,example)/ 20110102000000 http://example.com/ text/html 200 EEEE - - 100 400 a.warc.gz",
+		"com,example)/ 20120101000000 http://example.com/ text/html 200 FFFF - - 100 500 a.warc.gz",
+	};
+
+	/**
+	 * Closest window: {@code limit} closest captures are read outward from
+	 * {@code closest}, and processed in chronological order.
+	 */
+	public void testClosestWindow() {
+		final String target = "20110101000030";
+		// lines before target, in descending order
+		ListIterator backward = new ListIterator(Arrays.asList(TIMELINE[2],
+			TIMELINE[1], TIMELINE[0]));
+		ListIterator forward = new ListIterator(Arrays.asList(TIMELINE[3],
+			TIMELINE[4], TIMELINE[5]));
+
+		CDXQuery query = new CDXQuery("example.com");
+		query.setMatchType(MatchType.exact);
+		query.setClosest(target);
+		query.setLimit(3);
+		query.setClosestWindow(true);
+		query.setCollapseTime(10);
+
+		CDXServer cdxServer = new CDXServer();
+		assertTrue(cdxServer.isClosestScanQuery(query));
+		cdxServer.setCdxFormat(cdx11Format());
+		AuthToken authToken = new AuthToken();
+		authToken.setAllCdxFieldAccessAllowed(true);
+		CDXListWriter writer = new CDXListWriter();
+		cdxServer.writeCdxResponse(writer, new ClosestCaptureIterator(forward,
+			backward, "com,example)/", target), Integer.MAX_VALUE, query,
+			authToken, null);
+
+		List<String> output = new ArrayList<String>();
+		for (CDXLine line : writer.getCDXLines()) {
+			output.add(line.toString());
+		}
+		// window is C, D, E. D is collapsed into C.
+		assertEquals(Arrays.asList(TIMELINE[2], TIMELINE[4]), output);
+		// A and F are not read (B is read ahead)
+		assertEquals(2, backward.count);
+		assertEquals(2, forward.count);
+	}
+
+	public void testIsClosestScanQuery() {
+		CDXServer cdxServer = new CDXServer();
+		CDXQuery query = new CDXQuery("example.com");
+		query.setMatchType(MatchType.exact);
+		query.setClosest("20110101000000");
+		query.setLimit(3);
+		// chronological order without closestWindow
+		assertFalse(cdxServer.isClosestScanQuery(query));
+		query.setSort(CDXQuery.SortType.closest);
+		assertTrue(cdxServer.isClosestScanQuery(query));
+		query.setCollapseTime(10);
+		assertFalse(cdxServer.isClosestScanQuery(query));
+		query.setClosestWindow(true);
+		assertTrue(cdxServer.isClosestScanQuery(query));
+		query.setClosest("-20110101000000");
+		assertFalse(cdxServer.isClosestScanQuery(query));
+		query.setClosest("20110101000000");
+		query.setLimit(0);
+		assertFalse(cdxServer.isClosestScanQuery(query));
+		query.setLimit(3);
+		cdxServer.setClosestScan(false);
+		assertFalse(cdxServer.isClosestScanQuery(query));
+	}
+
+	static List<String> output(int... indexes) {
+		List<String> output = new ArrayList<String>();
+		for (int i : indexes) {
+			output.add(CDX[i]);
+		}
+		return output;
+	}
+}
@@ -0,0 +1,130 @@
+package org.archive.cdxserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.format.CDXTimestamp;
+
+/**
+ * Test for {@link ClosestCaptureIterator}.
+ */
+public class ClosestCaptureIteratorTest extends TestCase {
+
+	static final String URLKEY = "com,example)/";
+
+	/**
+	 * Iterator that counts lines read.
+	 */
+	static class CountingIterator implements Iterator<String> {
+		final Iterator<String> inner;
+		int count = 0;
+
+		CountingIterator(List<String> lines) {
+			this.inner = lines.iterator();
+		}
+
+		public boolean hasNext() {
+			return inner.hasNext();
+		}
+
+		public String next() {
+			count++;
+			return inner.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	List<String> lines;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		lines = new ArrayList<String>();
+		lines.add("com,example)- 20010101000000 http://example.com- text/html 200");
+		for (int year = 2000; year < 2010; year++) {
+			lines.add(URLKEY + " " + year + "0101000000 http://example.com/ text/html 200");
+			lines.add(URLKEY + " " + year + "0701000000 http://example.com/ text/html 200");
+		}
+		lines.add("com,example)/a 20010101000000 http://example.com/a text/html 200");
+	}
+
+	ClosestCaptureIterator create(String target, List<CountingIterator> counters) {
+		String key = URLKEY + " " + target;
+		List<String> forward = new ArrayList<String>();
+		List<String> backward = new ArrayList<String>();
+		for (String line : lines) {
+			if (line.compareTo(key) >= 0) {
+				forward.add(line);
+			} else {
+				backward.add(line);
+			}
+		}
+		Collections.reverse(backward);
+		CountingIterator f = new CountingIterator(forward);
+		CountingIterator b = new CountingIterator(backward);
+		counters.add(f);
+		counters.add(b);
+		return new ClosestCaptureIterator(f, b, URLKEY, target);
+	}
+
+	static String timestamp(String line) {
+		return line.split(" ")[1];
+	}
+
+	public void testClosestOrder() {
+		List<CountingIterator> counters = new ArrayList<CountingIterator>();
+		ClosestCaptureIterator it = create("20050401000000", counters);
+		// 90 days before, 91 days after
+		assertEquals("20050101000000", timestamp(it.next()));
+		assertEquals("20050701000000", timestamp(it.next()));
+		assertEquals("20040701000000", timestamp(it.next()));
+		assertEquals("20060101000000", timestamp(it.next()));
+		// only one line beyond what was consumed is read on each side
+		assertTrue(counters.get(0).count + counters.get(1).count <= 6);
+	}
+
+	public void testAllCapturesOfUrl() {
+		List<CountingIterator> counters = new ArrayList<CountingIterator>();
+		ClosestCaptureIterator it = create("20050401000000", counters);
+		List<String> all = new ArrayList<String>();
+		long prevDistance = -1;
+		long target = CDXTimestamp.toSeconds("20050401000000");
+		while (it.hasNext()) {
+			String line = it.next();
+			assertTrue(line, line.startsWith(URLKEY + " "));
+			long distance = Math.abs(
+				CDXTimestamp.toSeconds(timestamp(line)) - target);
+			assertTrue(distance >= prevDistance);
+			prevDistance = distance;
+			all.add(line);
+		}
+		assertEquals(20, all.size());
+	}
+
+	public void testTargetOutsideTimeline() {
+		List<CountingIterator> counters = new ArrayList<CountingIterator>();
+		ClosestCaptureIterator it = create("19990101000000", counters);
+		assertEquals("20000101000000", timestamp(it.next()));
+		assertEquals("20000701000000", timestamp(it.next()));
+
+		it = create("20200101000000", counters);
+		assertEquals("20090701000000", timestamp(it.next()));
+		assertEquals("20090101000000", timestamp(it.next()));
+	}
+
+	public void testExactAndShortTarget() {
+		List<CountingIterator> counters = new ArrayList<CountingIterator>();
+		ClosestCaptureIterator it = create("20030701000000", counters);
+		assertEquals("20030701000000", timestamp(it.next()));
+
+		it = create("2003", counters);
+		assertEquals("20030101000000", timestamp(it.next()));
+	}
+}
@@ -0,0 +1,114 @@
+package org.archive.cdxserver.format;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.filter.CollapseFieldFilter;
+import org.archive.cdxserver.filter.FieldRegexFilter;
+import org.archive.format.cdx.CDXLine;
+
+/**
+ * Test for {@link CDXLineView}, and its use in {@link FieldRegexFilter}
+ * and {@link CollapseFieldFilter}.
+ */
+public class CDXLineViewTest extends TestCase {
+
+	static final StandardCDXFormat cdx11Format = new CDX11Format();
+
+	static final String LINE1 = "com,example)/ 20100101232959 http://example.com/ " +
+			"text/html 200 SHASHASHA - - 2000 10000 a/b.warc.gz";
+	static final String LINE2 = "com,example)/ 20100102000000 http://example.com/ " +
+			"text/html 404 SHASHASHB - - 1000 12000 a/b.warc.gz";
+	static final String LINE3 = "com,example)/a 20100203000000 http://example.com/a " +
+			"image/png 200 SHASHASHC - - 3000 13000 a/c.warc.gz";
+
+	public void testFields() {
+		CDXLineView view = new CDXLineView(LINE1);
+		CDXLine line = cdx11Format.createCDXLine(LINE1);
+
+		assertEquals(11, view.getNumFields());
+		for (int i = 0; i < 11; i++) {
+			assertEquals(line.getField(i), view.getField(i));
+			assertEquals(line.getField(i), view.getFieldChars(i).toString());
+		}
+		assertFalse(view.hasField(11));
+		assertEquals("", view.getField(11));
+		assertEquals(LINE1, view.toString());
+	}
+
+	public void testComparisons() {
+		CDXLineView view = new CDXLineView(LINE1);
+		final int ts = cdx11Format.getFieldIndex(StandardCDXFormat.timestamp);
+
+		assertTrue(view.fieldEquals(ts, "20100101232959"));
+		assertFalse(view.fieldEquals(ts, "2010010123295"));
+		assertFalse(view.fieldEquals(ts, "201001012329590"));
+
+		assertTrue(view.fieldStartsWith(ts, "201001"));
+		assertFalse(view.fieldStartsWith(ts, "201002"));
+
+		assertEquals(0, view.compareField(ts, "20100101232959"));
+		assertTrue(view.compareField(ts, "2010") > 0);
+		assertTrue(view.compareField(ts, "2011") < 0);
+		assertTrue(view.compareField(ts, "20100101232959") ==
+				"20100101232959".compareTo("20100101232959"));
+
+		assertTrue(view.fieldPrefixEquals(ts, 8, "20100101"));
+		assertFalse(view.fieldPrefixEquals(ts, 8, "20100102"));
+		// prefix longer than field compares whole field
+		assertTrue(view.fieldPrefixEquals(ts, 20, "20100101232959"));
+
+		assertTrue(view.fieldContains(2, "example"));
+		assertFalse(view.fieldContains(2, "examples"));
+	}
+
+	public void testReset() {
+		CDXLineView view = new CDXLineView(LINE1);
+		assertEquals("200", view.getField(4));
+		view.reset(LINE2);
+		assertEquals("404", view.getField(4));
+		assertEquals("20100102000000", view.getField(1));
+		view.reset("");
+		assertEquals(1, view.getNumFields());
+		assertEquals("", view.getField(0));
+	}
+
+	public void testFieldRegexFilter() {
+		String[][] filters = {
+			{ "statuscode:200" },
+			{ "!statuscode:200" },
+			{ "mimetype:image/.*" },
+			{ "~original:/a" },
+			{ ".*c\\.warc\\.gz" },
+			{ "~!SHASHASHB" },
+			{ "statuscode:[24]0.", "!mimetype:text/html" }
+		};
+		String[] lines = { LINE1, LINE2, LINE3 };
+		CDXLineView view = new CDXLineView();
+		for (String[] f : filters) {
+			FieldRegexFilter filter = new FieldRegexFilter(f, cdx11Format);
+			for (String l : lines) {
+				view.reset(l);
+				assertEquals(f[0] + " on " + l,
+					filter.include(cdx11Format.createCDXLine(l)),
+					filter.include(view));
+			}
+		}
+	}
+
+	public void testCollapseFieldFilter() {
+		String[] lines = { LINE1, LINE2, LINE3 };
+		String[][] collapses = { { "urlkey" }, { "timestamp:6" },
+				{ "filename" }, { "timestamp:100" } };
+		CDXLineView view = new CDXLineView();
+		for (String[] c : collapses) {
+			CollapseFieldFilter byLine = new CollapseFieldFilter(c, cdx11Format);
+			CollapseFieldFilter byView = new CollapseFieldFilter(c, cdx11Format);
+			for (String l : lines) {
+				view.reset(l);
+				assertEquals(c[0] + " on " + l,
+					byLine.include(cdx11Format.createCDXLine(l)),
+					byView.include(view));
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.archive.cdxserver.format;
+
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link CDXTimestamp}.
+ */
+public class CDXTimestampTest extends TestCase {
+
+	SimpleDateFormat format;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		format = new SimpleDateFormat("yyyyMMddHHmmss");
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+	}
+
+	long expected(String ts) throws Exception {
+		return format.parse(ts).getTime() / 1000;
+	}
+
+	public void testToSeconds() throws Exception {
+		assertEquals(0, CDXTimestamp.toSeconds("19700101000000"));
+		assertEquals(expected("19961231235959"), CDXTimestamp.toSeconds("19961231235959"));
+		assertEquals(expected("20000229120000"), CDXTimestamp.toSeconds("20000229120000"));
+		assertEquals(expected("21000301000000"), CDXTimestamp.toSeconds("21000301000000"));
+		assertEquals(expected("19691231235959"), CDXTimestamp.toSeconds("19691231235959"));
+
+		Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			long millis = (long)(random.nextDouble() * 4102444800000L);
+			String ts = format.format(new java.util.Date(millis));
+			assertEquals(ts, expected(ts), CDXTimestamp.toSeconds(ts));
+		}
+	}
+
+	public void testPadding() throws Exception {
+		assertEquals(expected("20030101000000"), CDXTimestamp.toSeconds("2003"));
+		assertEquals(expected("20030401000000"), CDXTimestamp.toSeconds("200304"));
+		assertEquals(expected("20030415000000"), CDXTimestamp.toSeconds("20030415"));
+		assertEquals(expected("20030415120000"), CDXTimestamp.toSeconds("2003041512"));
+		// extra digits (milliseconds) are ignored
+		assertEquals(expected("20030415120102"), CDXTimestamp.toSeconds("20030415120102345"));
+		// stops at non-digit
+		assertEquals(expected("20030101000000"), CDXTimestamp.toSeconds("2003-04"));
+	}
+
+	public void testSubSequence() throws Exception {
+		String line = "com,example)/ 20100101232959 http://example.com/";
+		assertEquals(expected("20100101232959"), CDXTimestamp.toSeconds(line, 14, 28));
+	}
+
+	public void testLenient() throws Exception {
+		assertEquals(expected("20030501000000"), CDXTimestamp.toSeconds("20030431"));
+		assertEquals(expected("20021201000000"), CDXTimestamp.toSeconds("20030001"));
+		assertEquals(expected("20040101000000"), CDXTimestamp.toSeconds("20031301"));
+	}
+
+	public void testGroupKey() {
+		assertEquals(CDXTimestamp.groupKey("20140101022436", 10),
+			CDXTimestamp.groupKey("20140101022959", 10));
+		assertFalse(CDXTimestamp.groupKey("20140101022436", 10) ==
+			CDXTimestamp.groupKey("20140101032436", 10));
+		assertFalse(CDXTimestamp.groupKey("0", 10) ==
+			CDXTimestamp.groupKey("00", 10));
+		assertEquals(CDXTimestamp.groupKey("20140101022436", 14),
+			CDXTimestamp.groupKey("20140101022436", 16));
+		assertEquals(CDXTimestamp.INVALID_KEY, CDXTimestamp.groupKey("2014-01", 10));
+	}
+}
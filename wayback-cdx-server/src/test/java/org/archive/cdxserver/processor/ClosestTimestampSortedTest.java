@@ -0,0 +1,115 @@
+package org.archive.cdxserver.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.cdxserver.format.CDXFormat;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+
+/**
+ * Test for {@link ClosestTimestampSorted}.
+ */
+public class ClosestTimestampSortedTest extends TestCase {
+
+	static final FieldSplitFormat FORMAT = new FieldSplitFormat("urlkey,timestamp");
+
+	static class Collector implements BaseProcessor {
+		List<String> timestamps = new ArrayList<String>();
+
+		public void begin() {
+		}
+
+		public void trackLine(CDXLine line) {
+		}
+
+		public int writeLine(CDXLine line) {
+			timestamps.add(line.getTimestamp());
+			return 1;
+		}
+
+		public void writeResumeKey(String resumeKey) {
+		}
+
+		public void end() {
+		}
+
+		public CDXFormat modifyOutputFormat(CDXFormat format) {
+			return format;
+		}
+	}
+
+	static final String[] TIMESTAMPS = {
+		"20000101000000", "20010101000000", "20020101000000",
+		"20030101000000", "20040101000000", "20050101000000"
+	};
+
+	/**
+	 * Feed {@link #TIMESTAMPS} in ascending order.
+	 * @return number of lines fed before processor is done
+	 */
+	int process(ClosestTimestampSorted cut) {
+		cut.begin();
+		int fed = 0;
+		int written = 0;
+		for (String ts : TIMESTAMPS) {
+			fed++;
+			written += cut.writeLine(new CDXLine("com,example)/ " + ts, FORMAT));
+			if (written > 0) break;
+		}
+		cut.end();
+		return fed;
+	}
+
+	public void testClosest() {
+		Collector out = new Collector();
+		ClosestTimestampSorted cut = new ClosestTimestampSorted(out, "20021001", 3);
+		int fed = process(cut);
+		assertEquals(3, out.timestamps.size());
+		assertEquals("20030101000000", out.timestamps.get(0));
+		assertEquals("20020101000000", out.timestamps.get(1));
+		assertEquals("20040101000000", out.timestamps.get(2));
+		// stops reading at the first line farther than the third closest
+		assertEquals(6, fed);
+	}
+
+	public void testEarlyStop() {
+		Collector out = new Collector();
+		ClosestTimestampSorted cut = new ClosestTimestampSorted(out, "20000201", 2);
+		int fed = process(cut);
+		assertEquals(3, fed);
+		assertEquals("20000101000000", out.timestamps.get(0));
+		assertEquals("20010101000000", out.timestamps.get(1));
+	}
+
+	public void testNoLimit() {
+		Collector out = new Collector();
+		ClosestTimestampSorted cut = new ClosestTimestampSorted(out, "20040601", 0);
+		process(cut);
+		assertEquals(6, out.timestamps.size());
+		assertEquals("20040101000000", out.timestamps.get(0));
+		assertEquals("20050101000000", out.timestamps.get(1));
+		assertEquals("20000101000000", out.timestamps.get(5));
+	}
+
+	public void testPrev() {
+		Collector out = new Collector();
+		ClosestTimestampSorted cut = new ClosestTimestampSorted(out, "-20021001", 2);
+		process(cut);
+		assertEquals("20020101000000", out.timestamps.get(0));
+		assertEquals("20010101000000", out.timestamps.get(1));
+	}
+
+	public void testEqualDistanceKeepsBoth() {
+		Collector out = new Collector();
+		// 2001-01-01 and 2003-01-01 are equally distant from 2002-01-01
+		ClosestTimestampSorted cut = new ClosestTimestampSorted(out, "20020101000000", 3);
+		process(cut);
+		assertEquals(3, out.timestamps.size());
+		assertEquals("20020101000000", out.timestamps.get(0));
+		assertEquals("20010101000000", out.timestamps.get(1));
+		assertEquals("20030101000000", out.timestamps.get(2));
+	}
+}
@@ -0,0 +1,80 @@
+package org.archive.cdxserver.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link BatchingOutputStream}.
+ */
+public class BatchingOutputStreamTest extends TestCase {
+
+	/**
+	 * Underlying stream recording size of each write.
+	 */
+	static class RecordingOutputStream extends ByteArrayOutputStream {
+		List<Integer> writes = new ArrayList<Integer>();
+		long delay = 0;
+		boolean closed = false;
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			writes.add(len);
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ex) {
+				}
+			}
+			super.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+
+	public void testBatching() throws IOException {
+		RecordingOutputStream out = new RecordingOutputStream();
+		BatchingOutputStream bos = new BatchingOutputStream(out, 10, 0);
+		bos.write("abc".getBytes());
+		bos.write('d');
+		assertEquals(0, out.writes.size());
+		bos.write("efghijklmnopqrstuvwxy".getBytes());
+		// two full batches, 5 bytes left in buffer
+		assertEquals(2, out.writes.size());
+		assertEquals(10, out.writes.get(0).intValue());
+		assertEquals(10, out.writes.get(1).intValue());
+
+		bos.flush();
+		assertEquals(3, out.writes.size());
+		assertEquals(5, out.writes.get(2).intValue());
+		// nothing buffered, no empty write
+		bos.flush();
+		assertEquals(3, out.writes.size());
+
+		bos.write('z');
+		bos.close();
+		assertTrue(out.closed);
+		assertEquals("abcdefghijklmnopqrstuvwxyz", out.toString());
+		assertFalse(bos.isStalled());
+	}
+
+	public void testStalled() throws IOException {
+		RecordingOutputStream out = new RecordingOutputStream();
+		BatchingOutputStream bos = new BatchingOutputStream(out, 4, 20);
+		bos.write("abcd".getBytes());
+		bos.flush();
+		assertFalse(bos.isStalled());
+
+		out.delay = 50;
+		bos.write("efgh".getBytes());
+		bos.flush();
+		assertTrue(bos.isStalled());
+		assertEquals("abcdefgh", out.toString());
+	}
+}
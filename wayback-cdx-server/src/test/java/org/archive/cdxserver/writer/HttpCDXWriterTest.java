@@ -0,0 +1,150 @@
+package org.archive.cdxserver.writer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link HttpCDXWriter} in batched mode.
+ */
+public class HttpCDXWriterTest extends TestCase {
+
+	static final FieldSplitFormat FORMAT = new FieldSplitFormat(
+		"urlkey,timestamp,original,robotflags");
+
+	/**
+	 * ServletOutputStream that takes {@code delay} milliseconds for each
+	 * write, once {@code delay} is set.
+	 */
+	static class SlowServletOutputStream extends ServletOutputStream {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long delay = 0;
+
+		@Override
+		public void write(int b) throws IOException {
+			bytes.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ex) {
+				}
+			}
+			bytes.write(b, off, len);
+		}
+
+		@Override
+		public String toString() {
+			try {
+				return bytes.toString("UTF-8");
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	SlowServletOutputStream sos;
+	HttpServletResponse response;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		sos = new SlowServletOutputStream();
+		response = EasyMock.createNiceMock(HttpServletResponse.class);
+		EasyMock.expect(response.getOutputStream()).andReturn(sos).anyTimes();
+		EasyMock.replay(response);
+	}
+
+	Random random = new Random(1);
+
+	/**
+	 * CDX line with random digits, so that gzip-compressed output grows
+	 * too.
+	 */
+	protected CDXLine line(int i) {
+		String q = Long.toHexString(random.nextLong()) +
+				Long.toHexString(random.nextLong());
+		return new CDXLine(String.format(
+			"com,example)/%d?%s 20100101000000 http://example.com/%d?%s -",
+			i, q, i, q), FORMAT);
+	}
+
+	/**
+	 * Write lines until {@code writer} is aborted.
+	 */
+	protected void writeUntilAborted(HttpCDXWriter writer) {
+		writer.begin();
+		int n = 0;
+		while (!writer.isAborted()) {
+			writer.writeLine(line(n++));
+			if (n == 10) {
+				sos.delay = 50;
+			}
+			assertTrue("not aborted", n < 10000);
+		}
+	}
+
+	public void testComplete() throws Exception {
+		HttpCDXWriter writer = new JsonWriter(response, false, 64, 20);
+		writer.begin();
+		writer.writeLine(line(0));
+		writer.end();
+		writer.close();
+		assertFalse(writer.isAborted());
+		String output = sos.toString();
+		assertTrue(output, output.trim().endsWith("]]"));
+		assertFalse(output, output.contains(HttpCDXWriter.ABORTED_MARKER));
+	}
+
+	public void testAbortedPlainText() throws Exception {
+		HttpCDXWriter writer = new PlainTextWriter(response, false, 64, 20);
+		writeUntilAborted(writer);
+		writer.close();
+		String output = sos.toString();
+		assertTrue(output, output.endsWith("\n" + HttpCDXWriter.ABORTED_MARKER + "\n"));
+	}
+
+	public void testAbortedJson() throws Exception {
+		HttpCDXWriter writer = new JsonWriter(response, false, 64, 20);
+		writeUntilAborted(writer);
+		writer.close();
+		String output = sos.toString();
+		assertTrue(output, output.startsWith("[[\"urlkey\""));
+		assertTrue(output, output.endsWith("\n" + HttpCDXWriter.ABORTED_MARKER + "\n"));
+	}
+
+	/**
+	 * gzip trailer is not written for aborted output.
+	 */
+	public void testAbortedGzip() throws Exception {
+		HttpCDXWriter writer = new PlainTextWriter(response, true, 64, 20);
+		writeUntilAborted(writer);
+		writer.close();
+		InputStream is = new GZIPInputStream(new ByteArrayInputStream(
+			sos.bytes.toByteArray()));
+		byte[] buf = new byte[1024];
+		try {
+			while (is.read(buf) >= 0) {
+			}
+			fail("truncated gzip stream was decoded with no error");
+		} catch (EOFException ex) {
+			// expected
+		}
+	}
+}
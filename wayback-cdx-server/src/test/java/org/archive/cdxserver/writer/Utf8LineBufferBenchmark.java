@@ -0,0 +1,174 @@
+package org.archive.cdxserver.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.archive.format.cdx.CDXLine;
+import org.archive.format.cdx.FieldSplitFormat;
+
+/**
+ * Compares encoding CDX lines for {@code output=json} and plain text
+ * output with {@link Utf8LineBuffer} against going through
+ * {@code PrintWriter}.
+ * <p>Not a unit test. Run with optional number of lines:</p>
+ * <pre>
+ * java -cp ... org.archive.cdxserver.writer.Utf8LineBufferBenchmark [lines]
+ * </pre>
+ * <p>Lines are CDX11-shaped, with random URLs, digests and offsets, and a
+ * few non-ASCII URLs. Output goes to a stream that discards bytes, so that
+ * only encoding is measured. JSON is encoded three ways: previous
+ * implementation ({@code StringEscapeUtils.escapeJava} per field, through
+ * {@code PrintWriter}), unbatched {@link JsonWriter} (streaming escape
+ * through {@code PrintWriter}), and batched {@link JsonWriter}
+ * ({@code Utf8LineBuffer}).</p>
+ */
+public class Utf8LineBufferBenchmark {
+
+	static final int DEFAULT_LINES = 1000000;
+	static final int ROUNDS = 5;
+
+	static final FieldSplitFormat CDX11 = new FieldSplitFormat(
+		"urlkey,timestamp,original,mimetype,statuscode,digest,redirect,robotflags,length,offset,filename");
+
+	static class NullOutputStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	static CDXLine[] lines(int n, Random rand) {
+		CDXLine[] lines = new CDXLine[n];
+		for (int i = 0; i < n; i++) {
+			String path = Integer.toString(rand.nextInt(1 << 30), 36);
+			if (i % 50 == 0) {
+				path += "/caf\u00e9";
+			}
+			String digest = Long.toString(rand.nextLong() & Long.MAX_VALUE, 32)
+				.toUpperCase();
+			lines[i] = new CDXLine(String.format(
+				"com,example)/%s?q=%d 2010%010d http://example.com/%s?q=%d text/html 200 %s - - %d %d CRAWL-2010%06d.warc.gz",
+				path, i, rand.nextInt(1000000000), path, i, digest,
+				rand.nextInt(100000), rand.nextInt(1000000000),
+				rand.nextInt(1000000)), CDX11);
+		}
+		return lines;
+	}
+
+	static PrintWriter printWriter(OutputStream out) throws IOException {
+		return new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+	}
+
+	static long jsonEscapeJava(CDXLine[] lines) throws IOException {
+		long start = System.nanoTime();
+		PrintWriter writer = printWriter(new NullOutputStream());
+		for (CDXLine line : lines) {
+			writer.print('[');
+			for (int i = 0; i < line.getNumFields(); i++) {
+				writer.print(i > 0 ? "\", \"" : "\"");
+				writer.print(StringEscapeUtils.escapeJava(line.getField(i)));
+			}
+			writer.print("\"]");
+			writer.println(',');
+		}
+		writer.flush();
+		return System.nanoTime() - start;
+	}
+
+	static long jsonWriter(CDXLine[] lines) throws IOException {
+		long start = System.nanoTime();
+		PrintWriter writer = printWriter(new NullOutputStream());
+		for (CDXLine line : lines) {
+			writer.print('[');
+			for (int i = 0; i < line.getNumFields(); i++) {
+				writer.print(i > 0 ? "\", \"" : "\"");
+				JsonWriter.writeJsonString(writer, line.getField(i));
+			}
+			writer.print("\"]");
+			writer.println(',');
+		}
+		writer.flush();
+		return System.nanoTime() - start;
+	}
+
+	static long jsonBuffer(CDXLine[] lines) throws IOException {
+		long start = System.nanoTime();
+		OutputStream out = new NullOutputStream();
+		Utf8LineBuffer buffer = new Utf8LineBuffer();
+		for (CDXLine line : lines) {
+			buffer.appendAscii('[');
+			for (int i = 0; i < line.getNumFields(); i++) {
+				buffer.appendAscii(i > 0 ? "\", \"" : "\"");
+				buffer.appendJsonString(line.getField(i));
+			}
+			buffer.appendAscii("\"],\n");
+			buffer.writeTo(out);
+		}
+		return System.nanoTime() - start;
+	}
+
+	static long textWriter(CDXLine[] lines) throws IOException {
+		long start = System.nanoTime();
+		PrintWriter writer = printWriter(new NullOutputStream());
+		for (CDXLine line : lines) {
+			writer.println(line.toString());
+		}
+		writer.flush();
+		return System.nanoTime() - start;
+	}
+
+	static long textBuffer(CDXLine[] lines) throws IOException {
+		long start = System.nanoTime();
+		OutputStream out = new NullOutputStream();
+		Utf8LineBuffer buffer = new Utf8LineBuffer();
+		for (CDXLine line : lines) {
+			buffer.appendUtf8(line.toString()).appendAscii('\n');
+			buffer.writeTo(out);
+		}
+		return System.nanoTime() - start;
+	}
+
+	static void report(String name, long ns, int n) {
+		System.out.printf("  %-28s %6.0fms (%4.0f ns/line)%n", name, ns / 1e6,
+			(double)ns / n);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LINES;
+		CDXLine[] lines = lines(n, new Random(0));
+
+		long[] best = new long[5];
+		Arrays.fill(best, Long.MAX_VALUE);
+		// first round is warm-up
+		for (int round = 0; round <= ROUNDS; round++) {
+			long[] t = { jsonEscapeJava(lines), jsonWriter(lines),
+					jsonBuffer(lines), textWriter(lines), textBuffer(lines) };
+			if (round == 0) {
+				continue;
+			}
+			for (int i = 0; i < t.length; i++) {
+				best[i] = Math.min(best[i], t[i]);
+			}
+		}
+		System.out.printf("%d CDX11 lines%n", n);
+		System.out.println("json:");
+		report("escapeJava + PrintWriter", best[0], n);
+		report("escape + PrintWriter", best[1], n);
+		report("Utf8LineBuffer", best[2], n);
+		System.out.println("text:");
+		report("PrintWriter", best[3], n);
+		report("Utf8LineBuffer", best[4], n);
+	}
+}
@@ -0,0 +1,65 @@
+package org.archive.cdxserver.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link Utf8LineBuffer}, and JSON escaping of {@link JsonWriter}.
+ */
+public class Utf8LineBufferTest extends TestCase {
+
+	static final String[] SAMPLES = {
+		"",
+		"com,example)/index.html?a=1&b=2",
+		"http://example.com/caf\u00e9/\u65e5\u672c\u8a9e",
+		"emoji \ud83d\ude00 end",
+		"quote \" backslash \\ tab \t newline \n bell \u0007",
+	};
+
+	public void testUtf8() throws Exception {
+		Utf8LineBuffer buffer = new Utf8LineBuffer(4);
+		for (String s : SAMPLES) {
+			buffer.reset();
+			buffer.appendUtf8(s);
+			assertTrue(s, Arrays.equals(s.getBytes("UTF-8"), buffer.toByteArray()));
+		}
+	}
+
+	public void testUnpairedSurrogate() throws Exception {
+		Utf8LineBuffer buffer = new Utf8LineBuffer();
+		buffer.appendUtf8("a\ud83db\ude00");
+		assertEquals("a?b?", new String(buffer.toByteArray(), "UTF-8"));
+	}
+
+	public void testJsonString() throws Exception {
+		Utf8LineBuffer buffer = new Utf8LineBuffer(2);
+		buffer.appendJsonString("quote \" backslash \\ tab \t newline \n bell \u0007 caf\u00e9");
+		assertEquals(
+			"quote \\\" backslash \\\\ tab \\t newline \\n bell \\u0007 caf\u00e9",
+			new String(buffer.toByteArray(), "UTF-8"));
+	}
+
+	public void testWriteTo() throws Exception {
+		Utf8LineBuffer buffer = new Utf8LineBuffer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		buffer.appendAscii('[').appendAscii("\"a\"").appendAscii(']');
+		buffer.writeTo(out);
+		assertEquals(0, buffer.size());
+		buffer.appendUtf8("x");
+		buffer.writeTo(out);
+		assertEquals("[\"a\"]x", out.toString("UTF-8"));
+	}
+
+	public void testWriteJsonString() {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		JsonWriter.writeJsonString(pw, "plain");
+		JsonWriter.writeJsonString(pw, "|a\"b\\c\nd\u0001caf\u00e9");
+		pw.flush();
+		assertEquals("plain|a\\\"b\\\\c\\nd\\u0001caf\\u00e9", sw.toString());
+	}
+}
@@ -23,9 +23,14 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -36,6 +41,7 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.LiveDocumentNotAvailableException;
 import org.archive.wayback.exception.LiveWebCacheUnavailableException;
 import org.archive.wayback.exception.LiveWebTimeoutException;
+import org.archive.wayback.liveweb.BatchLiveWebCache;
 import org.archive.wayback.liveweb.LiveWebCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
@@ -49,7 +55,11 @@ import org.archive.wayback.webapp.PerfStats;
  * 
  * This class caches parsed RobotRules that are retrieved, so using the same 
  * instance to filter multiple SearchResults from the same host will be more
- * efficient.
+ * efficient. Parsed RobotRules can also be shared across instances through
+ * {@link RobotRulesCache} (see {@link #setSharedRulesCache}).
+ * If the LiveWebCache is a {@link BatchLiveWebCache}, robots.txt for many
+ * hosts can be looked up in one batch with {@link #prefetch(Collection)}
+ * ahead of filtering.
  * 
  * Instances are expected to be transient for each request: The internally
  * cached StringBuilder is not thread safe.
@@ -69,12 +79,34 @@ public class RobotExclusionFilter extends ExclusionFilter {
 	protected final static Pattern WWWN_PATTERN = Pattern.compile(WWWN_REGEX);
 	private LiveWebCache webCache = null;
 	private HashMap<String,RobotRules> rulesCache = null;
+	// robots.txt URL -> RobotRules, from prefetch()
+	private HashMap<String,RobotRules> prefetchedRules = null;
 	private long maxCacheMS = 0;
 	private String userAgent = null;
 	protected StringBuilder sb = null;
 	private final static RobotRules emptyRules = new RobotRules();
 	private boolean notifiedSeen = false;
 	private boolean notifiedPassed = false;
+	private RobotRulesCache sharedRulesCache = null;
+	private long sharedMaxAgeMS = 0;
+	private final RobotRulesCache.Loader loader = new RobotRulesCache.Loader() {
+		@Override
+		public RobotRules load(String url)
+				throws LiveDocumentNotAvailableException, IOException,
+				LiveWebCacheUnavailableException, LiveWebTimeoutException {
+			try {
+				return downloadRules(url);
+			} catch (LiveDocumentNotAvailableException e) {
+				// only "no robots.txt" is shared. other failures including
+				// 5xx are temporary; they are thrown so that RobotRulesCache
+				// does not cache them, and mapped by loadRules().
+				if (isNoRobotsTxt(e)) {
+					return emptyRules;
+				}
+				throw e;
+			}
+		}
+	};
 	
 	enum PerfStat
 	{
@@ -98,6 +130,7 @@ public class RobotExclusionFilter extends ExclusionFilter {
 			long maxCacheMS) {
 
 		rulesCache = new HashMap<String,RobotRules>();
+		prefetchedRules = new HashMap<String,RobotRules>();
 
 		this.webCache = webCache;
 		this.userAgent = userAgent;
@@ -217,48 +250,13 @@ public class RobotExclusionFilter extends ExclusionFilter {
 					rulesCache.put(firstUrlString, rules);
 				}
 			} else {
-				//long start = System.currentTimeMillis();;
-				Resource resource = null;
 				try {
-					PerfStats.timeStart(PerfStat.RobotsFetchTotal);
-					
-					if (LOGGER.isLoggable(Level.FINE)) {
-						LOGGER.fine("ROBOT: NotCached - Downloading("+urlString+")");
-					}
-				
-					RobotRules tmpRules = new RobotRules();
-					resource = webCache.getCachedResource(new URL(urlString),
-							maxCacheMS,true);
-					//long elapsed = System.currentTimeMillis() - start;
-					//PerformanceLogger.noteElapsed("RobotRequest", elapsed, urlString);
-
-					if(resource.getStatusCode() != 200) {
-						LOGGER.info("ROBOT: NotAvailable("+urlString+")");
-						throw new LiveDocumentNotAvailableException(urlString, resource.getStatusCode());
-					}
-					tmpRules.parse(resource);					
-					rulesCache.put(firstUrlString,tmpRules);
-					rules = tmpRules;
-					
-					if (LOGGER.isLoggable(Level.FINE)) {
-						LOGGER.fine("ROBOT: Downloaded("+urlString+")");
-					}
-
+					rules = loadRules(urlString);
+					rulesCache.put(firstUrlString, rules);
 				} catch (LiveDocumentNotAvailableException e) {
-					// 4xx failures are assumed that no valid robots.txt exists. This includes
-					// 401 "Unauthorized" and 403 "Forbidden" as well as obvious 404. Exit loop
-					// now so that alternative hosts are not checked.
-					// (see https://github.com/internetarchive/wayback/issues/74)
+					// 4xx and 5xx are taken as "no robots.txt" by fetchRules()
 					int status = e.getOriginalStatuscode();
-					if (status >= 400 && status < 500) {
-						LOGGER.fine("ROBOT: status=" + status + " = no robots.txt: " + urlString);
-						rulesCache.put(firstUrlString, rules = emptyRules);
-					} else if (status >= 500) {
-						// now we treat 5xx HTTP response and IO error (599)
-						// as allow-all.
-						LOGGER.fine("ROBOT: status=" + status + " = no robots.txt: " + urlString);
-						rulesCache.put(firstUrlString, rules=emptyRules);
-					} else if (status > 0) {
+					if (status > 0) {
 						// other HTTP failures are taken as "full disallow".
 						LOGGER.fine("ROBOT: stauts=" + status + " = full disallow: " + urlString);
 						return null;
@@ -285,18 +283,6 @@ public class RobotExclusionFilter extends ExclusionFilter {
 						filterGroup.setRobotTimedOut();
 					}
 					return null;
-				} finally {
-					if (resource != null) {
-						try {
-							resource.close();
-						} catch (IOException e) {
-							
-						}
-						resource = null;
-					}
-					//long elapsed = System.currentTimeMillis() - start;
-					//PerformanceLogger.noteElapsed("RobotRequest", elapsed, urlString);
-					PerfStats.timeEnd(PerfStat.RobotsFetchTotal);
 				}
 			}
 		}
@@ -309,6 +295,223 @@ public class RobotExclusionFilter extends ExclusionFilter {
 		return rules;
 	}
 	
+	/**
+	 * Return RobotRules for robots.txt {@code urlString}, from shared
+	 * RobotRulesCache if set, or by {@link #fetchRules(String)}.
+	 * @param urlString robots.txt URL
+	 * @return RobotRules
+	 */
+	protected RobotRules loadRules(String urlString)
+			throws LiveDocumentNotAvailableException, IOException,
+			LiveWebCacheUnavailableException, LiveWebTimeoutException {
+		RobotRules rules = prefetchedRules.get(urlString);
+		if (rules != null) {
+			return rules;
+		}
+		if (sharedRulesCache != null) {
+			try {
+				return sharedRulesCache.get(urlString, sharedMaxAgeMS, loader);
+			} catch (LiveDocumentNotAvailableException e) {
+				return failureRules(urlString, e);
+			}
+		}
+		return fetchRules(urlString);
+	}
+
+	/**
+	 * Download and parse robots.txt {@code urlString}, without shared
+	 * RobotRulesCache.
+	 * @param urlString robots.txt URL
+	 * @return RobotRules, empty if robots.txt is not available with
+	 *   4xx or 5xx status
+	 * @throws LiveDocumentNotAvailableException other failures, with
+	 *   status code
+	 */
+	protected RobotRules fetchRules(String urlString)
+			throws LiveDocumentNotAvailableException, IOException,
+			LiveWebCacheUnavailableException, LiveWebTimeoutException {
+		try {
+			return downloadRules(urlString);
+		} catch (LiveDocumentNotAvailableException e) {
+			return failureRules(urlString, e);
+		}
+	}
+
+	/**
+	 * Download and parse robots.txt {@code urlString}.
+	 * As this method may be called for loading shared RobotRulesCache
+	 * on behalf of other requests, it must not depend on per-request state.
+	 * @param urlString robots.txt URL
+	 * @return RobotRules
+	 * @throws LiveDocumentNotAvailableException robots.txt is not
+	 *   available, with status code
+	 */
+	private RobotRules downloadRules(String urlString)
+			throws LiveDocumentNotAvailableException, IOException,
+			LiveWebCacheUnavailableException, LiveWebTimeoutException {
+		//long start = System.currentTimeMillis();;
+		Resource resource = null;
+		try {
+			PerfStats.timeStart(PerfStat.RobotsFetchTotal);
+			
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("ROBOT: NotCached - Downloading("+urlString+")");
+			}
+		
+			resource = webCache.getCachedResource(new URL(urlString),
+					maxCacheMS,true);
+			//long elapsed = System.currentTimeMillis() - start;
+			//PerformanceLogger.noteElapsed("RobotRequest", elapsed, urlString);
+
+			RobotRules tmpRules = parseRules(urlString, resource);
+			
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("ROBOT: Downloaded("+urlString+")");
+			}
+			return tmpRules;
+
+		} finally {
+			if (resource != null) {
+				try {
+					resource.close();
+				} catch (IOException e) {
+					
+				}
+				resource = null;
+			}
+			//long elapsed = System.currentTimeMillis() - start;
+			//PerformanceLogger.noteElapsed("RobotRequest", elapsed, urlString);
+			PerfStats.timeEnd(PerfStat.RobotsFetchTotal);
+		}
+	}
+
+	/**
+	 * Parse robots.txt {@code resource}.
+	 * @throws LiveDocumentNotAvailableException if status code of
+	 *   {@code resource} is not 200
+	 */
+	private RobotRules parseRules(String urlString, Resource resource)
+			throws LiveDocumentNotAvailableException, IOException {
+		if(resource.getStatusCode() != 200) {
+			LOGGER.info("ROBOT: NotAvailable("+urlString+")");
+			throw new LiveDocumentNotAvailableException(urlString, resource.getStatusCode());
+		}
+		RobotRules tmpRules = new RobotRules();
+		tmpRules.parse(resource);
+		return tmpRules;
+	}
+
+	/**
+	 * Return RobotRules for robots.txt fetch failure {@code e}.
+	 * @throws LiveDocumentNotAvailableException {@code e}, if it is not
+	 *   4xx or 5xx failure
+	 */
+	private RobotRules failureRules(String urlString,
+			LiveDocumentNotAvailableException e)
+			throws LiveDocumentNotAvailableException {
+		// 4xx failures are assumed that no valid robots.txt exists. This includes
+		// 401 "Unauthorized" and 403 "Forbidden" as well as obvious 404. Caller
+		// shall exit loop so that alternative hosts are not checked.
+		// (see https://github.com/internetarchive/wayback/issues/74)
+		int status = e.getOriginalStatuscode();
+		if (isNoRobotsTxt(e)) {
+			LOGGER.fine("ROBOT: status=" + status + " = no robots.txt: " + urlString);
+			return emptyRules;
+		} else if (status >= 500) {
+			// now we treat 5xx HTTP response and IO error (599)
+			// as allow-all.
+			LOGGER.fine("ROBOT: status=" + status + " = no robots.txt: " + urlString);
+			return emptyRules;
+		}
+		throw e;
+	}
+
+	/**
+	 * Return {@code true} if {@code e} means robots.txt does not exist
+	 * (4xx). Unlike 5xx, which is treated as allow-all too, it is not
+	 * a temporary failure and can be shared.
+	 */
+	private static boolean isNoRobotsTxt(LiveDocumentNotAvailableException e) {
+		int status = e.getOriginalStatuscode();
+		return status >= 400 && status < 500;
+	}
+
+	/**
+	 * Look up robots.txt for hosts of {@code originalUrls} in one batch,
+	 * so that following {@link #filterObject(CaptureSearchResult)} calls
+	 * do not look them up one by one.
+	 * Does nothing unless LiveWebCache is a {@link BatchLiveWebCache}.
+	 * robots.txt that are not cached by the LiveWebCache, or cached with
+	 * failures other than 4xx/5xx, are left for per-URL lookup.
+	 * @param originalUrls original URLs of captures to be filtered
+	 */
+	public void prefetch(Collection<String> originalUrls) {
+		if (!(webCache instanceof BatchLiveWebCache)) {
+			return;
+		}
+		Set<String> hosts = new HashSet<String>();
+		Set<String> urlStrings = new LinkedHashSet<String>();
+		for (String originalUrl : originalUrls) {
+			String scheme = UrlOperations.urlToScheme(originalUrl);
+			String host = UrlOperations.urlToHost(originalUrl);
+			if (scheme == null || host == null || !hosts.add(scheme + host)) {
+				continue;
+			}
+			// getRules() stops at the first robots.txt URL with known rules
+			for (String urlString : searchResultToRobotUrlStrings(host, scheme)) {
+				if (rulesCache.containsKey(urlString) ||
+						prefetchedRules.containsKey(urlString)) {
+					break;
+				}
+				if (sharedRulesCache != null &&
+						sharedRulesCache.contains(urlString, sharedMaxAgeMS)) {
+					break;
+				}
+				urlStrings.add(urlString);
+			}
+		}
+		if (urlStrings.isEmpty()) {
+			return;
+		}
+		Map<String, Resource> resources;
+		try {
+			resources = ((BatchLiveWebCache)webCache)
+				.getCachedResources(new ArrayList<String>(urlStrings));
+		} catch (LiveWebCacheUnavailableException e) {
+			// fall back on per-URL lookups
+			LOGGER.warning("ROBOT: batch lookup failed: " + e);
+			return;
+		}
+		for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+			String urlString = entry.getKey();
+			Resource resource = entry.getValue();
+			RobotRules rules;
+			boolean shared = true;
+			try {
+				try {
+					rules = parseRules(urlString, resource);
+				} catch (LiveDocumentNotAvailableException e) {
+					rules = failureRules(urlString, e);
+					shared = isNoRobotsTxt(e);
+				}
+			} catch (LiveDocumentNotAvailableException e) {
+				continue;
+			} catch (IOException e) {
+				LOGGER.warning("ROBOT: IOException("+urlString+"):"+e.getLocalizedMessage());
+				continue;
+			} finally {
+				try {
+					resource.close();
+				} catch (IOException e) {
+				}
+			}
+			prefetchedRules.put(urlString, rules);
+			if (sharedRulesCache != null && shared) {
+				sharedRulesCache.put(urlString, rules);
+			}
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.resourceindex.SearchResultFilter#filterSearchResult(org.archive.wayback.core.SearchResult)
 	 */
@@ -374,7 +577,34 @@ public class RobotExclusionFilter extends ExclusionFilter {
 		return filterResult;
 	}
 
+	/**
+	 * Results are cached by {@code urlKey} (see {@code pathsCache}), except
+	 * for {@code robots.txt} and captures with robot-ignore flag, which are
+	 * always included.
+	 */
+	@Override
+	public boolean isUrlLevel(CaptureSearchResult capture) {
+		return !capture.isRobotIgnore() &&
+				!capture.getOriginalUrl().endsWith(ROBOT_SUFFIX);
+	}
+
 	public LiveWebCache getWebCache() {
 		return webCache;
 	}
+
+	/**
+	 * Share parsed RobotRules with other instances through
+	 * {@code rulesCache}.
+	 * @param rulesCache RobotRulesCache, {@code null} for disabling
+	 * @param maxAgeMS maximum age of shared RobotRules in milliseconds,
+	 *   zero for {@code rulesCache}'s default.
+	 */
+	public void setSharedRulesCache(RobotRulesCache rulesCache, long maxAgeMS) {
+		this.sharedRulesCache = rulesCache;
+		this.sharedMaxAgeMS = maxAgeMS;
+	}
+
+	public RobotRulesCache getSharedRulesCache() {
+		return sharedRulesCache;
+	}
 }
@@ -34,12 +34,16 @@ public class RobotExclusionFilterFactory implements ExclusionFilterFactory {
 	private LiveWebCache webCache = null;
 	private String userAgent = null;
 	private long maxCacheMS = 0;
+	private RobotRulesCache rulesCache = new RobotRulesCache();
 
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.resourceindex.ExclusionFilterFactory#get()
 	 */
 	public ExclusionFilter get() {
-		return new RobotExclusionFilter(webCache,userAgent,maxCacheMS);
+		RobotExclusionFilter filter = new RobotExclusionFilter(webCache,
+			userAgent, maxCacheMS);
+		filter.setSharedRulesCache(rulesCache, maxCacheMS);
+		return filter;
 	}
 
 	/**
@@ -78,12 +82,32 @@ public class RobotExclusionFilterFactory implements ExclusionFilterFactory {
 	}
 
 	/**
-	 * @param maxCacheMS the maxCacheMS to set
+	 * @param maxCacheMS the maxCacheMS to set. Also used as maximum age
+	 * of RobotRules in {@code rulesCache} if larger than zero.
 	 */
 	public void setMaxCacheMS(long maxCacheMS) {
 		this.maxCacheMS = maxCacheMS;
 	}
 
+	/**
+	 * @return the rulesCache
+	 */
+	public RobotRulesCache getRulesCache() {
+		return rulesCache;
+	}
+
+	/**
+	 * RobotRulesCache for sharing parsed robots.txt across requests.
+	 * Initial value is a new instance owned by this factory. The same
+	 * instance may be set to other factories only if they load robots.txt
+	 * from the same {@code webCache}.
+	 * Set {@code null} to disable sharing.
+	 * @param rulesCache the rulesCache to set
+	 */
+	public void setRulesCache(RobotRulesCache rulesCache) {
+		this.rulesCache = rulesCache;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.accesscontrol.ExclusionFilterFactory#shutdown()
 	 */
@@ -25,6 +25,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -62,6 +63,8 @@ public class RobotRules {
 
 	private boolean bSyntaxErrors = false;
 	private HashMap<String, ArrayList<String>> rules = new HashMap<String, ArrayList<String>>();
+	// compiled rules, built from rules at the end of parse()
+	private HashMap<String, RobotsPathMatcher> matchers = new HashMap<String, RobotsPathMatcher>();
 
 	private LinkedList<String> userAgents = new LinkedList<String>();
 
@@ -155,25 +158,33 @@ public class RobotRules {
 				//       we encounter any unknown lines?
 			}
 		}
+		compile();
 	}
 
-	private boolean blocksPath(String path, String curUA, List<String> uaRules) {
-		for (String disallowedPath : uaRules) {
-			if (disallowedPath.isEmpty()) {
-				// This is for extra caution. Empty path shouldn't be added
-				// to uaRules in the first place.
-				continue;
-			}
-			if (disallowedPath.equals("/") || path.startsWith(disallowedPath)) {
-				return true;
+	/**
+	 * build {@link RobotsPathMatcher} for each rules-list.
+	 * user-agents sharing a rules-list share a matcher, too.
+	 */
+	private void compile() {
+		IdentityHashMap<ArrayList<String>, RobotsPathMatcher> compiled =
+				new IdentityHashMap<ArrayList<String>, RobotsPathMatcher>();
+		HashMap<String, RobotsPathMatcher> newMatchers = new HashMap<String, RobotsPathMatcher>();
+		for (String ua : rules.keySet()) {
+			ArrayList<String> uaRules = rules.get(ua);
+			RobotsPathMatcher matcher = compiled.get(uaRules);
+			if (matcher == null) {
+				matcher = new RobotsPathMatcher(uaRules);
+				compiled.put(uaRules, matcher);
 			}
+			newMatchers.put(ua, matcher);
 		}
-		return false;
+		matchers = newMatchers;
 	}
 
 	/**
 	 * Checks first the specified ua UserAgent, if rules are present for it, and
 	 * then falls back to using rules for the '*' UserAgent.
+	 * Disallow paths may have {@code *} wildcards and {@code $} end anchor.
 	 *
 	 * @param path String server relative path to check for access
 	 * @param ua String user agent to check for access
@@ -195,13 +206,10 @@ public class RobotRules {
 	 */
 	public boolean blocksPathForUA(String path, String ua, boolean matchAll) {
 		final String lcua = ua.toLowerCase();
-		if (rules.containsKey(lcua)) {
-			return blocksPath(path, ua, rules.get(lcua));
-		}
-		if (matchAll && rules.containsKey(GLOBAL_USER_AGENT)) {
-			return blocksPath(path, GLOBAL_USER_AGENT,
-				rules.get(GLOBAL_USER_AGENT));
+		RobotsPathMatcher matcher = matchers.get(lcua);
+		if (matcher == null && matchAll) {
+			matcher = matchers.get(GLOBAL_USER_AGENT);
 		}
-		return false;
+		return matcher != null && matcher.matches(path);
 	}
 }
@@ -0,0 +1,310 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.exception.LiveDocumentNotAvailableException;
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+import org.archive.wayback.exception.LiveWebTimeoutException;
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Cache of parsed {@link RobotRules}, keyed by robots.txt URL.
+ * <p>{@link RobotExclusionFilter} instances are created for each request,
+ * and keep their own per-request cache. This class lets them share parsed
+ * rules across requests, so that robots.txt is not fetched from
+ * {@code LiveWebCache} and parsed again for every request.</p>
+ * <p>Entries are keyed by URL only, so an instance must not be shared by
+ * filters loading robots.txt from different sources (i.e. different
+ * {@code LiveWebCache}s). {@link RobotExclusionFilterFactory} has its own
+ * instance by default.</p>
+ * <p>Number of entries is bounded by {@code maxEntries} (least recently
+ * used entry is evicted). Each lookup specifies how old an entry may be.
+ * Concurrent lookups for the same URL that miss the cache are served by a
+ * single load. Only successful loads are cached; failures are propagated
+ * to all callers waiting for the load, and next lookup tries again.</p>
+ * <p>Hit/miss counts are available through accessor methods, and also
+ * recorded to {@link PerfStats} for current request.</p>
+ */
+public class RobotRulesCache {
+
+	enum PerfStat {
+		RobotRulesCacheHit,
+		RobotRulesCacheMiss;
+	}
+
+	/**
+	 * Loads {@link RobotRules} for robots.txt URL.
+	 */
+	public interface Loader {
+		/**
+		 * @param url robots.txt URL
+		 * @return RobotRules, never {@code null}
+		 */
+		RobotRules load(String url) throws LiveDocumentNotAvailableException,
+				LiveWebCacheUnavailableException, LiveWebTimeoutException,
+				IOException;
+	}
+
+	private static class Entry {
+		final RobotRules rules;
+		final long loaded;
+
+		Entry(RobotRules rules, long loaded) {
+			this.rules = rules;
+			this.loaded = loaded;
+		}
+	}
+
+	public final static int DEFAULT_MAX_ENTRIES = 10000;
+	public final static long DEFAULT_MAX_AGE_MS = 10 * 60 * 1000L;
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private long maxAgeMS = DEFAULT_MAX_AGE_MS;
+
+	private final LinkedHashMap<String, Entry> entries =
+			new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	private final ConcurrentHashMap<String, FutureTask<RobotRules>> loading =
+			new ConcurrentHashMap<String, FutureTask<RobotRules>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong joins = new AtomicLong();
+
+	/**
+	 * Return RobotRules for {@code url}, loading it with {@code loader}
+	 * if it is not cached, or cached entry is older than {@code maxAgeMS}.
+	 * If another thread is loading {@code url}, wait for it to finish and
+	 * return its result.
+	 * @param url robots.txt URL
+	 * @param maxAgeMS maximum age of cached entry in milliseconds.
+	 *   zero or negative value means {@code maxAgeMS} of this object.
+	 * @param loader Loader for loading RobotRules
+	 * @return RobotRules
+	 * @throws LiveDocumentNotAvailableException thrown by {@code loader}
+	 * @throws LiveWebCacheUnavailableException thrown by {@code loader}
+	 * @throws LiveWebTimeoutException thrown by {@code loader}
+	 * @throws IOException thrown by {@code loader}, or interrupted while
+	 *   waiting for other thread to load
+	 */
+	public RobotRules get(final String url, long maxAgeMS, final Loader loader)
+			throws LiveDocumentNotAvailableException,
+			LiveWebCacheUnavailableException, LiveWebTimeoutException,
+			IOException {
+		if (maxAgeMS <= 0) {
+			maxAgeMS = this.maxAgeMS;
+		}
+		synchronized (entries) {
+			Entry entry = entries.get(url);
+			if (entry != null &&
+					System.currentTimeMillis() - entry.loaded < maxAgeMS) {
+				hits.incrementAndGet();
+				PerfStats.count(PerfStat.RobotRulesCacheHit, 1);
+				return entry.rules;
+			}
+		}
+		misses.incrementAndGet();
+		PerfStats.count(PerfStat.RobotRulesCacheMiss, 1);
+
+		FutureTask<RobotRules> task = new FutureTask<RobotRules>(
+			new Callable<RobotRules>() {
+				@Override
+				public RobotRules call() throws Exception {
+					return loader.load(url);
+				}
+			});
+		FutureTask<RobotRules> running = loading.putIfAbsent(url, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+				RobotRules rules = task.get();
+				synchronized (entries) {
+					entries.put(url, new Entry(rules, System.currentTimeMillis()));
+				}
+			} catch (ExecutionException ex) {
+				// not cached
+			} catch (InterruptedException ex) {
+				// never happens: task has completed
+				Thread.currentThread().interrupt();
+			} finally {
+				loading.remove(url, task);
+			}
+		} else {
+			joins.incrementAndGet();
+		}
+		try {
+			return running.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for " + url);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof LiveDocumentNotAvailableException)
+				throw (LiveDocumentNotAvailableException)cause;
+			if (cause instanceof LiveWebCacheUnavailableException)
+				throw (LiveWebCacheUnavailableException)cause;
+			if (cause instanceof LiveWebTimeoutException)
+				throw (LiveWebTimeoutException)cause;
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Test if {@code url} is cached and not older than {@code maxAgeMS}.
+	 * Does not count as a lookup.
+	 * @param url robots.txt URL
+	 * @param maxAgeMS maximum age of cached entry in milliseconds.
+	 *   zero or negative value means {@code maxAgeMS} of this object.
+	 * @return {@code true} if cached
+	 */
+	public boolean contains(String url, long maxAgeMS) {
+		if (maxAgeMS <= 0) {
+			maxAgeMS = this.maxAgeMS;
+		}
+		synchronized (entries) {
+			Entry entry = entries.get(url);
+			return entry != null &&
+					System.currentTimeMillis() - entry.loaded < maxAgeMS;
+		}
+	}
+
+	/**
+	 * Store {@code rules} loaded by other means (ex. batch lookup)
+	 * for {@code url}.
+	 * @param url robots.txt URL
+	 * @param rules RobotRules
+	 */
+	public void put(String url, RobotRules rules) {
+		synchronized (entries) {
+			entries.put(url, new Entry(rules, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Remove cached entry for {@code url}, if any.
+	 * @param url robots.txt URL
+	 */
+	public void remove(String url) {
+		synchronized (entries) {
+			entries.remove(url);
+		}
+	}
+
+	/**
+	 * Remove all cached entries.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Maximum number of robots.txt URLs to cache.
+	 * Initial value is {@value #DEFAULT_MAX_ENTRIES}.
+	 * @param maxEntries
+	 */
+	public void setMaxEntries(int maxEntries) {
+		synchronized (entries) {
+			this.maxEntries = maxEntries;
+			while (entries.size() > maxEntries) {
+				entries.remove(entries.keySet().iterator().next());
+			}
+		}
+	}
+
+	public long getMaxAgeMS() {
+		return maxAgeMS;
+	}
+
+	/**
+	 * Maximum age of cached entries in milliseconds, for lookups that
+	 * do not specify one.
+	 * Initial value is {@value #DEFAULT_MAX_AGE_MS} (10 minutes).
+	 * @param maxAgeMS
+	 */
+	public void setMaxAgeMS(long maxAgeMS) {
+		this.maxAgeMS = maxAgeMS;
+	}
+
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups that were not served from cache,
+	 *   including those that waited for other thread's load.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of lookups that waited for other thread's load
+	 *   instead of loading themselves.
+	 */
+	public long getJoinCount() {
+		return joins.get();
+	}
+
+	/**
+	 * @return ratio of hits to all lookups, or zero if there has been
+	 *   no lookup.
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double)h / total;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled set of robots.txt {@code Disallow} paths, for testing if
+ * a path is blocked in a single walk over the path.
+ * <p>Paths are stored in a char trie. Each path is a prefix pattern:
+ * {@code *} matches any sequence of chars (including {@code /}), and
+ * {@code $} at the end anchors the pattern at the end of the path
+ * (Google/Yahoo/Bing/Ask convention). Without wildcards, matching is the
+ * same as {@code path.startsWith(disallowedPath)}.</p>
+ * <p>Instances are immutable and thread-safe once constructed.</p>
+ */
+public class RobotsPathMatcher {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_NODES = new Node[0];
+
+	private static class Node {
+		// sorted
+		char[] keys = NO_KEYS;
+		Node[] next = NO_NODES;
+		// node reached through '*', consuming any char
+		final boolean star;
+		Node starChild;
+		// a pattern ends here
+		boolean terminal;
+		// a pattern with '$' ends here
+		boolean anchored;
+
+		Node(boolean star) {
+			this.star = star;
+		}
+
+		Node child(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			return i >= 0 ? next[i] : null;
+		}
+
+		Node addChild(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			if (i >= 0) {
+				return next[i];
+			}
+			i = -i - 1;
+			Node node = new Node(false);
+			char[] nkeys = new char[keys.length + 1];
+			Node[] nnext = new Node[next.length + 1];
+			System.arraycopy(keys, 0, nkeys, 0, i);
+			System.arraycopy(next, 0, nnext, 0, i);
+			nkeys[i] = c;
+			nnext[i] = node;
+			System.arraycopy(keys, i, nkeys, i + 1, keys.length - i);
+			System.arraycopy(next, i, nnext, i + 1, next.length - i);
+			keys = nkeys;
+			next = nnext;
+			return node;
+		}
+
+		Node addStarChild() {
+			if (starChild == null) {
+				starChild = new Node(true);
+			}
+			return starChild;
+		}
+	}
+
+	private final Node root = new Node(false);
+	// true if there's "/" rule
+	private boolean blocksAll = false;
+	// true if there's any '*' or '$' rule
+	private boolean wildcards = false;
+
+	/**
+	 * Compile {@code paths}.
+	 * @param paths Disallow paths. Empty paths are ignored.
+	 */
+	public RobotsPathMatcher(List<String> paths) {
+		for (String path : paths) {
+			add(path);
+		}
+	}
+
+	private void add(String path) {
+		if (path.isEmpty()) {
+			return;
+		}
+		if (path.equals("/")) {
+			blocksAll = true;
+		}
+		int end = path.length();
+		boolean anchored = false;
+		if (path.charAt(end - 1) == '$') {
+			anchored = true;
+			wildcards = true;
+			end--;
+		}
+		Node node = root;
+		for (int i = 0; i < end; i++) {
+			char c = path.charAt(i);
+			if (c == '*') {
+				wildcards = true;
+				// consecutive '*' are one
+				if (!node.star) {
+					node = node.addStarChild();
+				}
+			} else {
+				node = node.addChild(c);
+			}
+		}
+		if (anchored) {
+			node.anchored = true;
+		} else {
+			node.terminal = true;
+		}
+	}
+
+	/**
+	 * @param path server relative path
+	 * @return {@code true} if any of Disallow paths matches {@code path}
+	 */
+	public boolean matches(String path) {
+		if (blocksAll) {
+			return true;
+		}
+		if (!wildcards) {
+			// simple prefix match: at most one active node
+			Node node = root;
+			final int len = path.length();
+			for (int i = 0; i < len; i++) {
+				if (node.terminal) {
+					return true;
+				}
+				node = node.child(path.charAt(i));
+				if (node == null) {
+					return false;
+				}
+			}
+			return node.terminal;
+		}
+		List<Node> active = new ArrayList<Node>();
+		List<Node> next = new ArrayList<Node>();
+		addClosure(active, root);
+		final int len = path.length();
+		for (int i = 0; i < len; i++) {
+			if (active.isEmpty()) {
+				return false;
+			}
+			for (int j = 0; j < active.size(); j++) {
+				if (active.get(j).terminal) {
+					return true;
+				}
+			}
+			char c = path.charAt(i);
+			next.clear();
+			for (int j = 0; j < active.size(); j++) {
+				Node node = active.get(j);
+				if (node.star) {
+					addClosure(next, node);
+				}
+				Node child = node.child(c);
+				if (child != null) {
+					addClosure(next, child);
+				}
+			}
+			List<Node> t = active;
+			active = next;
+			next = t;
+		}
+		for (int j = 0; j < active.size(); j++) {
+			Node node = active.get(j);
+			if (node.terminal || node.anchored) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * add {@code node} and nodes reachable from it through '*'
+	 * (which matches empty string) to {@code nodes}.
+	 */
+	private static void addClosure(List<Node> nodes, Node node) {
+		while (node != null && !nodes.contains(node)) {
+			nodes.add(node);
+			node = node.starChild;
+		}
+	}
+}
@@ -1,12 +1,20 @@
 package org.archive.wayback.accesscontrol.robotstxt.redis;
 
 import org.archive.wayback.accesscontrol.robotstxt.RobotExclusionFilterFactory;
+import org.archive.wayback.accesscontrol.robotstxt.RobotRulesCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 
 public class RedisRobotExclusionFilterFactory extends RobotExclusionFilterFactory {
 	
 	private boolean cacheFails;
 
+	{
+		// robots.txt in SimpleRedisRobotsCache can be replaced by
+		// UpdateRobotsRequestHandler. Parsed RobotRules are not shared
+		// unless it is configured to evict them (see setRulesCache).
+		setRulesCache(null);
+	}
+
 	public boolean isCacheFails() {
 		return cacheFails;
 	}
@@ -15,9 +23,30 @@ public class RedisRobotExclusionFilterFactory extends RobotExclusionFilterFactor
 		this.cacheFails = cacheFails;
 	}
 
+	/**
+	 * RobotRulesCache for sharing parsed robots.txt across requests.
+	 * <p>Initial value is {@code null} (not shared), as cached RobotRules
+	 * would hide forced updates of robots.txt for up to
+	 * {@link RobotRulesCache#DEFAULT_MAX_AGE_MS}. If set, the same instance
+	 * must also be set to {@link UpdateRobotsRequestHandler#setRulesCache(RobotRulesCache)}
+	 * of every handler updating the same robots.txt cache.</p>
+	 * @param rulesCache the rulesCache to set
+	 */
+	@Override
+	public void setRulesCache(RobotRulesCache rulesCache) {
+		super.setRulesCache(rulesCache);
+	}
+
 	@Override
 	public ExclusionFilter get() {
-		return new RedisRobotExclusionFilter(super.getWebCache(), super.getUserAgent(), cacheFails);
+		RedisRobotExclusionFilter filter = new RedisRobotExclusionFilter(
+			super.getWebCache(), super.getUserAgent(), cacheFails);
+		// maxCacheMS of RedisRobotExclusionFilter only carries cacheFails flag;
+		// shared RobotRules expire by RobotRulesCache's default.
+		if (getRulesCache() != null) {
+			filter.setSharedRulesCache(getRulesCache(), 0);
+		}
+		return filter;
 	}
 
 	@Override
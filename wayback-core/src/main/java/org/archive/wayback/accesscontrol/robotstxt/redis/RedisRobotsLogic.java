@@ -6,7 +6,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.util.LinkedList;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,6 +19,8 @@ import org.archive.util.zip.OpenJDK7GZIPInputStream;
 import org.archive.wayback.exception.LiveWebCacheUnavailableException;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
 public class RedisRobotsLogic {
@@ -28,6 +31,7 @@ public class RedisRobotsLogic {
 	private final static int MIN_GZIP_SIZE = 20;
 	
 	final static String UTF8 = "UTF-8";
+	final static Charset UTF8_CHARSET = Charset.forName(UTF8);
 	
 	private RedisConnectionManager redisConn;
 	
@@ -128,25 +132,7 @@ public class RedisRobotsLogic {
 						return null;
 					}
 					
-					String stringValue = null;
-					
-					try {
-						if (isGzipStream(binValue)) {
-							InputStream stream = new OpenJDK7GZIPInputStream(new ByteArrayInputStream(binValue));
-							stringValue = IOUtils.toString(stream, UTF8);
-						}
-					} catch (IOException e) {
-
-					}
-					
-					if (stringValue == null) {					
-						try {
-							stringValue = new String(binValue, UTF8);
-						} catch (UnsupportedEncodingException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-					}
+					String stringValue = decodeValue(binValue);
 					
 					long ttl = jedis.ttl(key);
 					return new RedisValue(stringValue, ttl);
@@ -159,37 +145,71 @@ public class RedisRobotsLogic {
 		}
 	}
 	
+	/**
+	 * Get values and TTLs of {@code keys} in one round-trip: MGET and TTL
+	 * commands are pipelined.
+	 * @param keys keys to look up
+	 * @return RedisValues in the same order as {@code keys}, with
+	 *   {@code null} for keys that do not exist
+	 * @throws LiveWebCacheUnavailableException if Redis is unavailable
+	 */
 	public List<RedisValue> getValue(final String[] keys) throws LiveWebCacheUnavailableException
 	{
-		long startTime = System.currentTimeMillis();
-
-		List<RedisValue> values = null;
-		
-		try {
-			values = this.runJedisCmd(new JedisRunner<List<RedisValue>>()
+		if (keys.length == 0) {
+			return new ArrayList<RedisValue>();
+		}
+		return this.runJedisCmd(new JedisRunner<List<RedisValue>>()
+		{
+			public List<RedisValue> run(Jedis jedis)
 			{
-				public List<RedisValue> run(Jedis jedis)
-				{
-					List<String> values = jedis.mget(keys);
-					List<RedisValue> redisValues = new LinkedList<RedisValue>();
-					int index = 0;
-					for (String value : values) {
-						if (value == null) {
-							redisValues.add(null);
-						} else {
-							long ttl = jedis.ttl(keys[index]);
-							redisValues.add(new RedisValue(value, ttl));
-						}
-						index++;
+				byte[][] binKeys = new byte[keys.length][];
+				for (int i = 0; i < keys.length; i++) {
+					binKeys[i] = keys[i].getBytes(UTF8_CHARSET);
+				}
+				Pipeline pipeline = jedis.pipelined();
+				Response<List<byte[]>> binValues = pipeline.mget(binKeys);
+				List<Response<Long>> ttls = new ArrayList<Response<Long>>(keys.length);
+				for (byte[] binKey : binKeys) {
+					ttls.add(pipeline.ttl(binKey));
+				}
+				pipeline.sync();
+
+				List<RedisValue> redisValues = new ArrayList<RedisValue>(keys.length);
+				int index = 0;
+				for (byte[] binValue : binValues.get()) {
+					if (binValue == null) {
+						redisValues.add(null);
+					} else {
+						redisValues.add(new RedisValue(decodeValue(binValue),
+							ttls.get(index).get()));
 					}
-					return redisValues;
+					index++;
 				}
-			});
-		} finally {		
-			//PerformanceLogger.noteElapsed("RedisMultiGetTTL", System.currentTimeMillis() - startTime, Arrays.toString(keys));
+				return redisValues;
+			}
+		});
+	}
+	
+	/**
+	 * Decode value stored by {@link #updateValue(String, RedisValue, boolean)},
+	 * which may be gzip-compressed.
+	 */
+	static String decodeValue(byte[] binValue) {
+		String stringValue = null;
+		
+		try {
+			if (isGzipStream(binValue)) {
+				InputStream stream = new OpenJDK7GZIPInputStream(new ByteArrayInputStream(binValue));
+				stringValue = IOUtils.toString(stream, UTF8);
+			}
+		} catch (IOException e) {
+
 		}
 		
-		return values;
+		if (stringValue == null) {
+			stringValue = new String(binValue, UTF8_CHARSET);
+		}
+		return stringValue;
 	}
 	
 	public void updateValue(final String url, final RedisValue value)
@@ -254,6 +274,36 @@ public class RedisRobotsLogic {
 		});
 	}
 	
+	/**
+	 * Push {@code keys} to {@code list} in one pipelined round-trip,
+	 * as many as {@code list} has room for below {@code maxSize}.
+	 * @param list list key
+	 * @param keys keys to push
+	 * @param maxSize maximum length of {@code list}
+	 */
+	public void pushKeys(final String list, final List<String> keys, final int maxSize)
+	{
+		if (keys.isEmpty()) {
+			return;
+		}
+		this.runJedisCmd(new JedisRunnerVoid()
+		{
+			public void run(Jedis jedis)
+			{
+				long room = maxSize - jedis.llen(list);
+				if (room <= 0) {
+					return;
+				}
+				int count = (int)Math.min(room, keys.size());
+				Pipeline pipeline = jedis.pipelined();
+				for (int i = 0; i < count; i++) {
+					pipeline.rpush(list, keys.get(i));
+				}
+				pipeline.sync();
+			}
+		});
+	}
+	
 	public KeyRedisValue popKeyAndGet(final String list) throws LiveWebCacheUnavailableException
 	{
 		return this.runJedisCmd(new JedisRunner<KeyRedisValue>()
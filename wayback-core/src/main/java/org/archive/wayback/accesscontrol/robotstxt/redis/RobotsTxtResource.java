@@ -9,6 +9,16 @@ import org.archive.wayback.core.Resource;
 public class RobotsTxtResource extends Resource {
 	
 	protected String contents;
+	protected int statusCode = 200;
+	
+	/**
+	 * Resource for a cached robots.txt fetch failure, with empty contents.
+	 * @param statusCode status of the failure
+	 */
+	public RobotsTxtResource(int statusCode) {
+		this("");
+		this.statusCode = statusCode;
+	}
 	
 	public RobotsTxtResource(String contents) {
 		this.contents = contents;
@@ -27,7 +37,7 @@ public class RobotsTxtResource extends Resource {
 
 	@Override
 	public int getStatusCode() {
-		return 200;
+		return statusCode;
 	}
 
 	@Override
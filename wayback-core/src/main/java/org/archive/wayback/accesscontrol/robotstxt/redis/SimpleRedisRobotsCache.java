@@ -4,6 +4,10 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,12 +17,13 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.LiveDocumentNotAvailableException;
 import org.archive.wayback.exception.LiveWebCacheUnavailableException;
 import org.archive.wayback.exception.LiveWebTimeoutException;
+import org.archive.wayback.liveweb.BatchLiveWebCache;
 import org.archive.wayback.liveweb.LiveWebCache;
 import org.archive.wayback.webapp.PerfStats;
 
 import com.google.common.io.ByteStreams;
 
-public class SimpleRedisRobotsCache implements LiveWebCache {
+public class SimpleRedisRobotsCache implements BatchLiveWebCache {
 	
 	private final static Logger LOGGER = Logger
 	.getLogger(SimpleRedisRobotsCache.class.getName());
@@ -128,17 +133,8 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 			PerfStats.timeEnd(PerfStat.RobotsRedis);
 		}
 
-		// migration hack - don't trust cached 502 during migration period.
-		// old code records 404 as 502, which results in false blockage with
-		// new code. prevent too frequent updates.
-		if (value != null && inMigrationPeriod) {
-			if (ROBOTS_OLD_TOKEN_ERROR.equals(value.value) &&
-					(notAvailTotalTTL - value.ttl) > MIN_UPDATE_INTERVAL) {
-				long elapsedSec = (System.currentTimeMillis() - startupTime) / 1000;
-				if (elapsedSec < refreshTTL) {
-					value = null;
-				}
-			}
+		if (value != null && isUntrustedOldError(value)) {
+			value = null;
 		}
 
 		// Use the old liveweb cache, if provided
@@ -163,22 +159,98 @@ public class SimpleRedisRobotsCache implements LiveWebCache {
 				PerfStats.timeEnd(PerfStat.RobotsRedis);
 			}
 			
-			String currentRobots = value.value;
+			RobotsTxtResource resource = toResource(value);
 			
-			if (currentRobots.startsWith(ROBOTS_TOKEN_ERROR)) {
-				int status;
-				try {
-					status = Integer.parseInt(currentRobots.substring(ROBOTS_TOKEN_ERROR.length()));
-				} catch (NumberFormatException ex) {
-					status = 0;
-				}
-				throw new LiveDocumentNotAvailableException(urlURL, status);
-			} else if (value.equals(ROBOTS_TOKEN_EMPTY)) {
-				currentRobots = "";
+			if (resource.getStatusCode() != STATUS_OK) {
+				throw new LiveDocumentNotAvailableException(urlURL, resource.getStatusCode());
 			}
 			
-			return new RobotsTxtResource(currentRobots);	
+			return resource;
+		}
+	}
+
+	/**
+	 * Look up cached robots.txt for {@code urls} with one pipelined
+	 * MGET. Expired entries are queued for refresh with one pipelined push.
+	 * Unlike {@link #getCachedResource(URL, long, boolean)}, robots.txt not
+	 * in Redis are not fetched, and cached failures are returned as
+	 * {@link RobotsTxtResource} with failure status.
+	 */
+	@Override
+	public Map<String, Resource> getCachedResources(List<String> urls)
+			throws LiveWebCacheUnavailableException {
+		Map<String, Resource> resources = new HashMap<String, Resource>();
+		if (redisCmds == null || urls.isEmpty()) {
+			return resources;
+		}
+		
+		List<RedisValue> values = null;
+		try {
+			PerfStats.timeStart(PerfStat.RobotsRedis);
+			values = redisCmds.getValue(urls.toArray(new String[urls.size()]));
+		} finally {
+			PerfStats.timeEnd(PerfStat.RobotsRedis);
+		}
+		
+		List<String> expired = new ArrayList<String>();
+		for (int i = 0; i < urls.size(); i++) {
+			RedisValue value = values.get(i);
+			if (value == null || isUntrustedOldError(value)) {
+				continue;
+			}
+			String url = urls.get(i);
+			if (isExpired(value, url, 0)) {
+				expired.add(url);
+			}
+			resources.put(url, toResource(value));
 		}
+		
+		if (!expired.isEmpty()) {
+			PerfStats.timeStart(PerfStat.RobotsRedis);
+			redisCmds.pushKeys(UPDATE_QUEUE_KEY, expired, MAX_UPDATE_QUEUE_SIZE);
+			PerfStats.timeEnd(PerfStat.RobotsRedis);
+		}
+		return resources;
+	}
+	
+	/**
+	 * migration hack - don't trust cached 502 during migration period.
+	 * old code records 404 as 502, which results in false blockage with
+	 * new code. prevent too frequent updates.
+	 */
+	protected boolean isUntrustedOldError(RedisValue value) {
+		if (inMigrationPeriod) {
+			if (ROBOTS_OLD_TOKEN_ERROR.equals(value.value) &&
+					(notAvailTotalTTL - value.ttl) > MIN_UPDATE_INTERVAL) {
+				long elapsedSec = (System.currentTimeMillis() - startupTime) / 1000;
+				if (elapsedSec < refreshTTL) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Translate cached value into RobotsTxtResource. Cached failure
+	 * has its status code, and empty contents.
+	 */
+	protected RobotsTxtResource toResource(RedisValue value) {
+		String currentRobots = value.value;
+		
+		if (currentRobots.startsWith(ROBOTS_TOKEN_ERROR)) {
+			int status;
+			try {
+				status = Integer.parseInt(currentRobots.substring(ROBOTS_TOKEN_ERROR.length()));
+			} catch (NumberFormatException ex) {
+				status = 0;
+			}
+			return new RobotsTxtResource(status);
+		} else if (currentRobots.equals(ROBOTS_TOKEN_EMPTY)) {
+			currentRobots = "";
+		}
+		
+		return new RobotsTxtResource(currentRobots);
 	}
 
 	@Override
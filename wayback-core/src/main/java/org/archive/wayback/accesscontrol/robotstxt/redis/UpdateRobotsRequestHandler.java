@@ -8,6 +8,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.archive.wayback.accesscontrol.ExclusionFilterFactory;
+import org.archive.wayback.accesscontrol.robotstxt.RobotRulesCache;
 import org.archive.wayback.accesscontrol.robotstxt.redis.SimpleRedisRobotsCache.RobotsResult;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
 
@@ -25,6 +26,8 @@ public class UpdateRobotsRequestHandler extends AbstractRequestHandler {
 	
 	private SimpleRedisRobotsCache robotsCache;
 	
+	private RobotRulesCache rulesCache;
+	
 	// Minimum time (secs) between subsequent forced updates
 	// Default: off for now
 	private int minUpdateTime = 0;
@@ -45,6 +48,23 @@ public class UpdateRobotsRequestHandler extends AbstractRequestHandler {
 		this.robotsCache = robotsCache;
 	}
 
+	public RobotRulesCache getRulesCache() {
+		return rulesCache;
+	}
+
+	/**
+	 * RobotRulesCache from which updated robots.txt is removed.
+	 * Must be set to {@code rulesCache} of {@link RedisRobotExclusionFilterFactory}
+	 * serving the same {@code robotsCache}, if it has one, so that updated
+	 * robots.txt takes effect immediately. Initial value is {@code null}
+	 * (nothing is removed), which matches the factory's default of not
+	 * sharing RobotRules.
+	 * @param rulesCache
+	 */
+	public void setRulesCache(RobotRulesCache rulesCache) {
+		this.rulesCache = rulesCache;
+	}
+
 	@Override
 	public boolean handleRequest(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse) throws ServletException,
@@ -87,6 +107,10 @@ public class UpdateRobotsRequestHandler extends AbstractRequestHandler {
 			//RobotsContext context = robotsCache.forceUpdate(url, minUpdateTime);
 			RobotsResult result = robotsCache.forceUpdate(url, minUpdateTime, false);
 			
+			if (rulesCache != null) {
+				rulesCache.remove(url);
+			}
+			
 			if (result == null) {
 				writer.println("<p>Error Updating Robots (see logs)</p>");
 				return true;
@@ -44,13 +44,24 @@ public class StaticMapExclusionFilter extends ExclusionFilter {
 	private boolean lastCheckedExcluded = false;
 	private boolean notifiedSeen = false;
 	private boolean notifiedPassed = false;
-	Map<String,Object> exclusionMap = null;
+	SurtPrefixSet exclusions = null;
 	UrlCanonicalizer canonicalizer = null;
 	/**
 	 * @param map where each String key is a SURT that is blocked.
+	 * @deprecated builds {@link SurtPrefixSet} from {@code map} every time.
+	 * use {@link #StaticMapExclusionFilter(SurtPrefixSet, UrlCanonicalizer)}
 	 */
+	@Deprecated
 	public StaticMapExclusionFilter(Map<String,Object> map, UrlCanonicalizer canonicalizer) {
-		exclusionMap = map;
+		this(new SurtPrefixSet(map.keySet()), canonicalizer);
+	}
+
+	/**
+	 * @param exclusions SURTs that are blocked.
+	 * @param canonicalizer canonicalizer
+	 */
+	public StaticMapExclusionFilter(SurtPrefixSet exclusions, UrlCanonicalizer canonicalizer) {
+		this.exclusions = exclusions;
 		this.canonicalizer = canonicalizer;
 	}
 	
@@ -66,17 +77,12 @@ public class StaticMapExclusionFilter extends ExclusionFilter {
 	
 	protected boolean isExcluded(String url) {
 		try {
-			SURTTokenizer st = new SURTTokenizer(url, canonicalizer.isSurtForm());
-			while(true) {
-				String nextSearch = st.nextSearch();
-				if(nextSearch == null) {
-					break;
-				}
-				LOGGER.fine("EXCLUSION-MAP:Checking " + nextSearch);
-				if(exclusionMap.containsKey(nextSearch)) {
-					LOGGER.info("EXCLUSION-MAP: EXCLUDED: \"" + nextSearch + "\" (" + url +")");
-					return true;
-				}
+			// same as SURTTokenizer does
+			String surt = (url.startsWith("(") || canonicalizer.isSurtForm()) ?
+					url : SURTTokenizer.exactKey(url);
+			if(exclusions.containsSearchOf(surt)) {
+				LOGGER.info("EXCLUSION-MAP: EXCLUDED: \"" + surt + "\" (" + url +")");
+				return true;
 			}
 		} catch (URIException e) {
 			LOGGER.warning(e.toString());
@@ -84,6 +90,14 @@ public class StaticMapExclusionFilter extends ExclusionFilter {
 		}
 		return false;
 	}
+	/**
+	 * Exclusion is determined by {@code urlKey} alone.
+	 */
+	@Override
+	public boolean isUrlLevel(CaptureSearchResult capture) {
+		return true;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.resourceindex.SearchResultFilter#filterSearchResult(org.archive.wayback.core.SearchResult)
 	 */
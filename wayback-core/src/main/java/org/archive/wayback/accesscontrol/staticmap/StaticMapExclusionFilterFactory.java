@@ -21,7 +21,9 @@ package org.archive.wayback.accesscontrol.staticmap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -45,7 +47,11 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
         Logger.getLogger(StaticMapExclusionFilterFactory.class.getName());
 
 	private int checkInterval = 0;
-	private Map<String,Object> currentMap = null;
+	/**
+	 * built by the thread loading the file, and replaced as a whole
+	 * when reloaded.
+	 */
+	private volatile SurtPrefixSet currentSet = null;
 	private File file = null;
 	
 	long lastUpdated = 0;
@@ -87,12 +93,14 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 		}
 		LOGGER.info("Reloading exclusion file " + file.getAbsolutePath());
 		try {
-			currentMap = loadFile(file.getAbsolutePath());
+			SurtPrefixSet newSet = loadSurtPrefixSet(file.getAbsolutePath());
+			currentSet = newSet;
 			lastUpdated = currentMod;
-			LOGGER.info("Reload " + file.getAbsolutePath() + " OK");
+			LOGGER.info("Reload " + file.getAbsolutePath() + " OK (" +
+					newSet.size() + " entries)");
 		} catch(IOException e) {
 			lastUpdated = -1;
-			currentMap = null;
+			currentSet = null;
 			e.printStackTrace();
 			LOGGER.severe("Reload " + file.getAbsolutePath() + " FAILED:" + 
 					e.getLocalizedMessage());
@@ -100,6 +108,18 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 	}
 	protected Map<String,Object> loadFile(String path) throws IOException {
 		Map<String, Object> newMap = new HashMap<String, Object>();
+		for (String surt : loadSurts(path)) {
+			newMap.put(surt, null);
+		}
+		return newMap;
+	}
+
+	protected SurtPrefixSet loadSurtPrefixSet(String path) throws IOException {
+		return new SurtPrefixSet(loadSurts(path));
+	}
+
+	protected List<String> loadSurts(String path) throws IOException {
+		List<String> surts = new ArrayList<String>();
 		FlatFile ff = new FlatFile(path);
 		CloseableIterator<String> itr = ff.getSequentialIterator();
 		while(itr.hasNext()) {
@@ -126,10 +146,10 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 			}
 
 			LOGGER.fine("EXCLUSION-MAP: adding " + surt);
-			newMap.put(surt, null);
+			surts.add(surt);
 		}
 		itr.close();
-		return newMap;
+		return surts;
 	}
 	
 	/**
@@ -137,10 +157,11 @@ public class StaticMapExclusionFilterFactory implements ExclusionFilterFactory {
 	 * 						exclusion file. 
 	 */
 	public ExclusionFilter get() {
-		if(currentMap == null) {
+		SurtPrefixSet exclusions = currentSet;
+		if(exclusions == null) {
 			return null;
 		}
-		return new StaticMapExclusionFilter(currentMap, canonicalizer); 
+		return new StaticMapExclusionFilter(exclusions, canonicalizer);
 	}
 	
 	private synchronized void startUpdateThread() {
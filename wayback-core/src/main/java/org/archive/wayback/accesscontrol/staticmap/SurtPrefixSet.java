@@ -0,0 +1,285 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.staticmap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.archive.wayback.surt.SURTTokenizer;
+
+/**
+ * Immutable set of SURT strings, answering if any of the search strings
+ * {@link SURTTokenizer} generates for a SURT is in the set, in a single
+ * walk over the SURT without allocating objects.
+ * <p>Strings are stored in a compressed (radix) trie laid out in flat
+ * arrays: nodes are numbered breadth-first, so that children of a node are
+ * consecutive, and edge labels are stored back-to-back in one {@code char}
+ * array in the same order.</p>
+ * <p>Instances are thread-safe once constructed.</p>
+ *
+ * @see SURTTokenizer#nextSearch()
+ */
+public class SurtPrefixSet {
+	private final static char EXACT_SUFFIX = '\t';
+
+	// children of node n are nodes firstChild[n] .. firstChild[n+1]-1
+	private final int[] firstChild;
+	// label of edge to node n is labels[labelStart[n] .. labelStart[n+1]-1]
+	private final int[] labelStart;
+	private final char[] labels;
+	private final BitSet terminal;
+	private final int size;
+
+	/**
+	 * @param surts SURT strings, as found in exclusion file. Duplicates
+	 * are ignored.
+	 */
+	public SurtPrefixSet(Collection<String> surts) {
+		String[] keys = surts.toArray(new String[surts.size()]);
+		Arrays.sort(keys);
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (n == 0 || !keys[i].equals(keys[n - 1])) {
+				keys[n++] = keys[i];
+			}
+		}
+		size = n;
+
+		// [lo, hi) is the range of keys below node, sharing first
+		// depth chars. only needed while building.
+		int capacity = Math.max(16, n + 1);
+		int[] lo = new int[capacity];
+		int[] hi = new int[capacity];
+		int[] depth = new int[capacity];
+		int[] first = new int[capacity + 1];
+		int[] start = new int[capacity + 1];
+		StringBuilder sb = new StringBuilder();
+		BitSet term = new BitSet();
+
+		int count = 1;
+		lo[0] = 0;
+		hi[0] = n;
+		depth[0] = 0;
+		if (n > 0 && keys[0].length() == 0) {
+			term.set(0);
+			lo[0] = 1;
+		}
+		for (int node = 0; node < count; node++) {
+			first[node] = count;
+			int l = lo[node];
+			final int h = hi[node];
+			final int d = depth[node];
+			while (l < h) {
+				final char c = keys[l].charAt(d);
+				int e = l + 1;
+				while (e < h && keys[e].charAt(d) == c) {
+					e++;
+				}
+				int cp = commonPrefixLength(keys[l], keys[e - 1], d + 1);
+				if (count == lo.length) {
+					capacity = count * 2;
+					lo = Arrays.copyOf(lo, capacity);
+					hi = Arrays.copyOf(hi, capacity);
+					depth = Arrays.copyOf(depth, capacity);
+					first = Arrays.copyOf(first, capacity + 1);
+					start = Arrays.copyOf(start, capacity + 1);
+				}
+				int child = count++;
+				start[child] = sb.length();
+				sb.append(keys[l], d, cp);
+				lo[child] = l;
+				hi[child] = e;
+				depth[child] = cp;
+				// keys are sorted, so a key ending here comes first
+				if (keys[l].length() == cp) {
+					term.set(child);
+					lo[child] = l + 1;
+				}
+				l = e;
+			}
+		}
+		first[count] = count;
+		start[count] = sb.length();
+
+		firstChild = Arrays.copyOf(first, count + 1);
+		labelStart = Arrays.copyOf(start, count + 1);
+		labels = new char[sb.length()];
+		sb.getChars(0, sb.length(), labels, 0);
+		terminal = term;
+	}
+
+	private static int commonPrefixLength(String a, String b, int from) {
+		final int len = Math.min(a.length(), b.length());
+		int i = from;
+		while (i < len && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return number of distinct SURTs in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param surt SURT of the URL being checked
+	 * @return {@code true} if any of the search strings
+	 * {@code new SURTTokenizer(surt, true)} generates is in this set.
+	 */
+	public boolean containsSearchOf(String surt) {
+		final int len = surt.length();
+		int node = 0;
+		// number of chars of surt (followed by EXACT_SUFFIX) matched
+		int pos = 0;
+		while (true) {
+			if (terminal.get(node)) {
+				if (pos > len || isSearchLength(surt, pos)) {
+					return true;
+				}
+			}
+			if (pos > len) {
+				return false;
+			}
+			final char c = pos < len ? surt.charAt(pos) : EXACT_SUFFIX;
+			int child = findChild(node, c);
+			if (child < 0) {
+				return false;
+			}
+			pos++;
+			final int end = labelStart[child + 1];
+			for (int i = labelStart[child] + 1; i < end; i++, pos++) {
+				if (pos > len) {
+					return false;
+				}
+				final char lc = pos < len ? surt.charAt(pos) : EXACT_SUFFIX;
+				if (labels[i] != lc) {
+					return false;
+				}
+			}
+			node = child;
+		}
+	}
+
+	private int findChild(int node, char c) {
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char mc = labels[labelStart[mid]];
+			if (mc < c) {
+				low = mid + 1;
+			} else if (mc > c) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Test if {@code surt.substring(0, length)} is one of the strings
+	 * {@link SURTTokenizer#nextSearch()} returns for {@code surt}
+	 * (other than the first, exact one). Follows the same steps over
+	 * the end offset of the remaining string, instead of substrings.
+	 * @param surt SURT
+	 * @param length prefix length
+	 * @return {@code true} if it is
+	 */
+	static boolean isSearchLength(String surt, int length) {
+		int end = surt.length();
+		// full
+		if (length == end) {
+			return true;
+		}
+		final boolean choppedPath = surt.endsWith(")/");
+		// CGI ARGs
+		int argStart = surt.indexOf('?');
+		if (argStart != -1) {
+			end = argStart;
+			if (length == end) {
+				return true;
+			}
+		}
+		// path segments
+		if (!choppedPath) {
+			while (true) {
+				int lastSlash = surt.lastIndexOf('/', end - 1);
+				if (lastSlash == -1) {
+					break;
+				}
+				final boolean afterParen = lastSlash > 0 &&
+						surt.charAt(lastSlash - 1) == ')';
+				if (lastSlash == end - 1) {
+					if (afterParen) {
+						if (length == end) {
+							return true;
+						}
+						end = lastSlash - 1;
+						break;
+					}
+					end = lastSlash;
+					if (length == end) {
+						return true;
+					}
+				} else if (afterParen) {
+					if (length == lastSlash + 1) {
+						return true;
+					}
+					end = lastSlash - 1;
+				} else {
+					end = lastSlash;
+					if (length == end) {
+						return true;
+					}
+				}
+			}
+		}
+		// login
+		int lastAt = surt.lastIndexOf('@', end - 1);
+		if (lastAt != -1) {
+			if (length == end) {
+				return true;
+			}
+			end = lastAt;
+		}
+		// port
+		int lastColon = surt.lastIndexOf(':', end - 1);
+		if (lastColon != -1 && length == end) {
+			return true;
+		}
+		// authority segments
+		while (true) {
+			int lastComma = surt.lastIndexOf(',', end - 1);
+			// only shorter prefixes from here on
+			if (lastComma < length) {
+				return false;
+			}
+			end = lastComma;
+			if (length == end) {
+				return true;
+			}
+		}
+	}
+}
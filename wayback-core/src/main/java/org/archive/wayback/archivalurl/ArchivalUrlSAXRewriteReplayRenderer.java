@@ -21,6 +21,8 @@ package org.archive.wayback.archivalurl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -36,6 +38,7 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.WaybackException;
+import org.archive.wayback.replay.ContentProbe;
 import org.archive.wayback.proxy.ProxyHttpsReplayURIConverter;
 import org.archive.wayback.replay.HttpHeaderOperation;
 import org.archive.wayback.replay.HttpHeaderProcessor;
@@ -43,11 +46,14 @@ import org.archive.wayback.replay.JSPExecutor;
 import org.archive.wayback.replay.ReplayURLTransformer;
 import org.archive.wayback.replay.TagMagix;
 import org.archive.wayback.replay.TextReplayRenderer;
+import org.archive.wayback.replay.ThresholdOutputStream;
 import org.archive.wayback.replay.charset.CharsetDetector;
 import org.archive.wayback.replay.charset.StandardCharsetDetector;
 import org.archive.wayback.replay.html.ContextResultURIConverterFactory;
 import org.archive.wayback.replay.html.ReplayParseContext;
+import org.archive.wayback.util.BufferPool;
 import org.archive.wayback.util.htmllex.ContextAwareLexer;
+import org.archive.wayback.util.htmllex.IncrementalLexer;
 import org.archive.wayback.util.htmllex.ParseEventHandler;
 import org.archive.wayback.webapp.AccessPoint;
 import org.htmlparser.Node;
@@ -73,6 +79,8 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 	private ContextResultURIConverterFactory converterFactory = null;
 	@Deprecated
 	private boolean rewriteHttpsOnly;
+	private int streamingThreshold = 0;
+	private boolean incrementalLexer = false;
 	
 	private final static String OUTPUT_CHARSET = "utf-8";
 	private static int FRAMESET_SCAN_BUFFER_SIZE = 16 * 1024;
@@ -143,15 +151,31 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 
 		if (!wbRequest.isFrameWrapperContext()) {
 			// in case this is an HTML page with FRAMEs, peek ahead an look:
-			// TODO: make ThreadLocal:
-			byte buffer[] = new byte[FRAMESET_SCAN_BUFFER_SIZE];
-
-			decodedResource.mark(FRAMESET_SCAN_BUFFER_SIZE);
-			int amtRead = decodedResource.read(buffer);
-			decodedResource.reset();
+			StringBuilder foo = null;
+			ContentProbe probe = ContentProbe.getCached(wbRequest, decodedResource);
+			if (probe != null) {
+				// already read by charset detection
+				int amtRead = Math.min(probe.getLength(), FRAMESET_SCAN_BUFFER_SIZE);
+				if (amtRead > 0) {
+					foo = new StringBuilder(new String(probe.getBytes(), 0,
+						amtRead, charSet));
+				}
+			} else {
+				byte buffer[] = BufferPool.takeBytes(FRAMESET_SCAN_BUFFER_SIZE);
+				try {
+					decodedResource.mark(FRAMESET_SCAN_BUFFER_SIZE);
+					int amtRead = decodedResource.read(buffer);
+					decodedResource.reset();
+					if (amtRead > 0) {
+						foo = new StringBuilder(new String(buffer, 0, amtRead,
+							charSet));
+					}
+				} finally {
+					BufferPool.releaseBytes(buffer);
+				}
+			}
 
-			if(amtRead > 0) {
-				StringBuilder foo = new StringBuilder(new String(buffer,charSet));
+			if(foo != null) {
 				int frameIdx = TagMagix.getEndOfFirstTag(foo, "FRAMESET");
 				if(frameIdx != -1) {
 					// insert flag so we don't add FRAMESET:
@@ -183,19 +207,47 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 		JSPExecutor jspExec = new JSPExecutor(httpRequest, httpResponse, uiResults);
 
 		// To make sure we get the length, we have to buffer it all up...
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		// unless it grows beyond streamingThreshold.
+		final Map<String, String> outHeaders = headers;
+		final HttpServletResponse response = httpResponse;
+		final String guessedCharset = charSet;
+		OutputStream outputStream;
+		ThresholdOutputStream tos = null;
+		if (streamingThreshold > 0) {
+			tos = new ThresholdOutputStream(streamingThreshold) {
+				@Override
+				protected OutputStream startStreaming() throws IOException {
+					removeContentLength(outHeaders);
+					outHeaders.put(TextReplayRenderer.GUESSED_CHARSET_HEADER,
+						guessedCharset);
+					HttpHeaderOperation.sendHeaders(outHeaders, response);
+					response.setCharacterEncoding(OUTPUT_CHARSET);
+					return response.getOutputStream();
+				}
+			};
+			outputStream = tos;
+		} else {
+			outputStream = new ByteArrayOutputStream();
+		}
 
 		context.setOutputCharset(OUTPUT_CHARSET);
-		context.setOutputStream(baos);
+		context.setOutputStream(outputStream);
 		context.setJspExec(jspExec);
 
 
 		// and finally, parse, using the special lexer that knows how to
 		// handle javascript blocks containing unescaped HTML entities:
-		Page lexPage = new Page(decodedResource,charSet);
-		Lexer lexer = new Lexer(lexPage);
-		Lexer.STRICT_REMARKS = false;
-		ContextAwareLexer lex = new ContextAwareLexer(lexer, context);
+		ContextAwareLexer lex;
+		IncrementalLexer incLexer = null;
+		if (incrementalLexer) {
+			incLexer = new IncrementalLexer(decodedResource, charSet);
+			lex = new ContextAwareLexer(incLexer, context);
+		} else {
+			Page lexPage = new Page(decodedResource,charSet);
+			Lexer lexer = new Lexer(lexPage);
+			Lexer.STRICT_REMARKS = false;
+			lex = new ContextAwareLexer(lexer, context);
+		}
 		Node node;
 		try {
 			delegator.handleParseStart(context);
@@ -203,13 +255,29 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 				delegator.handleNode(context, node);
 			}
 			delegator.handleParseComplete(context);
+			if (tos != null && tos.isStreaming()) {
+				tos.flush();
+				return;
+			}
 		} catch (ParserException e) {
 			e.printStackTrace();
 			throw new IOException(e.getMessage());
+		} catch (IOException ex) {
+			if (tos != null && tos.isOutputError()) {
+				// probably client has closed connection
+				LOGGER.info("error writing response: " + ex);
+				return;
+			}
+			throw ex;
+		} finally {
+			if (incLexer != null)
+				incLexer.close();
 		}
 
-		// At this point, baos contains the utf-8 encoded bytes of our result:
-		byte[] utf8Bytes = baos.toByteArray();
+		// At this point, outputStream contains the utf-8 encoded bytes of our
+		// result:
+		byte[] utf8Bytes = tos != null ? tos.toByteArray()
+				: ((ByteArrayOutputStream)outputStream).toByteArray();
 		// set the corrected length:
 		headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER, 
 				String.valueOf(utf8Bytes.length));
@@ -231,6 +299,15 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 		}
 	}
 
+	private static void removeContentLength(Map<String, String> headers) {
+		Iterator<String> it = headers.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().equalsIgnoreCase(HttpHeaderOperation.HTTP_LENGTH_HEADER)) {
+				it.remove();
+			}
+		}
+	}
+
 	// Cannot get rid of this method for backward-compatibility. There's at least
 	// one class known to override this method. Wait until next major release.
 	/**
@@ -260,6 +337,46 @@ public class ArchivalUrlSAXRewriteReplayRenderer implements ReplayRenderer {
 		this.charsetDetector = charsetDetector;
 	}
 
+	public int getStreamingThreshold() {
+		return streamingThreshold;
+	}
+
+	/**
+	 * Set the maximum size of rewritten output to buffer, in bytes.
+	 * <p>
+	 * Rewritten page is normally buffered in memory in whole, so that
+	 * {@code Content-Length} can be sent. If positive, output is buffered
+	 * only up to this size. Once it grows larger, headers are sent without
+	 * {@code Content-Length}, and the rest of the page is streamed to the
+	 * client (with chunked transfer encoding) as it is rewritten. This cuts
+	 * heap usage and time-to-first-byte for large pages.
+	 * </p>
+	 * <p>Initial value is {@code 0} (always buffer whole page).</p>
+	 * @param streamingThreshold threshold in bytes, or {@code 0}
+	 */
+	public void setStreamingThreshold(int streamingThreshold) {
+		this.streamingThreshold = streamingThreshold;
+	}
+
+	public boolean isIncrementalLexer() {
+		return incrementalLexer;
+	}
+
+	/**
+	 * Use {@link IncrementalLexer} instead of htmlparser {@code Lexer}
+	 * for tokenizing the page.
+	 * <p>
+	 * {@code IncrementalLexer} reads the page through a small sliding
+	 * window rather than decoding the whole page into memory first, and
+	 * produces the same Nodes for handlers.
+	 * </p>
+	 * <p>Initial value is {@code false} (use htmlparser {@code Lexer}).</p>
+	 * @param incrementalLexer {@code true} to use {@code IncrementalLexer}
+	 */
+	public void setIncrementalLexer(boolean incrementalLexer) {
+		this.incrementalLexer = incrementalLexer;
+	}
+
 	/**
 	 * @return the delegator
 	 */
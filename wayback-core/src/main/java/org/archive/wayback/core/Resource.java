@@ -22,6 +22,7 @@ package org.archive.wayback.core;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -93,6 +94,40 @@ public abstract class Resource extends InputStream {
 		//Implemented in warc/arc reader
 	}
 
+	/**
+	 * return the number of bytes in the payload as stored, i.e. bytes
+	 * following HTTP header (not including the HTTP header itself).
+	 * Default implementation returns {@code -1}.
+	 * @return payload size in bytes, or {@code -1} if unknown
+	 */
+	public long getPayloadLength() {
+		return -1;
+	}
+
+	/**
+	 * return {@link FileChannel} of local file in which payload is
+	 * stored verbatim (i.e. uncompressed, and not chunk-encoded),
+	 * for transferring payload bytes without reading them through
+	 * this InputStream. Payload starts at {@link #getPayloadOffset()}
+	 * and is {@link #getPayloadLength()} bytes long, regardless of
+	 * how many bytes have been read from this Resource.
+	 * Default implementation returns {@code null}.
+	 * @return FileChannel, or {@code null} if not available
+	 */
+	public FileChannel getPayloadChannel() {
+		return null;
+	}
+
+	/**
+	 * return offset of the first payload byte in
+	 * {@link #getPayloadChannel()}.
+	 * Default implementation returns {@code -1}.
+	 * @return file offset, or {@code -1} if payload channel is not available
+	 */
+	public long getPayloadOffset() {
+		return -1;
+	}
+
 	public String getHeader(String headerName) {
 		Map<String, String> httpHeaders = getHttpHeaders();
 
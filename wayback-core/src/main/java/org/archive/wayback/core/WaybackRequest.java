@@ -33,6 +33,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.archive.wayback.exception.BadQueryException;
 import org.archive.wayback.memento.MementoUtils;
+import org.archive.wayback.replay.ContentProbe;
 import org.archive.wayback.requestparser.OpenSearchRequestParser;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
@@ -88,6 +89,13 @@ public class WaybackRequest {
 	 * and possibly variable filters.
 	 */
 	private ObjectFilterChain<CaptureSearchResult> resultFilters = null;
+
+	/**
+	 * first bytes of the capture being replayed, along with content
+	 * sniffing results, shared by mime-type and charset detection.
+	 * Not copied by {@link #clone()}.
+	 */
+	private ContentProbe contentProbe = null;
 	
 	
 	/**
@@ -602,6 +610,21 @@ public class WaybackRequest {
 		this.exclusionFilter = exclusionFilter;
 	}
 
+	/**
+	 * @return ContentProbe of the capture being replayed, or {@code null}
+	 * @see ContentProbe#get(WaybackRequest, Resource)
+	 */
+	public ContentProbe getContentProbe() {
+		return contentProbe;
+	}
+
+	/**
+	 * @param contentProbe ContentProbe of the capture being replayed
+	 */
+	public void setContentProbe(ContentProbe contentProbe) {
+		this.contentProbe = contentProbe;
+	}
+
 	public void setResultFilters(ObjectFilterChain<CaptureSearchResult> resultFilters) {
 		this.resultFilters = resultFilters;
 	}
@@ -0,0 +1,45 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.liveweb;
+
+import java.util.List;
+import java.util.Map;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.exception.LiveWebCacheUnavailableException;
+
+/**
+ * {@link LiveWebCache} that can look up many URLs in its cache at once.
+ */
+public interface BatchLiveWebCache extends LiveWebCache {
+	/**
+	 * Look up cached Resources for {@code urls} in one batch, without
+	 * fetching anything from the live web. URLs not in the map returned
+	 * shall be retrieved with
+	 * {@link #getCachedResource(java.net.URL, long, boolean)} as usual.
+	 *
+	 * @param urls URLs to look up
+	 * @return map from URL (as given in {@code urls}) to Resource. Cached
+	 *         failures are represented by Resources with non-200 status code.
+	 * @throws LiveWebCacheUnavailableException if the cache is unavailable
+	 */
+	public Map<String, Resource> getCachedResources(List<String> urls)
+			throws LiveWebCacheUnavailableException;
+}
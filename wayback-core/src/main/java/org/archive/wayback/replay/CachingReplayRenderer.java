@@ -0,0 +1,423 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.archive.wayback.ReplayRenderer;
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.WaybackException;
+import org.archive.wayback.webapp.AccessPoint;
+
+/**
+ * {@link ReplayRendererDecorator} that caches responses generated by
+ * decorated {@link ReplayRenderer} in {@link RenderedResponseCache}.
+ * <p>
+ * Archived captures never change, so the rewritten response is a function of
+ * the capture (file and offset of the record), replay context flags
+ * ({@code cs_}, {@code js_}, {@code im_} etc.), the replay URL prefix and the
+ * rewrite directive for the capture. Those make the cache key
+ * (see {@link #getCacheKey(WaybackRequest, CaptureSearchResult, ResultURIConverter)}).
+ * </p>
+ * <p>
+ * Only {@code GET} requests without {@code Range} header are served from
+ * and stored to the cache. Responses generated with {@code sendError} or
+ * {@code sendRedirect}, those whose body exceeds
+ * {@link RenderedResponseCache#getMaxEntryBytes()}, and those that failed to
+ * be written to the client completely are not cached. Decorated renderers
+ * may swallow {@code IOException} (client closing connection, for example)
+ * and return normally, so the response is also dropped when writing to the
+ * client fails, or its body length does not match {@code Content-Length}.
+ * </p>
+ * <p>
+ * Note that everything decorated renderer writes is cached, including output
+ * of JSP inserts (banner etc.), and headers depending on other captures
+ * (ex. Memento {@code Link}). Decorate renderers whose output may vary by
+ * request only if such staleness is acceptable.
+ * </p>
+ */
+public class CachingReplayRenderer extends ReplayRendererDecorator {
+
+	private RenderedResponseCache cache = null;
+
+	public CachingReplayRenderer() {
+	}
+
+	public CachingReplayRenderer(ReplayRenderer decorated,
+			RenderedResponseCache cache) {
+		super(decorated);
+		this.cache = cache;
+	}
+
+	public RenderedResponseCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Cache to use. Typically shared by all CachingReplayRenderers.
+	 * If {@code null}, rendering is simply delegated.
+	 * @param cache RenderedResponseCache
+	 */
+	public void setCache(RenderedResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public void renderResource(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse, WaybackRequest wbRequest,
+			CaptureSearchResult result, Resource resource,
+			ResultURIConverter uriConverter, CaptureSearchResults results)
+			throws ServletException, IOException, WaybackException {
+		renderResource(httpRequest, httpResponse, wbRequest, result, resource,
+			resource, uriConverter, results);
+	}
+
+	@Override
+	public void renderResource(HttpServletRequest httpRequest,
+			HttpServletResponse httpResponse, WaybackRequest wbRequest,
+			CaptureSearchResult result, Resource httpHeadersResource,
+			Resource payloadResource, ResultURIConverter uriConverter,
+			CaptureSearchResults results) throws ServletException,
+			IOException, WaybackException {
+		String key = null;
+		if (cache != null && isCacheable(httpRequest))
+			key = getCacheKey(wbRequest, result, uriConverter);
+		if (key == null) {
+			decorated.renderResource(httpRequest, httpResponse, wbRequest,
+				result, httpHeadersResource, payloadResource, uriConverter,
+				results);
+			return;
+		}
+		RenderedResponse cached = cache.get(key);
+		if (cached != null) {
+			cached.sendTo(httpResponse);
+			return;
+		}
+		CapturingResponseWrapper capture = new CapturingResponseWrapper(
+			httpResponse, cache.getMaxEntryBytes());
+		decorated.renderResource(httpRequest, capture, wbRequest, result,
+			httpHeadersResource, payloadResource, uriConverter, results);
+		RenderedResponse rendered = capture.getRenderedResponse();
+		if (rendered != null)
+			cache.put(key, rendered);
+	}
+
+	/**
+	 * Test if response to {@code httpRequest} can be cached.
+	 * @param httpRequest incoming request
+	 * @return {@code true} for {@code GET} request without {@code Range}
+	 */
+	protected boolean isCacheable(HttpServletRequest httpRequest) {
+		if (httpRequest == null)
+			return false;
+		return "GET".equals(httpRequest.getMethod()) &&
+				httpRequest.getHeader("Range") == null;
+	}
+
+	/**
+	 * Build cache key for replaying {@code result}.
+	 * @param wbRequest replay request
+	 * @param result capture being replayed
+	 * @param uriConverter URI converter used for rewriting
+	 * @return cache key, or {@code null} if response shall not be cached
+	 */
+	protected String getCacheKey(WaybackRequest wbRequest,
+			CaptureSearchResult result, ResultURIConverter uriConverter) {
+		String file = result.getFile();
+		if (file == null)
+			return null;
+		StringBuilder sb = new StringBuilder();
+		sb.append(file).append(' ').append(result.getOffset()).append(' ');
+		if (wbRequest.isCSSContext()) sb.append("cs_");
+		if (wbRequest.isJSContext()) sb.append("js_");
+		if (wbRequest.isIMGContext()) sb.append("im_");
+		if (wbRequest.isObjectEmbedContext()) sb.append("oe_");
+		if (wbRequest.isIdentityContext()) sb.append("id_");
+		if (wbRequest.isFrameWrapperContext()) sb.append("fw_");
+		if (wbRequest.isIFrameWrapperContext()) sb.append("if_");
+		sb.append(' ');
+		if (uriConverter != null) {
+			// captures the replay URL prefix, regardless of the type of
+			// URI converter.
+			sb.append(uriConverter.makeReplayURI(
+				result.getCaptureTimestamp(), result.getOriginalUrl()));
+		}
+		sb.append(' ');
+		String policy = result.getOraclePolicy();
+		if (policy == null) {
+			AccessPoint accessPoint = wbRequest.getAccessPoint();
+			if (accessPoint != null)
+				policy = accessPoint.getRewriteDirective(result);
+		}
+		if (policy != null)
+			sb.append(policy);
+		return sb.toString();
+	}
+
+	/**
+	 * Passes everything through to the wrapped response, recording status,
+	 * headers and body (up to {@code maxBytes}).
+	 */
+	private static class CapturingResponseWrapper extends HttpServletResponseWrapper {
+		private final int maxBytes;
+		private int status = SC_OK;
+		private boolean cacheable = true;
+		// last Content-Length set, or -1
+		private long contentLength = -1;
+		private final List<RenderedResponse.Header> headers =
+			new ArrayList<RenderedResponse.Header>();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private ServletOutputStream outputStream = null;
+		private PrintWriter writer = null;
+
+		public CapturingResponseWrapper(HttpServletResponse response,
+				int maxBytes) {
+			super(response);
+			this.maxBytes = maxBytes;
+		}
+
+		private void record(int op, String name, String value) {
+			headers.add(new RenderedResponse.Header(op, name, value));
+			if (op == RenderedResponse.CONTENT_LENGTH ||
+					"Content-Length".equalsIgnoreCase(name)) {
+				try {
+					contentLength = value == null ? -1 : Long.parseLong(value.trim());
+				} catch (NumberFormatException ex) {
+					cacheable = false;
+				}
+			}
+		}
+
+		/**
+		 * Mark response uncacheable if writing to the client failed.
+		 * It is likely truncated even if decorated renderer goes on.
+		 */
+		private IOException writeFailed(IOException ex) {
+			cacheable = false;
+			body.reset();
+			return ex;
+		}
+
+		/**
+		 * @return captured response, or {@code null} if it cannot be cached
+		 */
+		public RenderedResponse getRenderedResponse() {
+			if (writer != null) {
+				writer.flush();
+				// PrintWriter swallows IOException
+				if (writer.checkError())
+					cacheable = false;
+			}
+			if (!cacheable)
+				return null;
+			if (contentLength >= 0 && contentLength != body.size())
+				return null;
+			return new RenderedResponse(status, headers, body.toByteArray());
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+			super.setStatus(sc);
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public void setStatus(int sc, String sm) {
+			status = sc;
+			super.setStatus(sc, sm);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			cacheable = false;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			cacheable = false;
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			cacheable = false;
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			record(RenderedResponse.SET_HEADER, name, value);
+			super.setHeader(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			record(RenderedResponse.ADD_HEADER, name, value);
+			super.addHeader(name, value);
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			record(RenderedResponse.SET_DATE_HEADER, name, Long.toString(date));
+			super.setDateHeader(name, date);
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			record(RenderedResponse.ADD_DATE_HEADER, name, Long.toString(date));
+			super.addDateHeader(name, date);
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			record(RenderedResponse.SET_INT_HEADER, name, Integer.toString(value));
+			super.setIntHeader(name, value);
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			record(RenderedResponse.ADD_INT_HEADER, name, Integer.toString(value));
+			super.addIntHeader(name, value);
+		}
+
+		@Override
+		public void setContentType(String type) {
+			record(RenderedResponse.CONTENT_TYPE, null, type);
+			super.setContentType(type);
+		}
+
+		@Override
+		public void setCharacterEncoding(String charset) {
+			record(RenderedResponse.CHARACTER_ENCODING, null, charset);
+			super.setCharacterEncoding(charset);
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			record(RenderedResponse.CONTENT_LENGTH, null, Integer.toString(len));
+			super.setContentLength(len);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			status = SC_OK;
+			headers.clear();
+			contentLength = -1;
+			body.reset();
+		}
+
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			body.reset();
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null) {
+				final ServletOutputStream out = super.getOutputStream();
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						try {
+							out.write(b);
+						} catch (IOException ex) {
+							throw writeFailed(ex);
+						}
+						if (cacheable && checkCapacity(1))
+							body.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+							throws IOException {
+						try {
+							out.write(b, off, len);
+						} catch (IOException ex) {
+							throw writeFailed(ex);
+						}
+						capture(b, off, len);
+					}
+
+					@Override
+					public void flush() throws IOException {
+						try {
+							out.flush();
+						} catch (IOException ex) {
+							throw writeFailed(ex);
+						}
+					}
+
+					@Override
+					public void close() throws IOException {
+						try {
+							out.close();
+						} catch (IOException ex) {
+							throw writeFailed(ex);
+						}
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(
+					getOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		private void capture(byte[] b, int off, int len) {
+			if (cacheable && checkCapacity(len))
+				body.write(b, off, len);
+		}
+
+		private boolean checkCapacity(int len) {
+			if (body.size() + len > maxBytes) {
+				// too large - stop capturing
+				cacheable = false;
+				body.reset();
+				return false;
+			}
+			return true;
+		}
+	}
+}
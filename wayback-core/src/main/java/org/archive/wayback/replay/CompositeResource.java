@@ -4,6 +4,7 @@
 package org.archive.wayback.replay;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
 import org.archive.wayback.core.Resource;
@@ -29,6 +30,20 @@ public class CompositeResource extends Resource {
 		this.headersResource = headersResource;
 		this.payloadResource = payloadResource;
 	}
+
+	/**
+	 * @return Resource providing HTTP headers
+	 */
+	public Resource getHeadersResource() {
+		return headersResource;
+	}
+
+	/**
+	 * @return Resource providing HTTP response entity
+	 */
+	public Resource getPayloadResource() {
+		return payloadResource;
+	}
 	/* (non-Javadoc)
 	 * @see org.archive.wayback.core.Resource#close()
 	 */
@@ -84,6 +99,18 @@ public class CompositeResource extends Resource {
 			return headersResource.getHeader(headerName);
 	}
 	@Override
+	public long getPayloadLength() {
+		return payloadResource.getPayloadLength();
+	}
+	@Override
+	public FileChannel getPayloadChannel() {
+		return payloadResource.getPayloadChannel();
+	}
+	@Override
+	public long getPayloadOffset() {
+		return payloadResource.getPayloadOffset();
+	}
+	@Override
 	public void setChunkedEncoding() throws IOException {
 		payloadResource.setChunkedEncoding();
 	}
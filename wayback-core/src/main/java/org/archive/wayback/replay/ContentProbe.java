@@ -0,0 +1,385 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.util.BufferPool;
+
+/**
+ * First bytes of decoded payload of a capture, read once and shared by
+ * content sniffers (mime-type detection, character encoding detection),
+ * along with sniffing results.
+ * <p>
+ * Without this, {@link org.archive.wayback.replay.mimetype.MimeTypeDetector}
+ * run by {@link SelectorReplayDispatcher}, and each
+ * {@link org.archive.wayback.replay.charset.EncodingSniffer} run by
+ * the renderer, do their own {@code mark/read/reset} (and decompression)
+ * of the same prefix.
+ * </p>
+ * <p>
+ * ContentProbe is associated with the payload {@link Resource} it is made
+ * for, and cached in {@link WaybackRequest} by {@link #get(WaybackRequest, Resource)}.
+ * Wrappers of the payload Resource ({@link CompositeResource} and
+ * {@link DecodingResource}) share the same ContentProbe.
+ * </p>
+ * <p>
+ * ContentProbe is not thread-safe. It is meant to be used within processing
+ * of single request.
+ * </p>
+ */
+public class ContentProbe {
+	/**
+	 * default number of bytes to read.
+	 * large enough for all standard sniffers.
+	 */
+	public static final int DEFAULT_PROBE_SIZE = 131072;
+
+	/**
+	 * sniffing result key for charset by Byte Order Mark.
+	 */
+	public static final String BOM_CHARSET = "bomCharset";
+	/**
+	 * sniffing result key for charset declared in {@code META} tag.
+	 */
+	public static final String META_CHARSET = "metaCharset";
+	/**
+	 * sniffing result key for charset detected by statistical analysis.
+	 */
+	public static final String DETECTED_CHARSET = "detectedCharset";
+	/**
+	 * sniffing result key for mime-type detected from content.
+	 */
+	public static final String MIME_TYPE = "mimeType";
+
+	// for compressed payload: deflate adds a few bytes per block
+	// at most, plus gzip header.
+	private static final int COMPRESSED_READLIMIT_MARGIN = 8192;
+
+	private final Resource payloadResource;
+	private final int probeSize;
+	private final byte[] bytes;
+	private boolean complete;
+	private final Map<String, String> results = new HashMap<String, String>();
+
+	/**
+	 * Read first {@link #DEFAULT_PROBE_SIZE} bytes of {@code resource}.
+	 * @param resource payload Resource.
+	 * @throws IOException error reading {@code resource}
+	 * @see #ContentProbe(Resource, int)
+	 */
+	public ContentProbe(Resource resource) throws IOException {
+		this(resource, DEFAULT_PROBE_SIZE);
+	}
+
+	/**
+	 * Read first {@code probeSize} bytes of {@code resource}'s
+	 * payload, and reset {@code resource}'s read position.
+	 * <p>
+	 * If {@code resource} is not a {@link DecodingResource} and has
+	 * {@code Content-Encoding} {@code gzip} or {@code deflate}, content
+	 * is decoded.
+	 * </p>
+	 * @param resource payload Resource, possibly wrapped in
+	 *   {@link CompositeResource} or {@link DecodingResource}.
+	 * @param probeSize maximum number of bytes to read.
+	 * @throws IOException error reading {@code resource}
+	 */
+	public ContentProbe(Resource resource, int probeSize) throws IOException {
+		this.payloadResource = getPayloadResource(resource);
+		this.probeSize = probeSize;
+		byte[] bbuffer = BufferPool.takeBytes(probeSize);
+		try {
+			int len;
+			if (resource instanceof DecodingResource) {
+				len = readAhead(resource, bbuffer, probeSize);
+				complete = len < probeSize;
+			} else {
+				len = readAheadDecoded(payloadResource, bbuffer);
+			}
+			bytes = Arrays.copyOf(bbuffer, len);
+		} finally {
+			BufferPool.releaseBytes(bbuffer);
+		}
+	}
+
+	private static boolean isDecodable(String encoding) {
+		if (encoding == null)
+			return false;
+		String lcEncoding = encoding.toLowerCase();
+		return lcEncoding.equals(GzipDecodingResource.GZIP) ||
+				lcEncoding.equals("x-gzip") ||
+				lcEncoding.equals(InflatingResource.CONTENT_ENCODING_NAME);
+	}
+
+	/**
+	 * Test if reading {@code resource} returns payload compressed with
+	 * {@code Content-Encoding} which ContentProbe decodes.
+	 * @param resource payload Resource, possibly wrapped in
+	 *   {@link CompositeResource} or {@link DecodingResource}.
+	 * @return {@code true} if compressed
+	 */
+	public static boolean isEncoded(Resource resource) {
+		while (resource instanceof CompositeResource) {
+			resource = ((CompositeResource)resource).getPayloadResource();
+		}
+		if (resource instanceof DecodingResource)
+			return false;
+		return isDecodable(resource.getHeader(
+			HttpHeaderOperation.HTTP_CONTENT_ENCODING));
+	}
+
+	private int readAheadDecoded(Resource resource, byte[] bbuffer)
+			throws IOException {
+		String encoding = resource.getHeader(HttpHeaderOperation.HTTP_CONTENT_ENCODING);
+		if (isDecodable(encoding)) {
+			// Decoders make their own mark() on the source for sniffing
+			// the format, which would invalidate our mark on resource.
+			// Copy compressed prefix into memory and decode it.
+			int size = probeSize + COMPRESSED_READLIMIT_MARGIN;
+			byte[] compressed = BufferPool.takeBytes(size);
+			try {
+				int len = readAhead(resource, compressed, size);
+				Resource prefix = new PrefixResource(resource, compressed, len);
+				Resource decoder;
+				if (encoding.equalsIgnoreCase(InflatingResource.CONTENT_ENCODING_NAME))
+					decoder = new InflatingResource(prefix);
+				else
+					decoder = new GzipDecodingResource(prefix);
+				return readDecoded(decoder, bbuffer, len < size);
+			} finally {
+				BufferPool.releaseBytes(compressed);
+			}
+		}
+		int len = readAhead(resource, bbuffer, probeSize);
+		complete = len < probeSize;
+		return len;
+	}
+
+	/**
+	 * Decode up to {@code probeSize} bytes into {@code bbuffer}.
+	 * @param decoder decoder reading compressed prefix
+	 * @param wholeSource {@code true} if compressed prefix is the
+	 *   whole compressed payload
+	 * @return number of bytes decoded
+	 */
+	private int readDecoded(Resource decoder, byte[] bbuffer,
+			boolean wholeSource) throws IOException {
+		int len = 0;
+		try {
+			while (len < probeSize) {
+				int n = decoder.read(bbuffer, len, probeSize - len);
+				if (n < 0) {
+					complete = wholeSource;
+					break;
+				}
+				len += n;
+			}
+		} catch (EOFException ex) {
+			// compressed prefix ended in the middle of a block:
+			// payload is longer than len, even though len < probeSize.
+		}
+		return len;
+	}
+
+	private static int readAhead(Resource resource, byte[] bbuffer, int size)
+			throws IOException {
+		resource.mark(size);
+		int len = readFully(resource, bbuffer, size);
+		resource.reset();
+		return len;
+	}
+
+	private static int readFully(Resource resource, byte[] bbuffer, int size)
+			throws IOException {
+		// decoders return short reads
+		int len = 0;
+		while (len < size) {
+			int n = resource.read(bbuffer, len, size - len);
+			if (n < 0)
+				break;
+			len += n;
+		}
+		return len;
+	}
+
+	/**
+	 * In-memory copy of the first bytes of a compressed payload Resource.
+	 */
+	private static class PrefixResource extends Resource {
+		private final Resource source;
+
+		PrefixResource(Resource source, byte[] bytes, int len) {
+			this.source = source;
+			setInputStream(new ByteArrayInputStream(bytes, 0, len));
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public int getStatusCode() {
+			return source.getStatusCode();
+		}
+
+		@Override
+		public long getRecordLength() {
+			return source.getRecordLength();
+		}
+
+		@Override
+		public Map<String, String> getHttpHeaders() {
+			return source.getHttpHeaders();
+		}
+	}
+
+	/**
+	 * Return the payload Resource {@code resource} wraps.
+	 * @param resource Resource
+	 * @return payload Resource, or {@code resource} itself if it is not
+	 *   a wrapper.
+	 */
+	public static Resource getPayloadResource(Resource resource) {
+		while (true) {
+			if (resource instanceof CompositeResource) {
+				resource = ((CompositeResource)resource).getPayloadResource();
+			} else if (resource instanceof DecodingResource) {
+				resource = ((DecodingResource)resource).getSource();
+			} else {
+				return resource;
+			}
+		}
+	}
+
+	/**
+	 * Return ContentProbe for {@code resource} cached in {@code wbRequest},
+	 * or read a new one and cache it.
+	 * @param wbRequest WaybackRequest, may be {@code null} (no caching).
+	 * @param resource payload Resource
+	 * @return ContentProbe
+	 * @throws IOException error reading {@code resource}
+	 */
+	public static ContentProbe get(WaybackRequest wbRequest, Resource resource)
+			throws IOException {
+		ContentProbe probe = getCached(wbRequest, resource);
+		if (probe == null) {
+			probe = new ContentProbe(resource);
+			if (wbRequest != null)
+				wbRequest.setContentProbe(probe);
+		}
+		return probe;
+	}
+
+	/**
+	 * Return ContentProbe for {@code resource} if cached in
+	 * {@code wbRequest}. This method never reads {@code resource}.
+	 * @param wbRequest WaybackRequest, may be {@code null}.
+	 * @param resource payload Resource
+	 * @return ContentProbe, or {@code null}
+	 */
+	public static ContentProbe getCached(WaybackRequest wbRequest,
+			Resource resource) {
+		if (wbRequest == null)
+			return null;
+		ContentProbe probe = wbRequest.getContentProbe();
+		if (probe != null && probe.isFor(resource))
+			return probe;
+		return null;
+	}
+
+	/**
+	 * Test if this ContentProbe is made for {@code resource}.
+	 * @param resource payload Resource, possibly wrapped.
+	 * @return {@code true} if {@code resource} has the same payload
+	 */
+	public boolean isFor(Resource resource) {
+		return payloadResource == getPayloadResource(resource);
+	}
+
+	/**
+	 * Content bytes read. Callers must not modify the array.
+	 * @return byte array, which may be shorter than probe size.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of bytes read
+	 */
+	public int getLength() {
+		return bytes.length;
+	}
+
+	/**
+	 * @return number of bytes requested. {@link #getLength()} can be
+	 *   smaller than this without the probe having the whole payload
+	 *   (compressed payload is decoded from a fixed-size prefix).
+	 *   Use {@link #isComplete()} to test for that.
+	 */
+	public int getProbeSize() {
+		return probeSize;
+	}
+
+	/**
+	 * Test if the probe has the whole (decoded) payload.
+	 * @return {@code true} if the payload ended within the probe,
+	 *   {@code false} if it is longer, or it is compressed and did not
+	 *   fit in the compressed read-ahead buffer.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Test if sniffing result for {@code key} is recorded (it may be
+	 * {@code null}).
+	 * @param key sniffing result key, like {@link #BOM_CHARSET}
+	 * @return {@code true} if recorded
+	 */
+	public boolean isSniffed(String key) {
+		return results.containsKey(key);
+	}
+
+	/**
+	 * @param key sniffing result key, like {@link #BOM_CHARSET}
+	 * @return sniffing result, or {@code null}
+	 */
+	public String getSniffResult(String key) {
+		return results.get(key);
+	}
+
+	/**
+	 * Record sniffing result.
+	 * @param key sniffing result key, like {@link #BOM_CHARSET}
+	 * @param value sniffing result, can be {@code null} (nothing detected)
+	 */
+	public void setSniffResult(String key, String value) {
+		results.put(key, value);
+	}
+}
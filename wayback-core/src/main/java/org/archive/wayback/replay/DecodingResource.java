@@ -37,6 +37,13 @@ public abstract class DecodingResource extends Resource {
 		this.source = source;
 	}
 
+	/**
+	 * @return Resource providing encoded content
+	 */
+	public Resource getSource() {
+		return source;
+	}
+
 	@Override
 	public long getRecordLength() {
 		return source.getRecordLength();
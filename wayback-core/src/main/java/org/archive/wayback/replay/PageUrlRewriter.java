@@ -0,0 +1,361 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+
+import org.archive.wayback.ResultURIConverter;
+
+/**
+ * Rewrites URLs in tag attributes and CSS of a text document in a single
+ * scan, as a replacement for a series of {@link TagMagix} passes:
+ * <ul>
+ * <li>{@link TagMagix#markupTagREURIC(StringBuilder, ResultURIConverter, String, String, String, String)}
+ * for each tag-attribute pair</li>
+ * <li>{@link TagMagix#markupCSSImports(StringBuilder, ResultURIConverter, String, String)}</li>
+ * <li>{@link TagMagix#markupStyleUrls(StringBuilder, ResultURIConverter, String, String)}</li>
+ * </ul>
+ * <p>
+ * Tag-attribute sites are located with the same rules as {@link TagMagix}
+ * regular expressions (the last matching attribute in each tag, with
+ * quoted, apostrophed, escaped-quoted or bare value), and CSS {@code url()} and
+ * {@code @import} with the same patterns, but all sites are found in one scan
+ * of the original text, and rewritten output is built into a new buffer.
+ * {@code url()} in {@code style} attributes is rewritten just once, as part of
+ * CSS rewrite over the whole document.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared among threads.
+ * </p>
+ */
+public class PageUrlRewriter {
+
+	/**
+	 * Tag-attribute rule.
+	 */
+	private static class Rule {
+		final int index;
+		final char[] attrName;
+
+		Rule(int index, String attrName) {
+			this.index = index;
+			this.attrName = attrName.toLowerCase().toCharArray();
+		}
+	}
+
+	private final int numRules;
+	// lower-cased tag name -> rules
+	private final Map<String, Rule[]> tagRules = new HashMap<String, Rule[]>();
+	// rules for any tag
+	private final Rule[] anyTagRules;
+
+	/**
+	 * Initialize with tag-attribute pairs.
+	 * @param tagAttrs array of {tag-name, attribute-name}, in the same form as
+	 * passed to {@code TagMagix.markupTagREURIC()}. Tag name may be
+	 * {@link TagMagix#ANY_TAGNAME}.
+	 */
+	public PageUrlRewriter(String[][] tagAttrs) {
+		Map<String, List<Rule>> rules = new HashMap<String, List<Rule>>();
+		List<Rule> anyRules = new ArrayList<Rule>();
+		int index = 0;
+		for (String[] tagAttr : tagAttrs) {
+			Rule rule = new Rule(index++, tagAttr[1]);
+			if (TagMagix.ANY_TAGNAME.equals(tagAttr[0])) {
+				anyRules.add(rule);
+			} else {
+				String tag = tagAttr[0].toLowerCase();
+				List<Rule> list = rules.get(tag);
+				if (list == null) {
+					list = new ArrayList<Rule>();
+					rules.put(tag, list);
+				}
+				list.add(rule);
+			}
+		}
+		for (Map.Entry<String, List<Rule>> entry : rules.entrySet()) {
+			List<Rule> list = entry.getValue();
+			list.addAll(anyRules);
+			tagRules.put(entry.getKey(), list.toArray(new Rule[list.size()]));
+		}
+		this.anyTagRules = anyRules.toArray(new Rule[anyRules.size()]);
+		this.numRules = index;
+	}
+
+	/**
+	 * Rewrite URLs in {@code page}.
+	 * @param page text of the document
+	 * @param tagConverter converter for URLs in tag attributes
+	 * @param cssConverter converter for URLs in CSS, or {@code null} for
+	 *        skipping CSS rewrite
+	 * @param captureDate capture timestamp
+	 * @param baseUrl base URL for resolving relative URLs, must be absolute
+	 * @return new buffer with rewritten text, or {@code page} itself if
+	 *         nothing was rewritten
+	 */
+	public StringBuilder rewrite(StringBuilder page,
+			ResultURIConverter tagConverter, ResultURIConverter cssConverter,
+			String captureDate, String baseUrl) {
+		final int len = page.length();
+		// start -> {end, index into replacements} of text to be replaced.
+		// tag attribute edits take precedence over CSS edits overlapping
+		// them, as TagMagix rewrites tags before CSS.
+		TreeMap<Integer, int[]> edits = new TreeMap<Integer, int[]>();
+		TreeMap<Integer, int[]> cssEdits = new TreeMap<Integer, int[]>();
+		List<String> replacements = new ArrayList<String>();
+
+		// for each rule, search resumes after the last attribute value found
+		int[] ruleNext = new int[numRules];
+		int importNext = 0;
+		int urlNext = 0;
+
+		Matcher importMatcher = null;
+		Matcher urlMatcher = null;
+		if (cssConverter != null) {
+			importMatcher = TagMagix.cssImportNoUrlPattern.matcher(page);
+			importMatcher.useTransparentBounds(true);
+			urlMatcher = TagMagix.cssUrlPattern.matcher(page);
+			urlMatcher.useTransparentBounds(true);
+		}
+
+		for (int i = 0; i < len; i++) {
+			final char c = page.charAt(i);
+			if (c == '<') {
+				rewriteTag(page, i, ruleNext, edits, replacements,
+					tagConverter, captureDate, baseUrl);
+			} else if (c == '@' && importMatcher != null && i >= importNext) {
+				importMatcher.region(i, len);
+				if (importMatcher.lookingAt()) {
+					importNext = importMatcher.end(1);
+					addEdit(page, importMatcher.start(1), importNext, cssEdits,
+						replacements, cssConverter, captureDate, baseUrl);
+				}
+			} else if ((c == 'u' || c == 'U') && urlMatcher != null &&
+					i >= urlNext && i + 2 < len &&
+					toLowerAscii(page.charAt(i + 1)) == 'r' &&
+					toLowerAscii(page.charAt(i + 2)) == 'l') {
+				urlMatcher.region(i, len);
+				if (urlMatcher.lookingAt()) {
+					urlNext = urlMatcher.end(1);
+					addEdit(page, urlMatcher.start(1), urlNext, cssEdits,
+						replacements, cssConverter, captureDate, baseUrl);
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, int[]> edit : cssEdits.entrySet()) {
+			if (!overlaps(edits, edit.getKey(), edit.getValue()[0])) {
+				edits.put(edit.getKey(), edit.getValue());
+			}
+		}
+		if (edits.isEmpty()) {
+			return page;
+		}
+		StringBuilder out = new StringBuilder(len + edits.size() * 64);
+		int copied = 0;
+		for (Map.Entry<Integer, int[]> edit : edits.entrySet()) {
+			int start = edit.getKey();
+			int[] v = edit.getValue();
+			out.append(page, copied, start);
+			out.append(replacements.get(v[1]));
+			copied = v[0];
+		}
+		out.append(page, copied, len);
+		return out;
+	}
+
+	/**
+	 * Register rewrite of {@code page[start:end]}, unless it overlaps
+	 * with another.
+	 */
+	private static void addEdit(StringBuilder page, int start, int end,
+			TreeMap<Integer, int[]> edits, List<String> replacements,
+			ResultURIConverter converter, String captureDate, String baseUrl) {
+		if (overlaps(edits, start, end)) {
+			return;
+		}
+		String replacement = TagMagix.replayAttrValue(
+			page.substring(start, end), converter, captureDate, baseUrl);
+		if (replacement != null) {
+			edits.put(start, new int[] { end, replacements.size() });
+			replacements.add(replacement);
+		}
+	}
+
+	private static boolean overlaps(TreeMap<Integer, int[]> edits, int start,
+			int end) {
+		Map.Entry<Integer, int[]> before = edits.floorEntry(start);
+		if (before != null && before.getValue()[0] > start) {
+			return true;
+		}
+		Integer after = edits.ceilingKey(start);
+		return after != null && after < end;
+	}
+
+	/**
+	 * Find attribute values to rewrite in the tag starting at {@code lt}.
+	 * Equivalent to matching {@code <\s*TAG\s+[^>]*\bATTR\s*=\s*(VALUE)}
+	 * at {@code lt}, for each rule.
+	 */
+	private void rewriteTag(StringBuilder page, int lt, int[] ruleNext,
+			TreeMap<Integer, int[]> edits, List<String> replacements,
+			ResultURIConverter converter, String captureDate, String baseUrl) {
+		final int len = page.length();
+		int p = lt + 1;
+		while (p < len && isSpace(page.charAt(p))) {
+			p++;
+		}
+		final int nameStart = p;
+		while (p < len && isAsciiLetter(page.charAt(p))) {
+			p++;
+		}
+		final int nameEnd = p;
+		if (nameEnd == nameStart || nameEnd == len ||
+				!isSpace(page.charAt(nameEnd))) {
+			return;
+		}
+		Rule[] rules = tagRules.get(
+			page.substring(nameStart, nameEnd).toLowerCase());
+		if (rules == null) {
+			rules = anyTagRules;
+		}
+		if (rules.length == 0) {
+			return;
+		}
+		int gt = page.indexOf(">", nameEnd);
+		if (gt < 0) {
+			gt = len;
+		}
+		for (Rule rule : rules) {
+			if (lt < ruleNext[rule.index]) {
+				continue;
+			}
+			// the last occurrence of the attribute in the tag
+			for (int s = gt - rule.attrName.length; s > nameEnd; s--) {
+				int valueEnd = matchAttr(page, s, gt, rule.attrName);
+				if (valueEnd < 0) {
+					continue;
+				}
+				int valueStart = page.indexOf("=", s + rule.attrName.length) + 1;
+				while (isSpace(page.charAt(valueStart))) {
+					valueStart++;
+				}
+				ruleNext[rule.index] = valueEnd;
+				addEdit(page, valueStart, valueEnd, edits, replacements,
+					converter, captureDate, baseUrl);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Match {@code \bATTR\s*=\s*(VALUE)} at {@code s}.
+	 * @return end of the value, or {@code -1} if it doesn't match
+	 */
+	private static int matchAttr(StringBuilder page, int s, int gt,
+			char[] attrName) {
+		if (isWordChar(page.charAt(s - 1))) {
+			return -1;
+		}
+		for (int k = 0; k < attrName.length; k++) {
+			if (toLowerAscii(page.charAt(s + k)) != attrName[k]) {
+				return -1;
+			}
+		}
+		int p = s + attrName.length;
+		while (p < gt && isSpace(page.charAt(p))) {
+			p++;
+		}
+		if (p >= gt || page.charAt(p) != '=') {
+			return -1;
+		}
+		p++;
+		while (p < gt && isSpace(page.charAt(p))) {
+			p++;
+		}
+		if (p >= gt) {
+			return -1;
+		}
+		return matchValue(page, p, gt);
+	}
+
+	/**
+	 * Match value pattern in {@link TagMagix} (quoted, apostrophed,
+	 * escaped-quoted, or raw, in this order) at {@code p}.
+	 * @return end of the value, or {@code -1} if it doesn't match
+	 */
+	private static int matchValue(StringBuilder page, int p, int gt) {
+		final char c = page.charAt(p);
+		if (c == '"' || c == '\'') {
+			// "[^">]*" or '[^'>]*'
+			for (int q = p + 1; q < gt; q++) {
+				if (page.charAt(q) == c) {
+					return q + 1;
+				}
+			}
+		}
+		if (c == '\\' && p + 1 < gt && page.charAt(p + 1) == '"') {
+			// \\"[^>\\]*\\"
+			for (int q = p + 2; q < gt; q++) {
+				if (page.charAt(q) == '\\') {
+					if (q + 1 < gt && page.charAt(q + 1) == '"') {
+						return q + 2;
+					}
+					break;
+				}
+			}
+		}
+		// [^ \t\n\x0B\f\r>"']+
+		int q = p;
+		while (q < gt) {
+			char r = page.charAt(q);
+			if (isSpace(r) || r == '"' || r == '\'') {
+				break;
+			}
+			q++;
+		}
+		return q > p ? q : -1;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' ||
+				c == '\r';
+	}
+
+	private static boolean isAsciiLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	/**
+	 * Word character as in regular expression {@code \b}.
+	 */
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	private static char toLowerAscii(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+	}
+}
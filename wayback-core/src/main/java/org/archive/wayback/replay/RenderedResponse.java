@@ -0,0 +1,239 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Response generated by {@link org.archive.wayback.ReplayRenderer}:
+ * status code, headers (in the order they were set) and body.
+ * <p>
+ * Instances are immutable and shared by all requests served from
+ * {@link RenderedResponseCache}.
+ * </p>
+ */
+public class RenderedResponse {
+	/** {@code setHeader(String, String)} */
+	public static final int SET_HEADER = 0;
+	/** {@code addHeader(String, String)} */
+	public static final int ADD_HEADER = 1;
+	/** {@code setDateHeader(String, long)} */
+	public static final int SET_DATE_HEADER = 2;
+	/** {@code addDateHeader(String, long)} */
+	public static final int ADD_DATE_HEADER = 3;
+	/** {@code setIntHeader(String, int)} */
+	public static final int SET_INT_HEADER = 4;
+	/** {@code addIntHeader(String, int)} */
+	public static final int ADD_INT_HEADER = 5;
+	/** {@code setContentType(String)} (name is {@code null}) */
+	public static final int CONTENT_TYPE = 6;
+	/** {@code setCharacterEncoding(String)} (name is {@code null}) */
+	public static final int CHARACTER_ENCODING = 7;
+	/** {@code setContentLength(int)} (name is {@code null}) */
+	public static final int CONTENT_LENGTH = 8;
+
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * Rough per-response and per-header overhead in bytes, for
+	 * {@link #getWeight()}.
+	 */
+	private static final int OVERHEAD = 128;
+	private static final int HEADER_OVERHEAD = 64;
+
+	/**
+	 * A call that sets response header.
+	 */
+	public static class Header {
+		private final int op;
+		private final String name;
+		private final String value;
+
+		public Header(int op, String name, String value) {
+			this.op = op;
+			this.name = name;
+			this.value = value;
+		}
+
+		public int getOp() {
+			return op;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		void apply(HttpServletResponse response) {
+			switch (op) {
+			case SET_HEADER:
+				response.setHeader(name, value);
+				break;
+			case ADD_HEADER:
+				response.addHeader(name, value);
+				break;
+			case SET_DATE_HEADER:
+				response.setDateHeader(name, Long.parseLong(value));
+				break;
+			case ADD_DATE_HEADER:
+				response.addDateHeader(name, Long.parseLong(value));
+				break;
+			case SET_INT_HEADER:
+				response.setIntHeader(name, Integer.parseInt(value));
+				break;
+			case ADD_INT_HEADER:
+				response.addIntHeader(name, Integer.parseInt(value));
+				break;
+			case CONTENT_TYPE:
+				response.setContentType(value);
+				break;
+			case CHARACTER_ENCODING:
+				response.setCharacterEncoding(value);
+				break;
+			case CONTENT_LENGTH:
+				response.setContentLength(Integer.parseInt(value));
+				break;
+			}
+		}
+	}
+
+	private final int status;
+	private final List<Header> headers;
+	private final byte[] body;
+
+	/**
+	 * @param status HTTP status code
+	 * @param headers header calls, in order
+	 * @param body response body. Must not be modified after.
+	 */
+	public RenderedResponse(int status, List<Header> headers, byte[] body) {
+		this.status = status;
+		this.headers = Collections.unmodifiableList(new ArrayList<Header>(
+			headers));
+		this.body = body;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public List<Header> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * @return response body. Must not be modified.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * @return approximate memory footprint in bytes
+	 */
+	public long getWeight() {
+		long weight = OVERHEAD + body.length;
+		for (Header h : headers) {
+			weight += HEADER_OVERHEAD;
+			if (h.name != null)
+				weight += h.name.length() * 2;
+			if (h.value != null)
+				weight += h.value.length() * 2;
+		}
+		return weight;
+	}
+
+	/**
+	 * Send this response to {@code response}.
+	 * @param response response to write to
+	 * @throws IOException error writing body
+	 */
+	public void sendTo(HttpServletResponse response) throws IOException {
+		response.setStatus(status);
+		for (Header h : headers) {
+			h.apply(response);
+		}
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * Write this response to {@code out}, in a format
+	 * {@link #readFrom(DataInput)} understands.
+	 * @param out output
+	 * @throws IOException error writing
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(status);
+		out.writeInt(headers.size());
+		for (Header h : headers) {
+			out.writeByte(h.op);
+			writeNullable(out, h.name);
+			writeNullable(out, h.value);
+		}
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	/**
+	 * Read response written by {@link #writeTo(DataOutput)}.
+	 * @param in input
+	 * @return RenderedResponse
+	 * @throws IOException error reading, or unrecognized data
+	 */
+	public static RenderedResponse readFrom(DataInput in) throws IOException {
+		int version = in.readInt();
+		if (version != FORMAT_VERSION)
+			throw new IOException("unsupported format version " + version);
+		int status = in.readInt();
+		int n = in.readInt();
+		List<Header> headers = new ArrayList<Header>(n);
+		for (int i = 0; i < n; i++) {
+			int op = in.readByte();
+			String name = readNullable(in);
+			String value = readNullable(in);
+			headers.add(new Header(op, name, value));
+		}
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new RenderedResponse(status, headers, body);
+	}
+
+	private static void writeNullable(DataOutput out, String s)
+			throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	private static String readNullable(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
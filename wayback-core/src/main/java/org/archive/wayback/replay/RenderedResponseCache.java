@@ -0,0 +1,405 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Bounded LRU cache of {@link RenderedResponse}s, with an in-heap tier and
+ * an optional local-disk tier.
+ * <p>
+ * Both tiers are bounded by total number of bytes. Responses are stored to
+ * both tiers; one found only on disk is brought back into the heap tier.
+ * Disk tier is enabled by setting {@link #setDiskCacheDirectory(String)}.
+ * Cache files are stored in a subdirectory {@value #SUBDIRECTORY} of it,
+ * which the cache owns. Cache files are not reused across restarts: files
+ * left in the subdirectory by previous run are deleted when the directory
+ * is set.
+ * </p>
+ * <p>
+ * A single instance is meant to be shared by all
+ * {@link CachingReplayRenderer}s; configure it as a Spring bean.
+ * </p>
+ * <p>
+ * Hit and miss counts are available as cumulative numbers through getters,
+ * and also recorded to {@link PerfStats} for current request.
+ * </p>
+ */
+public class RenderedResponseCache {
+	private static final Logger LOGGER = Logger.getLogger(
+		RenderedResponseCache.class.getName());
+
+	enum PerfStat
+	{
+		RenderCacheHit,
+		RenderCacheDiskHit,
+		RenderCacheMiss;
+	}
+
+	public final static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	public final static long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+	public final static int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+	/**
+	 * name of the subdirectory of disk cache directory cache files are
+	 * stored in.
+	 */
+	public final static String SUBDIRECTORY = "rendered-response-cache";
+
+	private static final String FILE_SUFFIX = ".rsp";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+	private int maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+	private String diskCachePath = null;
+	// SUBDIRECTORY of diskCachePath
+	private File diskCacheDirectory = null;
+
+	private long currentBytes = 0;
+	private long currentDiskBytes = 0;
+
+	private final LinkedHashMap<String, RenderedResponse> responses =
+		new LinkedHashMap<String, RenderedResponse>(256, 0.75f, true);
+
+	// key to file size
+	private final LinkedHashMap<String, Long> diskEntries =
+		new LinkedHashMap<String, Long>(256, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Look up a response.
+	 * @param key cache key
+	 * @return cached response, or {@code null}
+	 */
+	public RenderedResponse get(String key) {
+		RenderedResponse response;
+		synchronized (responses) {
+			response = responses.get(key);
+		}
+		if (response != null) {
+			hits.incrementAndGet();
+			PerfStats.count(PerfStat.RenderCacheHit, 1);
+			return response;
+		}
+		response = getFromDisk(key);
+		if (response != null) {
+			diskHits.incrementAndGet();
+			PerfStats.count(PerfStat.RenderCacheDiskHit, 1);
+			putInHeap(key, response);
+			return response;
+		}
+		misses.incrementAndGet();
+		PerfStats.count(PerfStat.RenderCacheMiss, 1);
+		return null;
+	}
+
+	/**
+	 * Store a response to the cache, evicting least recently used
+	 * responses as necessary.
+	 * Responses whose body is larger than {@code maxEntryBytes} are not
+	 * cached.
+	 * @param key cache key
+	 * @param response response to store
+	 */
+	public void put(String key, RenderedResponse response) {
+		if (response.getBody().length > maxEntryBytes)
+			return;
+		putInHeap(key, response);
+		putOnDisk(key, response);
+	}
+
+	private void putInHeap(String key, RenderedResponse response) {
+		final long weight = response.getWeight();
+		if (weight > maxBytes)
+			return;
+		synchronized (responses) {
+			RenderedResponse old = responses.put(key, response);
+			if (old != null) {
+				currentBytes -= old.getWeight();
+			}
+			currentBytes += weight;
+			Iterator<RenderedResponse> it = responses.values().iterator();
+			while (currentBytes > maxBytes && it.hasNext()) {
+				currentBytes -= it.next().getWeight();
+				it.remove();
+			}
+		}
+	}
+
+	private RenderedResponse getFromDisk(String key) {
+		File dir = diskCacheDirectory;
+		if (dir == null)
+			return null;
+		synchronized (diskEntries) {
+			if (diskEntries.get(key) == null)
+				return null;
+		}
+		File file = new File(dir, fileName(key));
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+			try {
+				if (!key.equals(in.readUTF()))
+					return null;
+				return RenderedResponse.readFrom(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			// evicted while reading, or broken
+			LOGGER.fine("failed to read " + file + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private void putOnDisk(String key, RenderedResponse response) {
+		File dir = diskCacheDirectory;
+		if (dir == null)
+			return;
+		String name = fileName(key);
+		File file = new File(dir, name);
+		File temp = new File(dir, name + "." + Thread.currentThread().getId() +
+				TEMP_SUFFIX);
+		try {
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeUTF(key);
+				response.writeTo(out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException ex) {
+			LOGGER.warning("failed to write " + temp + ": " + ex.getMessage());
+			temp.delete();
+			return;
+		}
+		final long size = temp.length();
+		synchronized (diskEntries) {
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				return;
+			}
+			Long old = diskEntries.put(key, size);
+			if (old != null) {
+				currentDiskBytes -= old;
+			}
+			currentDiskBytes += size;
+			Iterator<Map.Entry<String, Long>> it = diskEntries.entrySet().iterator();
+			while (currentDiskBytes > maxDiskBytes && it.hasNext()) {
+				Map.Entry<String, Long> eldest = it.next();
+				currentDiskBytes -= eldest.getValue();
+				new File(dir, fileName(eldest.getKey())).delete();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * File name for {@code key}: hex SHA-1 digest.
+	 * @param key cache key
+	 * @return file name
+	 */
+	protected static String fileName(String key) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2 +
+					FILE_SUFFIX.length());
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.append(FILE_SUFFIX).toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Drop all cached responses, including those on disk. Counters are not
+	 * reset.
+	 */
+	public void clear() {
+		synchronized (responses) {
+			responses.clear();
+			currentBytes = 0;
+		}
+		synchronized (diskEntries) {
+			diskEntries.clear();
+			currentDiskBytes = 0;
+			File dir = diskCacheDirectory;
+			if (dir != null)
+				deleteCacheFiles(dir);
+		}
+	}
+
+	private static void deleteCacheFiles(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(FILE_SUFFIX) || name.endsWith(TEMP_SUFFIX))
+				file.delete();
+		}
+	}
+
+	/**
+	 * @return maximum total size of responses in heap, in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes maximum total size of responses held in heap,
+	 * in bytes (including small per-response overhead).
+	 * Default is 64MB.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return maximum total size of cache files, in bytes
+	 */
+	public long getMaxDiskBytes() {
+		return maxDiskBytes;
+	}
+
+	/**
+	 * @param maxDiskBytes maximum total size of cache files in
+	 * disk tier. Default is 1GB.
+	 */
+	public void setMaxDiskBytes(long maxDiskBytes) {
+		this.maxDiskBytes = maxDiskBytes;
+	}
+
+	/**
+	 * @return maximum size of response body to cache
+	 */
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	/**
+	 * @param maxEntryBytes responses with body larger than this are not
+	 * cached. Default is 1MB.
+	 */
+	public void setMaxEntryBytes(int maxEntryBytes) {
+		this.maxEntryBytes = maxEntryBytes;
+	}
+
+	/**
+	 * @return directory for disk tier, or {@code null} if disabled
+	 */
+	public String getDiskCacheDirectory() {
+		return diskCachePath;
+	}
+
+	/**
+	 * Enable disk tier, storing cache files in subdirectory
+	 * {@value #SUBDIRECTORY} of {@code path}.
+	 * Directories are created if they don't exist. Cache files left in the
+	 * subdirectory from previous run are deleted; nothing else in
+	 * {@code path} is touched, so it can be shared with other uses.
+	 * Initial value is {@code null} (disk tier is disabled).
+	 * @param path directory path, or {@code null} to disable
+	 * @throws IOException if directory cannot be created
+	 */
+	public void setDiskCacheDirectory(String path) throws IOException {
+		File dir = null;
+		if (path != null) {
+			dir = new File(path, SUBDIRECTORY);
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("failed to create directory " + dir);
+			deleteCacheFiles(dir);
+		}
+		synchronized (diskEntries) {
+			diskEntries.clear();
+			currentDiskBytes = 0;
+			diskCachePath = path;
+			diskCacheDirectory = dir;
+		}
+	}
+
+	/**
+	 * @return current total size of responses held in heap, in bytes
+	 */
+	public long getCurrentBytes() {
+		synchronized (responses) {
+			return currentBytes;
+		}
+	}
+
+	/**
+	 * @return current total size of cache files, in bytes
+	 */
+	public long getCurrentDiskBytes() {
+		synchronized (diskEntries) {
+			return currentDiskBytes;
+		}
+	}
+
+	/**
+	 * @return number of responses currently held in heap
+	 */
+	public int getResponseCount() {
+		synchronized (responses) {
+			return responses.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+}
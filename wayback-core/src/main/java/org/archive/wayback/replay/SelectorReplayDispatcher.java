@@ -19,6 +19,7 @@
  */
 package org.archive.wayback.replay;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.archive.wayback.ReplayDispatcher;
@@ -28,6 +29,7 @@ import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.replay.mimetype.MimeTypeDetector;
+import org.archive.wayback.replay.mimetype.ProbingMimeTypeDetector;
 import org.archive.wayback.resourcestore.indexer.IndexWorker;
 import org.archive.wayback.webapp.AccessPoint;
 
@@ -174,16 +176,10 @@ public class SelectorReplayDispatcher implements ReplayDispatcher {
 		}
 		if (mimeType == null) {
 			if (mimeTypeDetectors != null) {
-				for (MimeTypeDetector detector : mimeTypeDetectors) {
-					String detected = detector.sniff(resource);
-					if (detected != null) {
-						// detected mimeType is communicated to Selectors
-						// through forcedContentType. better way? replace
-						// CaptureSearchResult.mimeType?
-						mimeType = detected;
-						break;
-					}
-				}
+				// detected mimeType is communicated to Selectors
+				// through forcedContentType. better way? replace
+				// CaptureSearchResult.mimeType?
+				mimeType = detectMimeType(wbRequest, resource);
 			}
 		}
 		// hmm, now CaptureSearchResult.mimeType can be set to
@@ -194,6 +190,49 @@ public class SelectorReplayDispatcher implements ReplayDispatcher {
 		return getReplayRendererInternal(wbRequest, result, resource);
 	}
 
+	/**
+	 * Run {@code mimeTypeDetectors} in order, and return the first
+	 * non-{@code null} result.
+	 * <p>{@link ProbingMimeTypeDetector}s share the {@link ContentProbe}
+	 * cached in {@code wbRequest}, which is also used by the renderer
+	 * for charset detection. Result is recorded in the ContentProbe.</p>
+	 * @param wbRequest WaybackRequest
+	 * @param resource capture being replayed
+	 * @return detected mime-type, or {@code null}
+	 */
+	protected String detectMimeType(WaybackRequest wbRequest, Resource resource) {
+		ContentProbe probe = ContentProbe.getCached(wbRequest, resource);
+		if (probe != null && probe.isSniffed(ContentProbe.MIME_TYPE))
+			return probe.getSniffResult(ContentProbe.MIME_TYPE);
+		boolean probeFailed = false;
+		String mimeType = null;
+		for (MimeTypeDetector detector : mimeTypeDetectors) {
+			String detected;
+			if (probe == null && !probeFailed &&
+					detector instanceof ProbingMimeTypeDetector) {
+				try {
+					probe = ContentProbe.get(wbRequest, resource);
+				} catch (IOException ex) {
+					// detector will try reading resource by itself.
+					probeFailed = true;
+				}
+			}
+			if (probe != null && detector instanceof ProbingMimeTypeDetector) {
+				detected = ((ProbingMimeTypeDetector)detector).sniff(resource,
+					probe);
+			} else {
+				detected = detector.sniff(resource);
+			}
+			if (detected != null) {
+				mimeType = detected;
+				break;
+			}
+		}
+		if (probe != null)
+			probe.setSniffResult(ContentProbe.MIME_TYPE, mimeType);
+		return mimeType;
+	}
+
 	@Override
 	public ReplayRenderer getRenderer(WaybackRequest wbRequest,
 			CaptureSearchResult result, Resource httpHeadersResource,
@@ -72,6 +72,15 @@ public class StringHttpServletResponseWrapper extends HttpServletResponseWrapper
 		//do nothing
 	}
 
+	/**
+	 * Output goes to a private buffer, which is never committed, even when
+	 * the wrapped response is (ex. streaming rewritten page).
+	 */
+	@Override
+	public boolean isCommitted() {
+		return false;
+	}
+
 	public PrintWriter getWriter() {
 		return new PrintWriter(sw);
 	}
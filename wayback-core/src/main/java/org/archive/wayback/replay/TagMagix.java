@@ -19,7 +19,10 @@
  */
 package org.archive.wayback.replay;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,15 +45,6 @@ public class TagMagix {
 	// to keep us from trying to mark up javascript generated HTML/CSS code.
 	private static int MIN_ATTR_LENGTH = 3;
 	
-	private static HashMap<String, Pattern> pcPatterns = 
-		new HashMap<String, Pattern>();
-
-	private static HashMap<String, Pattern> wholeTagPatterns = 
-		new HashMap<String, Pattern>();
-
-	private static HashMap<String, Pattern> attrPatterns = 
-		new HashMap<String, Pattern>();
-
 	private static String QUOTED_ATTR_VALUE = "(?:\"[^\">]*\")";
 
 	private static String ESC_QUOTED_ATTR_VALUE = "(?:\\\\\"[^>\\\\]*\\\\\")";
@@ -73,10 +67,87 @@ public class TagMagix {
 	private static String cssImportNoUrlPatString =
 		"@import\\s+([\"'].+?[\"'])";
 	
-	private static Pattern cssImportNoUrlPattern = 
+	static Pattern cssImportNoUrlPattern = 
 		Pattern.compile(cssImportNoUrlPatString);
 	
-	private static Pattern cssUrlPattern = Pattern.compile(cssUrlPatString, Pattern.CASE_INSENSITIVE);
+	static Pattern cssUrlPattern = Pattern.compile(cssUrlPatString, Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * tag-attribute pairs looked up by Wayback itself, whose Patterns are
+	 * compiled at class initialization.
+	 */
+	private static final String[][] KNOWN_TAG_ATTRS = {
+		{"FRAME","SRC"},
+		{"META","URL"},
+		{"LINK","HREF"},
+		{"SCRIPT","SRC"},
+		{"IMG","SRC"},
+		{"A","HREF"},
+		{"AREA","HREF"},
+		{"OBJECT","CODEBASE"},
+		{"OBJECT","CDATA"},
+		{"APPLET","CODEBASE"},
+		{"APPLET","ARCHIVE"},
+		{"EMBED","SRC"},
+		{"IFRAME","SRC"},
+		{"REF","HREF"},
+		{"BASE","HREF"},
+		{"META","charset"},
+		{ANY_TAGNAME,"background"},
+		{ANY_TAGNAME,STYLE_ATTR_NAME}
+	};
+
+	private static final String[] KNOWN_TAGS = {
+		"head", "body", "FRAMESET", "META"
+	};
+
+	private static final String[] KNOWN_ATTRS = {
+		"content", "http-equiv"
+	};
+
+	// Patterns for known names are in immutable maps, so that lookup needs
+	// no locking. Patterns for other names are compiled on first use and
+	// cached in concurrent maps.
+
+	private static final Map<String, Pattern> pcPatterns;
+
+	private static final Map<String, Pattern> wholeTagPatterns;
+
+	private static final Map<String, Pattern> attrPatterns;
+
+	private static final ConcurrentHashMap<String, Pattern> pcPatternCache =
+		new ConcurrentHashMap<String, Pattern>();
+
+	private static final ConcurrentHashMap<String, Pattern> wholeTagPatternCache =
+		new ConcurrentHashMap<String, Pattern>();
+
+	private static final ConcurrentHashMap<String, Pattern> attrPatternCache =
+		new ConcurrentHashMap<String, Pattern>();
+
+	static {
+		Map<String, Pattern> map = new HashMap<String, Pattern>();
+		for (String[] tagAttr : KNOWN_TAG_ATTRS) {
+			map.put(patternKey(tagAttr[0], tagAttr[1]),
+				compilePattern(tagAttr[0], tagAttr[1]));
+		}
+		pcPatterns = Collections.unmodifiableMap(map);
+
+		map = new HashMap<String, Pattern>();
+		for (String tagName : KNOWN_TAGS) {
+			map.put(tagName, compileWholeTagPattern(tagName));
+		}
+		wholeTagPatterns = Collections.unmodifiableMap(map);
+
+		map = new HashMap<String, Pattern>();
+		for (String attrName : KNOWN_ATTRS) {
+			map.put(attrName, compileAttrPattern(attrName));
+		}
+		attrPatterns = Collections.unmodifiableMap(map);
+	}
+
+	private static String patternKey(String tagName, String attrName) {
+		return tagName + "    " + attrName;
+	}
 
 	/**
 	 * get (and cache) a regex Pattern for locating an HTML attribute value
@@ -88,41 +159,58 @@ public class TagMagix {
 	 * @param attrName
 	 * @return Pattern to match the tag-attribute's value
 	 */
-	private synchronized static Pattern getPattern(String tagName,
-			String attrName) {
+	private static Pattern getPattern(String tagName, String attrName) {
 
-		String key = tagName + "    " + attrName;
+		String key = patternKey(tagName, attrName);
 		Pattern pc = pcPatterns.get(key);
 		if (pc == null) {
-
-			String tagPatString = "<\\s*" + tagName + "\\s+[^>]*\\b" + attrName
-					+ "\\s*=\\s*(" + ANY_ATTR_VALUE + ")(?:\\s|>)?";
-
-			pc = Pattern.compile(tagPatString, Pattern.CASE_INSENSITIVE);
-			pcPatterns.put(key, pc);
+			pc = pcPatternCache.get(key);
+			if (pc == null) {
+				pc = compilePattern(tagName, attrName);
+				Pattern prev = pcPatternCache.putIfAbsent(key, pc);
+				if (prev != null) {
+					pc = prev;
+				}
+			}
 		}
 		return pc;
 	}
 
+	private static Pattern compilePattern(String tagName, String attrName) {
+		String tagPatString = "<\\s*" + tagName + "\\s+[^>]*\\b" + attrName
+				+ "\\s*=\\s*(" + ANY_ATTR_VALUE + ")(?:\\s|>)?";
+
+		return Pattern.compile(tagPatString, Pattern.CASE_INSENSITIVE);
+	}
+
 	/**
 	 * get (and cache) a regex Pattern for locating an entire HTML start tag.
 	 * 
 	 * @param tagName
 	 * @return Pattern to match the tag
 	 */
-	private synchronized static Pattern getWholeTagPattern(String tagName) {
+	private static Pattern getWholeTagPattern(String tagName) {
 
 		Pattern pc = wholeTagPatterns.get(tagName);
 		if (pc == null) {
-
-			String tagPatString = "<\\s*" + tagName + "((>)|(\\s+[^>]*>))";
-
-			pc = Pattern.compile(tagPatString, Pattern.CASE_INSENSITIVE);
-			wholeTagPatterns.put(tagName, pc);
+			pc = wholeTagPatternCache.get(tagName);
+			if (pc == null) {
+				pc = compileWholeTagPattern(tagName);
+				Pattern prev = wholeTagPatternCache.putIfAbsent(tagName, pc);
+				if (prev != null) {
+					pc = prev;
+				}
+			}
 		}
 		return pc;
 	}
 
+	private static Pattern compileWholeTagPattern(String tagName) {
+		String tagPatString = "<\\s*" + tagName + "((>)|(\\s+[^>]*>))";
+
+		return Pattern.compile(tagPatString, Pattern.CASE_INSENSITIVE);
+	}
+
 	/**
 	 * get (and cache) a regex Pattern for locating an attribute value within an
 	 * HTML start tag. If this pattern matches, the attribute value will be in
@@ -132,20 +220,29 @@ public class TagMagix {
 	 * @param attrName
 	 * @return Pattern to match the attributes value
 	 */
-	private synchronized static Pattern getAttrPattern(String attrName) {
+	private static Pattern getAttrPattern(String attrName) {
 
 		Pattern pc = attrPatterns.get(attrName);
 		if (pc == null) {
-
-			String attrPatString = "\\b" + attrName + "\\s*=\\s*("
-					+ ANY_ATTR_VALUE + ")(?:\\s|>)?";
-
-			pc = Pattern.compile(attrPatString, Pattern.CASE_INSENSITIVE);
-			attrPatterns.put(attrName, pc);
+			pc = attrPatternCache.get(attrName);
+			if (pc == null) {
+				pc = compileAttrPattern(attrName);
+				Pattern prev = attrPatternCache.putIfAbsent(attrName, pc);
+				if (prev != null) {
+					pc = prev;
+				}
+			}
 		}
 		return pc;
 	}
 
+	private static Pattern compileAttrPattern(String attrName) {
+		String attrPatString = "\\b" + attrName + "\\s*=\\s*("
+				+ ANY_ATTR_VALUE + ")(?:\\s|>)?";
+
+		return Pattern.compile(attrPatString, Pattern.CASE_INSENSITIVE);
+	}
+
 	public static void markupCSSImports(StringBuilder page,
 			ResultURIConverter uriConverter, String captureDate,
 			String baseUrl) {
@@ -246,44 +343,63 @@ public class TagMagix {
 		int idx = 0;
 		while (matcher.find(idx)) {
 			String url = matcher.group(1);
-			int origUrlLength = url.length();
 			int attrStart = matcher.start(1);
 			int attrEnd = matcher.end(1);
-			if(origUrlLength < MIN_ATTR_LENGTH) {
-				idx = attrEnd;
-				continue;
-			}
-			String quote = "";
-			if (url.charAt(0) == '"') {
-				quote = "\"";
-				url = url.substring(1, origUrlLength - 1);
-			} else if (url.charAt(0) == '\'') {
-				quote = "'";
-				url = url.substring(1, origUrlLength - 1);
-			} else if (url.charAt(0) == '\\') {
-				quote = "\\\"";
-				url = url.substring(2, origUrlLength - 2);
-			}
-			// Additional border case, probably embedded string not actual url
-			if ((url.charAt(0) == '\'' || url.charAt(0) == '"') && url.length() <= MIN_ATTR_LENGTH) {
-				idx = attrEnd;
-				continue;
-			}
-			if (url.startsWith(UrlOperations.DATA_PREFIX)) {
+			String replayUrl = replayAttrValue(url, uriConverter, captureDate,
+				baseUrl);
+			if (replayUrl == null) {
 				idx = attrEnd;
 				continue;
 			}
-			
-			String finalUrl = UrlOperations.resolveUrl(baseUrl,url);
-			String replayUrl = quote
-					+ uriConverter.makeReplayURI(captureDate, finalUrl) + quote;
-
-			int delta = replayUrl.length() - origUrlLength;
+			int delta = replayUrl.length() - url.length();
 			page.replace(attrStart, attrEnd, replayUrl);
 			idx = attrEnd + delta;
 		}
 	}
 
+	/**
+	 * Return replay URL for attribute value (or CSS URL) {@code value},
+	 * which may be surrounded by quotes, apostrophes, or escaped quotes.
+	 * Surrounding quotes are preserved in the return value.
+	 * @param value attribute value as it appears in the document
+	 * @param uriConverter converter for making replay URLs
+	 * @param captureDate capture timestamp
+	 * @param baseUrl base URL for resolving relative URL
+	 * @return replacement for {@code value}, or {@code null} if
+	 *         {@code value} should be left as it is.
+	 */
+	static String replayAttrValue(String value,
+			ResultURIConverter uriConverter, String captureDate,
+			String baseUrl) {
+		String url = value;
+		int origUrlLength = url.length();
+		if(origUrlLength < MIN_ATTR_LENGTH) {
+			return null;
+		}
+		String quote = "";
+		if (url.charAt(0) == '"') {
+			quote = "\"";
+			url = url.substring(1, origUrlLength - 1);
+		} else if (url.charAt(0) == '\'') {
+			quote = "'";
+			url = url.substring(1, origUrlLength - 1);
+		} else if (url.charAt(0) == '\\') {
+			quote = "\\\"";
+			url = url.substring(2, origUrlLength - 2);
+		}
+		// Additional border case, probably embedded string not actual url
+		if ((url.charAt(0) == '\'' || url.charAt(0) == '"') && url.length() <= MIN_ATTR_LENGTH) {
+			return null;
+		}
+		if (url.startsWith(UrlOperations.DATA_PREFIX)) {
+			return null;
+		}
+
+		String finalUrl = UrlOperations.resolveUrl(baseUrl,url);
+		return quote + uriConverter.makeReplayURI(captureDate, finalUrl) +
+				quote;
+	}
+
 	private static String trimAttrValue(String value) {
 		if (value.charAt(0) == '"') {
 			value = value.substring(1, value.length() - 1);
@@ -35,6 +35,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.UIResults;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.util.BufferPool;
 
 /**
  * Class which wraps functionality for converting a Resource(InputStream + 
@@ -50,6 +51,42 @@ public class TextDocument {
 	// decoded into a String in chunks. This is how big a chunk to decode with.
 	private final static int C_BUFFER_SIZE = 4096;
 
+	/**
+	 * Tag-attributes rewritten by {@link #resolvePageUrls()}, in addition
+	 * to CSS.
+	 */
+	private final static PageUrlRewriter PAGE_URL_REWRITER =
+		new PageUrlRewriter(new String[][] {
+				{"FRAME","SRC"},
+				{"META","URL"},
+				{"LINK","HREF"},
+				{"SCRIPT","SRC"},
+				{TagMagix.ANY_TAGNAME,"background"}
+		});
+
+	/**
+	 * Tag-attributes rewritten by {@link #resolveAllPageUrls()}, in addition
+	 * to CSS.
+	 */
+	private final static PageUrlRewriter ALL_URL_REWRITER =
+		new PageUrlRewriter(new String[][] {
+				// TODO: forms...?
+				{"FRAME","SRC"},
+				{"META","URL"},
+				{"LINK","HREF"},
+				{"SCRIPT","SRC"},
+				{"IMG","SRC"},
+				{"A","HREF"},
+				{"AREA","HREF"},
+				{"OBJECT","CODEBASE"},
+				{"OBJECT","CDATA"},
+				{"APPLET","CODEBASE"},
+				{"APPLET","ARCHIVE"},
+				{"EMBED","SRC"},
+				{"IFRAME","SRC"},
+				{TagMagix.ANY_TAGNAME,"background"}
+		});
+
 	private Resource resource = null;
 	private CaptureSearchResult result = null; 
 	private ResultURIConverter uriConverter = null;
@@ -109,21 +146,10 @@ public class TextDocument {
 			pageUrl = existingBaseHref;
 		}
 
-		String markups[][] = {
-				{"FRAME","SRC"},
-				{"META","URL"},
-				{"LINK","HREF"},
-				{"SCRIPT","SRC"},
-				{TagMagix.ANY_TAGNAME,"background"}
-		};
 		// TODO: The classic WM added a js_ to the datespec, so NotInArchives
 		// can return an valid javascript doc, and not cause Javascript errors.
-		for(String tagAttr[] : markups) {
-			TagMagix.markupTagREURIC(sb, uriConverter, captureDate, pageUrl,
-					tagAttr[0], tagAttr[1]);
-		}
-		TagMagix.markupCSSImports(sb,uriConverter, captureDate, pageUrl);
-		TagMagix.markupStyleUrls(sb,uriConverter,captureDate,pageUrl);
+		sb = PAGE_URL_REWRITER.rewrite(sb, uriConverter, uriConverter,
+			captureDate, pageUrl);
 	}
 	
 	/**
@@ -142,29 +168,8 @@ public class TextDocument {
 		}
 		ResultURIConverter ruc = new SpecialResultURIConverter(uriConverter);
 		
-		// TODO: forms...?
-		String markups[][] = {
-				{"FRAME","SRC"},
-				{"META","URL"},
-				{"LINK","HREF"},
-				{"SCRIPT","SRC"},
-				{"IMG","SRC"},
-				{"A","HREF"},
-				{"AREA","HREF"},
-				{"OBJECT","CODEBASE"},
-				{"OBJECT","CDATA"},
-				{"APPLET","CODEBASE"},
-				{"APPLET","ARCHIVE"},
-				{"EMBED","SRC"},
-				{"IFRAME","SRC"},
-				{TagMagix.ANY_TAGNAME,"background"}
-		};
-		for(String tagAttr[] : markups) {
-			TagMagix.markupTagREURIC(sb, ruc, captureDate, pageUrl,
-					tagAttr[0], tagAttr[1]);
-		}
-		TagMagix.markupCSSImports(sb,uriConverter, captureDate, pageUrl);
-		TagMagix.markupStyleUrls(sb,uriConverter,captureDate,pageUrl);
+		sb = ALL_URL_REWRITER.rewrite(sb, ruc, uriConverter, captureDate,
+			pageUrl);
 	}
 	
 	public void resolveCSSUrls() {
@@ -201,8 +206,6 @@ public class TextDocument {
 		// convert bytes to characters for charset:
 		InputStreamReader isr = new InputStreamReader(resource, charSet);
 
-		char[] cbuffer = new char[C_BUFFER_SIZE];
-
 		// slurp the whole thing into RAM:
 		sb = new StringBuilder(recordLength);
 		
@@ -212,8 +215,13 @@ public class TextDocument {
 			sb.append((char)firstChar);
 		}
 		
-		for (int r = -1; (r = isr.read(cbuffer, 0, C_BUFFER_SIZE)) != -1;) {
-			sb.append(cbuffer, 0, r);
+		char[] cbuffer = BufferPool.takeChars(C_BUFFER_SIZE);
+		try {
+			for (int r = -1; (r = isr.read(cbuffer, 0, C_BUFFER_SIZE)) != -1;) {
+				sb.append(cbuffer, 0, r);
+			}
+		} finally {
+			BufferPool.releaseChars(cbuffer);
 		}
 	}
 		
@@ -0,0 +1,145 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream that buffers output in memory up to {@code threshold} bytes,
+ * and switches to streaming once output grows beyond it.
+ * <p>
+ * If output stays within the threshold, {@link #toByteArray()} returns
+ * the whole of it, so that the caller can send it with {@code Content-Length}.
+ * Otherwise {@link #startStreaming()} is called once to get the target
+ * stream (typically after sending HTTP headers without {@code Content-Length},
+ * so that the container uses chunked transfer encoding). Buffered bytes are
+ * written to it, and the rest of output goes directly to it.
+ * </p>
+ * <p>
+ * Errors writing to the target stream are remembered, so that they can be
+ * told apart from errors reading the input (see {@link #isOutputError()}).
+ * </p>
+ */
+public abstract class ThresholdOutputStream extends OutputStream {
+
+	private final int threshold;
+	private ByteArrayOutputStream buffer;
+	private OutputStream target = null;
+	private boolean outputError = false;
+
+	/**
+	 * @param threshold maximum number of bytes to buffer
+	 */
+	public ThresholdOutputStream(int threshold) {
+		this.threshold = threshold;
+		this.buffer = new ByteArrayOutputStream(Math.min(threshold, 8192));
+	}
+
+	/**
+	 * Called when output first exceeds the threshold.
+	 * @return stream to which the output is written from now on
+	 * @throws IOException error starting streaming
+	 */
+	protected abstract OutputStream startStreaming() throws IOException;
+
+	/**
+	 * @return {@code true} if output has exceeded the threshold
+	 */
+	public boolean isStreaming() {
+		return target != null;
+	}
+
+	/**
+	 * @return {@code true} if writing to target stream has failed
+	 */
+	public boolean isOutputError() {
+		return outputError;
+	}
+
+	/**
+	 * Return buffered output.
+	 * @return buffered bytes
+	 * @throws IllegalStateException if already streaming
+	 */
+	public byte[] toByteArray() {
+		if (target != null) {
+			throw new IllegalStateException("output is already streamed");
+		}
+		return buffer.toByteArray();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (target == null && buffer.size() + 1 <= threshold) {
+			buffer.write(b);
+			return;
+		}
+		ensureStreaming();
+		try {
+			target.write(b);
+		} catch (IOException ex) {
+			outputError = true;
+			throw ex;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (target == null && buffer.size() + len <= threshold) {
+			buffer.write(b, off, len);
+			return;
+		}
+		ensureStreaming();
+		try {
+			target.write(b, off, len);
+		} catch (IOException ex) {
+			outputError = true;
+			throw ex;
+		}
+	}
+
+	private void ensureStreaming() throws IOException {
+		if (target != null) {
+			return;
+		}
+		target = startStreaming();
+		try {
+			buffer.writeTo(target);
+		} catch (IOException ex) {
+			outputError = true;
+			throw ex;
+		}
+		buffer = null;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (target != null) {
+			try {
+				target.flush();
+			} catch (IOException ex) {
+				outputError = true;
+				throw ex;
+			}
+		}
+	}
+}
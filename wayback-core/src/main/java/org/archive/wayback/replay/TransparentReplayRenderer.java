@@ -21,6 +21,9 @@ package org.archive.wayback.replay;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -36,6 +39,7 @@ import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.BadContentException;
 import org.archive.wayback.replay.html.ReplayParseContext;
+import org.archive.wayback.util.BufferPool;
 
 /**
  * ReplayRenderer implementation which returns the archive document as 
@@ -59,6 +63,12 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 	private final static String NOCACHE_HEADER_VALUE = "no";
 	
 	private final static int BUFFER_SIZE = 4096;
+
+	private final static String RANGE_HEADER = "Range";
+	private final static String IF_RANGE_HEADER = "If-Range";
+	private final static String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+	private final static String BYTES_UNIT = "bytes";
+
 	public TransparentReplayRenderer(HttpHeaderProcessor httpHeaderProcessor) {
 		this.httpHeaderProcessor = httpHeaderProcessor;
 	}
@@ -80,6 +90,42 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 		this.noCacheThreshold = noCacheThreshold;
 	}
 
+	private boolean rangeRequests = true;
+
+	public boolean isRangeRequests() {
+		return rangeRequests;
+	}
+
+	/**
+	 * If set to {@code true}, single-range {@code Range} request for
+	 * {@code 200} capture with known payload length is answered with
+	 * {@code 206 Partial Content}, skipping to the start of the range
+	 * instead of sending the whole payload.
+	 * Initial value is {@code true}.
+	 * @param rangeRequests
+	 */
+	public void setRangeRequests(boolean rangeRequests) {
+		this.rangeRequests = rangeRequests;
+	}
+
+	private boolean zeroCopy = true;
+
+	public boolean isZeroCopy() {
+		return zeroCopy;
+	}
+
+	/**
+	 * If set to {@code true}, payload stored verbatim in local file
+	 * (uncompressed WARC) is sent with {@link FileChannel#transferTo}
+	 * rather than read through {@link Resource}.
+	 * Initial value is {@code true}.
+	 * @param zeroCopy
+	 * @see Resource#getPayloadChannel()
+	 */
+	public void setZeroCopy(boolean zeroCopy) {
+		this.zeroCopy = zeroCopy;
+	}
+
 	@Override
 	public void renderResource(HttpServletRequest httpRequest,
 			HttpServletResponse httpResponse, WaybackRequest wbRequest,
@@ -109,11 +155,10 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 		// if a HttpHeaderProcessor has mangled it too badly. Should this
 		// happen in the HttpHeaderProcessor itself?
 		String origLength = HttpHeaderOperation.getContentLength(headers);
+		long contentLength = -1;
 		if(origLength != null) {
 			headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER, origLength);
 			
-			long contentLength = -1;
-			
 			try {
 			    contentLength = Long.parseLong(origLength);
 			} catch (NumberFormatException n) {
@@ -127,16 +172,56 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 			}
 		}
 
+		long payloadLength = payloadResource.getPayloadLength();
+		if (payloadLength < 0 && !HttpHeaderOperation.isChunkEncoded(headers)) {
+			payloadLength = contentLength;
+		}
+		// byte range to send: [start, start + count)
+		long start = 0;
+		long count = -1;
+		if (rangeRequests && payloadLength >= 0 &&
+				httpHeadersResource.getStatusCode() == HttpServletResponse.SC_OK) {
+			headers.put(ACCEPT_RANGES_HEADER, BYTES_UNIT);
+			long[] range = getRequestedRange(httpRequest, payloadLength);
+			if (range != null) {
+				if (range.length == 0) {
+					httpResponse.setStatus(
+						HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					httpResponse.setHeader(
+						HttpHeaderProcessor.HTTP_CONTENT_RANGE_HEADER,
+						BYTES_UNIT + " */" + payloadLength);
+					httpResponse.setContentLength(0);
+					return;
+				}
+				start = range[0];
+				count = range[1] - range[0] + 1;
+				httpResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				headers.put(HttpHeaderProcessor.HTTP_CONTENT_RANGE_HEADER,
+					BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" +
+							payloadLength);
+				headers.put(HttpHeaderOperation.HTTP_LENGTH_HEADER,
+					Long.toString(count));
+			}
+		}
+
 		HttpHeaderOperation.sendHeaders(headers, httpResponse);
 
 		// and copy the raw byte-stream.
 		OutputStream os = httpResponse.getOutputStream();
-		byte[] buffer = new byte[BUFFER_SIZE];
 		long total = 0;
+		FileChannel channel = zeroCopy ? payloadResource.getPayloadChannel() : null;
 		try {
-			for (int r = -1; (r = payloadResource.read(buffer, 0, BUFFER_SIZE)) != -1;) {
-				os.write(buffer, 0, r);
-				total += r;
+			if (channel != null) {
+				if (count < 0) {
+					count = payloadLength - start;
+				}
+				total = transfer(channel, payloadResource.getPayloadOffset() +
+						start, count, os);
+			} else {
+				if (start > 0) {
+					skipFully(payloadResource, start);
+				}
+				total = copy(payloadResource, count, os);
 			}
 		} catch (IOException ex) {
 			// probably client has closed connection
@@ -149,4 +234,131 @@ public class TransparentReplayRenderer implements ReplayRenderer {
 			}
 		}
 	}
+
+	/**
+	 * Parse single-range {@code Range} header in {@code httpRequest}.
+	 * Multiple ranges, malformed header, and conditional request with
+	 * {@code If-Range} are ignored (i.e. whole payload is sent).
+	 * @param httpRequest incoming request (may be {@code null})
+	 * @param length payload length
+	 * @return {@code {first, last}} byte positions (inclusive), empty
+	 *   array if range is not satisfiable, or {@code null} if whole
+	 *   payload shall be sent.
+	 */
+	protected static long[] getRequestedRange(HttpServletRequest httpRequest,
+			long length) {
+		if (httpRequest == null) {
+			return null;
+		}
+		String range = httpRequest.getHeader(RANGE_HEADER);
+		if (range == null || httpRequest.getHeader(IF_RANGE_HEADER) != null) {
+			return null;
+		}
+		range = range.trim();
+		if (!range.startsWith(BYTES_UNIT + "=")) {
+			return null;
+		}
+		String spec = range.substring(BYTES_UNIT.length() + 1).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0 || spec.indexOf(',') >= 0) {
+			return null;
+		}
+		long first, last;
+		try {
+			String f = spec.substring(0, dash).trim();
+			String l = spec.substring(dash + 1).trim();
+			if (f.isEmpty()) {
+				// suffix range: last N bytes
+				if (l.isEmpty()) {
+					return null;
+				}
+				long n = Long.parseLong(l);
+				if (n < 0) {
+					return null;
+				}
+				if (n == 0 || length == 0) {
+					return new long[0];
+				}
+				first = Math.max(0, length - n);
+				last = length - 1;
+			} else {
+				first = Long.parseLong(f);
+				last = l.isEmpty() ? Long.MAX_VALUE : Long.parseLong(l);
+				if (first < 0 || last < first) {
+					return null;
+				}
+				if (first >= length) {
+					return new long[0];
+				}
+				last = Math.min(last, length - 1);
+			}
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+		return new long[] { first, last };
+	}
+
+	private static void skipFully(Resource resource, long n) throws IOException {
+		while (n > 0) {
+			long skipped = resource.skip(n);
+			if (skipped <= 0) {
+				// skip() may return 0 before EOF
+				if (resource.read() < 0) {
+					return;
+				}
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	/**
+	 * Copy up to {@code count} bytes from {@code resource} to {@code os}
+	 * with fixed size buffer.
+	 * @param count number of bytes to copy, or negative for all
+	 * @return number of bytes copied
+	 */
+	private static long copy(Resource resource, long count, OutputStream os)
+			throws IOException {
+		byte[] buffer = BufferPool.takeBytes(BUFFER_SIZE);
+		long total = 0;
+		try {
+			while (count < 0 || total < count) {
+				int len = BUFFER_SIZE;
+				if (count >= 0 && count - total < len) {
+					len = (int)(count - total);
+				}
+				int r = resource.read(buffer, 0, len);
+				if (r == -1) {
+					break;
+				}
+				os.write(buffer, 0, r);
+				total += r;
+			}
+		} finally {
+			BufferPool.releaseBytes(buffer);
+		}
+		return total;
+	}
+
+	/**
+	 * Transfer {@code count} bytes at {@code position} of {@code channel}
+	 * to {@code os}.
+	 * @return number of bytes transferred
+	 */
+	private static long transfer(FileChannel channel, long position,
+			long count, OutputStream os) throws IOException {
+		WritableByteChannel target = Channels.newChannel(os);
+		long total = 0;
+		while (total < count) {
+			long n = channel.transferTo(position + total, count - total,
+				target);
+			if (n <= 0) {
+				// truncated file
+				break;
+			}
+			total += n;
+		}
+		return total;
+	}
 }
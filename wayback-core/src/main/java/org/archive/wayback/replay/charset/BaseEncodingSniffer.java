@@ -4,6 +4,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.replay.ContentProbe;
 
 /**
  * Implements common utility methods for EncodingSniffer.
@@ -13,6 +14,34 @@ public abstract class BaseEncodingSniffer implements EncodingSniffer {
 	protected final static String HTTP_CONTENT_TYPE_HEADER = "Content-Type";
 
 	public abstract String sniff(Resource resource);
+
+	/**
+	 * sniff character encoding from content bytes already read into
+	 * {@code probe}, instead of reading {@code resource}.
+	 * <p>Sniffers looking at content should override this method and
+	 * record the result in {@code probe}. Default implementation calls
+	 * {@link #sniff(Resource)}.</p>
+	 * @param resource Resource with HTTP headers
+	 * @param probe first bytes of (decoded) payload of {@code resource}
+	 * @return character encoding name, or {@code null}
+	 */
+	public String sniff(Resource resource, ContentProbe probe) {
+		return sniff(resource);
+	}
+
+	/**
+	 * Return {@code true} if this sniffer needs content bytes of
+	 * {@code resource} that are worth reading {@link ContentProbe} for,
+	 * i.e. it looks at content beyond a few leading bytes, or content
+	 * needs decoding.
+	 * <p>Default implementation returns {@code false}.</p>
+	 * @param resource Resource to be sniffed
+	 * @return {@code true} if ContentProbe is needed
+	 */
+	public boolean needsContentProbe(Resource resource) {
+		return false;
+	}
+
 	/**
 	 * test if {@code charsetName} is supported by Java.
 	 * @param charsetName character encoding name
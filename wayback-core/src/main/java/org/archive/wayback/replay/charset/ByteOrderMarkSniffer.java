@@ -3,6 +3,7 @@ package org.archive.wayback.replay.charset;
 import java.io.IOException;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.replay.ContentProbe;
 
 /**
  * {@link EncodingSniffer} that peek the content for
@@ -22,6 +23,30 @@ public class ByteOrderMarkSniffer extends BaseEncodingSniffer {
 		} catch (IOException ex) {
 			return null;
 		}
+		return detectBOM(bbuffer);
+	}
+
+	/**
+	 * Leading bytes are read directly from {@code resource}, unless
+	 * it is compressed.
+	 */
+	@Override
+	public boolean needsContentProbe(Resource resource) {
+		return ContentProbe.isEncoded(resource);
+	}
+
+	@Override
+	public String sniff(Resource resource, ContentProbe probe) {
+		if (!probe.isSniffed(ContentProbe.BOM_CHARSET)) {
+			byte[] bbuffer = new byte[MAX_BOM_LEN];
+			System.arraycopy(probe.getBytes(), 0, bbuffer, 0,
+				Math.min(MAX_BOM_LEN, probe.getLength()));
+			probe.setSniffResult(ContentProbe.BOM_CHARSET, detectBOM(bbuffer));
+		}
+		return probe.getSniffResult(ContentProbe.BOM_CHARSET);
+	}
+
+	private static String detectBOM(byte[] bbuffer) {
 		if (bbuffer[0] == (byte)0xFE && bbuffer[1] == (byte)0xFF)
 			return "UTF-16BE";
 		if (bbuffer[0] == (byte)0xFF && bbuffer[1] == (byte)0xFE)
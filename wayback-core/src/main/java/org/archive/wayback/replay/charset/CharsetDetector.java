@@ -23,6 +23,7 @@ import java.io.IOException;
 
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.ContentProbe;
 
 /**
  * Abstract class containing common methods for determining the character 
@@ -60,4 +61,42 @@ public abstract class CharsetDetector {
 	public abstract String getCharset(Resource httpHeadersResource,
 			Resource payloadResource, WaybackRequest wbRequest)
 					throws IOException;
+
+	/**
+	 * Determine charset, using first bytes of payload already read into
+	 * {@code probe}.
+	 * <p>Default implementation ignores {@code probe} and calls
+	 * {@link #getCharset(Resource, Resource, WaybackRequest)}.</p>
+	 * @param httpHeadersResource resource with http headers to consider
+	 * @param payloadResource resource with payload to consider
+	 * @param probe first bytes of decoded content of {@code payloadResource}
+	 * @param wbRequest WaybackRequest, may be {@code null}
+	 * @return String charset name for the Resource, must not be {@code null}
+	 * @throws IOException if there are problems reading the Resource
+	 */
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, ContentProbe probe,
+			WaybackRequest wbRequest) throws IOException {
+		return getCharset(httpHeadersResource, payloadResource, wbRequest);
+	}
+
+	/**
+	 * Return ContentProbe for {@code payloadResource} cached in
+	 * {@code wbRequest}, or read a new one.
+	 * <p>Only for steps that {@link BaseEncodingSniffer#needsContentProbe(Resource)}.
+	 * Steps looking at HTTP headers only should not make the whole
+	 * read-ahead happen.</p>
+	 * @param wbRequest WaybackRequest, may be {@code null}
+	 * @param payloadResource payload Resource, possibly wrapped
+	 * @return ContentProbe, or {@code null} if reading failed (sniffers
+	 *   reading resource will fail likewise, and fall back to the default)
+	 */
+	protected static ContentProbe readContentProbe(WaybackRequest wbRequest,
+			Resource payloadResource) {
+		try {
+			return ContentProbe.get(wbRequest, payloadResource);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
 }
@@ -1,9 +1,12 @@
 package org.archive.wayback.replay.charset;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.replay.ContentProbe;
 import org.archive.wayback.replay.TagMagix;
+import org.archive.wayback.util.BufferPool;
 
 /**
  * {@link EncodingSniffer} that pre-scan byte stream for
@@ -21,38 +24,64 @@ public class PrescanMetadataSniffer extends BaseEncodingSniffer {
 
 	@Override
 	public String sniff(Resource resource) {
-		String charsetName = null;
+		byte[] bbuffer = BufferPool.takeBytes(MAX_CHARSET_READAHEAD);
 		try {
-			byte[] bbuffer = new byte[MAX_CHARSET_READAHEAD];
 			resource.mark(MAX_CHARSET_READAHEAD);
-			resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
+			int len = resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
 			resource.reset();
-			// convert to UTF-8 String -- which hopefully will not mess up the
-			// characters we're interested in...
-			StringBuilder sb = new StringBuilder(new String(bbuffer,
-					"UTF-8"));
-			// HTML5 charset declaration
-			String metaCharset = TagMagix.getTagAttr(sb, "META", "charset");
-			if (metaCharset != null) {
-				charsetName = checkCharset(metaCharset);
-			}
-			if (charsetName == null) {
-				String metaContentType = TagMagix.getTagAttrWhere(sb, "META",
-					"content", "http-equiv", "Content-Type");
-				if (metaContentType != null) {
-					charsetName = contentTypeToCharset(metaContentType);
-				}
-			}
-			// override - if META says UTF-16, it's definitely wrong.
-			if (charsetName != null) {
-				String upped = charsetName.toUpperCase();
-				if (upped.startsWith("UTF-16"))
-					charsetName = "UTF-8";
-			}
-			return charsetName;
+			return sniffBytes(bbuffer, Math.max(len, 0));
 		} catch (IOException ex) {
 			// TODO: log at FINE.
 			return null;
+		} finally {
+			BufferPool.releaseBytes(bbuffer);
+		}
+	}
+
+	@Override
+	public boolean needsContentProbe(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public String sniff(Resource resource, ContentProbe probe) {
+		if (!probe.isSniffed(ContentProbe.META_CHARSET)) {
+			String charsetName = sniffBytes(probe.getBytes(),
+				Math.min(probe.getLength(), MAX_CHARSET_READAHEAD));
+			probe.setSniffResult(ContentProbe.META_CHARSET, charsetName);
+		}
+		return probe.getSniffResult(ContentProbe.META_CHARSET);
+	}
+
+	protected String sniffBytes(byte[] bbuffer, int len) {
+		String charsetName = null;
+		// convert to UTF-8 String -- which hopefully will not mess up the
+		// characters we're interested in...
+		StringBuilder sb;
+		try {
+			sb = new StringBuilder(new String(bbuffer, 0, len, "UTF-8"));
+		} catch (UnsupportedEncodingException ex) {
+			// UTF-8 is always supported
+			return null;
+		}
+		// HTML5 charset declaration
+		String metaCharset = TagMagix.getTagAttr(sb, "META", "charset");
+		if (metaCharset != null) {
+			charsetName = checkCharset(metaCharset);
+		}
+		if (charsetName == null) {
+			String metaContentType = TagMagix.getTagAttrWhere(sb, "META",
+				"content", "http-equiv", "Content-Type");
+			if (metaContentType != null) {
+				charsetName = contentTypeToCharset(metaContentType);
+			}
+		}
+		// override - if META says UTF-16, it's definitely wrong.
+		if (charsetName != null) {
+			String upped = charsetName.toUpperCase();
+			if (upped.startsWith("UTF-16"))
+				charsetName = "UTF-8";
 		}
+		return charsetName;
 	}
 }
\ No newline at end of file
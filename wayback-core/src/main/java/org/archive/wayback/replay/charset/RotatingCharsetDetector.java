@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.replay.CompositeResource;
+import org.archive.wayback.replay.ContentProbe;
 
 /**
  * @author brad
@@ -31,7 +32,7 @@ import org.archive.wayback.replay.CompositeResource;
  * Provides a way to rotate through several detection schemes 
  */
 public class RotatingCharsetDetector extends CharsetDetector {
-	private static final EncodingSniffer[] SNIFFERS = {
+	private static final BaseEncodingSniffer[] SNIFFERS = {
 		new ContentTypeHeaderSniffer(),
 		new PrescanMetadataSniffer(),
 		new UniversalChardetSniffer()
@@ -60,12 +61,39 @@ public class RotatingCharsetDetector extends CharsetDetector {
 	}
 
 	public String getCharset(Resource resource, int mode) throws IOException {
+		return sniff(resource, null, mode);
+	}
+
+	protected String sniff(Resource resource, ContentProbe probe, int mode)
+			throws IOException {
+		return sniff(resource, probe, false, null, mode);
+	}
+
+	/**
+	 * Run sniffing steps in the order of {@code mode}.
+	 * @param resource resource with http headers and payload
+	 * @param probe ContentProbe for {@code resource}, or {@code null}
+	 * @param readProbe if {@code true} and {@code probe} is {@code null},
+	 *   read ContentProbe when the first content sniffing step is reached.
+	 * @param wbRequest WaybackRequest, may be {@code null}
+	 * @param mode index into {@link #MODES}
+	 * @return charset name
+	 */
+	protected String sniff(Resource resource, ContentProbe probe,
+			boolean readProbe, WaybackRequest wbRequest, int mode) {
 		if (mode >= MODES.length) {
 			mode = 0;
 		}
 		int[] indexes = MODES[mode];
 		for (int index : indexes) {
-			String charset = SNIFFERS[index].sniff(resource);
+			BaseEncodingSniffer sniffer = SNIFFERS[index];
+			if (probe == null && readProbe &&
+					sniffer.needsContentProbe(resource)) {
+				probe = readContentProbe(wbRequest, resource);
+				readProbe = false;
+			}
+			String charset = probe != null ? sniffer.sniff(resource, probe)
+					: sniffer.sniff(resource);
 			if (charset != null)
 				return charset;
 		}
@@ -76,7 +104,18 @@ public class RotatingCharsetDetector extends CharsetDetector {
 	public String getCharset(Resource httpHeadersResource,
 			Resource payloadResource, WaybackRequest request)
 			throws IOException {
-		int mode = request.getCharsetMode();
-		return getCharset(httpHeadersResource, payloadResource, mode);
+		int mode = request != null ? request.getCharsetMode() : 0;
+		ContentProbe probe = ContentProbe.getCached(request, payloadResource);
+		return sniff(new CompositeResource(httpHeadersResource,
+			payloadResource), probe, probe == null, request, mode);
+	}
+
+	@Override
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, ContentProbe probe,
+			WaybackRequest wbRequest) throws IOException {
+		int mode = wbRequest != null ? wbRequest.getCharsetMode() : 0;
+		return sniff(new CompositeResource(httpHeadersResource,
+			payloadResource), probe, mode);
 	}
 }
@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.replay.CompositeResource;
+import org.archive.wayback.replay.ContentProbe;
 
 /**
  * {@link CharsetDetector} that roughly follows steps prescribed by
@@ -39,9 +40,13 @@ import org.archive.wayback.replay.CompositeResource;
  * design)</ul>
  * </ul>
  * <p>CHANGE 1.8.1 2014-07-07: added BOM detection as the first step.</p>
+ * <p>Content is read once into {@link ContentProbe} (shared through
+ * {@link WaybackRequest}) and all content sniffing steps work on it.
+ * It is read only when content sniffing steps are reached, unless it is
+ * already read by earlier processing (ex. mime-type detection).</p>
  */
 public class StandardCharsetDetector extends CharsetDetector {
-	private final static EncodingSniffer[] SNIFFERS = {
+	private final static BaseEncodingSniffer[] SNIFFERS = {
 		new ByteOrderMarkSniffer(),
 		new ContentTypeHeaderSniffer(),
 		new PrescanMetadataSniffer(),
@@ -51,10 +56,42 @@ public class StandardCharsetDetector extends CharsetDetector {
 	@Override
 	public String getCharset(Resource httpHeadersResource,
 			Resource payloadResource, WaybackRequest wbRequest) throws IOException {
+		ContentProbe probe = ContentProbe.getCached(wbRequest, payloadResource);
+		return sniff(httpHeadersResource, payloadResource, probe,
+			probe == null, wbRequest);
+	}
+
+	@Override
+	public String getCharset(Resource httpHeadersResource,
+			Resource payloadResource, ContentProbe probe,
+			WaybackRequest wbRequest) throws IOException {
+		return sniff(httpHeadersResource, payloadResource, probe, false,
+			wbRequest);
+	}
+
+	/**
+	 * Run sniffing steps.
+	 * @param httpHeadersResource resource with http headers
+	 * @param payloadResource resource with payload
+	 * @param probe ContentProbe for {@code payloadResource}, or {@code null}
+	 * @param readProbe if {@code true} and {@code probe} is {@code null},
+	 *   read ContentProbe when the first content sniffing step is reached.
+	 * @param wbRequest WaybackRequest, may be {@code null}
+	 * @return charset name
+	 */
+	protected String sniff(Resource httpHeadersResource,
+			Resource payloadResource, ContentProbe probe, boolean readProbe,
+			WaybackRequest wbRequest) {
 		Resource resource = httpHeadersResource != payloadResource ? new CompositeResource(
 			httpHeadersResource, payloadResource) : payloadResource;
-		for (EncodingSniffer sniffer : SNIFFERS) {
-			String charset = sniffer.sniff(resource);
+		for (BaseEncodingSniffer sniffer : SNIFFERS) {
+			if (probe == null && readProbe &&
+					sniffer.needsContentProbe(resource)) {
+				probe = readContentProbe(wbRequest, payloadResource);
+				readProbe = false;
+			}
+			String charset = probe != null ? sniffer.sniff(resource, probe)
+					: sniffer.sniff(resource);
 			if (charset != null)
 				return charset;
 		}
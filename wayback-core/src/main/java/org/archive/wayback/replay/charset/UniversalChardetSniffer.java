@@ -1,8 +1,11 @@
 package org.archive.wayback.replay.charset;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.replay.ContentProbe;
+import org.archive.wayback.util.BufferPool;
 import com.ibm.icu.text.CharsetDetector;
 import com.ibm.icu.text.CharsetMatch;
 
@@ -14,33 +17,76 @@ public class UniversalChardetSniffer extends BaseEncodingSniffer {
 	// hand off this many bytes to the chardet library
 	protected final static int MAX_CHARSET_READAHEAD = 131072;
 
-	@Override
-	public String sniff(Resource resource) {
-		String charsetName = null;
-
-		byte[] bbuffer = new byte[MAX_CHARSET_READAHEAD];
+	private static final byte[] EMPTY = new byte[0];
 
-		CharsetDetector detector = new CharsetDetector();
+	// CharsetDetector is reusable, but not thread-safe.
+	private static final ThreadLocal<CharsetDetector> detectors =
+		new ThreadLocal<CharsetDetector>() {
+			@Override
+			protected CharsetDetector initialValue() {
+				return new CharsetDetector();
+			}
+		};
 
+	@Override
+	public String sniff(Resource resource) {
+		byte[] bbuffer = BufferPool.takeBytes(MAX_CHARSET_READAHEAD);
 		resource.mark(MAX_CHARSET_READAHEAD);
 		try {
-			resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
+			int len = resource.read(bbuffer, 0, MAX_CHARSET_READAHEAD);
 			resource.reset();
+			// zero-fill the rest, as detector looks at whole buffer
+			Arrays.fill(bbuffer, Math.max(len, 0), MAX_CHARSET_READAHEAD,
+				(byte)0);
+			return detect(bbuffer);
+		} catch (IOException ex) {
+			//
+		} finally {
+			BufferPool.releaseBytes(bbuffer);
+		}
+		return null;
+	}
 
+	@Override
+	public boolean needsContentProbe(Resource resource) {
+		return true;
+	}
+
+	@Override
+	public String sniff(Resource resource, ContentProbe probe) {
+		if (!probe.isSniffed(ContentProbe.DETECTED_CHARSET)) {
+			byte[] bbuffer = BufferPool.takeBytes(MAX_CHARSET_READAHEAD);
+			try {
+				int len = Math.min(probe.getLength(), MAX_CHARSET_READAHEAD);
+				System.arraycopy(probe.getBytes(), 0, bbuffer, 0, len);
+				Arrays.fill(bbuffer, len, MAX_CHARSET_READAHEAD, (byte)0);
+				probe.setSniffResult(ContentProbe.DETECTED_CHARSET,
+					detect(bbuffer));
+			} finally {
+				BufferPool.releaseBytes(bbuffer);
+			}
+		}
+		return probe.getSniffResult(ContentProbe.DETECTED_CHARSET);
+	}
+
+	private String detect(byte[] bbuffer) {
+		CharsetDetector detector = detectors.get();
+		try {
 			detector.setText(bbuffer);
 			CharsetMatch[] matches = detector.detectAll();
 			if (matches != null) {
 				for (int i = 0; i < matches.length; i++) {
-					charsetName = matches[i].getName();
+					String charsetName = matches[i].getName();
 					if (!isDubious(charsetName) && isCharsetSupported(charsetName)) {
 						return charsetName;
 					}
 				}
 			}
-		} catch (IOException ex) {
-			//
+			return null;
+		} finally {
+			// don't keep a reference to pooled buffer
+			detector.setText(EMPTY);
 		}
-		return null;
 	}
 
 	/*
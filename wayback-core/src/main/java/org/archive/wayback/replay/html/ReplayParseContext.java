@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.archive.wayback.ReplayURIConverter;
@@ -37,6 +38,7 @@ import org.archive.wayback.replay.ReplayContext;
 import org.archive.wayback.replay.ReplayRewriteContext;
 import org.archive.wayback.replay.ReplayURLTransformer;
 import org.archive.wayback.util.htmllex.ParseContext;
+import org.archive.wayback.webapp.PerfStats;
 
 /**
  * {@code ReplayParseContext} holds context information shared among replay
@@ -56,6 +58,22 @@ import org.archive.wayback.util.htmllex.ParseContext;
  */
 public class ReplayParseContext extends ParseContext implements ReplayRewriteContext {
 
+	enum PerfStat
+	{
+		UrlMemoHit,
+		UrlMemoMiss;
+	}
+
+	/**
+	 * Default maximum number of entries in URL rewrite memo.
+	 */
+	public static final int DEFAULT_URL_MEMO_SIZE = 1000;
+
+	/**
+	 * Memo value for URLs {@code contextualizeUrl} returned as they are.
+	 */
+	private static final String UNCHANGED = new String("");
+
 	private WaybackRequest wbRequest;
 	private String datespec = null;
 	private JSPExecutor jspExec = null;
@@ -69,6 +87,33 @@ public class ReplayParseContext extends ParseContext implements ReplayRewriteCon
 
 	private ReplayURIConverter uriConverter;
 
+	private int urlMemoSize = DEFAULT_URL_MEMO_SIZE;
+	private Map<UrlMemoKey, String> urlMemo = null;
+
+	/**
+	 * key of URL rewrite memo: URL and context flags.
+	 */
+	private static final class UrlMemoKey {
+		final String url;
+		final String flags;
+		UrlMemoKey(String url, String flags) {
+			this.url = url;
+			this.flags = flags;
+		}
+		@Override
+		public int hashCode() {
+			return url.hashCode() * 31 + (flags != null ? flags.hashCode() : 0);
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof UrlMemoKey))
+				return false;
+			UrlMemoKey other = (UrlMemoKey)obj;
+			return url.equals(other.url) && (flags == null ? other.flags == null
+					: flags.equals(other.flags));
+		}
+	}
+
 	/**
 	 * {@link ReplayURIConverter} and {@link ReplayURLTransformer} implementation that uses old
 	 * {@link ContextResultURIConverterFactory} and {@link ResultURIConverter}
@@ -314,6 +359,42 @@ public class ReplayParseContext extends ParseContext implements ReplayRewriteCon
 		if (replayUrlTransformer instanceof CompatReplayURIConverter) {
 			((CompatReplayURIConverter)replayUrlTransformer).rewriteHttpsOnly = rewriteHttpsOnly;
 		}
+		clearUrlMemo();
+	}
+
+	/**
+	 * Maximum number of URLs to remember rewrite results for.
+	 * As the same URL often appears many times in a page, {@link
+	 * #contextualizeUrl(String, String)} memoizes its result per URL and
+	 * context flags. Memo is cleared when base URL changes.
+	 * {@code 0} disables memoization.
+	 * Initial value is {@link #DEFAULT_URL_MEMO_SIZE}.
+	 * @param urlMemoSize maximum number of entries
+	 */
+	public void setUrlMemoSize(int urlMemoSize) {
+		this.urlMemoSize = urlMemoSize;
+		urlMemo = null;
+	}
+
+	public int getUrlMemoSize() {
+		return urlMemoSize;
+	}
+
+	private void clearUrlMemo() {
+		if (urlMemo != null)
+			urlMemo.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also clears URL rewrite memo, as rewrite results depend on base URL.
+	 * </p>
+	 */
+	@Override
+	public void setBaseUrl(String baseURL) {
+		super.setBaseUrl(baseURL);
+		clearUrlMemo();
 	}
 
 	/**
@@ -432,11 +513,38 @@ public class ReplayParseContext extends ParseContext implements ReplayRewriteCon
 	 *        {@code null}.
 	 * @return rewrittenURL, or {@code url} if no rewrite is necessary. never
 	 *         {@code null}.
+	 * @see #setUrlMemoSize(int)
 	 */
 	public String contextualizeUrl(final String url, String flags) {
 		if (replayUrlTransformer == null)
 			return url;
-		return replayUrlTransformer.transform(this, url, flags);
+		// HEADER_CONTEXT is not memoized, as it's translated into
+		// request's context flags.
+		if (urlMemoSize <= 0 || HEADER_CONTEXT.equals(flags))
+			return replayUrlTransformer.transform(this, url, flags);
+
+		if (urlMemo == null) {
+			final int maxSize = urlMemoSize;
+			urlMemo = new LinkedHashMap<UrlMemoKey, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<UrlMemoKey, String> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+		UrlMemoKey key = new UrlMemoKey(url, flags);
+		String rewritten = urlMemo.get(key);
+		if (rewritten != null) {
+			PerfStats.count(PerfStat.UrlMemoHit, 1);
+			// return url itself if not rewritten
+			return rewritten == UNCHANGED ? url : rewritten;
+		}
+		PerfStats.count(PerfStat.UrlMemoMiss, 1);
+		rewritten = replayUrlTransformer.transform(this, url, flags);
+		urlMemo.put(key, rewritten == url ? UNCHANGED : rewritten);
+		return rewritten;
 	}
 
 	@Override
@@ -507,6 +615,7 @@ public class ReplayParseContext extends ParseContext implements ReplayRewriteCon
 	 */
 	public void setDatespec(String datespec) {
 		this.datespec = datespec;
+		clearUrlMemo();
 	}
 
 	public void incJSBlockCount() {
@@ -71,7 +71,106 @@ public class JSStringTransformer implements StringTransformer {
 		public String unescape(String text);
 		public String escape(String text);
 	}
-	
+
+	/**
+	 * JavaScript string escaping with
+	 * {@link StringEscapeUtils#escapeJavaScript(String)}.
+	 * Text without backslash (for unescaping) or characters subject to
+	 * escaping is returned as it is.
+	 */
+	public static class JavaScriptEscaping implements SourceEscaping {
+		public String unescape(String text) {
+			if (text.indexOf('\\') < 0)
+				return text;
+			return StringEscapeUtils.unescapeJavaScript(text);
+		}
+
+		public String escape(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c < 0x20 || c >= 0x7f || c == '\'' || c == '"' ||
+						c == '\\' || c == '/') {
+					return StringEscapeUtils.escapeJavaScript(text);
+				}
+			}
+			return text;
+		}
+	}
+
+	/**
+	 * HTML escaping with {@link StringEscapeUtils#escapeHtml(String)}.
+	 * Text without {@code &} (for unescaping) or characters subject to
+	 * escaping is returned as it is.
+	 */
+	public static class HtmlEscaping implements SourceEscaping {
+		public String unescape(String text) {
+			if (text.indexOf('&') < 0)
+				return text;
+			return StringEscapeUtils.unescapeHtml(text);
+		}
+
+		public String escape(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c >= 0x7f || c == '&' || c == '<' || c == '>' || c == '"') {
+					return StringEscapeUtils.escapeHtml(text);
+				}
+			}
+			return text;
+		}
+	}
+
+	/**
+	 * XML escaping with {@link StringEscapeUtils#escapeXml(String)}.
+	 * Text without {@code &} (for unescaping) or characters subject to
+	 * escaping is returned as it is.
+	 */
+	public static class XmlEscaping implements SourceEscaping {
+		public String unescape(String text) {
+			if (text.indexOf('&') < 0)
+				return text;
+			return StringEscapeUtils.unescapeXml(text);
+		}
+
+		public String escape(String text) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c >= 0x7f || c == '&' || c == '<' || c == '>' ||
+						c == '"' || c == '\'') {
+					return StringEscapeUtils.escapeXml(text);
+				}
+			}
+			return text;
+		}
+	}
+
+	/**
+	 * Return SourceEscaping for escaping scheme name {@code name}.
+	 * JavaScript, HTML and XML are implemented directly. Other names
+	 * are looked up in {@link StringEscapeUtils} with reflection
+	 * ({@link CommonsLangEscaping}).
+	 * @param name escaping scheme name, ex. "JavaScript"
+	 * @return SourceEscaping, or {@code null} if {@code name} is
+	 * {@code null} or empty.
+	 * @throws IllegalArgumentException if {@code name} is unknown
+	 */
+	protected SourceEscaping createSourceEscaping(String name) {
+		if (name == null || name.isEmpty()) {
+			return null;
+		}
+		if (name.equals("javascript") || name.equals("JavaScript")) {
+			return new JavaScriptEscaping();
+		}
+		if (name.equals("html") || name.equals("Html")) {
+			return new HtmlEscaping();
+		}
+		if (name.equals("xml") || name.equals("Xml")) {
+			return new XmlEscaping();
+		}
+		return new CommonsLangEscaping(name);
+	}
+
+
 	/**
 	 * SourceEscaping implemented with commons-lang {@link StringEscapeUtils}
 	 */
@@ -159,7 +258,7 @@ public class JSStringTransformer implements StringTransformer {
 	 * @see StringEscapeUtils
 	 */
 	public void setEscaping(String escaping) {
-		this.sourceEscaping = new CommonsLangEscaping(escaping);
+		this.sourceEscaping = createSourceEscaping(escaping);
 		this.escaping = escaping;
 	}
 
@@ -168,45 +267,54 @@ public class JSStringTransformer implements StringTransformer {
 	}
 
 	public String transform(ReplayParseContext context, String input) {
-		StringBuffer replaced = new StringBuffer(input.length());
 		Matcher m = pattern.matcher(input);
+		// allocated upon the first URL actually rewritten. input is returned
+		// as it is if there's none.
+		StringBuilder replaced = null;
+		int copied = 0;
 		while (m.find()) {
 			String rawUrl = m.group(1);
-			String pre = input.substring(m.start(), m.start(1));
-			String post = input.substring(m.end(1), m.end());
 
 			String origUrl = sourceEscaping != null ? sourceEscaping.unescape(rawUrl) : rawUrl;
 			String url = context.contextualizeUrl(origUrl);
 
-			if (url != origUrl) {
-				// reverse some changes made to url by contextualizeUrl method, that
-				// may break assumptions in subsequent JavaScript processing.
-				// eg. "http://example.org" -> "/20140101012345/http://example.org/"
-				// eg. "https://domain" + ".example.org" -> "http://domain/" + ".example.org"
-				// eg. "https://domain." + "example.org" -> "http://domain" + "example.org"
-
-				// remove trailing "/" if origUrl doesn't have it.  As Wayback does not need
-				// trailing slash, it may make sense to this everywhere.  Just doing this fix
-				// in JavaScript for now.
-				if (url.endsWith("/") && !origUrl.endsWith("/")) {
-					url = url.substring(0, url.length() - 1);
-				}
+			if (url == origUrl) {
+				// not rewritten. keep the original rawUrl
+				continue;
+			}
+			// reverse some changes made to url by contextualizeUrl method, that
+			// may break assumptions in subsequent JavaScript processing.
+			// eg. "http://example.org" -> "/20140101012345/http://example.org/"
+			// eg. "https://domain" + ".example.org" -> "http://domain/" + ".example.org"
+			// eg. "https://domain." + "example.org" -> "http://domain" + "example.org"
 
-				// add trailing "." (removed by canonicalizer) back, if origUrl has it.
-				if (origUrl.endsWith(".") && !url.endsWith(".")) {
-					url = url + ".";
-				}
-				
-				if (sourceEscaping != null) {
-					url = sourceEscaping.escape(url);
-				}
-			} else {
-				// use the original rawUrl
-				url = rawUrl;
+			// remove trailing "/" if origUrl doesn't have it.  As Wayback does not need
+			// trailing slash, it may make sense to this everywhere.  Just doing this fix
+			// in JavaScript for now.
+			if (url.endsWith("/") && !origUrl.endsWith("/")) {
+				url = url.substring(0, url.length() - 1);
+			}
+
+			// add trailing "." (removed by canonicalizer) back, if origUrl has it.
+			if (origUrl.endsWith(".") && !url.endsWith(".")) {
+				url = url + ".";
+			}
+			
+			if (sourceEscaping != null) {
+				url = sourceEscaping.escape(url);
 			}
-			m.appendReplacement(replaced, Matcher.quoteReplacement(pre + url + post));
+
+			if (replaced == null) {
+				replaced = new StringBuilder(input.length() + 128);
+			}
+			// text preceding and following the first group is preserved
+			replaced.append(input, copied, m.start(1)).append(url);
+			copied = m.end(1);
+		}
+		if (replaced == null) {
+			return input;
 		}
-		m.appendTail(replaced);
+		replaced.append(input, copied, input.length());
 		return replaced.toString();
 	}
 }
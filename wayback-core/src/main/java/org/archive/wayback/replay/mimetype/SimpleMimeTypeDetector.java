@@ -2,20 +2,23 @@ package org.archive.wayback.replay.mimetype;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.archive.wayback.core.Resource;
+import org.archive.wayback.replay.ContentProbe;
 import org.archive.wayback.replay.GzipDecodingResource;
 import org.archive.wayback.replay.charset.CharsetDetector;
 import org.archive.wayback.replay.charset.StandardCharsetDetector;
+import org.archive.wayback.util.BufferPool;
 
 /**
  * Simple {@link MimeTypeDetector} implementation.
  * It's ad-hoc and not customizable, just tested against many samples.
  */
-public class SimpleMimeTypeDetector implements MimeTypeDetector {
+public class SimpleMimeTypeDetector implements ProbingMimeTypeDetector {
 	private static final Logger logger = Logger.getLogger(SimpleMimeTypeDetector.class.getName());
 
 	/**
@@ -230,26 +233,37 @@ public class SimpleMimeTypeDetector implements MimeTypeDetector {
 	 * Read first {@code sniffLength} bytes of {@code resource}'s payload,
 	 * decoding {@code Content-Encoding} if any. Reset {@code resource}'s
 	 * read position back to zero.
+	 * <p>
+	 * Returned buffer is taken from {@link BufferPool}. {@link #sniff(Resource)}
+	 * releases it to the pool.
+	 * </p>
 	 * @param resource Resource to load bytes from
 	 * @return bytes, zero-padded if payload is shorter.
 	 * @throws IOException
 	 */
 	protected byte[] peekContent(Resource resource) throws IOException {
-		byte[] bbuffer = new byte[Math.max(sniffLength, MINIMUM_SNIFF_BUFFER_SIZE)];
-		String encoding = resource.getHeader("content-encoding");
-		if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
-			// use larger readlimit, because gzip-ed data can be larger than the original
-			// at low compression level.
-			resource.mark(sniffLength + 100);
-			@SuppressWarnings("resource")
-			Resource z = new GzipDecodingResource(resource);
-			z.read(bbuffer, 0, sniffLength);
-			resource.reset();
-		} else {
-			resource.mark(sniffLength);
-			resource.read(bbuffer, 0, sniffLength);
-			resource.reset();
+		byte[] bbuffer = BufferPool.takeBytes(Math.max(sniffLength, MINIMUM_SNIFF_BUFFER_SIZE));
+		int len = 0;
+		try {
+			String encoding = resource.getHeader("content-encoding");
+			if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+				// use larger readlimit, because gzip-ed data can be larger than the original
+				// at low compression level.
+				resource.mark(sniffLength + 100);
+				@SuppressWarnings("resource")
+				Resource z = new GzipDecodingResource(resource);
+				len = z.read(bbuffer, 0, sniffLength);
+				resource.reset();
+			} else {
+				resource.mark(sniffLength);
+				len = resource.read(bbuffer, 0, sniffLength);
+				resource.reset();
+			}
+		} catch (IOException ex) {
+			BufferPool.releaseBytes(bbuffer);
+			throw ex;
 		}
+		Arrays.fill(bbuffer, Math.max(len, 0), bbuffer.length, (byte)0);
 		return bbuffer;
 	}
 
@@ -267,7 +281,37 @@ public class SimpleMimeTypeDetector implements MimeTypeDetector {
 			logger.warning("error reading " + sniffLength + " from resource: " + ex.getMessage());
 			return null;
 		}
+		try {
+			return sniffContent(resource, null, bbuffer);
+		} finally {
+			BufferPool.releaseBytes(bbuffer);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Falls back to {@link #sniff(Resource)} if {@code sniffLength} is
+	 * larger than what {@code probe} has read, unless {@code probe} has
+	 * the whole payload.</p>
+	 */
+	@Override
+	public String sniff(Resource resource, ContentProbe probe) {
+		if (probe.getLength() < sniffLength && !probe.isComplete()) {
+			return sniff(resource);
+		}
+		byte[] bbuffer = BufferPool.takeBytes(Math.max(sniffLength, MINIMUM_SNIFF_BUFFER_SIZE));
+		try {
+			int len = Math.min(sniffLength, probe.getLength());
+			System.arraycopy(probe.getBytes(), 0, bbuffer, 0, len);
+			Arrays.fill(bbuffer, len, bbuffer.length, (byte)0);
+			return sniffContent(resource, probe, bbuffer);
+		} finally {
+			BufferPool.releaseBytes(bbuffer);
+		}
+	}
 
+	private String sniffContent(Resource resource, ContentProbe probe,
+			byte[] bbuffer) {
 		// Spare decoding and regexp-matching for clearly-binary files.
 		// Most mimetype detector libraries are overkill since we don't
 		// need to know the details (ex. bitrate of MP3, PDF version).
@@ -283,7 +327,10 @@ public class SimpleMimeTypeDetector implements MimeTypeDetector {
 		// only a handful of text types: HTML, JAVASCRIPT, JSON and CSS.
 		String encoding;
 		try {
-			encoding = charsetDetector.getCharset(resource, null);
+			if (probe != null)
+				encoding = charsetDetector.getCharset(resource, resource, probe, null);
+			else
+				encoding = charsetDetector.getCharset(resource, null);
 		} catch (IOException ex1) {
 			// IO error at this stage means we won't be able to sniff
 			// content type either.
@@ -23,23 +23,62 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.resourceindex.cdx.CDXIndex;
 import org.archive.wayback.util.CompositeSortedIterator;
+import org.archive.wayback.webapp.PerfStats;
+import org.archive.wayback.webapp.PerfStats.PerfStatEntry;
 
 /**
  * SearchResultSource that aggregates results from multiple SearchResultSources.
+ * <p>
+ * By default, component iterators are opened one by one on the calling
+ * thread. With {@code parallelism} set to a positive number, they are opened
+ * concurrently on a fixed-size thread pool, and those that did not open
+ * within {@code timeout} milliseconds are left out of the result (unless
+ * the source is required, in which case the query fails). In parallel mode,
+ * time spent opening each source is recorded in {@link PerfStats} as
+ * {@code CompositeSource<i>}, where {@code i} is the index of the source,
+ * and stats recorded by sources on pool threads are added to the calling
+ * thread. Stats of a source still opening when the caller gives up on it
+ * are not reported.
+ * </p>
  * 
  * @author brad
  * @version $Date$, $Revision$
  */
 public class CompositeSearchResultSource implements SearchResultSource {
+	private static final Logger LOGGER = Logger.getLogger(
+			CompositeSearchResultSource.class.getName());
+
+	enum PerfStat
+	{
+		CompositeSourceTimeout;
+	}
+
+	protected final static String SOURCE_STAT_PREFIX = "CompositeSource";
 
 	protected List<SearchResultSource> sources;
 
+	private int parallelism = 0;
+	private long timeout = 0;
+	private ExecutorService executor = null;
+	private boolean ownExecutor = true;
+
 	/**
 	 * Constructor
 	 */
@@ -68,6 +107,11 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		Comparator<CaptureSearchResult> comparator = new SearchResultComparator();
 		CompositeSortedIterator<CaptureSearchResult> itr = new CompositeSortedIterator<CaptureSearchResult>(comparator);
 		
+		if (parallelism > 0 && sources.size() > 1) {
+			addComponentsParallel(itr, prefix);
+			return itr;
+		}
+		
 		int added = 0;
 		ResourceIndexNotAvailableException lastExc = null;
 		
@@ -78,28 +122,285 @@ public class CompositeSearchResultSource implements SearchResultSource {
 				itr.addComponent(source.getPrefixIterator(prefix));
 				added++;
 			} catch (ResourceIndexNotAvailableException e) {
-				if (source instanceof ZipNumClusterSearchResultSource) {
-					if (((ZipNumClusterSearchResultSource)source).getCluster().isRequired()) {
-						throw e;
-					}
+				if (isRequired(source)) {
+					closeQuietly(itr);
+					throw e;
 				}
 				
 				lastExc = e;
+			} catch (RuntimeException e) {
+				closeQuietly(itr);
+				throw e;
 			}
 		}
 		
 		if ((lastExc != null) && (added == 0)) {
-			try {
-				itr.close();
-			} catch (IOException io) {
-				
-			}
+			closeQuietly(itr);
 			throw lastExc;
 		}
 		
 		return itr;
 	}
 
+	/**
+	 * Open component iterators for all sources concurrently on the executor,
+	 * and add those opened before the deadline to {@code itr}, in the order
+	 * of sources.
+	 * @param itr composite iterator
+	 * @param prefix search prefix
+	 * @throws ResourceIndexNotAvailableException if a required source failed
+	 * or timed out, or no source is available at all
+	 * @throws RuntimeException thrown by any source, as in serial mode
+	 */
+	protected void addComponentsParallel(
+			CompositeSortedIterator<CaptureSearchResult> itr, String prefix)
+			throws ResourceIndexNotAvailableException {
+		final int n = sources.size();
+		final ExecutorService exec = getExecutor();
+		List<OpenTask> tasks = new ArrayList<OpenTask>(n);
+		List<Future<CloseableIterator<CaptureSearchResult>>> futures =
+			new ArrayList<Future<CloseableIterator<CaptureSearchResult>>>(n);
+		final long start = System.currentTimeMillis();
+		final long deadline = start + timeout;
+		for (int i = 0; i < n; i++) {
+			OpenTask task = new OpenTask(sources.get(i), prefix);
+			tasks.add(task);
+			futures.add(exec.submit(task));
+		}
+
+		int added = 0;
+		ResourceIndexNotAvailableException lastExc = null;
+		ResourceIndexNotAvailableException requiredExc = null;
+		// RuntimeException or Error thrown by a source
+		Throwable unexpected = null;
+
+		for (int i = 0; i < n; i++) {
+			OpenTask task = tasks.get(i);
+			Future<CloseableIterator<CaptureSearchResult>> future = futures.get(i);
+			CloseableIterator<CaptureSearchResult> component = null;
+			ResourceIndexNotAvailableException exc = null;
+			if (requiredExc != null || unexpected != null) {
+				// query is failing anyway - don't wait for the rest.
+				component = task.abandon();
+				future.cancel(true);
+				closeQuietly(component);
+				continue;
+			}
+			try {
+				if (timeout > 0) {
+					long remaining = deadline - System.currentTimeMillis();
+					component = future.get(Math.max(remaining, 0),
+						TimeUnit.MILLISECONDS);
+				} else {
+					component = future.get();
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof ResourceIndexNotAvailableException) {
+					exc = (ResourceIndexNotAvailableException)cause;
+				} else if (cause instanceof RuntimeException ||
+						cause instanceof Error) {
+					unexpected = cause;
+				} else {
+					exc = new ResourceIndexNotAvailableException(
+						String.valueOf(cause));
+				}
+			} catch (TimeoutException e) {
+				component = task.abandon();
+				if (component == null) {
+					future.cancel(true);
+					PerfStats.count(PerfStat.CompositeSourceTimeout, 1);
+					LOGGER.warning("Timed out opening source " + i +
+							" for " + prefix);
+					exc = new ResourceIndexNotAvailableException(
+						"Timed out opening source " + i);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				component = task.abandon();
+				future.cancel(true);
+				closeQuietly(component);
+				component = null;
+				exc = new ResourceIndexNotAvailableException("Interrupted");
+				requiredExc = exc;
+			}
+			PerfStats.count(SOURCE_STAT_PREFIX + i, task.getElapsed(start));
+			Map<String, PerfStatEntry> stats = task.getStats();
+			if (stats != null) {
+				PerfStats.addAll(stats);
+			}
+			if (component != null) {
+				itr.addComponent(component);
+				added++;
+			} else if (exc != null) {
+				if (isRequired(task.source)) {
+					requiredExc = exc;
+				}
+				lastExc = exc;
+			}
+		}
+
+		if (unexpected != null) {
+			closeQuietly(itr);
+			if (unexpected instanceof Error) {
+				throw (Error)unexpected;
+			}
+			throw (RuntimeException)unexpected;
+		}
+		if (requiredExc != null) {
+			closeQuietly(itr);
+			throw requiredExc;
+		}
+		if ((lastExc != null) && (added == 0)) {
+			closeQuietly(itr);
+			throw lastExc;
+		}
+	}
+
+	/**
+	 * Opens prefix iterator for a source. If the caller has given up
+	 * waiting by the time iterator is opened, it is closed right away.
+	 */
+	private static class OpenTask implements
+			Callable<CloseableIterator<CaptureSearchResult>> {
+		final SearchResultSource source;
+		final String prefix;
+		private CloseableIterator<CaptureSearchResult> result = null;
+		private boolean abandoned = false;
+		private long finished = 0;
+		private Map<String, PerfStatEntry> stats = null;
+
+		OpenTask(SearchResultSource source, String prefix) {
+			this.source = source;
+			this.prefix = prefix;
+		}
+
+		public CloseableIterator<CaptureSearchResult> call() throws Exception {
+			CloseableIterator<CaptureSearchResult> it = null;
+			// drop stats left on this pool thread by earlier tasks
+			PerfStats.takeAll();
+			try {
+				it = source.getPrefixIterator(prefix);
+			} finally {
+				Map<String, PerfStatEntry> taken = PerfStats.takeAll();
+				synchronized (this) {
+					finished = System.currentTimeMillis();
+					stats = taken;
+					if (abandoned) {
+						closeQuietly(it);
+						it = null;
+					}
+					result = it;
+				}
+			}
+			return it;
+		}
+
+		/**
+		 * Mark this task abandoned.
+		 * @return iterator if it has been opened in the meantime,
+		 * {@code null} otherwise (it will be closed when opened).
+		 */
+		synchronized CloseableIterator<CaptureSearchResult> abandon() {
+			abandoned = true;
+			CloseableIterator<CaptureSearchResult> it = result;
+			result = null;
+			return it;
+		}
+
+		/**
+		 * @return {@link PerfStats} recorded while opening the iterator,
+		 * or {@code null} if it has not finished yet.
+		 */
+		synchronized Map<String, PerfStatEntry> getStats() {
+			return stats;
+		}
+
+		synchronized long getElapsed(long start) {
+			return (finished > 0 ? finished : System.currentTimeMillis()) - start;
+		}
+	}
+
+	protected boolean isRequired(SearchResultSource source) {
+		if (source instanceof ZipNumClusterSearchResultSource) {
+			return ((ZipNumClusterSearchResultSource)source).getCluster().isRequired();
+		}
+		return false;
+	}
+
+	private static void closeQuietly(CloseableIterator<?> itr) {
+		if (itr == null) {
+			return;
+		}
+		try {
+			itr.close();
+		} catch (IOException io) {
+			LOGGER.warning(io.toString());
+		}
+	}
+
+	/**
+	 * Return executor for opening sources in parallel, creating a fixed
+	 * thread pool of {@code parallelism} daemon threads if none has been set.
+	 * @return ExecutorService
+	 */
+	protected synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(parallelism,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "CompositeSearchResultSource-" +
+								count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return executor;
+	}
+
+	/**
+	 * Set executor for opening sources in parallel. Executor set with this
+	 * method is shared, and not shut down by {@link #shutdown()}.
+	 * {@code parallelism} still needs to be set to a positive value
+	 * to enable parallel fan-out.
+	 * @param executor ExecutorService
+	 */
+	public synchronized void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		this.ownExecutor = false;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Number of threads for opening sources concurrently.
+	 * If {@code 0} (default), sources are opened serially on the
+	 * calling thread.
+	 * @param parallelism number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Time in milliseconds to wait for sources opened in parallel.
+	 * Sources that did not open in time are skipped (or fail the query,
+	 * if they are required). {@code 0} (default) waits indefinitely.
+	 * Has no effect unless {@code parallelism} is set.
+	 * @param timeout timeout in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -163,5 +464,11 @@ public class CompositeSearchResultSource implements SearchResultSource {
 		for(SearchResultSource source : sources) {
 			source.shutdown();
 		}
+		synchronized (this) {
+			if (executor != null && ownExecutor) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
 	}
 }
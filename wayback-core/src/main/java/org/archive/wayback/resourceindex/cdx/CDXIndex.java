@@ -20,12 +20,11 @@
 package org.archive.wayback.resourceindex.cdx;
 
 import java.io.IOException;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 
+import org.archive.cdxserver.ClosestCaptureIterator;
 import org.archive.util.iterator.CloseableIterator;
-import org.archive.util.iterator.SortedCompositeIterator;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.exception.ResourceIndexNotAvailableException;
 import org.archive.wayback.resourceindex.SearchResultSource;
@@ -86,48 +85,24 @@ public class CDXIndex extends FlatFile implements SearchResultSource {
 	}
 	
 	/**
-	 * @param prefix
-	 * @param wantTS
-	 * @return Iterator of results in closest order to wantTS
+	 * Return captures of a URL in order of distance from {@code wantDate},
+	 * reading the index outward from {@code prefix} in both directions.
+	 * Only as many lines as consumed are read.
+	 * @param prefix URL key, optionally followed by a space and the target
+	 * timestamp (for seeking directly to the target)
+	 * @param wantDate target date
+	 * @return Iterator of results in closest order to wantDate
 	 * @throws IOException
+	 * @see ClosestCaptureIterator
 	 */
 	public Iterator<CaptureSearchResult> getClosestIterator(final String prefix, 
 			final Date wantDate) throws IOException {
-		
-		Iterator<CaptureSearchResult> forwardItr = adaptIterator(getRecordIterator(prefix));
-		Iterator<CaptureSearchResult> reverseItr = adaptIterator(getReverseRecordIterator(prefix));
-		Comparator<CaptureSearchResult> comparator = new CaptureSRComparator(wantDate);
-		SortedCompositeIterator<CaptureSearchResult> itr = 
-			new SortedCompositeIterator<CaptureSearchResult>(comparator);
-		itr.addIterator(forwardItr);
-		itr.addIterator(reverseItr);
-		return itr;
-	}
-
-	private class CaptureSRComparator implements Comparator<CaptureSearchResult> {
-		private long wantTime;
-		/**
-		 * @param wanted
-		 */
-		public CaptureSRComparator(Date wanted) {
-			wantTime = wanted.getTime();
-		}
-		private long searchResultToDistance(CaptureSearchResult sr) {
-			return Math.abs(wantTime - sr.getCaptureDate().getTime());
-		}
-		/* (non-Javadoc)
-		 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-		 */
-		public int compare(CaptureSearchResult o1, CaptureSearchResult o2) {
-			long d1 = searchResultToDistance(o1);
-			long d2 = searchResultToDistance(o2);
-			if(d1 < d2) {
-				return -1;
-			} else if(d1 > d2) {
-				return 1;
-			}
-			return 0;
-		}
+		int space = prefix.indexOf(' ');
+		String urlkey = space >= 0 ? prefix.substring(0, space) : prefix;
+		CloseableIterator<String> forwardItr = getRecordIterator(prefix);
+		CloseableIterator<String> reverseItr = getReverseRecordIterator(prefix);
+		return adaptIterator(new ClosestCaptureIterator(forwardItr, reverseItr,
+			urlkey, wantDate.getTime() / 1000));
 	}
 
 	/* (non-Javadoc)
@@ -1,11 +1,15 @@
 package org.archive.wayback.resourceindex.cdxserver;
 
+import java.util.List;
+
 import org.archive.cdxserver.auth.AuthToken;
+import org.archive.cdxserver.filter.BatchCDXAccessFilter;
 import org.archive.cdxserver.filter.CDXAccessFilter;
 import org.archive.cdxserver.filter.CDXFilter;
 import org.archive.format.cdx.CDXLine;
 import org.archive.util.io.RuntimeIOException;
 import org.archive.wayback.accesscontrol.oracleclient.CustomPolicyOracleFilter;
+import org.archive.wayback.accesscontrol.robotstxt.RobotExclusionFilter;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.FastCaptureSearchResult;
 import org.archive.wayback.exception.AdministrativeAccessControlException;
@@ -23,12 +27,18 @@ import org.archive.wayback.util.url.UrlOperations;
  * done in ExclusionFilter.
  * </p>
  * <p>
+ * Results of {@code ExclusionFilter}s are reused for consecutive captures of
+ * the same {@code urlkey} only when the filter declares the result is
+ * per-URL ({@link ExclusionFilter#isUrlLevel(CaptureSearchResult)}).
+ * Filters with timestamp-dependent rules are still called for every capture.
+ * </p>
+ * <p>
  * 2014-11-06: The second CDXFilter (@code cdxFilter2) is soon to be dropped. If
  * more than one {@code CDXFilter}s are needed, bundle them up in one composite
  * CDXFilter.
  * </p>
  */
-public class AccessCheckFilter implements CDXAccessFilter {
+public class AccessCheckFilter implements BatchCDXAccessFilter {
 
 	protected ExclusionFilter adminFilter;
 	protected ExclusionFilter robotsFilter;
@@ -40,8 +50,8 @@ public class AccessCheckFilter implements CDXAccessFilter {
 
 	protected AuthToken authToken;
 
-	protected String lastKey;
-	protected boolean cachedValue = false;
+	protected MemoizedFilter adminMemo;
+	protected MemoizedFilter robotsMemo;
 
 	/**
 	 * Initialize with {@code AuthToken}, two {@code ExclusionFilter}s and just one {@link CDXFilter}.
@@ -72,6 +82,12 @@ public class AccessCheckFilter implements CDXAccessFilter {
 
 		this.adminFilter = adminFilter;
 		this.robotsFilter = robotsFilter;
+		if (adminFilter != null) {
+			this.adminMemo = new MemoizedFilter(adminFilter);
+		}
+		if (robotsFilter != null) {
+			this.robotsMemo = new MemoizedFilter(robotsFilter);
+		}
 
 		this.cdxFilter = cdxFilter;
 		this.cdxFilter2 = cdxFilter2;
@@ -79,12 +95,41 @@ public class AccessCheckFilter implements CDXAccessFilter {
 //		this.resultTester = new FastCaptureSearchResult();
 	}
 
+	/**
+	 * Remembers {@link ExclusionFilter} result for the last {@code urlKey},
+	 * and reuses it for captures for which the filter result is per-URL.
+	 * As captures come in {@code urlKey} order, this is as effective as
+	 * a map over all {@code urlKey}s.
+	 */
+	protected static class MemoizedFilter {
+		final ExclusionFilter filter;
+		String lastKey;
+		int lastStatus;
+
+		public MemoizedFilter(ExclusionFilter filter) {
+			this.filter = filter;
+		}
+
+		public int filterObject(CaptureSearchResult capture) {
+			if (!filter.isUrlLevel(capture)) {
+				return filter.filterObject(capture);
+			}
+			String urlKey = capture.getUrlKey();
+			if (lastKey != null && lastKey.equals(urlKey)) {
+				return lastStatus;
+			}
+			lastStatus = filter.filterObject(capture);
+			lastKey = urlKey;
+			return lastStatus;
+		}
+	}
+
 	public boolean include(CaptureSearchResult resultTester, boolean throwOnFail) {
 		int status = ExclusionFilter.FILTER_INCLUDE;
 
 		// Admin Excludes
-		if (adminFilter != null) {
-			status = adminFilter.filterObject(resultTester);
+		if (adminMemo != null) {
+			status = adminMemo.filterObject(resultTester);
 		}
 
 		if (status != ExclusionFilter.FILTER_INCLUDE) {
@@ -94,15 +139,13 @@ public class AccessCheckFilter implements CDXAccessFilter {
 						resultTester.getOriginalUrl() +
 								" is not available in the Wayback Machine."));
 			} else {
-//				lastKey = resultTester.getUrlKey();
-//				return cachedValue;
 				return false;
 			}
 		}
 
 		// Robot Excludes
-		if (robotsFilter != null && !authToken.isIgnoreRobots()) {
-			status = robotsFilter.filterObject(resultTester);
+		if (robotsMemo != null && !authToken.isIgnoreRobots()) {
+			status = robotsMemo.filterObject(resultTester);
 		}
 
 		if (status != ExclusionFilter.FILTER_INCLUDE) {
@@ -112,37 +155,25 @@ public class AccessCheckFilter implements CDXAccessFilter {
 						resultTester.getOriginalUrl() +
 								" is blocked by the sites robots.txt file"));
 			} else {
-//				lastKey = resultTester.getUrlKey();
-//				return cachedValue;
 				return false;
 			}
 		}
 
-//		lastKey = resultTester.getUrlKey();
-//		cachedValue = true;
-//
-//		return cachedValue;
 		return true;
 	}
 
-//	public boolean include(String urlKey, String originalUrl,
-//			boolean throwOnFail) {
-//
-//		if (lastKey != null && lastKey.equals(urlKey)) {
-//			return cachedValue;
-//		}
-//
-//		cachedValue = false;
-//
-//		if (UrlOperations.urlToScheme(originalUrl) == null) {
-//			originalUrl = UrlOperations.HTTP_SCHEME + originalUrl;
-//		}
-//
-//		resultTester.setUrlKey(urlKey);
-//		resultTester.setOriginalUrl(originalUrl);
-//
-//		return include(resultTester, throwOnFail);
-//	}
+	/**
+	 * Look up robots.txt for hosts of {@code originalUrls} in one batch,
+	 * if robots exclusion filter supports it.
+	 * @see RobotExclusionFilter#prefetch(java.util.Collection)
+	 */
+	@Override
+	public void prefetch(List<String> originalUrls) {
+		if (robotsFilter instanceof RobotExclusionFilter &&
+				!authToken.isIgnoreRobots()) {
+			((RobotExclusionFilter)robotsFilter).prefetch(originalUrls);
+		}
+	}
 
 	@Override
 	public boolean includeUrl(String urlKey, String originalUrl) {
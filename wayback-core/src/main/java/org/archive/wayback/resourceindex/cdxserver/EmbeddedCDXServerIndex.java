@@ -15,6 +15,7 @@ import org.archive.cdxserver.CDXQuery;
 import org.archive.cdxserver.CDXServer;
 import org.archive.cdxserver.auth.AuthToken;
 import org.archive.cdxserver.auth.PrivTokenAuthChecker;
+import org.archive.cdxserver.writer.BatchingOutputStream;
 import org.archive.cdxserver.writer.CDXWriter;
 import org.archive.cdxserver.writer.HttpCDXWriter;
 import org.archive.cdxserver.writer.JsonWriter;
@@ -32,7 +33,6 @@ import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.http.ApacheHttp31SLRFactory;
 import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.CloseableIterator;
-import org.archive.util.iterator.SortedCompositeIterator;
 import org.archive.wayback.ResourceIndex;
 import org.archive.wayback.UrlCanonicalizer;
 import org.archive.wayback.core.CaptureSearchResult;
@@ -48,6 +48,7 @@ import org.archive.wayback.memento.MementoConstants;
 import org.archive.wayback.memento.MementoHandler;
 import org.archive.wayback.memento.MementoUtils;
 import org.archive.wayback.resourceindex.filters.SelfRedirectFilter;
+import org.archive.wayback.util.CompositeSortedIterator;
 import org.archive.wayback.util.webapp.AbstractRequestHandler;
 import org.archive.wayback.util.webapp.RequestHandler;
 import org.archive.wayback.webapp.PerfStats;
@@ -89,6 +90,9 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 
 	protected List<String> ignoreRobotPaths;
 
+	protected int writeBatchSize = BatchingOutputStream.DEFAULT_BATCH_SIZE;
+	protected long writeStallTimeout = 0;
+
 	protected String baseStatusRegexp;
 	protected String baseStatusFilter;
 	{
@@ -336,8 +340,14 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 				statusFilter = "statuscode:[23]..";
 			}
 
-			if (wbRequest.isTimestampSearchKey()) {
-				query.setClosest(wbRequest.getReplayTimestamp());
+			// with limit, CDXServer looks up limit captures closest to
+			// the replay timestamp, reading outward from it, in
+			// chronological order (timestamp collapsing applies to those
+			// captures only).
+			String replayTimestamp = wbRequest.getReplayTimestamp();
+			if (replayTimestamp != null && !replayTimestamp.isEmpty()) {
+				query.setClosest(replayTimestamp);
+				query.setClosestWindow(true);
 			}
 
 			// set explicit matchType, or CDXServer will run prefix
@@ -475,10 +485,10 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 					urlkey, urlkey, urlkey, params);
 
 			if (extraIter.hasNext()) {
-				SortedCompositeIterator<String> sortedIter = new SortedCompositeIterator<String>(
+				CompositeSortedIterator<String> sortedIter = new CompositeSortedIterator<String>(
 						MultiCDXInputSource.defaultComparator);
-				sortedIter.addIterator(iter);
-				sortedIter.addIterator(extraIter);
+				sortedIter.addComponent(iter);
+				sortedIter.addComponent(extraIter);
 				return sortedIter;
 			}
 		}
@@ -613,8 +623,16 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		} else if ("memento".equals(format)) {
 			return new MementoLinkWriter(request, response, query, gzip);
 		} else if ("json".equals(format)) {
+			if (writeBatchSize > 0) {
+				return new JsonWriter(response, gzip, writeBatchSize,
+					writeStallTimeout);
+			}
 			return new JsonWriter(response, gzip);
 		} else {
+			if (writeBatchSize > 0) {
+				return new PlainTextWriter(response, gzip, writeBatchSize,
+					writeStallTimeout);
+			}
 			return new PlainTextWriter(response, gzip);
 		}
 	}
@@ -767,6 +785,16 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		return limit;
 	}
 
+	/**
+	 * Maximum number of captures to look up.
+	 * <p>For replay requests, it is the number of captures closest to
+	 * the requested timestamp. CDXServer reads captures outward from the
+	 * requested timestamp and stops there, so that lookup time does not
+	 * grow with the number of captures of the URL (see
+	 * {@link CDXServer#setClosestScan(boolean)}).</p>
+	 * <p>Initial value is 0 (unlimited).</p>
+	 * @param limit number of captures, 0 for unlimited
+	 */
 	public void setLimit(int limit) {
 		this.limit = limit;
 	}
@@ -861,6 +889,48 @@ public class EmbeddedCDXServerIndex extends AbstractRequestHandler implements Me
 		this.ignoreRobotPaths = ignoreRobotPaths;
 	}
 
+	public int getWriteBatchSize() {
+		return writeBatchSize;
+	}
+
+	/**
+	 * Size of output batches for CDX Server API responses in {@code json}
+	 * and plain text format, in bytes.
+	 * <p>If positive, response is encoded into a reusable buffer and written
+	 * to the client in batches of this size, instead of through container's
+	 * response writer. CDX lines are then encoded straight to UTF-8 bytes
+	 * (see {@link org.archive.cdxserver.writer.Utf8LineBuffer}), which is much cheaper than going through
+	 * the response writer.</p>
+	 * <p>Initial value is {@link BatchingOutputStream#DEFAULT_BATCH_SIZE}.
+	 * {@code 0} disables batching, and writes through container's response
+	 * writer.</p>
+	 * @param writeBatchSize batch size in bytes, or {@code 0}
+	 * @see BatchingOutputStream
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	public long getWriteStallTimeout() {
+		return writeStallTimeout;
+	}
+
+	/**
+	 * Maximum time writing one output batch may take, in milliseconds.
+	 * <p>If a client reads slower than this, the response is cut short and
+	 * index iterators are released, so that slow clients cannot hold open
+	 * index blocks for long. Truncated response ends with
+	 * {@link HttpCDXWriter#ABORTED_MARKER} line (or lacks gzip trailer).
+	 * A write blocked on the client is not interrupted; it is still bounded
+	 * only by the container's connection timeout. Effective only when
+	 * {@code writeBatchSize} is positive.</p>
+	 * <p>Initial value is {@code 0} (no timeout).</p>
+	 * @param writeStallTimeout timeout in milliseconds, or {@code 0}
+	 */
+	public void setWriteStallTimeout(long writeStallTimeout) {
+		this.writeStallTimeout = writeStallTimeout;
+	}
+
 	public boolean isTryFuzzyMatch() {
 		return tryFuzzyMatch;
 	}
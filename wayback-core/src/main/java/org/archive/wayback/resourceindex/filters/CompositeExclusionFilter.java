@@ -69,4 +69,14 @@ public class CompositeExclusionFilter extends ExclusionFilter {
 		}
 		return FILTER_INCLUDE;
 	}
+
+	@Override
+	public boolean isUrlLevel(CaptureSearchResult capture) {
+		for (ExclusionFilter filter : filters) {
+			if (filter == null || !filter.isUrlLevel(capture)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
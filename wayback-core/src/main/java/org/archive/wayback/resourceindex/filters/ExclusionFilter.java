@@ -32,4 +32,22 @@ public abstract class ExclusionFilter implements ObjectFilter<CaptureSearchResul
 	public void setFilterGroup(ExclusionCaptureFilterGroup filterGroup) {
 		this.filterGroup = filterGroup;
 	}
+
+	/**
+	 * Return {@code true} if {@link #filterObject(Object)} returns the same
+	 * result for {@code capture} as for any other capture with the same
+	 * {@code urlKey} that this method returns {@code true} for, i.e. the
+	 * result does not depend on timestamp or other per-capture fields, and
+	 * filtering has no side-effect on {@code capture}. Callers may reuse
+	 * the result for subsequent captures of the same {@code urlKey}
+	 * instead of calling {@code filterObject}.
+	 * <p>Default implementation returns {@code false}. Filters applying
+	 * timestamp-dependent rules (embargo, for example) shall not override
+	 * this method.</p>
+	 * @param capture capture being filtered
+	 * @return {@code true} if the result is per-{@code urlKey}
+	 */
+	public boolean isUrlLevel(CaptureSearchResult capture) {
+		return false;
+	}
 }
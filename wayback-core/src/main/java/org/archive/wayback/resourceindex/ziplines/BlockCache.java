@@ -0,0 +1,225 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Bounded LRU cache of decompressed CDX blocks, keyed by (location, offset,
+ * length) of the compressed block.
+ * <p>
+ * The cache is bounded by the total number of decompressed bytes held, not
+ * by the number of blocks. A single instance is meant to be shared by all
+ * {@link ZiplinesSearchResultSource}s (and thus all requests and threads)
+ * reading the same set of blocks; configure it as a Spring bean and set it
+ * to each source with
+ * {@link ZiplinesSearchResultSource#setBlockCache(BlockCache)}.
+ * </p>
+ * <p>
+ * Cached byte arrays are shared among readers, and must not be modified.
+ * </p>
+ * <p>
+ * Hit, miss and eviction counts are available as cumulative numbers through
+ * getters, and also recorded to {@link PerfStats} for current request.
+ * </p>
+ */
+public class BlockCache {
+
+	enum PerfStat
+	{
+		BlockCacheHit,
+		BlockCacheMiss,
+		BlockCacheEvict;
+	}
+
+	/**
+	 * Rough per-entry overhead (key, map entry, array header) in bytes,
+	 * counted toward the size limit.
+	 */
+	final static int ENTRY_OVERHEAD = 128;
+
+	public final static long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long currentBytes = 0;
+
+	private final LinkedHashMap<Key, byte[]> blocks =
+		new LinkedHashMap<Key, byte[]>(256, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	static final class Key {
+		final String location;
+		final long offset;
+		final int length;
+		final int hash;
+
+		Key(String location, long offset, int length) {
+			this.location = location;
+			this.offset = offset;
+			this.length = length;
+			int h = location.hashCode();
+			h = h * 31 + (int)(offset ^ (offset >>> 32));
+			h = h * 31 + length;
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			return offset == other.offset && length == other.length &&
+					location.equals(other.location);
+		}
+	}
+
+	/**
+	 * Look up decompressed block.
+	 * @param location location of the compressed block (first of
+	 * replicas)
+	 * @param offset offset of the compressed block
+	 * @param length length of the compressed block
+	 * @return decompressed bytes, or {@code null} if not cached
+	 */
+	public byte[] get(String location, long offset, int length) {
+		Key key = new Key(location, offset, length);
+		byte[] bytes;
+		synchronized (blocks) {
+			bytes = blocks.get(key);
+		}
+		if (bytes != null) {
+			hits.incrementAndGet();
+			PerfStats.count(PerfStat.BlockCacheHit, 1);
+		} else {
+			misses.incrementAndGet();
+			PerfStats.count(PerfStat.BlockCacheMiss, 1);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Store decompressed block, evicting least recently used blocks
+	 * as necessary to stay within {@code maxBytes}.
+	 * Blocks larger than {@code maxBytes} are not cached.
+	 * @param location location of the compressed block
+	 * @param offset offset of the compressed block
+	 * @param length length of the compressed block
+	 * @param bytes decompressed bytes
+	 */
+	public void put(String location, long offset, int length, byte[] bytes) {
+		final long weight = weight(bytes);
+		if (weight > maxBytes) {
+			return;
+		}
+		Key key = new Key(location, offset, length);
+		int evicted = 0;
+		synchronized (blocks) {
+			byte[] old = blocks.put(key, bytes);
+			if (old != null) {
+				currentBytes -= weight(old);
+			}
+			currentBytes += weight;
+			Iterator<Map.Entry<Key, byte[]>> it = blocks.entrySet().iterator();
+			while (currentBytes > maxBytes && it.hasNext()) {
+				Map.Entry<Key, byte[]> eldest = it.next();
+				currentBytes -= weight(eldest.getValue());
+				it.remove();
+				evicted++;
+			}
+		}
+		if (evicted > 0) {
+			evictions.addAndGet(evicted);
+			PerfStats.count(PerfStat.BlockCacheEvict, evicted);
+		}
+	}
+
+	private static long weight(byte[] bytes) {
+		return bytes.length + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * Drop all cached blocks. Counters are not reset.
+	 */
+	public void clear() {
+		synchronized (blocks) {
+			blocks.clear();
+			currentBytes = 0;
+		}
+	}
+
+	/**
+	 * @return maximum total size of cached blocks in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes maximum total size of cached blocks in bytes
+	 * (including small per-block overhead).
+	 * Default is 64MB.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return current total size of cached blocks in bytes
+	 */
+	public long getCurrentBytes() {
+		synchronized (blocks) {
+			return currentBytes;
+		}
+	}
+
+	/**
+	 * @return number of blocks currently cached
+	 */
+	public int getBlockCount() {
+		synchronized (blocks) {
+			return blocks.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
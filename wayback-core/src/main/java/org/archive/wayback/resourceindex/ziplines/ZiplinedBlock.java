@@ -21,7 +21,9 @@ package org.archive.wayback.resourceindex.ziplines;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
@@ -40,6 +42,7 @@ public class ZiplinedBlock {
 			ZiplinedBlock.class.getName());
 
 	BlockLoader loader = null;
+	BlockCache cache = null;
 	String urlOrPaths[] = null;
 	long offset = -1;
 	public final static int BLOCK_SIZE = 128 * 1024;
@@ -70,6 +73,12 @@ public class ZiplinedBlock {
 	public void setLoader(BlockLoader loader) {
 		this.loader = loader;
 	}
+	/**
+	 * @param cache shared cache of decompressed blocks, may be {@code null}
+	 */
+	public void setCache(BlockCache cache) {
+		this.cache = cache;
+	}
 	/**
 	 * @return a BufferedReader of the underlying compressed data in this block
 	 * @throws IOException for usual reasons
@@ -94,17 +103,58 @@ public class ZiplinedBlock {
 	
 	protected BufferedReader readBlockEfficiently(BlockLoader remote)
 	throws IOException {
+		if(cache != null) {
+			return new BufferedReader(new InputStreamReader(
+					new ByteArrayInputStream(loadDecompressed(remote)),
+					ByteOp.UTF8));
+		}
 		byte bytes[] = attemptBlockLoad(remote);
 		if(bytes == null) {
 			throw new IOException("Unable to load block!");
 		}
 		return new BufferedReader(new InputStreamReader(
-				new OpenJDK7GZIPInputStream(new ByteArrayInputStream(bytes)),
-				ByteOp.UTF8));
+				openDecompressing(bytes), ByteOp.UTF8));
 //		return new BufferedReader(new InputStreamReader(
 //				new GZIPInputStream(new ByteArrayInputStream(bytes)),
 //				ByteOp.UTF8));
 	}
+	/**
+	 * Return decompressed content of this block, from {@code cache} if
+	 * available, or loading and decompressing it with {@code remote}, and
+	 * storing it to {@code cache}.
+	 * @param remote BlockLoader
+	 * @return decompressed bytes (must not be modified)
+	 * @throws IOException if block cannot be loaded
+	 */
+	protected byte[] loadDecompressed(BlockLoader remote) throws IOException {
+		byte decompressed[] = cache.get(urlOrPaths[0], offset, count);
+		if(decompressed != null) {
+			return decompressed;
+		}
+		byte bytes[] = attemptBlockLoad(remote);
+		if(bytes == null) {
+			throw new IOException("Unable to load block!");
+		}
+		InputStream is = openDecompressing(bytes);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 8);
+		try {
+			ByteOp.copyStream(is, baos);
+		} finally {
+			is.close();
+		}
+		decompressed = baos.toByteArray();
+		cache.put(urlOrPaths[0], offset, count, decompressed);
+		return decompressed;
+	}
+	/**
+	 * Return InputStream decompressing {@code bytes} loaded for this block.
+	 * @param bytes compressed bytes
+	 * @return InputStream
+	 * @throws IOException if {@code bytes} is not in gzip format
+	 */
+	protected InputStream openDecompressing(byte bytes[]) throws IOException {
+		return new OpenJDK7GZIPInputStream(new ByteArrayInputStream(bytes));
+	}
 	protected BufferedReader readBlockInefficiently() throws IOException {
 		StringBuilder sb = new StringBuilder(16);
 		sb.append(BYTES_HEADER).append(offset).append(BYTES_MINUS);
@@ -1,10 +1,8 @@
 package org.archive.wayback.resourceindex.ziplines;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.SequenceInputStream;
 import java.util.ArrayList;
 
@@ -45,14 +43,8 @@ public class ZiplinedMultiBlock extends ZiplinedBlock {
 	}
 	
 	@Override
-	public BufferedReader readBlock()
+	protected InputStream openDecompressing(byte bytes[])
 	throws IOException {
-		byte bytes[] = attemptBlockLoad(super.loader);
-		
-		if(bytes == null) {
-			throw new IOException("Unable to load block(s)!");
-		}
-		
 		int count = 0;
 		InputStream currChain = null;
 		
@@ -69,6 +61,6 @@ public class ZiplinedMultiBlock extends ZiplinedBlock {
 			count += blockSize;
 		}
 		
-		return new BufferedReader(new InputStreamReader(currChain));
+		return currChain;
 	}
 }
@@ -79,6 +79,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	 */
 	private String chunkIndexPath = null;
 	private FlatFile chunkIndex = null;
+	private boolean mapChunkIndex = false;
 	/**
 	 * Local path containing URL for each CHUNK
 	 */
@@ -87,6 +88,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 	private CDXFormat format = null;
 	private int maxBlocks = 1000;
 	private BlockLoader blockLoader = null;
+	private BlockCache blockCache = null;
 	
 	protected int timestampDedupLength = 0;
 	
@@ -125,6 +127,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		}
 		lines.close();
 		chunkIndex = new FlatFile(chunkIndexPath);
+		chunkIndex.setMapped(mapChunkIndex);
 	}
 	protected CloseableIterator<CaptureSearchResult> adaptIterator(Iterator<String> itr) 
 	throws IOException {
@@ -254,6 +257,7 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 					block = new ZiplinedBlock(bl.getLocations(), offset, length);
 				}
 				block.setLoader(blockLoader);
+				block.setCache(blockCache);
 				blocks.add(block);
 			}
 		} finally {
@@ -374,6 +378,39 @@ public class ZiplinesSearchResultSource implements SearchResultSource {
 		this.blockLoader = blockLoader;
 	}
 
+	/**
+	 * @return whether chunk index is memory-mapped
+	 */
+	public boolean isMapChunkIndex() {
+		return mapChunkIndex;
+	}
+
+	/**
+	 * If set to {@code true}, chunk index (summary) file is memory-mapped.
+	 * @param mapChunkIndex {@code true} to memory-map chunk index
+	 * @see FlatFile#setMapped(boolean)
+	 */
+	public void setMapChunkIndex(boolean mapChunkIndex) {
+		this.mapChunkIndex = mapChunkIndex;
+	}
+
+	/**
+	 * @return the blockCache
+	 */
+	public BlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * Set cache of decompressed blocks. The same {@link BlockCache} may be
+	 * shared by multiple sources. If {@code null} (default), blocks are
+	 * loaded and decompressed for every query.
+	 * @param blockCache the blockCache to set
+	 */
+	public void setBlockCache(BlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
 	private static void USAGE() {
 		System.err.println("USAGE:");
 		System.err.println("");
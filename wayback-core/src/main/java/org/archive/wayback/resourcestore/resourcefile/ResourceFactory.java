@@ -27,6 +27,8 @@ import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
 import org.apache.hadoop.conf.Configuration;
@@ -177,6 +179,14 @@ public class ResourceFactory {
 
 			ArchiveReader reader = WARCReaderFactory.get(fPath, is, false);
 			r = WARCArchiveRecordToResource(reader.get(), reader);
+			if (name.endsWith(ArcWarcFilenameFilter.WARC_SUFFIX)) {
+				// uncompressed: payload is stored verbatim in the file
+				FileChannel channel = raf.getChannel();
+				long blockOffset = findBlockOffset(channel, offset);
+				if (blockOffset >= 0) {
+					((WarcResource)r).setBlockChannel(channel, blockOffset);
+				}
+			}
 
 		} else {
 			throw new ResourceNotAvailableException("Unknown extension");
@@ -208,6 +218,61 @@ public class ResourceFactory {
 	}
 	
 	
+	private final static int MAX_WARC_HEADER_SIZE = 64 * 1024;
+	private final static byte[] WARC_MAGIC = { 'W', 'A', 'R', 'C', '/' };
+
+	private static boolean startsWith(ByteBuffer buffer, int n, byte[] prefix) {
+		if (n < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the end of WARC header (empty line) of the uncompressed record
+	 * at {@code offset}, without moving {@code channel}'s position.
+	 * @param channel FileChannel of uncompressed WARC file
+	 * @param offset file offset of WARC record
+	 * @return file offset of the first byte of record block, or {@code -1}
+	 *   if the end of WARC header is not found
+	 * @throws IOException
+	 */
+	static long findBlockOffset(FileChannel channel, long offset)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position = offset;
+		// number of LF seen since the last non-whitespace byte
+		int lf = 0;
+		while (position - offset < MAX_WARC_HEADER_SIZE) {
+			buffer.clear();
+			int n = channel.read(buffer, position);
+			if (n <= 0) {
+				break;
+			}
+			if (position == offset && !startsWith(buffer, n, WARC_MAGIC)) {
+				// not an uncompressed WARC record
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				byte b = buffer.get(i);
+				if (b == '\n') {
+					if (++lf == 2) {
+						return position + i + 1;
+					}
+				} else if (b != '\r') {
+					lf = 0;
+				}
+			}
+			position += n;
+		}
+		return -1;
+	}
+
 	private static boolean isArc(final String name) {
 
 		return (name.endsWith(ArcWarcFilenameFilter.ARC_SUFFIX)
@@ -20,6 +20,7 @@
 package org.archive.wayback.resourcestore.resourcefile;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.HashMap;
@@ -41,6 +42,8 @@ import org.archive.util.LaxHttpParser;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.replay.HttpHeaderOperation;
 
+import com.google.common.io.CountingInputStream;
+
 public class WarcResource extends Resource {
 	private WARCRecord rec = null;
 	private ArchiveReader reader = null;
@@ -48,6 +51,10 @@ public class WarcResource extends Resource {
 	private long length = 0;
 	private int status = 0;
 	private boolean parsedHeaders = false;
+	private long httpHeaderLength = 0;
+	private boolean chunked = false;
+	private FileChannel blockChannel = null;
+	private long blockOffset = -1;
 	public WarcResource(WARCRecord rec, ArchiveReader reader) {
 		this.rec = rec;
 		this.reader = reader;
@@ -91,7 +98,9 @@ public class WarcResource extends Resource {
 		}
 
 		if (rectype == WARCRecordType.response || rectype == WARCRecordType.revisit) {
-		    byte [] statusBytes = LaxHttpParser.readRawLine(rec);
+		    // count HTTP header bytes for locating payload in the block
+		    CountingInputStream cis = new CountingInputStream(rec);
+		    byte [] statusBytes = LaxHttpParser.readRawLine(cis);
 		    int eolCharCount = getEolCharsCount(statusBytes);
 		    if (eolCharCount <= 0) {
 		        throw new RecoverableIOException("Failed to read http status where one " +
@@ -107,8 +116,9 @@ public class WarcResource extends Resource {
 
 		    this.status = statusLine.getStatusCode();
 
-		    Header[] tmpHeaders = LaxHttpParser.parseHeaders(rec,
+		    Header[] tmpHeaders = LaxHttpParser.parseHeaders(cis,
 		            ARCConstants.DEFAULT_ENCODING);
+		    httpHeaderLength = cis.getCount();
 		    headers = new Hashtable<String,String>();
 		    this.setInputStream(rec);
 		    for(Header header: tmpHeaders) {
@@ -117,6 +127,7 @@ public class WarcResource extends Resource {
 		                HttpHeaderOperation.HTTP_TRANSFER_ENC_HEADER)) {
 		            if(header.getValue().toUpperCase().contains(
 		                    HttpHeaderOperation.HTTP_CHUNKED_ENCODING_HEADER)) {
+		                chunked = true;
 		                setChunkedEncoding();
 		            }
 		        }
@@ -166,6 +177,43 @@ public class WarcResource extends Resource {
 		return status;
 	}
 
+	/**
+	 * Set {@link FileChannel} of the uncompressed WARC file this record
+	 * is read from, enabling {@link #getPayloadChannel()}.
+	 * @param channel FileChannel of local WARC file
+	 * @param blockOffset file offset of the first byte of record block
+	 *   (i.e. just after WARC header)
+	 */
+	public void setBlockChannel(FileChannel channel, long blockOffset) {
+		this.blockChannel = channel;
+		this.blockOffset = blockOffset;
+	}
+
+	@Override
+	public long getPayloadLength() {
+		// chunk-decoded payload length is unknown
+		if (!parsedHeaders || chunked) {
+			return -1;
+		}
+		return Math.max(0, getRecordLength() - httpHeaderLength);
+	}
+
+	@Override
+	public FileChannel getPayloadChannel() {
+		if (!parsedHeaders || chunked) {
+			return null;
+		}
+		return blockChannel;
+	}
+
+	@Override
+	public long getPayloadOffset() {
+		if (getPayloadChannel() == null) {
+			return -1;
+		}
+		return blockOffset + httpHeaderLength;
+	}
+
 	@Override
 	public void close() throws IOException {
 		rec.close();
@@ -0,0 +1,193 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Bounded pools of fixed-size {@code byte[]} and {@code char[]} buffers,
+ * for short-lived work buffers allocated for every replay request
+ * (content sniffing, read-ahead, copying).
+ * <p>
+ * Buffers are pooled per exact size, up to {@link #MAX_POOLED_PER_SIZE}
+ * buffers for each size. Buffers larger than {@link #MAX_POOLED_BUFFER_SIZE}
+ * are never pooled. Pools are shared by all threads and lock-free.
+ * </p>
+ * <p>
+ * Buffers returned by {@code take} methods have undefined content (they
+ * are not cleared). Callers must not use a buffer after passing it to
+ * {@code release}, typically done in {@code finally} block:
+ * <pre>
+ * byte[] buffer = BufferPool.takeBytes(SIZE);
+ * try {
+ *     ...
+ * } finally {
+ *     BufferPool.releaseBytes(buffer);
+ * }
+ * </pre>
+ * </p>
+ * <p>
+ * Number of buffers reused and allocated are available as cumulative
+ * numbers through static getters, and also recorded to {@link PerfStats}
+ * for current request.
+ * </p>
+ */
+public class BufferPool {
+
+	enum PerfStat
+	{
+		BufferPoolReuse,
+		BufferPoolAlloc;
+	}
+
+	/**
+	 * Maximum number of idle buffers kept for each size.
+	 */
+	public static final int MAX_POOLED_PER_SIZE = 16;
+
+	/**
+	 * Buffers larger than this (in number of elements) are not pooled.
+	 */
+	public static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+	private static class Slot<T> {
+		private final ConcurrentLinkedQueue<T> buffers =
+			new ConcurrentLinkedQueue<T>();
+		private final AtomicInteger count = new AtomicInteger();
+
+		T poll() {
+			T buffer = buffers.poll();
+			if (buffer != null)
+				count.decrementAndGet();
+			return buffer;
+		}
+
+		void offer(T buffer) {
+			if (count.incrementAndGet() > MAX_POOLED_PER_SIZE) {
+				count.decrementAndGet();
+				return;
+			}
+			buffers.offer(buffer);
+		}
+	}
+
+	private static final ConcurrentHashMap<Integer, Slot<byte[]>> byteSlots =
+		new ConcurrentHashMap<Integer, Slot<byte[]>>();
+
+	private static final ConcurrentHashMap<Integer, Slot<char[]>> charSlots =
+		new ConcurrentHashMap<Integer, Slot<char[]>>();
+
+	private static final AtomicLong reused = new AtomicLong();
+	private static final AtomicLong allocated = new AtomicLong();
+
+	private BufferPool() {
+	}
+
+	private static <T> Slot<T> getSlot(ConcurrentHashMap<Integer, Slot<T>> slots,
+			int size) {
+		Integer key = size;
+		Slot<T> slot = slots.get(key);
+		if (slot == null) {
+			slot = new Slot<T>();
+			Slot<T> prev = slots.putIfAbsent(key, slot);
+			if (prev != null)
+				slot = prev;
+		}
+		return slot;
+	}
+
+	private static <T> T poll(ConcurrentHashMap<Integer, Slot<T>> slots,
+			int size) {
+		if (size > MAX_POOLED_BUFFER_SIZE)
+			return null;
+		T buffer = getSlot(slots, size).poll();
+		if (buffer != null) {
+			reused.incrementAndGet();
+			PerfStats.count(PerfStat.BufferPoolReuse, 1);
+		} else {
+			allocated.incrementAndGet();
+			PerfStats.count(PerfStat.BufferPoolAlloc, 1);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Get a {@code byte[]} of length {@code size}, from the pool if
+	 * available.
+	 * @param size length of the buffer
+	 * @return buffer with undefined content
+	 */
+	public static byte[] takeBytes(int size) {
+		byte[] buffer = poll(byteSlots, size);
+		return buffer != null ? buffer : new byte[size];
+	}
+
+	/**
+	 * Return {@code buffer} to the pool.
+	 * @param buffer buffer obtained by {@link #takeBytes(int)}.
+	 * {@code null} is ignored.
+	 */
+	public static void releaseBytes(byte[] buffer) {
+		if (buffer == null || buffer.length > MAX_POOLED_BUFFER_SIZE)
+			return;
+		getSlot(byteSlots, buffer.length).offer(buffer);
+	}
+
+	/**
+	 * Get a {@code char[]} of length {@code size}, from the pool if
+	 * available.
+	 * @param size length of the buffer
+	 * @return buffer with undefined content
+	 */
+	public static char[] takeChars(int size) {
+		char[] buffer = poll(charSlots, size);
+		return buffer != null ? buffer : new char[size];
+	}
+
+	/**
+	 * Return {@code buffer} to the pool.
+	 * @param buffer buffer obtained by {@link #takeChars(int)}.
+	 * {@code null} is ignored.
+	 */
+	public static void releaseChars(char[] buffer) {
+		if (buffer == null || buffer.length > MAX_POOLED_BUFFER_SIZE)
+			return;
+		getSlot(charSlots, buffer.length).offer(buffer);
+	}
+
+	/**
+	 * @return cumulative number of buffers taken from the pool
+	 */
+	public static long getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * @return cumulative number of buffers newly allocated
+	 */
+	public static long getAllocatedCount() {
+		return allocated.get();
+	}
+}
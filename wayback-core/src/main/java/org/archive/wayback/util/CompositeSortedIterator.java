@@ -32,6 +32,11 @@ import org.archive.util.iterator.CloseableIterator;
 /**
  * Composite of multiple Iterators that returns the next from a series of
  * all component Iterators based on Comparator constructor argument.
+ * <p>
+ * Heads of component Iterators are kept in a binary heap, so that each
+ * {@code next()} takes O(log k) comparisons for k components. Elements that
+ * compare equal are returned in the order their components were added.
+ * </p>
  *
  * @author brad
  * @version $Date$, $Revision$
@@ -44,6 +49,26 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 	private ArrayList<PeekableIterator<E>> components;
 	private E next;
 	private Comparator<E> comparator;
+
+	/**
+	 * heap of component heads, ordered by (value, order).
+	 */
+	private ArrayList<Head<E>> heap;
+	/**
+	 * number of components already put into the heap.
+	 */
+	private int heaped;
+
+	private static class Head<E> {
+		E value;
+		final PeekableIterator<E> itr;
+		final int order;
+
+		Head(PeekableIterator<E> itr, int order) {
+			this.itr = itr;
+			this.order = order;
+		}
+	}
 	
 	/**
 	 * @param comparator Comparator to use for sorting order
@@ -51,6 +76,8 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 	public CompositeSortedIterator(Comparator<E> comparator) {
 		this.comparator = comparator;
 		components = new ArrayList<PeekableIterator<E>>();
+		heap = new ArrayList<Head<E>>();
+		heaped = 0;
 		next = null;
 	}
 	/**
@@ -66,23 +93,80 @@ public class CompositeSortedIterator<E> implements CloseableIterator<E> {
 		if(next != null) {
 			return true;
 		}
-		// find lowest next:
-		PeekableIterator<E> nextSource = null;
-		for(int i = 0; i < components.size(); i++) {
-			PeekableIterator<E> pi = components.get(i);
-			if(pi.hasNext()) {
-				E piNext = pi.peekNext();
-				if((next == null) || (comparator.compare(next,piNext) > 0)) {
-					nextSource = pi;
-					next = piNext;
-				}
+		// components added since last call
+		while(heaped < components.size()) {
+			Head<E> head = new Head<E>(components.get(heaped), heaped);
+			heaped++;
+			if(advance(head)) {
+				heap.add(head);
+				siftUp(heap.size() - 1);
 			}
 		}
-		if(nextSource != null) {
-			nextSource.next();
+		if(heap.isEmpty()) {
+			return false;
+		}
+		Head<E> top = heap.get(0);
+		next = top.value;
+		if(advance(top)) {
+			siftDown(0);
+		} else {
+			Head<E> last = heap.remove(heap.size() - 1);
+			if(!heap.isEmpty()) {
+				heap.set(0, last);
+				siftDown(0);
+			}
 		}
 		return next != null;
 	}
+
+	private boolean advance(Head<E> head) {
+		head.value = head.itr.hasNext() ? head.itr.next() : null;
+		return head.value != null;
+	}
+
+	private int compare(Head<E> a, Head<E> b) {
+		int cmp = comparator.compare(a.value, b.value);
+		return cmp != 0 ? cmp : a.order - b.order;
+	}
+
+	private void siftUp(int i) {
+		Head<E> h = heap.get(i);
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			Head<E> p = heap.get(parent);
+			if(compare(h, p) >= 0) {
+				break;
+			}
+			heap.set(i, p);
+			i = parent;
+		}
+		heap.set(i, h);
+	}
+
+	private void siftDown(int i) {
+		final int size = heap.size();
+		Head<E> h = heap.get(i);
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size) {
+				break;
+			}
+			Head<E> c = heap.get(child);
+			if(child + 1 < size) {
+				Head<E> r = heap.get(child + 1);
+				if(compare(r, c) < 0) {
+					child++;
+					c = r;
+				}
+			}
+			if(compare(c, h) >= 0) {
+				break;
+			}
+			heap.set(i, c);
+			i = child;
+		}
+		heap.set(i, h);
+	}
 	/* (non-Javadoc)
 	 * @see java.util.Iterator#next()
 	 */
@@ -29,6 +29,8 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.wayback.util.ByteOp;
@@ -43,10 +45,28 @@ import org.archive.wayback.util.CompositeSortedIterator;
  * @version $Date$, $Revision$
  */
 public class FlatFile {
+	private static final Logger LOGGER = Logger.getLogger(
+			FlatFile.class.getName());
 
 	private static final long serialVersionUID = 6174187801001601557L;
 	private long lastMatchOffset;
 	protected File file = null;
+	private boolean mapped = false;
+	private volatile MappedTextFile mappedFile = null;
+	private int sampleInterval = 0;
+	private String sampleIndexPath = null;
+	private volatile SampledIndex sampledIndex = null;
+	private boolean sampledIndexBuilding = false;
+	// after failed build, don't retry until this time (ms)
+	private long sampledIndexRetryTime = 0;
+	private int sampledIndexFailures = 0;
+
+	/**
+	 * wait time before retrying failed sampled index build. doubled on
+	 * each consecutive failure, up to {@link #MAX_SAMPLED_INDEX_RETRY_MS}.
+	 */
+	static final long MIN_SAMPLED_INDEX_RETRY_MS = 60 * 1000L;
+	static final long MAX_SAMPLED_INDEX_RETRY_MS = 60 * 60 * 1000L;
 	/**
 	 * 
 	 */
@@ -72,6 +92,8 @@ public class FlatFile {
 	 */
 	public void setPath(String path) {
 		file = new File(path);
+		mappedFile = null;
+		sampledIndex = null;
 	}
 	/**
 	 * @return current String path, or null if none has been set
@@ -83,6 +105,171 @@ public class FlatFile {
 		return file.getAbsolutePath();
 	}
 
+	/**
+	 * @return {@code true} if file is accessed through memory mapping
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+	/**
+	 * If set to {@code true}, the file is memory-mapped on first access,
+	 * and binary searches and iterators work directly on the mapping,
+	 * without opening the file for each query. The file is re-mapped when
+	 * its modification time or size changes.
+	 * <p>Keys are compared with lines as UTF-8 bytes in this mode.
+	 * Default is {@code false}.</p>
+	 * @param mapped {@code true} to enable memory mapping
+	 * @see MappedTextFile
+	 */
+	public void setMapped(boolean mapped) {
+		this.mapped = mapped;
+		if (!mapped) {
+			mappedFile = null;
+		}
+	}
+	/**
+	 * Return current mapping of the file, (re-)mapping it if necessary.
+	 * @return MappedTextFile
+	 * @throws IOException if file cannot be mapped
+	 */
+	protected MappedTextFile getMappedFile() throws IOException {
+		MappedTextFile current = mappedFile;
+		if (current == null || current.isStale()) {
+			synchronized (this) {
+				current = mappedFile;
+				if (current == null || current.isStale()) {
+					current = new MappedTextFile(file);
+					mappedFile = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return number of lines between samples of sampled index, or {@code 0}
+	 * if sampled index is disabled.
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+	/**
+	 * Enable in-memory sampled index, holding the key and offset of every
+	 * {@code sampleInterval}-th line. With sampled index, binary search is
+	 * done in memory, and then a small window of the file is read at once
+	 * to locate the line.
+	 * <p>Index is loaded from sidecar file ({@code sampleIndexPath}) if it
+	 * is up to date, or built in background thread otherwise. Until it is
+	 * ready, and whenever the file's modification time or size changes,
+	 * regular binary search is used while the index is rebuilt.</p>
+	 * <p>Default is {@code 0} (disabled).</p>
+	 * @param sampleInterval number of lines between samples, {@code 0} to
+	 * disable.
+	 * @see SampledIndex
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		this.sampleInterval = sampleInterval;
+		sampledIndex = null;
+	}
+	/**
+	 * @return path of the sidecar file for sampled index
+	 */
+	public String getSampleIndexPath() {
+		return sampleIndexPath;
+	}
+	/**
+	 * Path of the sidecar file to load sampled index from, and to save it to
+	 * after it is built. If {@code null} (default), sampled index is built
+	 * from scratch on startup.
+	 * @param sampleIndexPath path to the sidecar file
+	 */
+	public void setSampleIndexPath(String sampleIndexPath) {
+		this.sampleIndexPath = sampleIndexPath;
+	}
+	/**
+	 * Return current sampled index, if enabled and up to date.
+	 * Start loading/building it in background if it is not.
+	 * @return SampledIndex, or {@code null} if it is not available
+	 * right now.
+	 */
+	protected SampledIndex getSampledIndex() {
+		if (sampleInterval <= 0) {
+			return null;
+		}
+		SampledIndex current = sampledIndex;
+		if (current != null && !current.isStale(file)) {
+			return current;
+		}
+		synchronized (this) {
+			if (sampledIndexBuilding ||
+					System.currentTimeMillis() < sampledIndexRetryTime) {
+				return null;
+			}
+			sampledIndexBuilding = true;
+		}
+		final File dataFile = file;
+		final int interval = sampleInterval;
+		final File sidecar = sampleIndexPath != null ?
+				new File(sampleIndexPath) : null;
+		Thread builder = new Thread("SampledIndex builder " + dataFile) {
+			@Override
+			public void run() {
+				boolean failed = true;
+				try {
+					boolean loaded = false;
+					SampledIndex built = null;
+					if (sidecar != null) {
+						try {
+							built = SampledIndex.load(sidecar, dataFile, interval);
+							loaded = built != null;
+						} catch (IOException ex) {
+							// unreadable sidecar - build from data file
+							LOGGER.log(Level.WARNING, "failed to load sampled index from " +
+									sidecar, ex);
+						}
+					}
+					if (built == null) {
+						built = SampledIndex.build(dataFile, interval);
+					}
+					failed = false;
+					// file may have been replaced again during the build
+					if (built.isStale(dataFile)) {
+						return;
+					}
+					sampledIndex = built;
+					if (sidecar != null && !loaded) {
+						try {
+							built.store(sidecar);
+						} catch (IOException ex) {
+							// index is still usable
+							LOGGER.log(Level.WARNING, "failed to store sampled index to " +
+									sidecar, ex);
+						}
+					}
+				} catch (IOException ex) {
+					LOGGER.log(Level.WARNING, "failed to build sampled index for " +
+							dataFile, ex);
+				} finally {
+					synchronized (FlatFile.this) {
+						sampledIndexBuilding = false;
+						if (failed) {
+							long wait = Math.min(MAX_SAMPLED_INDEX_RETRY_MS,
+								MIN_SAMPLED_INDEX_RETRY_MS << Math.min(sampledIndexFailures, 10));
+							sampledIndexFailures++;
+							sampledIndexRetryTime = System.currentTimeMillis() + wait;
+						} else {
+							sampledIndexFailures = 0;
+							sampledIndexRetryTime = 0;
+						}
+					}
+				}
+			}
+		};
+		builder.setDaemon(true);
+		builder.start();
+		return null;
+	}
+
 	/**
 	 * Binary search thru RandomAccessFile argument to locate the first line
 	 * prefixed by key argument. As a side effect, the RandomAccessFile's
@@ -94,6 +281,14 @@ public class FlatFile {
 	 * @throws IOException
 	 */
 	public long findKeyOffset(RandomAccessFile fh, String key) throws IOException {
+		SampledIndex sampled = getSampledIndex();
+		if (sampled != null) {
+			long offset = sampled.findKeyOffset(fh, key, false);
+			if (offset >= 0) {
+				fh.seek(offset);
+				return offset;
+			}
+		}
 		int blockSize = 8192;
 		long fileSize = fh.length();
 		long min = 0;
@@ -125,6 +320,14 @@ public class FlatFile {
 	    return min;
 	}
 	public long findKeyOffsetLT(RandomAccessFile fh, String key) throws IOException {
+		SampledIndex sampled = getSampledIndex();
+		if (sampled != null) {
+			long offset = sampled.findKeyOffset(fh, key, true);
+			if (offset >= 0) {
+				fh.seek(offset);
+				return offset;
+			}
+		}
 		int blockSize = 8192;
 		long fileSize = fh.length();
 		long min = 0;
@@ -157,6 +360,14 @@ public class FlatFile {
 	    fh.seek(last);
 	    return last;
 	}
+	private long findMappedKeyOffset(MappedTextFile mtf, String key) {
+		SampledIndex sampled = getSampledIndex();
+		if (sampled != null) {
+			return mtf.findKeyOffset(key, sampled.windowStart(key),
+				sampled.windowEnd(key));
+		}
+		return mtf.findKeyOffset(key);
+	}
 	/**
 	 * @return Returns the lastMatchOffset.
 	 */
@@ -169,6 +380,9 @@ public class FlatFile {
 	 * @throws IOException
 	 */
 	public CloseableIterator<String> getSequentialIterator() throws IOException {
+		if (mapped) {
+			return getMappedFile().getIterator(0);
+		}
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		return new RecordIterator(br);
 	}
@@ -179,6 +393,12 @@ public class FlatFile {
 	 * @throws IOException
 	 */
 	public CloseableIterator<String> getRecordIterator(final String prefix) throws IOException {
+		if (mapped) {
+			MappedTextFile mtf = getMappedFile();
+			long offset = findMappedKeyOffset(mtf, prefix);
+			lastMatchOffset = offset;
+			return mtf.getIterator(offset);
+		}
 		RecordIterator itr = null;
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
 		long offset = findKeyOffset(raf,prefix);
@@ -191,6 +411,16 @@ public class FlatFile {
 	}
 
 	public CloseableIterator<String> getRecordIteratorLT(final String prefix) throws IOException {
+		if (mapped) {
+			MappedTextFile mtf = getMappedFile();
+			SampledIndex sampled = getSampledIndex();
+			long offset = sampled != null ?
+					mtf.findKeyOffsetLT(prefix, sampled.windowStart(prefix),
+						sampled.windowEnd(prefix)) :
+					mtf.findKeyOffsetLT(prefix);
+			lastMatchOffset = offset;
+			return mtf.getIterator(offset);
+		}
 		RecordIterator itr = null;
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
 		long offset = findKeyOffsetLT(raf,prefix);
@@ -210,6 +440,12 @@ public class FlatFile {
 	public ReverseRecordIterator getReverseRecordIterator(final String prefix) 
 		throws IOException {
 
+		if (mapped) {
+			MappedTextFile mtf = getMappedFile();
+			long offset = findMappedKeyOffset(mtf, prefix);
+			lastMatchOffset = offset - 1;
+			return mtf.getReverseIterator(offset);
+		}
 		ReverseRecordIterator itr = null;
 		RandomAccessFile raf = new RandomAccessFile(file,"r");
 		long offset = findKeyOffset(raf,prefix);
@@ -0,0 +1,385 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Read-only, memory-mapped view of a sorted text file, supporting binary
+ * search directly on bytes, and iteration over lines in both directions.
+ * <p>
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes, so files
+ * larger than 2GB are supported. Only absolute reads are done on mapped
+ * buffers, so single instance can be shared by multiple threads.
+ * </p>
+ * <p>
+ * Keys are compared with lines as UTF-8 bytes (unsigned), which is the
+ * same as the order of files sorted with {@code LC_ALL=C sort}.
+ * Lines are terminated by {@code LF}; trailing {@code CR} is removed.
+ * </p>
+ * @see FlatFile#setMapped(boolean)
+ */
+public class MappedTextFile {
+	final static int SEGMENT_SHIFT = 30;
+	/**
+	 * size of each mapped segment: 1GB
+	 */
+	public final static long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	final static long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	final static byte LF = '\n';
+	final static byte CR = '\r';
+
+	private final File file;
+	private final long size;
+	private final long lastModified;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Map {@code file}.
+	 * @param file file to map
+	 * @throws IOException if file cannot be opened or mapped
+	 */
+	public MappedTextFile(File file) throws IOException {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			this.size = channel.size();
+			int n = (int)((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			segments = new MappedByteBuffer[n];
+			for (int i = 0; i < n; i++) {
+				long start = (long)i << SEGMENT_SHIFT;
+				long len = Math.min(SEGMENT_SIZE, size - start);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					start, len);
+			}
+		} finally {
+			// mapping stays valid after channel is closed.
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return {@code true} if the file has been modified (or replaced)
+	 * since it was mapped.
+	 */
+	public boolean isStale() {
+		return file.lastModified() != lastModified || file.length() != size;
+	}
+
+	/**
+	 * @return size of the mapped file
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	protected final byte byteAt(long pos) {
+		return segments[(int)(pos >>> SEGMENT_SHIFT)].get(
+			(int)(pos & SEGMENT_MASK));
+	}
+
+	/**
+	 * Return the start offset of the first line starting at or
+	 * after {@code pos}.
+	 * @param pos offset
+	 * @return line start offset, or file size if there's no such line
+	 */
+	protected final long lineStartAtOrAfter(long pos) {
+		if (pos <= 0) {
+			return 0;
+		}
+		// is pos already at the start of a line?
+		for (long p = pos - 1; p < size; p++) {
+			if (byteAt(p) == LF) {
+				return p + 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Return the start offset of the line that contains {@code pos}.
+	 * @param pos offset
+	 * @return line start offset
+	 */
+	protected final long lineStartOf(long pos) {
+		for (long p = pos - 1; p >= 0; p--) {
+			if (byteAt(p) == LF) {
+				return p + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Return end offset of the line starting at {@code start}, that is,
+	 * offset of {@code LF} or file size.
+	 * @param start line start offset
+	 * @return line end offset (exclusive)
+	 */
+	protected final long lineEnd(long start) {
+		for (long p = start; p < size; p++) {
+			if (byteAt(p) == LF) {
+				return p;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Compare the line starting at {@code start} with {@code key}.
+	 * @param start line start offset
+	 * @param key key in UTF-8
+	 * @return negative, zero or positive as the line is less than, equal to,
+	 * or greater than {@code key}
+	 */
+	protected final int compareLine(long start, byte[] key) {
+		long p = start;
+		for (int i = 0; i < key.length; i++, p++) {
+			if (p >= size) {
+				return -1;
+			}
+			int b = byteAt(p) & 0xff;
+			if (b == LF) {
+				return -1;
+			}
+			int k = key[i] & 0xff;
+			if (b != k) {
+				return b - k;
+			}
+		}
+		if (p >= size || byteAt(p) == LF) {
+			return 0;
+		}
+		return 1;
+	}
+
+	/**
+	 * Binary search for the first line greater than or equal to {@code key}.
+	 * @param key search key
+	 * @return offset of the first line greater than or equal to {@code key},
+	 * or file size if there's no such line.
+	 */
+	public long findKeyOffset(String key) {
+		return findKeyOffset(key, 0, size);
+	}
+
+	/**
+	 * Binary search for the first line greater than or equal to {@code key},
+	 * within {@code [start, end]}.
+	 * @param key search key
+	 * @param start start of the search range. Must be the start of a line
+	 * less than {@code key}, or {@code 0}.
+	 * @param end end of the search range. Must be the start of a line
+	 * greater than or equal to {@code key}, or the file size.
+	 * @return offset of the first line greater than or equal to {@code key},
+	 * or file size if there's no such line.
+	 * @see SampledIndex
+	 */
+	public long findKeyOffset(String key, long start, long end) {
+		final byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		long lo = start;
+		long hi = Math.min(end, size);
+		// find smallest pos such that f(pos), the first line starting at or
+		// after pos, is >= key (or there's no such line).
+		while (lo < hi) {
+			long mid = (lo + hi) >>> 1;
+			long line = lineStartAtOrAfter(mid);
+			if (line >= size || compareLine(line, keyBytes) >= 0) {
+				hi = mid;
+			} else {
+				// f(p) == line for all p in [mid, line]
+				lo = line + 1;
+			}
+		}
+		return lineStartAtOrAfter(lo);
+	}
+
+	/**
+	 * Return the offset of the last line less than {@code key}.
+	 * @param key search key
+	 * @return offset of the last line less than {@code key},
+	 * or {@code 0} if there's no such line.
+	 */
+	public long findKeyOffsetLT(String key) {
+		return findKeyOffsetLT(key, 0, size);
+	}
+
+	/**
+	 * Return the offset of the last line less than {@code key}, searching
+	 * within {@code [start, end]}.
+	 * @param key search key
+	 * @param start start of the search range
+	 * @param end end of the search range
+	 * @return offset of the last line less than {@code key},
+	 * or {@code 0} if there's no such line.
+	 * @see #findKeyOffset(String, long, long)
+	 */
+	public long findKeyOffsetLT(String key, long start, long end) {
+		long offset = findKeyOffset(key, start, end);
+		if (offset == 0) {
+			return 0;
+		}
+		return lineStartOf(offset - 1);
+	}
+
+	/**
+	 * Return an iterator of lines starting at {@code offset}.
+	 * @param offset line start offset
+	 * @return iterator
+	 */
+	public CloseableIterator<String> getIterator(long offset) {
+		return new ForwardIterator(offset);
+	}
+
+	/**
+	 * Return an iterator of lines before {@code offset}, in reverse order.
+	 * @param offset line start offset
+	 * @return iterator
+	 */
+	public ReverseRecordIterator getReverseIterator(long offset) {
+		return new ReverseIterator(offset);
+	}
+
+	/**
+	 * Decode line in {@code [start, end)}, removing trailing {@code CR}.
+	 * @param start start offset
+	 * @param end end offset
+	 * @param buf scratch buffer, replaced with larger one if necessary
+	 * @return decoded line
+	 */
+	protected final String decode(long start, long end, byte[][] buf) {
+		if (end > start && byteAt(end - 1) == CR) {
+			end--;
+		}
+		int len = (int)(end - start);
+		if (buf[0].length < len) {
+			buf[0] = new byte[Math.max(len, buf[0].length * 2)];
+		}
+		byte[] b = buf[0];
+		int seg = (int)(start >>> SEGMENT_SHIFT);
+		if (len > 0 && seg == (int)((end - 1) >>> SEGMENT_SHIFT)) {
+			// whole line is within a segment: bulk copy
+			ByteBuffer dup = segments[seg].duplicate();
+			dup.position((int)(start & SEGMENT_MASK));
+			dup.get(b, 0, len);
+		} else {
+			for (int i = 0; i < len; i++) {
+				b[i] = byteAt(start + i);
+			}
+		}
+		return new String(b, 0, len, ByteOp.UTF8);
+	}
+
+	private class ForwardIterator implements CloseableIterator<String> {
+		private long pos;
+		private String next = null;
+		private final byte[][] buf = { new byte[256] };
+
+		ForwardIterator(long offset) {
+			this.pos = offset;
+		}
+
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			if (pos >= size) {
+				return false;
+			}
+			long end = lineEnd(pos);
+			next = decode(pos, end, buf);
+			pos = end + 1;
+			return true;
+		}
+
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String line = next;
+			next = null;
+			return line;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			pos = size;
+			next = null;
+		}
+	}
+
+	private class ReverseIterator extends ReverseRecordIterator {
+		/**
+		 * end offset (exclusive) of the next line to return,
+		 * or {@code -1} if done.
+		 */
+		private long end;
+		private final byte[][] buf = { new byte[256] };
+
+		ReverseIterator(long offset) {
+			super(null);
+			// offset is the start of a line, or the file size. in the
+			// latter case, the last line may not have terminating LF.
+			if (offset <= 0) {
+				this.end = -1;
+			} else if (byteAt(offset - 1) == LF) {
+				this.end = offset - 1;
+			} else {
+				this.end = offset;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			if (end < 0) {
+				return false;
+			}
+			long start = lineStartOf(end);
+			next = decode(start, end, buf);
+			end = start - 1;
+			return true;
+		}
+
+		@Override
+		public void close() {
+			end = -1;
+			next = null;
+		}
+	}
+}
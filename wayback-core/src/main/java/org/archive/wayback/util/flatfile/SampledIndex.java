@@ -0,0 +1,419 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.flatfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Sparse in-memory index of a sorted text file: key and byte offset of every
+ * N-th line. Used by {@link FlatFile} to narrow down binary search to a small
+ * byte window, which can be read at once.
+ * <p>
+ * This is the same idea as the ZipNum summary file, applied to uncompressed
+ * files. Keys are the line prefix up to the second space (i.e. {@code urlkey}
+ * and {@code timestamp} for CDX files), so that the index stays small.
+ * </p>
+ * <p>
+ * Index can be saved to, and loaded from, a sidecar file. Sidecar file records
+ * the modification time and size of the data file, and is ignored if they do
+ * not match.
+ * </p>
+ * <p>
+ * Instances are immutable, and can be shared by multiple threads.
+ * </p>
+ * @see FlatFile#setSampleInterval(int)
+ */
+public class SampledIndex {
+
+	final static String SIDECAR_HEADER = "#sampled";
+
+	/**
+	 * maximum length of a key in characters.
+	 */
+	final static int MAX_KEY_LENGTH = 256;
+
+	/**
+	 * window larger than this is not read into memory at once.
+	 */
+	public final static int MAX_WINDOW_SIZE = 16 * 1024 * 1024;
+
+	private final String[] keys;
+	private final long[] offsets;
+	private final int interval;
+	private final long dataSize;
+	private final long dataLastModified;
+
+	protected SampledIndex(String[] keys, long[] offsets, int interval,
+			long dataSize, long dataLastModified) {
+		this.keys = keys;
+		this.offsets = offsets;
+		this.interval = interval;
+		this.dataSize = dataSize;
+		this.dataLastModified = dataLastModified;
+	}
+
+	/**
+	 * Return the key for the line in {@code buf[0:len]}.
+	 * Key truncated at {@link #MAX_KEY_LENGTH} bytes does not end with
+	 * partial UTF-8 sequence, so that it is still a prefix of the line.
+	 * @param buf line bytes
+	 * @param len line length
+	 * @return key
+	 */
+	protected static String sampleKey(byte[] buf, int len) {
+		int spaces = 0;
+		int end = 0;
+		while (end < len && end < MAX_KEY_LENGTH) {
+			if (buf[end] == ' ' && ++spaces == 2) {
+				break;
+			}
+			end++;
+		}
+		if (end == MAX_KEY_LENGTH) {
+			end = utf8Boundary(buf, end);
+		}
+		return new String(buf, 0, end, ByteOp.UTF8);
+	}
+
+	/**
+	 * Return the largest offset {@code <= end} that does not split a UTF-8
+	 * sequence in {@code buf[0:end]}.
+	 * @param buf UTF-8 bytes
+	 * @param end end offset
+	 * @return offset
+	 */
+	static int utf8Boundary(byte[] buf, int end) {
+		// start of the last sequence
+		int start = end - 1;
+		while (start > 0 && start > end - 4 && (buf[start] & 0xC0) == 0x80) {
+			start--;
+		}
+		if (start < 0) {
+			return end;
+		}
+		final int lead = buf[start] & 0xFF;
+		final int seqLen;
+		if (lead >= 0xF0) {
+			seqLen = 4;
+		} else if (lead >= 0xE0) {
+			seqLen = 3;
+		} else if (lead >= 0xC0) {
+			seqLen = 2;
+		} else {
+			seqLen = 1;
+		}
+		return start + seqLen > end ? start : end;
+	}
+
+	/**
+	 * Build index by reading {@code data} sequentially.
+	 * @param data sorted text file
+	 * @param interval number of lines between samples
+	 * @return new SampledIndex
+	 * @throws IOException if {@code data} cannot be read
+	 */
+	public static SampledIndex build(File data, int interval)
+			throws IOException {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		final long lastModified = data.lastModified();
+		List<String> keys = new ArrayList<String>();
+		List<Long> offsets = new ArrayList<Long>();
+
+		InputStream is = new BufferedInputStream(new FileInputStream(data),
+			64 * 1024);
+		long size = 0;
+		try {
+			byte[] buf = new byte[MAX_KEY_LENGTH];
+			long lineStart = 0;
+			long lineNo = 0;
+			int len = 0;
+			int b;
+			while ((b = is.read()) != -1) {
+				size++;
+				if (b == '\n') {
+					if (lineNo % interval == 0) {
+						keys.add(sampleKey(buf, len));
+						offsets.add(lineStart);
+					}
+					lineNo++;
+					lineStart = size;
+					len = 0;
+				} else if (len < buf.length) {
+					buf[len++] = (byte)b;
+				}
+			}
+			// last line without terminating LF
+			if (size > lineStart && lineNo % interval == 0) {
+				keys.add(sampleKey(buf, len));
+				offsets.add(lineStart);
+			}
+		} finally {
+			is.close();
+		}
+		long[] offsetArray = new long[offsets.size()];
+		for (int i = 0; i < offsetArray.length; i++) {
+			offsetArray[i] = offsets.get(i);
+		}
+		return new SampledIndex(keys.toArray(new String[keys.size()]),
+			offsetArray, interval, size, lastModified);
+	}
+
+	/**
+	 * Load index from sidecar file.
+	 * @param sidecar sidecar file written by {@link #store(File)}
+	 * @param data data file
+	 * @param interval expected sample interval
+	 * @return SampledIndex, or {@code null} if sidecar does not exist, or is
+	 * not for current version of {@code data} file.
+	 * @throws IOException if sidecar file cannot be read
+	 */
+	public static SampledIndex load(File sidecar, File data, int interval)
+			throws IOException {
+		if (!sidecar.exists()) {
+			return null;
+		}
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+			new FileInputStream(sidecar), ByteOp.UTF8));
+		try {
+			String header = br.readLine();
+			if (header == null) {
+				return null;
+			}
+			String[] fields = header.split(" ");
+			if (fields.length != 4 || !fields[0].equals(SIDECAR_HEADER)) {
+				return null;
+			}
+			int sidecarInterval = Integer.parseInt(fields[1]);
+			long lastModified = Long.parseLong(fields[2]);
+			long size = Long.parseLong(fields[3]);
+			if (sidecarInterval != interval ||
+					lastModified != data.lastModified() ||
+					size != data.length()) {
+				return null;
+			}
+			List<String> keys = new ArrayList<String>();
+			List<Long> offsets = new ArrayList<Long>();
+			String line;
+			while ((line = br.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					return null;
+				}
+				offsets.add(Long.parseLong(line.substring(0, tab)));
+				keys.add(line.substring(tab + 1));
+			}
+			long[] offsetArray = new long[offsets.size()];
+			for (int i = 0; i < offsetArray.length; i++) {
+				offsetArray[i] = offsets.get(i);
+			}
+			return new SampledIndex(keys.toArray(new String[keys.size()]),
+				offsetArray, interval, size, lastModified);
+		} catch (NumberFormatException ex) {
+			return null;
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Save index to {@code sidecar} file.
+	 * Sidecar file is written to a temporary file first, then renamed.
+	 * @param sidecar sidecar file
+	 * @throws IOException if sidecar cannot be written
+	 */
+	public void store(File sidecar) throws IOException {
+		File tmp = new File(sidecar.getAbsolutePath() + ".TMP");
+		PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+			new FileOutputStream(tmp), ByteOp.UTF8));
+		try {
+			pw.print(SIDECAR_HEADER);
+			pw.print(' ');
+			pw.print(interval);
+			pw.print(' ');
+			pw.print(dataLastModified);
+			pw.print(' ');
+			pw.print(dataSize);
+			pw.print('\n');
+			for (int i = 0; i < keys.length; i++) {
+				pw.print(offsets[i]);
+				pw.print('\t');
+				pw.print(keys[i]);
+				pw.print('\n');
+			}
+		} finally {
+			pw.close();
+		}
+		if (!tmp.renameTo(sidecar)) {
+			sidecar.delete();
+			if (!tmp.renameTo(sidecar)) {
+				throw new IOException("failed to rename " + tmp + " to " +
+						sidecar);
+			}
+		}
+	}
+
+	/**
+	 * @param data data file
+	 * @return {@code true} if {@code data} has been modified since this
+	 * index was built.
+	 */
+	public boolean isStale(File data) {
+		return data.lastModified() != dataLastModified ||
+				data.length() != dataSize;
+	}
+
+	/**
+	 * @return number of samples
+	 */
+	public int getSampleCount() {
+		return keys.length;
+	}
+
+	/**
+	 * @return number of lines between samples
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Return index of the first sample whose key is greater than or equal
+	 * to {@code key}.
+	 * @param key search key
+	 * @return sample index, {@code getSampleCount()} if there's none
+	 */
+	protected int upperSample(String key) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid].compareTo(key) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Return start of the byte window that contains the first line greater
+	 * than or equal to {@code key}. Line at the returned offset is known to
+	 * be less than {@code key} (unless it is {@code 0}).
+	 * @param key search key
+	 * @return byte offset of a line start
+	 */
+	public long windowStart(String key) {
+		int i = upperSample(key) - 1;
+		// sample key is a prefix of its line. If it is also a prefix
+		// of the search key, the line may be greater than search key.
+		while (i >= 0 && key.startsWith(keys[i])) {
+			i--;
+		}
+		return i < 0 ? 0 : offsets[i];
+	}
+
+	/**
+	 * Return end of the byte window that contains the first line greater
+	 * than or equal to {@code key}. Line at the returned offset is known to
+	 * be greater than or equal to {@code key}.
+	 * @param key search key
+	 * @return byte offset of a line start, or data file size
+	 */
+	public long windowEnd(String key) {
+		int j = upperSample(key);
+		return j < keys.length ? offsets[j] : dataSize;
+	}
+
+	/**
+	 * Find the offset of the first line greater than or equal to {@code key}
+	 * (or the line before it, if {@code lessThan} is {@code true}), reading
+	 * the byte window from {@code raf} at once.
+	 * <p>Lines are compared with {@code key} as UTF-8 bytes.</p>
+	 * @param raf data file
+	 * @param key search key
+	 * @param lessThan {@code true} to return the offset of the last line
+	 * less than {@code key}
+	 * @return line offset, or {@code -1} if the window is too large
+	 * @throws IOException if read fails
+	 */
+	public long findKeyOffset(RandomAccessFile raf, String key,
+			boolean lessThan) throws IOException {
+		final long start = windowStart(key);
+		final long end = windowEnd(key);
+		if (end - start > MAX_WINDOW_SIZE) {
+			return -1;
+		}
+		final int len = (int)(end - start);
+		final byte[] buf = new byte[len];
+		raf.seek(start);
+		raf.readFully(buf);
+
+		final byte[] keyBytes = key.getBytes(ByteOp.UTF8);
+		int prev = 0;
+		int pos = 0;
+		while (pos < len) {
+			int eol = pos;
+			while (eol < len && buf[eol] != '\n') {
+				eol++;
+			}
+			if (compare(buf, pos, eol, keyBytes) >= 0) {
+				break;
+			}
+			prev = pos;
+			pos = eol + 1;
+		}
+		if (pos > len) {
+			pos = len;
+		}
+		if (lessThan) {
+			return pos == 0 ? start : start + prev;
+		}
+		return start + pos;
+	}
+
+	private static int compare(byte[] buf, int start, int end, byte[] key) {
+		final int n = Math.min(end - start, key.length);
+		for (int i = 0; i < n; i++) {
+			int b = buf[start + i] & 0xff;
+			int k = key[i] & 0xff;
+			if (b != k) {
+				return b - k;
+			}
+		}
+		return (end - start) - key.length;
+	}
+}
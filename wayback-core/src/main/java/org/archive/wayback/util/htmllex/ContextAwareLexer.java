@@ -40,33 +40,50 @@ import org.htmlparser.util.ParserException;
  * call instead of a nextNode() call at the right time, to try to keep the
  * SAX parsing in sync with the document.
  * 
+ * It can work either on htmlparser Lexer, or on {@link IncrementalLexer},
+ * which emits the same Nodes without buffering the whole document.
+ * 
  * @author brad
  *
  */
 public class ContextAwareLexer extends NodeUtils {
 
 	private Lexer lexer = null;
+	private IncrementalLexer incrementalLexer = null;
 	private ParseContext context = null;
 	public ContextAwareLexer(Lexer lexer, ParseContext context) {
 		this.lexer = lexer;
 		this.context = context;
 	}
+	public ContextAwareLexer(IncrementalLexer lexer, ParseContext context) {
+		this.incrementalLexer = lexer;
+		this.context = context;
+	}
+	private Node parseCDATA() throws ParserException {
+		if (incrementalLexer != null)
+			return incrementalLexer.parseCDATA();
+		return lexer.parseCDATA(false);
+	}
 	public Node nextNode() throws ParserException {
 		Node node = null;
 		if (context.isInJS()) {
-			node = lexer.parseCDATA(false);
+			node = parseCDATA();
 			if (node != null) {
 				context.setInScriptText(true);
 				context.setInJS(false);
 				return node;
 			}
 		} else if (context.isInScriptText()) {
-			node = lexer.parseCDATA(false);
+			node = parseCDATA();
 			if (node != null) {
 				return node;
 			}
 		}
-		node = lexer.nextNode(context.isInJS());
+		if (incrementalLexer != null) {
+			node = incrementalLexer.nextNode();
+		} else {
+			node = lexer.nextNode(context.isInJS());
+		}
 		if(node != null) {
 			if(isNonEmptyOpenTagNodeNamed(node, SCRIPT_TAG_NAME)) {
 				context.setInJS(true);
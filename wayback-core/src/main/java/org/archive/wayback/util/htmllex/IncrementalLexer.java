@@ -0,0 +1,444 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.Vector;
+
+import org.archive.wayback.util.BufferPool;
+import org.htmlparser.Attribute;
+import org.htmlparser.Node;
+import org.htmlparser.nodes.RemarkNode;
+import org.htmlparser.nodes.TagNode;
+import org.htmlparser.nodes.TextNode;
+import org.htmlparser.util.ParserException;
+
+/**
+ * Streaming replacement for {@link org.htmlparser.lexer.Lexer} over
+ * {@link org.htmlparser.lexer.Page}.
+ * <p>
+ * {@code Page} decodes the whole document into a char array and keeps it
+ * (along with line index) until parsing is done, and {@code Lexer} creates
+ * Nodes backed by the Page. This class reads the document through a
+ * sliding char window instead, which only needs to hold the token
+ * being scanned. The window starts at {@link #DEFAULT_BUFFER_SIZE}
+ * (taken from {@link BufferPool}) and grows only when a single token
+ * (typically a big SCRIPT block) doesn't fit. Call {@link #close()}
+ * when done to return the window to the pool.
+ * </p>
+ * <p>
+ * Nodes returned are regular htmlparser {@link TagNode}, {@link TextNode}
+ * and {@link RemarkNode} holding their own text, so existing
+ * {@link ParseEventHandler}s work unmodified. Tokenization follows that of
+ * htmlparser {@code Lexer} (with {@code STRICT_REMARKS} off) for
+ * well-formed and common malformed markup:
+ * <ul>
+ * <li>Text runs up to {@code <} followed by a letter, {@code /}, {@code !},
+ * {@code %} or {@code ?}.</li>
+ * <li>Attributes (including whitespace between them) are kept in the same
+ * form as htmlparser does, so that {@link TagNode#toHtml(boolean)} reproduces
+ * the original markup. Tag name is the first attribute.</li>
+ * <li>{@code <![CDATA[...]]>}, {@code <!DOCTYPE ...>},
+ * {@code <?xml ...?>} and {@code <%...%>} are {@link TagNode}s, as
+ * htmlparser does.</li>
+ * <li>Unterminated comment and {@code <%} are returned as text, so that
+ * they are passed through unmodified.</li>
+ * <li>{@link #parseCDATA()} scans up to {@code </} followed by a letter,
+ * like {@code Lexer.parseCDATA(false)}.</li>
+ * </ul>
+ * As with {@code Lexer}, it is {@link ContextAwareLexer} that tells when to
+ * parse SCRIPT content as CDATA.
+ * </p>
+ */
+public class IncrementalLexer {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private static final int EOF = -1;
+
+	private Reader reader;
+	private char[] buf;
+	// start of current token in buf
+	private int start = 0;
+	// end of valid chars in buf
+	private int limit = 0;
+	// document position of buf[0]
+	private int base = 0;
+	private boolean eof = false;
+
+	/**
+	 * @param reader source of the document
+	 */
+	public IncrementalLexer(Reader reader) {
+		this.reader = reader;
+		this.buf = BufferPool.takeChars(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param in source of the document
+	 * @param charset character encoding of {@code in}
+	 * @throws UnsupportedEncodingException if {@code charset} is not supported
+	 */
+	public IncrementalLexer(InputStream in, String charset)
+			throws UnsupportedEncodingException {
+		this(new InputStreamReader(in, charset));
+	}
+
+	/**
+	 * Convenience constructor for lexing a String.
+	 * @param html document text
+	 */
+	public IncrementalLexer(String html) {
+		this.reader = null;
+		this.buf = html.toCharArray();
+		this.limit = buf.length;
+		this.eof = true;
+	}
+
+	/**
+	 * Return work buffer to the pool. Lexer cannot be used after this.
+	 * Underlying {@code Reader} is not closed.
+	 */
+	public void close() {
+		if (reader != null) {
+			BufferPool.releaseChars(buf);
+		}
+		buf = null;
+	}
+
+	/**
+	 * @return position of the next token in the document, in chars
+	 */
+	public int getPosition() {
+		return base + start;
+	}
+
+	/**
+	 * Get the next node.
+	 * @return next node, or {@code null} at the end of the document
+	 * @throws ParserException error reading the document
+	 */
+	public Node nextNode() throws ParserException {
+		int c = peek(0);
+		if (c == EOF)
+			return null;
+		if (c == '<') {
+			int c1 = peek(1);
+			if (c1 == '/' || c1 == '?' || Character.isLetter(c1)) {
+				return parseTag();
+			} else if (c1 == '!') {
+				int c2 = peek(2);
+				if (c2 == '-') {
+					if (peek(3) == '-')
+						return parseRemark();
+				} else if (c2 != EOF) {
+					return parseTag();
+				}
+			} else if (c1 == '%') {
+				return parseJsp();
+			}
+		}
+		return parseString();
+	}
+
+	/**
+	 * Get text up to the next {@code </} followed by a letter, for content
+	 * of SCRIPT element.
+	 * @return TextNode, or {@code null} if text is empty
+	 * @throws ParserException error reading the document
+	 */
+	public Node parseCDATA() throws ParserException {
+		int i = 0;
+		while (true) {
+			int c = peek(i);
+			if (c == EOF)
+				break;
+			if (c == '<' && peek(i + 1) == '/' &&
+					Character.isLetter(peek(i + 2)))
+				break;
+			i++;
+		}
+		if (i == 0)
+			return null;
+		return new TextNode(take(i));
+	}
+
+	private Node parseString() throws ParserException {
+		// first char is text, even if it is '<'.
+		int i = 1;
+		while (true) {
+			int c = peek(i);
+			if (c == EOF)
+				break;
+			if (c == '<') {
+				int c1 = peek(i + 1);
+				if (c1 == '/' || c1 == '!' || c1 == '%' || c1 == '?' ||
+						Character.isLetter(c1))
+					break;
+			}
+			i++;
+		}
+		return new TextNode(take(i));
+	}
+
+	/**
+	 * Comment ends at {@code --} followed by {@code >}, optionally with
+	 * whitespace, {@code -} or {@code !} in between (same as
+	 * {@code Lexer.parseRemark()} with {@code STRICT_REMARKS} off).
+	 * {@code <!-->} is an empty comment.
+	 */
+	private Node parseRemark() throws ParserException {
+		// skip "<!--"
+		int i = 4;
+		int state = 0;
+		if (peek(i) == '>') {
+			i++;
+		} else {
+			while (true) {
+				int c = peek(i++);
+				if (c == EOF) {
+					// unterminated - keep as it is.
+					return new TextNode(take(i - 1));
+				}
+				if (state == 0) {
+					if (c == '-') state = 1;
+				} else if (state == 1) {
+					state = c == '-' ? 2 : 0;
+				} else {
+					if (c == '>')
+						break;
+					if (!(Character.isWhitespace(c) || c == '-' || c == '!'))
+						state = 0;
+				}
+			}
+		}
+		// text excludes "<!--" and "-->" (includes extra chars
+		// before "-->", if any), as RemarkNode.getText() does.
+		String text = i - 3 > 4 ? text(4, i - 3) : "";
+		start += i;
+		return new RemarkNode(text);
+	}
+
+	private Node parseJsp() throws ParserException {
+		// skip "<%"
+		int i = 2;
+		while (true) {
+			int c = peek(i);
+			if (c == EOF)
+				return new TextNode(take(i));
+			if (c == '%' && peek(i + 1) == '>')
+				break;
+			i++;
+		}
+		final int pos = getPosition();
+		Vector<Attribute> attributes = new Vector<Attribute>(1);
+		attributes.add(new Attribute(text(1, i + 1), null, null, (char)0));
+		start += i + 2;
+		return new TagNode(null, pos, getPosition(), attributes);
+	}
+
+	/**
+	 * Same state machine as {@code Lexer.parseTag()}, working on
+	 * offsets relative to the start of the tag.
+	 */
+	private Node parseTag() throws ParserException {
+		Vector<Attribute> attributes = new Vector<Attribute>();
+		int state = 0;
+		int i = 1;
+		// start of whitespace before next attribute
+		int ws = 1;
+		int nameStart = 0;
+		int nameEnd = 0;
+		int assignEnd = 0;
+		int valueStart = 0;
+		char quote = 0;
+		boolean done = false;
+		while (!done) {
+			final int c = peek(i);
+			switch (state) {
+			case 0: // outside of any attribute
+				if (c == EOF || c == '>' || c == '<') {
+					whitespace(attributes, ws, i);
+					if (c == '>') i++;
+					done = true;
+				} else if (!Character.isWhitespace(c)) {
+					whitespace(attributes, ws, i);
+					nameStart = i++;
+					state = 1;
+				} else {
+					i++;
+				}
+				break;
+			case 1: // within attribute name
+				if (c == EOF || c == '>' || c == '<') {
+					standalone(attributes, nameStart, i);
+					if (c == '>') i++;
+					done = true;
+				} else if (Character.isWhitespace(c)) {
+					nameEnd = i++;
+					state = 6;
+				} else if (c == '=') {
+					nameEnd = i++;
+					state = 2;
+				} else {
+					i++;
+				}
+				break;
+			case 2: // after '='
+				if (c == EOF || c == '>') {
+					attributes.add(new Attribute(text(nameStart, nameEnd),
+						text(nameEnd, i), null, (char)0));
+					if (c == '>') i++;
+					done = true;
+				} else if (c == '\'' || c == '"') {
+					quote = (char)c;
+					assignEnd = i++;
+					valueStart = i;
+					state = 4;
+				} else if (Character.isWhitespace(c)) {
+					i++;
+				} else {
+					assignEnd = valueStart = i++;
+					state = 3;
+				}
+				break;
+			case 3: // within unquoted value
+				if (c == EOF || c == '>' || Character.isWhitespace(c)) {
+					attributes.add(new Attribute(text(nameStart, nameEnd),
+						text(nameEnd, assignEnd), text(valueStart, i), (char)0));
+					if (c == EOF || c == '>') {
+						if (c == '>') i++;
+						done = true;
+					} else {
+						ws = i++;
+						state = 0;
+					}
+				} else {
+					i++;
+				}
+				break;
+			case 4: // within quoted value
+				if (c == EOF || c == quote) {
+					attributes.add(new Attribute(text(nameStart, nameEnd),
+						text(nameEnd, assignEnd), text(valueStart, i), quote));
+					if (c == EOF) {
+						done = true;
+					} else {
+						ws = ++i;
+						state = 0;
+					}
+				} else {
+					i++;
+				}
+				break;
+			case 6: // whitespace after attribute name - '=' may follow
+				if (c != EOF && Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '=') {
+					i++;
+					state = 2;
+				} else {
+					// standalone attribute; rescan c in state 0
+					standalone(attributes, nameStart, nameEnd);
+					ws = nameEnd;
+					state = 0;
+				}
+				break;
+			}
+		}
+		final int pos = getPosition();
+		start += i;
+		return new TagNode(null, pos, getPosition(), attributes);
+	}
+
+	private void whitespace(Vector<Attribute> attributes, int from, int to) {
+		if (to > from)
+			attributes.add(new Attribute(null, null, text(from, to), (char)0));
+	}
+
+	private void standalone(Vector<Attribute> attributes, int from, int to) {
+		attributes.add(new Attribute(text(from, to), null, null, (char)0));
+	}
+
+	/**
+	 * @return text between offsets {@code from} and {@code to} (relative to
+	 * start of current token)
+	 */
+	private String text(int from, int to) {
+		return new String(buf, start + from, to - from);
+	}
+
+	/**
+	 * Consume {@code len} chars as a token.
+	 */
+	private String take(int len) {
+		String text = new String(buf, start, len);
+		start += len;
+		return text;
+	}
+
+	/**
+	 * @return char at {@code off} from start of current token, or EOF.
+	 */
+	private int peek(int off) throws ParserException {
+		if (start + off >= limit && !fill(off + 1))
+			return EOF;
+		return buf[start + off];
+	}
+
+	/**
+	 * Read more chars so that at least {@code need} chars are available
+	 * from the start of current token. Chars before current token are
+	 * discarded.
+	 * @return {@code false} if document ends before that
+	 */
+	private boolean fill(int need) throws ParserException {
+		while (limit - start < need) {
+			if (eof)
+				return false;
+			if (limit == buf.length) {
+				if (start > 0) {
+					System.arraycopy(buf, start, buf, 0, limit - start);
+					base += start;
+					limit -= start;
+					start = 0;
+				} else {
+					char[] larger = new char[buf.length * 2];
+					System.arraycopy(buf, 0, larger, 0, limit);
+					BufferPool.releaseChars(buf);
+					buf = larger;
+				}
+			}
+			try {
+				int n = reader.read(buf, limit, buf.length - limit);
+				if (n < 0)
+					eof = true;
+				else
+					limit += n;
+			} catch (IOException ex) {
+				throw new ParserException("error reading document", ex);
+			}
+		}
+		return true;
+	}
+}
@@ -65,6 +65,17 @@ public class PerfStats
 			return elapsed;
 		}
 		
+		/**
+		 * Add {@code n} to the total, for stats counting
+		 * events rather than measuring time.
+		 * @param n amount to add
+		 */
+		public void add(long n)
+		{
+			total += n;
+			count++;
+		}
+		
 		public String toString()
 		{
 			// Skip perf stats that haven't been set at all
@@ -145,6 +156,40 @@ public class PerfStats
 		}
 	}
 	
+	/**
+	 * Remove all stats of the current thread and return them.
+	 * Stats recorded afterwards start from zero.
+	 * Used for collecting stats of work done on behalf of a request on
+	 * another thread, to be added to the request thread with
+	 * {@link #addAll(Map)}.
+	 * @return map of stats by name
+	 */
+	public static Map<String, PerfStatEntry> takeAll()
+	{
+		Map<String, PerfStatEntry> stats = perfStats.get();
+		perfStats.remove();
+		lastEntry.set(null);
+		return stats;
+	}
+	
+	/**
+	 * Add {@code stats} taken from another thread with {@link #takeAll()}
+	 * to stats of the current thread.
+	 * @param stats map of stats by name
+	 */
+	public static void addAll(Map<String, PerfStatEntry> stats)
+	{
+		for (PerfStatEntry other : stats.values()) {
+			if (other.count == 0 && other.total == 0) {
+				continue;
+			}
+			PerfStatEntry entry = get(other.name);
+			entry.total += other.total;
+			entry.count += other.count;
+			entry.isErr |= other.isErr || other.start > 0;
+		}
+	}
+	
 	public static void timeStart(Enum<?> stat)
 	{
 		timeStart(stat.toString());
@@ -186,6 +231,22 @@ public class PerfStats
 		return elapsed;
 	}
 	
+	/**
+	 * Add {@code n} to counter stat {@code stat}.
+	 * Counter stats are reported along with timing stats.
+	 * @param stat stat name
+	 * @param n amount to add
+	 */
+	public static void count(Enum<?> stat, long n)
+	{
+		count(stat.toString(), n);
+	}
+	
+	public static void count(String statName, long n)
+	{
+		get(statName).add(n);
+	}
+	
 	public static String getAllStats() {
 		return getAllStats(OutputFormat.BRACKET);
 	}
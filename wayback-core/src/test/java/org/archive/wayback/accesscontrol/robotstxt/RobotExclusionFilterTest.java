@@ -20,14 +20,20 @@
 package org.archive.wayback.accesscontrol.robotstxt;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import junit.framework.TestCase;
 
+import org.archive.wayback.accesscontrol.robotstxt.redis.RobotsTxtResource;
 import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.Resource;
 import org.archive.wayback.exception.LiveDocumentNotAvailableException;
+import org.archive.wayback.liveweb.BatchLiveWebCache;
 import org.archive.wayback.liveweb.LiveWebCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.easymock.EasyMock;
@@ -168,4 +174,226 @@ public class RobotExclusionFilterTest extends TestCase {
 
 		EasyMock.verify(cache);
 	}
+
+	/**
+	 * RobotExclusionFilters sharing RobotRulesCache fetch robots.txt
+	 * just once.
+	 * @throws Exception
+	 */
+	public void testSharedRulesCache() throws Exception {
+		final URL rturl = new URL("http://example.com/robots.txt");
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		LiveWebCache cache = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andReturn(new RobotsTxtResource("User-agent: *\nDisallow: /private/\n"))
+			.once();
+		EasyMock.replay(cache);
+
+		RobotRulesCache rulesCache = new RobotRulesCache();
+		for (int i = 0; i < 3; i++) {
+			RobotExclusionFilter cut = new RobotExclusionFilter(cache,
+				USER_AGENT, MAX_CACHE_MS);
+			cut.setSharedRulesCache(rulesCache, MAX_CACHE_MS);
+
+			CaptureSearchResult result = new CaptureSearchResult();
+			result.setOriginalUrl("http://example.com/private/index.html");
+			result.setUrlKey("com,example)/private/index.html");
+			assertEquals(ExclusionFilter.FILTER_EXCLUDE, cut.filterObject(result));
+
+			result = new CaptureSearchResult();
+			result.setOriginalUrl("http://example.com/index.html");
+			result.setUrlKey("com,example)/index.html");
+			assertEquals(ExclusionFilter.FILTER_INCLUDE, cut.filterObject(result));
+		}
+
+		EasyMock.verify(cache);
+		assertEquals(2, rulesCache.getHitCount());
+		assertEquals(1, rulesCache.getMissCount());
+	}
+
+	/**
+	 * failure other than 4xx/5xx is not shared: next request retries.
+	 * @throws Exception
+	 */
+	public void testSharedRulesCache_failure() throws Exception {
+		final URL rturl = new URL("http://example.com/robots.txt");
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		LiveWebCache cache = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andThrow(new LiveDocumentNotAvailableException(rturl, 302)).times(2);
+		EasyMock.replay(cache);
+
+		RobotRulesCache rulesCache = new RobotRulesCache();
+		for (int i = 0; i < 2; i++) {
+			RobotExclusionFilter cut = new RobotExclusionFilter(cache,
+				USER_AGENT, MAX_CACHE_MS);
+			cut.setSharedRulesCache(rulesCache, MAX_CACHE_MS);
+			CaptureSearchResult result = new CaptureSearchResult();
+			result.setOriginalUrl("http://example.com/index.html");
+			// full disallow
+			assertNull(cut.getRules(result));
+		}
+
+		EasyMock.verify(cache);
+		assertEquals(0, rulesCache.getSize());
+	}
+
+	/**
+	 * 5xx is taken as allow-all, but not shared: next request fetches
+	 * robots.txt again.
+	 * @throws Exception
+	 */
+	public void testSharedRulesCache_5xx() throws Exception {
+		final URL rturl = new URL("http://example.com/robots.txt");
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		LiveWebCache cache = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andThrow(new LiveDocumentNotAvailableException(rturl, 503)).once();
+		EasyMock.expect(cache.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andReturn(new RobotsTxtResource("User-agent: *\nDisallow: /\n"))
+			.once();
+		EasyMock.replay(cache);
+
+		RobotRulesCache rulesCache = new RobotRulesCache();
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/index.html");
+		result.setUrlKey("com,example)/index.html");
+
+		RobotExclusionFilter cut = new RobotExclusionFilter(cache,
+			USER_AGENT, MAX_CACHE_MS);
+		cut.setSharedRulesCache(rulesCache, MAX_CACHE_MS);
+		assertEquals(ExclusionFilter.FILTER_INCLUDE, cut.filterObject(result));
+		assertEquals(0, rulesCache.getSize());
+
+		cut = new RobotExclusionFilter(cache, USER_AGENT, MAX_CACHE_MS);
+		cut.setSharedRulesCache(rulesCache, MAX_CACHE_MS);
+		assertEquals(ExclusionFilter.FILTER_EXCLUDE, cut.filterObject(result));
+		assertEquals(1, rulesCache.getSize());
+
+		EasyMock.verify(cache);
+	}
+
+	/**
+	 * RobotExclusionFilterFactories do not share RobotRulesCache by default:
+	 * rules loaded through one webCache are not used for another.
+	 * @throws Exception
+	 */
+	public void testFactoryRulesCache() throws Exception {
+		final URL rturl = new URL("http://example.com/robots.txt");
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		LiveWebCache cache1 = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache1.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andReturn(new RobotsTxtResource("User-agent: *\nDisallow: /\n"))
+			.once();
+		LiveWebCache cache2 = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache2.getCachedResource(rturl, MAX_CACHE_MS, true))
+			.andReturn(new RobotsTxtResource(404)).once();
+		EasyMock.replay(cache1, cache2);
+
+		RobotExclusionFilterFactory factory1 = new RobotExclusionFilterFactory();
+		factory1.setWebCache(cache1);
+		factory1.setUserAgent(USER_AGENT);
+		factory1.setMaxCacheMS(MAX_CACHE_MS);
+		RobotExclusionFilterFactory factory2 = new RobotExclusionFilterFactory();
+		factory2.setWebCache(cache2);
+		factory2.setUserAgent(USER_AGENT);
+		factory2.setMaxCacheMS(MAX_CACHE_MS);
+		assertNotNull(factory1.getRulesCache());
+		assertNotSame(factory1.getRulesCache(), factory2.getRulesCache());
+
+		for (int i = 0; i < 2; i++) {
+			CaptureSearchResult result = new CaptureSearchResult();
+			result.setOriginalUrl("http://example.com/index.html");
+			result.setUrlKey("com,example)/index.html");
+			assertEquals(ExclusionFilter.FILTER_EXCLUDE,
+				factory1.get().filterObject(result));
+			assertEquals(ExclusionFilter.FILTER_INCLUDE,
+				factory2.get().filterObject(result));
+		}
+
+		EasyMock.verify(cache1, cache2);
+	}
+
+	/**
+	 * prefetch() looks up robots.txt for all hosts in one batch.
+	 * robots.txt not found in the batch are looked up individually.
+	 * @throws Exception
+	 */
+	public void testPrefetch() throws Exception {
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		BatchLiveWebCache cache = EasyMock.createMock(BatchLiveWebCache.class);
+		Map<String, Resource> cached = new HashMap<String, Resource>();
+		cached.put("http://example.com/robots.txt", new RobotsTxtResource(
+			"User-agent: *\nDisallow: /private/\n"));
+		cached.put("http://other.com/robots.txt", new RobotsTxtResource(404));
+		EasyMock.expect(cache.getCachedResources(Arrays.asList(
+			"http://example.com/robots.txt",
+			"http://www.example.com/robots.txt",
+			"http://other.com/robots.txt",
+			"http://www.other.com/robots.txt",
+			"http://third.org/robots.txt",
+			"http://www.third.org/robots.txt"))).andReturn(cached).once();
+		EasyMock.expect(cache.getCachedResource(
+			new URL("http://third.org/robots.txt"), MAX_CACHE_MS, true))
+			.andReturn(new RobotsTxtResource("User-agent: *\nDisallow: /\n"))
+			.once();
+		EasyMock.replay(cache);
+
+		RobotRulesCache rulesCache = new RobotRulesCache();
+		RobotExclusionFilter cut = new RobotExclusionFilter(cache, USER_AGENT,
+			MAX_CACHE_MS);
+		cut.setSharedRulesCache(rulesCache, MAX_CACHE_MS);
+		cut.prefetch(Arrays.asList("http://example.com/private/a.html",
+			"http://example.com/b.html", "http://other.com/",
+			"http://third.org/"));
+		assertEquals(2, rulesCache.getSize());
+
+		CaptureSearchResult result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/private/a.html");
+		result.setUrlKey("com,example)/private/a.html");
+		assertEquals(ExclusionFilter.FILTER_EXCLUDE, cut.filterObject(result));
+
+		result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/b.html");
+		result.setUrlKey("com,example)/b.html");
+		assertEquals(ExclusionFilter.FILTER_INCLUDE, cut.filterObject(result));
+
+		// 404 = no robots.txt
+		result = new CaptureSearchResult();
+		result.setOriginalUrl("http://other.com/");
+		result.setUrlKey("com,other)/");
+		assertEquals(ExclusionFilter.FILTER_INCLUDE, cut.filterObject(result));
+
+		result = new CaptureSearchResult();
+		result.setOriginalUrl("http://third.org/");
+		result.setUrlKey("org,third)/");
+		assertEquals(ExclusionFilter.FILTER_EXCLUDE, cut.filterObject(result));
+
+		EasyMock.verify(cache);
+
+		// hosts already known are not looked up again
+		EasyMock.reset(cache);
+		EasyMock.replay(cache);
+		cut.prefetch(Arrays.asList("http://example.com/c.html",
+			"http://third.org/a.html"));
+		EasyMock.verify(cache);
+	}
+
+	/**
+	 * prefetch() does nothing if LiveWebCache does not support batch lookup.
+	 * @throws Exception
+	 */
+	public void testPrefetch_notBatch() throws Exception {
+		LiveWebCache cache = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.replay(cache);
+		RobotExclusionFilter cut = new RobotExclusionFilter(cache,
+			"ia_archiver", 60000);
+		cut.prefetch(Arrays.asList("http://example.com/"));
+		EasyMock.verify(cache);
+	}
 }
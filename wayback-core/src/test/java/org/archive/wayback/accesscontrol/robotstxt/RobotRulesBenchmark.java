@@ -0,0 +1,185 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Compares {@link RobotRules#blocksPathForUA(String, String)} with a linear
+ * {@code startsWith} scan over Disallow paths (previous implementation).
+ * <p>Not a unit test. Run with paths to robots.txt files saved from large
+ * sites as arguments:</p>
+ * <pre>
+ * java -cp ... org.archive.wayback.accesscontrol.robotstxt.RobotRulesBenchmark robots1.txt robots2.txt
+ * </pre>
+ * <p>Without arguments, runs with a generated robots.txt shaped like
+ * those of large sites (thousands of Disallow lines under {@code *}).
+ * Query paths are taken from the Disallow paths themselves (with some
+ * suffix, and some altered so that they do not match), similar to
+ * checking every capture of a site.</p>
+ */
+public class RobotRulesBenchmark {
+
+	static final String UA = "ia_archiver";
+	static final int QUERIES = 200000;
+
+	static String generate(int lines, Random rand) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("# generated\nUser-agent: *\n");
+		for (int i = 0; i < lines; i++) {
+			sb.append("Disallow: /");
+			sb.append(i % 3 == 0 ? "catalog" : i % 3 == 1 ? "user" : "search");
+			sb.append('/').append(Integer.toString(rand.nextInt(1 << 24), 36));
+			if (i % 10 == 0) {
+				sb.append('/');
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Disallow paths in {@code txt} for {@code *}, in old matching form.
+	 */
+	static List<String> disallowPaths(String txt) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+			new ByteArrayInputStream(txt.getBytes(ByteOp.UTF8)), ByteOp.UTF8));
+		String line;
+		while ((line = br.readLine()) != null) {
+			Matcher m = RobotRules.DISALLOW_PATTERN.matcher(line.trim());
+			if (m.matches()) {
+				String path = m.group(1).trim();
+				int hash = path.indexOf('#');
+				if (hash >= 0) {
+					path = path.substring(0, hash).trim();
+				}
+				if (!path.isEmpty()) {
+					paths.add(path);
+				}
+			}
+		}
+		return paths;
+	}
+
+	static boolean linearScan(List<String> paths, String path) {
+		for (String disallowedPath : paths) {
+			if (disallowedPath.equals("/") || path.startsWith(disallowedPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static String[] queries(List<String> paths, Random rand) {
+		String[] queries = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			String p = paths.isEmpty() ? "/" : paths.get(rand.nextInt(paths.size()));
+			p = p.replace("*", "x").replace("$", "");
+			switch (i % 3) {
+			case 0:
+				queries[i] = p + "/index.html";
+				break;
+			case 1:
+				// alter last char
+				queries[i] = p.isEmpty() ? "/" : p.substring(0, p.length() - 1) + "~";
+				break;
+			default:
+				queries[i] = "/" + Integer.toString(rand.nextInt(), 36) + p;
+			}
+		}
+		return queries;
+	}
+
+	static void run(String name, String txt) throws IOException {
+		Random rand = new Random(1);
+		List<String> paths = disallowPaths(txt);
+
+		long start = System.nanoTime();
+		RobotRules rules = new RobotRules();
+		rules.parse(new ByteArrayInputStream(txt.getBytes(ByteOp.UTF8)));
+		long parseNS = System.nanoTime() - start;
+
+		String[] queries = queries(paths, rand);
+		// warm up both
+		int blocked = 0, linearBlocked = 0;
+		for (int round = 0; round < 2; round++) {
+			for (String q : queries) {
+				if (rules.blocksPathForUA(q, UA)) blocked++;
+				if (linearScan(paths, q)) linearBlocked++;
+			}
+		}
+		start = System.nanoTime();
+		for (String q : queries) {
+			rules.blocksPathForUA(q, UA);
+		}
+		long compiledNS = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (String q : queries) {
+			linearScan(paths, q);
+		}
+		long linearNS = System.nanoTime() - start;
+
+		System.out.printf("%s: %d Disallow, parse+compile %.1fms%n", name,
+			paths.size(), parseNS / 1e6);
+		System.out.printf("  compiled: %6.0f ns/query (%d blocked)%n",
+			(double)compiledNS / QUERIES, blocked / 2);
+		System.out.printf("  linear:   %6.0f ns/query (%d blocked)%n",
+			(double)linearNS / QUERIES, linearBlocked / 2);
+	}
+
+	static String read(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ByteOp.copyStream(is, baos);
+			return new String(baos.toByteArray(), ByteOp.UTF8);
+		} finally {
+			is.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			Random rand = new Random(0);
+			for (int lines : new int[] { 100, 1000, 10000 }) {
+				run("generated-" + lines, generate(lines, rand));
+			}
+		} else {
+			for (String arg : args) {
+				File file = new File(arg);
+				run(file.getName(), read(file));
+			}
+		}
+	}
+}
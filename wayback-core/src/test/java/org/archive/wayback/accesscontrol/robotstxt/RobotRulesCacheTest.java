@@ -0,0 +1,189 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.exception.LiveDocumentNotAvailableException;
+
+/**
+ * Test for {@link RobotRulesCache}.
+ */
+public class RobotRulesCacheTest extends TestCase {
+
+	/**
+	 * Loader counting invocations.
+	 */
+	static class CountingLoader implements RobotRulesCache.Loader {
+		final AtomicInteger count = new AtomicInteger();
+		int failStatus = 0;
+
+		@Override
+		public RobotRules load(String url)
+				throws LiveDocumentNotAvailableException, IOException {
+			count.incrementAndGet();
+			if (failStatus != 0) {
+				throw new LiveDocumentNotAvailableException(url, failStatus);
+			}
+			RobotRules rules = new RobotRules();
+			rules.parse(new ByteArrayInputStream(
+				"User-agent: *\nDisallow: /private/\n".getBytes("UTF-8")));
+			return rules;
+		}
+	}
+
+	RobotRulesCache cut;
+	CountingLoader loader;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cut = new RobotRulesCache();
+		loader = new CountingLoader();
+	}
+
+	public void testHit() throws Exception {
+		final String url = "http://example.com/robots.txt";
+		RobotRules rules = cut.get(url, 0, loader);
+		assertTrue(rules.blocksPathForUA("/private/a.html", "ia_archiver"));
+		assertSame(rules, cut.get(url, 0, loader));
+		assertEquals(1, loader.count.get());
+		assertEquals(1, cut.getHitCount());
+		assertEquals(1, cut.getMissCount());
+		assertEquals(0.5, cut.getHitRate(), 0.001);
+
+		cut.get("http://www.example.com/robots.txt", 0, loader);
+		assertEquals(2, loader.count.get());
+		assertEquals(2, cut.getSize());
+
+		cut.remove(url);
+		assertNotSame(rules, cut.get(url, 0, loader));
+		assertEquals(3, loader.count.get());
+	}
+
+	public void testMaxAge() throws Exception {
+		final String url = "http://example.com/robots.txt";
+		RobotRules rules = cut.get(url, 60000, loader);
+		assertSame(rules, cut.get(url, 60000, loader));
+		Thread.sleep(20);
+		// entry is older than 10ms
+		RobotRules rules2 = cut.get(url, 10, loader);
+		assertNotSame(rules, rules2);
+		assertEquals(2, loader.count.get());
+
+		// default maxAgeMS
+		cut.setMaxAgeMS(10);
+		Thread.sleep(20);
+		assertNotSame(rules2, cut.get(url, 0, loader));
+		assertEquals(3, loader.count.get());
+	}
+
+	public void testMaxEntries() throws Exception {
+		cut.setMaxEntries(2);
+		cut.get("http://a.example.com/robots.txt", 0, loader);
+		cut.get("http://b.example.com/robots.txt", 0, loader);
+		// "a" is more recently used than "b"
+		cut.get("http://a.example.com/robots.txt", 0, loader);
+		cut.get("http://c.example.com/robots.txt", 0, loader);
+		assertEquals(2, cut.getSize());
+		assertEquals(3, loader.count.get());
+		cut.get("http://a.example.com/robots.txt", 0, loader);
+		assertEquals(3, loader.count.get());
+		cut.get("http://b.example.com/robots.txt", 0, loader);
+		assertEquals(4, loader.count.get());
+	}
+
+	public void testFailureNotCached() throws Exception {
+		final String url = "http://example.com/robots.txt";
+		loader.failStatus = 302;
+		try {
+			cut.get(url, 0, loader);
+			fail("LiveDocumentNotAvailableException is expected");
+		} catch (LiveDocumentNotAvailableException ex) {
+			assertEquals(302, ex.getOriginalStatuscode());
+		}
+		assertEquals(0, cut.getSize());
+		loader.failStatus = 0;
+		assertNotNull(cut.get(url, 0, loader));
+		assertEquals(2, loader.count.get());
+	}
+
+	/**
+	 * concurrent lookups for the same URL trigger just one load.
+	 * @throws Exception
+	 */
+	public void testSingleFlight() throws Exception {
+		final String url = "http://example.com/robots.txt";
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RobotRulesCache.Loader slowLoader = new RobotRulesCache.Loader() {
+			@Override
+			public RobotRules load(String url)
+					throws LiveDocumentNotAvailableException, IOException {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					throw new IOException(ex);
+				}
+				return loader.load(url);
+			}
+		};
+		final int nthreads = 8;
+		final RobotRules[] results = new RobotRules[nthreads];
+		Thread[] threads = new Thread[nthreads];
+		for (int i = 0; i < nthreads; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						results[index] = cut.get(url, 0, slowLoader);
+					} catch (Exception ex) {
+						// results[index] remains null
+					}
+				}
+			};
+		}
+		threads[0].start();
+		started.await();
+		for (int i = 1; i < nthreads; i++) {
+			threads[i].start();
+		}
+		// let other threads block on running load
+		while (cut.getJoinCount() < nthreads - 1) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, loader.count.get());
+		for (int i = 0; i < nthreads; i++) {
+			assertNotNull(results[i]);
+			assertSame(results[0], results[i]);
+		}
+	}
+}
@@ -335,14 +335,11 @@ public class RobotRulesTest extends TestCase {
 				"Disallow: /cgi/*.php\n";
 		load(testString);
 		
-		// (some assertions are disabled until we decide to fix it)
 		assertFalse(rr.blocksPathForUA("/media", WB_UA));
-//		assertTrue(rr.blocksPathForUA("/media/", WB_UA));
-//		assertTrue(rr.blocksPathForUA("/media/theme.mp3", WB_UA));
-		// perhaps we don't implement non-trailing wildcard. comment out
-		// following three if we don't.
-//		assertTrue(rr.blocksPathForUA("/cgi/messy.php", WB_UA));
-//		assertTrue(rr.blocksPathForUA("/cgi/really.phpt", WB_UA));
+		assertTrue(rr.blocksPathForUA("/media/", WB_UA));
+		assertTrue(rr.blocksPathForUA("/media/theme.mp3", WB_UA));
+		assertTrue(rr.blocksPathForUA("/cgi/messy.php", WB_UA));
+		assertTrue(rr.blocksPathForUA("/cgi/really.phpt", WB_UA));
 		assertFalse(rr.blocksPathForUA("/cgi/noexec.txt", WB_UA));
 	}
 	
@@ -355,10 +352,7 @@ public class RobotRulesTest extends TestCase {
 				"Disallow: /exactly$\n";
 		load(testString);
 		
-		// (some assertions are disabled until we decide to fix it)
-		// perhaps we don't support end-of-path marker. comment out these
-		// three asserts if that's the case.
-//		assertTrue(rr.blocksPathForUA("/exactly", WB_UA));
+		assertTrue(rr.blocksPathForUA("/exactly", WB_UA));
 		assertFalse(rr.blocksPathForUA("/exactly/", WB_UA));
 		assertFalse(rr.blocksPathForUA("/exactly/it.html", WB_UA));
 	}
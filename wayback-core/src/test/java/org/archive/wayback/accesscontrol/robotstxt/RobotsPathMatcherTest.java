@@ -0,0 +1,138 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.robotstxt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link RobotsPathMatcher}.
+ */
+public class RobotsPathMatcherTest extends TestCase {
+
+	static RobotsPathMatcher compile(String... paths) {
+		return new RobotsPathMatcher(Arrays.asList(paths));
+	}
+
+	public void testEmpty() {
+		RobotsPathMatcher m = compile();
+		assertFalse(m.matches("/"));
+		assertFalse(m.matches(""));
+		m = compile("");
+		assertFalse(m.matches("/a.html"));
+	}
+
+	public void testPrefix() {
+		RobotsPathMatcher m = compile("/a/b", "/a/bc/d", "/x", "/a/b/c");
+		assertTrue(m.matches("/a/b"));
+		assertTrue(m.matches("/a/bc"));
+		assertTrue(m.matches("/a/b/c/d.html"));
+		assertTrue(m.matches("/x"));
+		assertTrue(m.matches("/xyz"));
+		assertFalse(m.matches("/a/"));
+		assertFalse(m.matches("/a"));
+		assertFalse(m.matches("/y"));
+		assertFalse(m.matches(""));
+		assertFalse(m.matches("/X"));
+	}
+
+	public void testSlash() {
+		RobotsPathMatcher m = compile("/private/", "/");
+		assertTrue(m.matches("/"));
+		assertTrue(m.matches("/index.html"));
+		// "/" blocks everything, even if path does not start with "/"
+		assertTrue(m.matches(""));
+		assertTrue(m.matches("index.html"));
+	}
+
+	public void testWildcard() {
+		RobotsPathMatcher m = compile("/*/private/", "/cgi/*.php", "/a**b");
+		assertTrue(m.matches("/x/private/"));
+		assertTrue(m.matches("/x/y/private/z.html"));
+		assertTrue(m.matches("//private/"));
+		assertFalse(m.matches("/private/"));
+		assertTrue(m.matches("/cgi/a.php"));
+		assertTrue(m.matches("/cgi/a.php?x=1"));
+		assertTrue(m.matches("/cgi/.php"));
+		assertTrue(m.matches("/cgi/b/a.phps"));
+		assertFalse(m.matches("/cgi/a.ph"));
+		assertFalse(m.matches("/cgi"));
+		assertTrue(m.matches("/ab"));
+		assertTrue(m.matches("/axxbyy"));
+		assertFalse(m.matches("/axx"));
+
+		m = compile("/*");
+		assertTrue(m.matches("/"));
+		assertTrue(m.matches("/anything"));
+		assertFalse(m.matches(""));
+
+		// backtracking case: "*" must not commit to the first "a"
+		m = compile("/*aab");
+		assertTrue(m.matches("/aaab"));
+		assertTrue(m.matches("/abaab"));
+		assertFalse(m.matches("/abab"));
+	}
+
+	public void testEndAnchor() {
+		RobotsPathMatcher m = compile("/exactly$", "/*.gif$", "/a$b");
+		assertTrue(m.matches("/exactly"));
+		assertFalse(m.matches("/exactly/"));
+		assertFalse(m.matches("/exactl"));
+		assertTrue(m.matches("/img/a.gif"));
+		assertTrue(m.matches("/a.gif.gif"));
+		assertFalse(m.matches("/a.gif?x=1"));
+		// '$' in the middle is literal
+		assertTrue(m.matches("/a$bc"));
+		assertFalse(m.matches("/a"));
+
+		// anchored and non-anchored rule on the same path
+		m = compile("/page$", "/page/");
+		assertTrue(m.matches("/page"));
+		assertTrue(m.matches("/page/1"));
+		assertFalse(m.matches("/page1"));
+	}
+
+	/**
+	 * compiled matcher gives the same result as straightforward
+	 * {@code startsWith} over every path, for rules without wildcards.
+	 */
+	public void testSameAsLinearScan() {
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			paths.add("/dir" + (i % 37) + "/" + Integer.toString(i * 7919, 36));
+		}
+		paths.add("/dir5/");
+		RobotsPathMatcher m = new RobotsPathMatcher(paths);
+		for (int i = 0; i < 5000; i++) {
+			String path = "/dir" + (i % 41) + "/" + Integer.toString(i * 104729 % 4000000, 36);
+			boolean expected = false;
+			for (String p : paths) {
+				if (path.startsWith(p)) {
+					expected = true;
+					break;
+				}
+			}
+			assertEquals(path, expected, m.matches(path));
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package org.archive.wayback.accesscontrol.robotstxt.redis;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
@@ -26,10 +30,15 @@ public class SimpleRedisRobotsCacheTest extends TestCase {
 		public RedisValue getValue(String key)
 				throws LiveWebCacheUnavailableException;
 
+		public List<RedisValue> getValue(String[] keys)
+				throws LiveWebCacheUnavailableException;
+
 		public void updateValue(String url, RedisValue value, boolean gzip);
 
 		public void pushKey(String list, String key, int maxSize);
 
+		public void pushKeys(String list, List<String> keys, int maxSize);
+
 		public void close();
 	}
 
@@ -51,6 +60,12 @@ public class SimpleRedisRobotsCacheTest extends TestCase {
 			return delegate.getValue(key);
 		}
 
+		@Override
+		public List<RedisValue> getValue(String[] keys)
+				throws LiveWebCacheUnavailableException {
+			return delegate.getValue(keys);
+		}
+
 		@Override
 		public void updateValue(String url, RedisValue value, boolean gzip) {
 			delegate.updateValue(url, value, gzip);
@@ -61,6 +76,11 @@ public class SimpleRedisRobotsCacheTest extends TestCase {
 			delegate.pushKey(list, key, maxSize);
 		}
 
+		@Override
+		public void pushKeys(String list, List<String> keys, int maxSize) {
+			delegate.pushKeys(list, keys, maxSize);
+		}
+
 		@Override
 		public void close() {
 			delegate.close();
@@ -416,5 +436,61 @@ public class SimpleRedisRobotsCacheTest extends TestCase {
 		EasyMock.verify(redisRobotsLogic, liveweb);
 	}
 
-	// more?
+	/**
+	 * batch lookup gets all values with one call, and queues
+	 * expired ones for refresh with one call. Missing ones are not
+	 * fetched from liveweb.
+	 * @throws Exception
+	 */
+	public void testGetCachedResources() throws Exception {
+		final String URL_OK = "http://example.com/robots.txt";
+		final String URL_FAILED = "http://www.example.com/robots.txt";
+		final String URL_MISSING = "http://example.org/robots.txt";
+		final String URL_EXPIRED = "http://www.example.org/robots.txt";
+		final String CONTENT = "User-agent: *\nDisallow: /\n";
+		final List<String> urls = Arrays.asList(URL_OK, URL_FAILED,
+			URL_MISSING, URL_EXPIRED);
+		EasyMock.expect(
+			redisRobotsLogic.getValue(EasyMock.aryEq(urls.toArray(new String[4]))))
+			.andReturn(Arrays.asList(
+				new RedisValue(CONTENT, Long.MAX_VALUE),
+				new RedisValue(SimpleRedisRobotsCache.ROBOTS_TOKEN_ERROR + "404", Long.MAX_VALUE),
+				null,
+				// refreshTTL has elapsed
+				new RedisValue(CONTENT, 0)));
+		redisRobotsLogic.pushKeys(SimpleRedisRobotsCache.UPDATE_QUEUE_KEY,
+			Collections.singletonList(URL_EXPIRED),
+			SimpleRedisRobotsCache.MAX_UPDATE_QUEUE_SIZE);
+
+		EasyMock.replay(redisRobotsLogic, liveweb);
+
+		Map<String, Resource> resources = cut.getCachedResources(urls);
+
+		assertEquals(3, resources.size());
+		RobotsTxtResource r = (RobotsTxtResource)resources.get(URL_OK);
+		assertEquals(200, r.getStatusCode());
+		assertEquals(CONTENT, r.getContents());
+		assertEquals(404, resources.get(URL_FAILED).getStatusCode());
+		assertFalse(resources.containsKey(URL_MISSING));
+		assertEquals(200, resources.get(URL_EXPIRED).getStatusCode());
+
+		EasyMock.verify(redisRobotsLogic, liveweb);
+	}
+
+	public void testGetCachedResourcesUnavailable() throws Exception {
+		EasyMock.expect(
+			redisRobotsLogic.getValue(EasyMock.aryEq(new String[] { "http://example.com/robots.txt" })))
+			.andThrow(new LiveWebCacheUnavailableException("No Jedis"));
+
+		EasyMock.replay(redisRobotsLogic, liveweb);
+
+		try {
+			cut.getCachedResources(Arrays.asList("http://example.com/robots.txt"));
+			fail("LiveWebCacheUnavailableException is expected");
+		} catch (LiveWebCacheUnavailableException ex) {
+			// expected
+		}
+
+		EasyMock.verify(redisRobotsLogic, liveweb);
+	}
 }
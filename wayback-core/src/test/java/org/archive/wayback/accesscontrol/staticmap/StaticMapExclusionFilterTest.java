@@ -22,7 +22,6 @@ package org.archive.wayback.accesscontrol.staticmap;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -153,6 +152,30 @@ public class StaticMapExclusionFilterTest extends TestCase {
 		assertTrue("emptypath",isBlocked(filter,"http://www.peagreenboat.com/"));
 	}
 	
+	/**
+	 * reloaded exclusions replace old ones for new filters, while
+	 * filters already handed out keep using old ones.
+	 * @throws Exception
+	 */
+	public void testReload() throws Exception {
+		setTmpContents(new String[] {"example.com"});
+		factory.setFile(tmpFile.getAbsolutePath());
+		factory.init();
+		ObjectFilter<CaptureSearchResult> filter = factory.get();
+		assertTrue(isBlocked(filter,"http://www.example.com/"));
+		assertFalse(isBlocked(filter,"http://archive.org/"));
+
+		setTmpContents(new String[] {"archive.org/about"});
+		tmpFile.setLastModified(factory.lastUpdated + 2000);
+		factory.reloadFile();
+		ObjectFilter<CaptureSearchResult> reloaded = factory.get();
+		assertTrue(isBlocked(reloaded,"http://archive.org/about/"));
+		assertFalse(isBlocked(reloaded,"http://archive.org/"));
+		assertFalse(isBlocked(reloaded,"http://www.example.com/"));
+
+		assertTrue(isBlocked(filter,"http://www.example.com/foo"));
+	}
+
 	private boolean isBlocked(ObjectFilter<CaptureSearchResult> filter, String url) throws URIException {
 		CaptureSearchResult result = new CaptureSearchResult();
 		result.setOriginalUrl(url);
@@ -168,8 +191,8 @@ public class StaticMapExclusionFilterTest extends TestCase {
 		throws IOException {
 		
 		setTmpContents(lines);
-		Map<String,Object> map = factory.loadFile(tmpFile.getAbsolutePath());
-		return new StaticMapExclusionFilter(map,canonicalizer);
+		SurtPrefixSet exclusions = factory.loadSurtPrefixSet(tmpFile.getAbsolutePath());
+		return new StaticMapExclusionFilter(exclusions,canonicalizer);
 	}
 
 	private void setTmpContents(String[] lines) throws IOException {
@@ -0,0 +1,174 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.accesscontrol.staticmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.surt.SURTTokenizer;
+
+/**
+ * Test for {@link SurtPrefixSet}.
+ */
+public class SurtPrefixSetTest extends TestCase {
+
+	static final String[] SURTS = {
+		"(com,example,www,)/",
+		"(com,example,www,)/a/b/c.html",
+		"(com,example,www,)/a/b/?x=1&y=/z",
+		"(com,example,www,)/a/b/",
+		"(com,example,www,)/a//b",
+		"(com,example,)/",
+		"(com,example,www,:8080)/a",
+		"(com,example,www,:8080@user:pass)/a/b",
+		"(com,example,www,@user)/",
+		"(org,archive,)/index.html?",
+		"(org,archive,web,)",
+		"(org,archive",
+		"com,example)/a/b",
+		"com,example,www)/a/",
+		"com,example)/",
+		"org,archive)/web/*/http://example.com/",
+		"net,sf)/pop/roger",
+		"a",
+		"",
+	};
+
+	/**
+	 * all the search strings SURTTokenizer generates for {@code surt}
+	 */
+	static List<String> searches(String surt) throws Exception {
+		List<String> searches = new ArrayList<String>();
+		SURTTokenizer st = new SURTTokenizer(surt, true);
+		String s;
+		while ((s = st.nextSearch()) != null) {
+			searches.add(s);
+		}
+		return searches;
+	}
+
+	static boolean tokenizerContains(Set<String> set, String surt) throws Exception {
+		for (String s : searches(surt)) {
+			if (set.contains(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void testEmpty() throws Exception {
+		SurtPrefixSet cut = new SurtPrefixSet(Collections.<String>emptyList());
+		assertEquals(0, cut.size());
+		for (String surt : SURTS) {
+			assertFalse(surt, cut.containsSearchOf(surt));
+		}
+	}
+
+	public void testSearchLength() throws Exception {
+		for (String surt : SURTS) {
+			Set<String> searches = new HashSet<String>(searches(surt));
+			for (int i = 0; i <= surt.length(); i++) {
+				String prefix = surt.substring(0, i);
+				assertEquals(surt + " [" + prefix + "]",
+					searches.contains(prefix),
+					SurtPrefixSet.isSearchLength(surt, i));
+			}
+		}
+	}
+
+	public void testPrefix() throws Exception {
+		SurtPrefixSet cut = new SurtPrefixSet(Arrays.asList(
+			"(com,example", "(net,sf,)/pop/roger", "(org,archive,)/",
+			"(jp,ne,24,)/~nekko", "(jp,ne,24,)/~nekko"));
+		assertEquals(4, cut.size());
+		assertTrue(cut.containsSearchOf("(com,example,www,)/"));
+		assertTrue(cut.containsSearchOf("(com,example,)/a.html"));
+		// search strings end at boundaries
+		assertFalse(cut.containsSearchOf("(com,examples,)/"));
+		assertTrue(cut.containsSearchOf("(net,sf,)/pop/roger"));
+		assertTrue(cut.containsSearchOf("(net,sf,)/pop/roger/a.html"));
+		assertFalse(cut.containsSearchOf("(net,sf,)/pop/rogers"));
+		assertFalse(cut.containsSearchOf("(net,sf,)/pop/"));
+		assertTrue(cut.containsSearchOf("(org,archive,)/"));
+		assertTrue(cut.containsSearchOf("(org,archive,)/about?x"));
+		assertFalse(cut.containsSearchOf("(org,archive,web,)/"));
+		assertFalse(cut.containsSearchOf("(jp,ne,24,)/~nekk"));
+		assertFalse(cut.containsSearchOf(""));
+	}
+
+	public void testExact() throws Exception {
+		SurtPrefixSet cut = new SurtPrefixSet(Arrays.asList(
+			"(com,example,)/a.html\t"));
+		assertTrue(cut.containsSearchOf("(com,example,)/a.html"));
+		assertFalse(cut.containsSearchOf("(com,example,)/a.html2"));
+		assertFalse(cut.containsSearchOf("(com,example,)/a.htm"));
+	}
+
+	/**
+	 * gives the same result as probing a Set with every
+	 * {@link SURTTokenizer#nextSearch()}.
+	 */
+	public void testSameAsTokenizer() throws Exception {
+		Random rand = new Random(1);
+		List<String> surts = new ArrayList<String>(Arrays.asList(SURTS));
+		String[] hosts = { "(com,example,", "(com,example,www,", "(org,archive,",
+				"(org,archive,web,:81", "(net,sf,@u:p", "com,example", "org,ex" };
+		String[] segments = { "a", "b", "bc", "", "x.html", "~u" };
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder sb = new StringBuilder(hosts[rand.nextInt(hosts.length)]);
+			sb.append(")/");
+			int n = rand.nextInt(4);
+			for (int j = 0; j < n; j++) {
+				if (j > 0) {
+					sb.append('/');
+				}
+				sb.append(segments[rand.nextInt(segments.length)]);
+			}
+			if (rand.nextInt(4) == 0) {
+				sb.append("?q=").append(rand.nextInt(3));
+			}
+			surts.add(sb.toString());
+		}
+		// exclude some of search strings of some of surts
+		Set<String> excluded = new HashSet<String>();
+		for (int i = 0; i < 300; i++) {
+			List<String> searches = searches(surts.get(rand.nextInt(surts.size())));
+			excluded.add(searches.get(rand.nextInt(searches.size())));
+		}
+		SurtPrefixSet cut = new SurtPrefixSet(excluded);
+		assertEquals(excluded.size(), cut.size());
+		int matched = 0;
+		for (String surt : surts) {
+			boolean expected = tokenizerContains(excluded, surt);
+			assertEquals(surt, expected, cut.containsSearchOf(surt));
+			if (expected) {
+				matched++;
+			}
+		}
+		assertTrue(matched > 0 && matched < surts.size());
+	}
+}
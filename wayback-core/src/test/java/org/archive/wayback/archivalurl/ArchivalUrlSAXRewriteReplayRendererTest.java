@@ -169,6 +169,76 @@ public class ArchivalUrlSAXRewriteReplayRendererTest extends TestCase {
         assertEquals("baseUrl is correctly set up", "http://www.example.com/a.html", context.resolve("a.html"));
     }
 
+    /**
+     * With {@code streamingThreshold} set, output larger than the threshold
+     * is streamed without {@code Content-Length}.
+     * @throws Exception
+     */
+    public void testStreaming() throws Exception {
+        String payload = "<HTML><BODY><P>streamed page content</P></BODY></HTML>\n";
+        final byte[] payloadBytes = payload.getBytes("UTF-8");
+        Resource payloadResource = createTestHtmlResource(payloadBytes);
+
+        cut.setStreamingThreshold(16);
+
+        nodeHandler.handleParseStart(EasyMock.<ReplayParseContext>anyObject());
+        nodeHandler.handleParseComplete(EasyMock.<ReplayParseContext>anyObject());
+        TestParseEventHandler delegate = new TestParseEventHandler();
+        nodeHandler.handleNode(EasyMock.<ParseContext>anyObject(), EasyMock.<Node>anyObject());
+        EasyMock.expectLastCall().andDelegateTo(delegate).atLeastOnce();
+
+        response.setStatus(200);
+        response.setCharacterEncoding("utf-8");
+        // no Content-Length
+        response.setHeader(TextReplayRenderer.GUESSED_CHARSET_HEADER, "UTF-8");
+        response.setHeader("Content-Type", "text/html");
+        response.setHeader(EasyMock.matches("X-Archive-Orig-.*"), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+
+        EasyMock.replay(nodeHandler, response, uriConverter);
+
+        cut.renderResource(null, response, wbRequest, result, payloadResource, payloadResource, uriConverter, null);
+
+        EasyMock.verify(nodeHandler, response, uriConverter);
+
+        assertEquals("servlet output", payload, servletOutput.getString());
+    }
+
+    /**
+     * Output within {@code streamingThreshold} is buffered, and sent with
+     * {@code Content-Length}.
+     * @throws Exception
+     */
+    public void testStreamingThresholdNotReached() throws Exception {
+        String payload = "<HTML></HTML>\n";
+        final byte[] payloadBytes = payload.getBytes("UTF-8");
+        Resource payloadResource = createTestHtmlResource(payloadBytes);
+
+        cut.setStreamingThreshold(1024);
+
+        nodeHandler.handleParseStart(EasyMock.<ReplayParseContext>anyObject());
+        nodeHandler.handleParseComplete(EasyMock.<ReplayParseContext>anyObject());
+        TestParseEventHandler delegate = new TestParseEventHandler();
+        nodeHandler.handleNode(EasyMock.<ParseContext>anyObject(), EasyMock.<Node>anyObject());
+        EasyMock.expectLastCall().andDelegateTo(delegate).atLeastOnce();
+
+        response.setStatus(200);
+        response.setCharacterEncoding("utf-8");
+        response.setHeader("Content-Length", Integer.toString(payloadBytes.length));
+        response.setHeader(TextReplayRenderer.GUESSED_CHARSET_HEADER, "UTF-8");
+        response.setHeader("Content-Type", "text/html");
+        response.setHeader(EasyMock.matches("X-Archive-Orig-.*"), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+
+        EasyMock.replay(nodeHandler, response, uriConverter);
+
+        cut.renderResource(null, response, wbRequest, result, payloadResource, payloadResource, uriConverter, null);
+
+        EasyMock.verify(nodeHandler, response, uriConverter);
+
+        assertEquals("servlet output", payload, servletOutput.getString());
+    }
+
     /**
      * test revisit record (in new format with HTTP headers).
      * @throws Exception
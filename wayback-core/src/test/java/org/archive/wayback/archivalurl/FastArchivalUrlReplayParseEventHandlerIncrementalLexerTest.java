@@ -0,0 +1,54 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.archivalurl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.archive.wayback.util.htmllex.ContextAwareLexer;
+import org.archive.wayback.util.htmllex.IncrementalLexer;
+import org.htmlparser.Node;
+
+/**
+ * Runs {@link FastArchivalUrlReplayParseEventHandlerTest} with
+ * {@link IncrementalLexer} in place of htmlparser {@code Lexer}.
+ */
+public class FastArchivalUrlReplayParseEventHandlerIncrementalLexerTest extends
+		FastArchivalUrlReplayParseEventHandlerTest {
+
+	@Override
+	public byte[] rewrite(InputStream is) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		context.setOutputStream(baos);
+		context.setJspExec(jspExec);
+
+		IncrementalLexer lexer = new IncrementalLexer(is, charSet);
+		ContextAwareLexer lex = new ContextAwareLexer(lexer, context);
+
+		Node node;
+		while ((node = lex.nextNode()) != null) {
+			delegator.handleNode(context, node);
+		}
+		delegator.handleParseComplete(context);
+		lexer.close();
+
+		return baos.toByteArray();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.archive.io.warc.TestWARCReader;
+import org.archive.io.warc.TestWARCRecordInfo;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.wayback.ReplayRenderer;
+import org.archive.wayback.ResultURIConverter;
+import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.CaptureSearchResults;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.exception.WaybackException;
+import org.archive.wayback.replay.TransparentReplayRendererTest.TestServletOutputStream;
+import org.archive.wayback.resourcestore.resourcefile.WarcResource;
+import org.easymock.EasyMock;
+
+/**
+ * Test for {@link CachingReplayRenderer}.
+ */
+public class CachingReplayRendererTest extends TestCase {
+
+	/**
+	 * ReplayRenderer counting invocations.
+	 */
+	static class CountingReplayRenderer implements ReplayRenderer {
+		int count = 0;
+		boolean error = false;
+		// if >= 0, Content-Length to set
+		int contentLength = -1;
+
+		@Override
+		public void renderResource(HttpServletRequest httpRequest,
+				HttpServletResponse httpResponse, WaybackRequest wbRequest,
+				CaptureSearchResult result, Resource resource,
+				ResultURIConverter uriConverter, CaptureSearchResults results)
+				throws ServletException, IOException, WaybackException {
+			renderResource(httpRequest, httpResponse, wbRequest, result,
+				resource, resource, uriConverter, results);
+		}
+
+		@Override
+		public void renderResource(HttpServletRequest httpRequest,
+				HttpServletResponse httpResponse, WaybackRequest wbRequest,
+				CaptureSearchResult result, Resource httpHeadersResource,
+				Resource payloadResource, ResultURIConverter uriConverter,
+				CaptureSearchResults results) throws ServletException,
+				IOException, WaybackException {
+			count++;
+			if (error) {
+				httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			httpResponse.setStatus(HttpServletResponse.SC_OK);
+			httpResponse.setHeader("Content-Type", "text/html");
+			if (contentLength >= 0)
+				httpResponse.setContentLength(contentLength);
+			httpResponse.getOutputStream().write(
+				("rendered " + count).getBytes("UTF-8"));
+		}
+	}
+
+	CountingReplayRenderer decorated;
+	RenderedResponseCache cache;
+	CachingReplayRenderer cut;
+
+	WaybackRequest wbRequest;
+	CaptureSearchResult result;
+	ArchivalUrlResultURIConverter uriConverter;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		decorated = new CountingReplayRenderer();
+		cache = new RenderedResponseCache();
+		cut = new CachingReplayRenderer(decorated, cache);
+
+		wbRequest = WaybackRequest.createReplayRequest("http://example.com/",
+			"20150101000000", null, null);
+		result = new CaptureSearchResult();
+		result.setOriginalUrl("http://example.com/");
+		result.setCaptureTimestamp("20150101000000");
+		result.setFile("example.warc.gz");
+		result.setOffset(1234);
+		uriConverter = new ArchivalUrlResultURIConverter();
+		uriConverter.setReplayURIPrefix("http://web.example.com/web/");
+	}
+
+	protected HttpServletRequest createRequest(String method) {
+		HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+		EasyMock.expect(request.getMethod()).andStubReturn(method);
+		EasyMock.replay(request);
+		return request;
+	}
+
+	protected String render(HttpServletRequest request) throws Exception {
+		TestServletOutputStream servletOutput = new TestServletOutputStream();
+		HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+		EasyMock.expect(response.getOutputStream()).andStubReturn(servletOutput);
+		EasyMock.replay(response);
+
+		cut.renderResource(request, response, wbRequest, result, null,
+			uriConverter, null);
+		return servletOutput.getString();
+	}
+
+	public void testCached() throws Exception {
+		assertEquals("rendered 1", render(createRequest("GET")));
+		assertEquals(1, cache.getMissCount());
+
+		// status and headers are replayed from the cache
+		TestServletOutputStream servletOutput = new TestServletOutputStream();
+		HttpServletResponse response = EasyMock.createMock(HttpServletResponse.class);
+		response.setStatus(200);
+		response.setHeader("Content-Type", "text/html");
+		EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+		EasyMock.replay(response);
+
+		cut.renderResource(createRequest("GET"), response, wbRequest, result,
+			null, uriConverter, null);
+
+		EasyMock.verify(response);
+		assertEquals("rendered 1", servletOutput.getString());
+		assertEquals(1, decorated.count);
+		assertEquals(1, cache.getHitCount());
+	}
+
+	public void testContextFlags() throws Exception {
+		assertEquals("rendered 1", render(createRequest("GET")));
+		wbRequest.setCSSContext(true);
+		assertEquals("rendered 2", render(createRequest("GET")));
+		assertEquals("rendered 2", render(createRequest("GET")));
+		wbRequest.setCSSContext(false);
+		assertEquals("rendered 1", render(createRequest("GET")));
+		assertEquals(2, decorated.count);
+	}
+
+	public void testReplayPrefix() throws Exception {
+		assertEquals("rendered 1", render(createRequest("GET")));
+		uriConverter.setReplayURIPrefix("http://web2.example.com/web/");
+		assertEquals("rendered 2", render(createRequest("GET")));
+	}
+
+	public void testOtherCapture() throws Exception {
+		assertEquals("rendered 1", render(createRequest("GET")));
+		result.setOffset(5678);
+		assertEquals("rendered 2", render(createRequest("GET")));
+	}
+
+	public void testErrorNotCached() throws Exception {
+		decorated.error = true;
+		render(createRequest("GET"));
+		render(createRequest("GET"));
+		assertEquals(2, decorated.count);
+		assertEquals(0, cache.getResponseCount());
+	}
+
+	public void testTooLargeNotCached() throws Exception {
+		cache.setMaxEntryBytes(5);
+		assertEquals("rendered 1", render(createRequest("GET")));
+		assertEquals("rendered 2", render(createRequest("GET")));
+		assertEquals(0, cache.getResponseCount());
+	}
+
+	/**
+	 * ServletOutputStream failing after {@code limit} bytes, like one
+	 * whose client has closed connection.
+	 */
+	static class AbortingServletOutputStream extends TestServletOutputStream {
+		final int limit;
+		int written = 0;
+
+		public AbortingServletOutputStream(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (written++ >= limit)
+				throw new IOException("Broken pipe");
+			super.write(b);
+		}
+	}
+
+	/**
+	 * {@link TransparentReplayRenderer} swallows IOException while copying
+	 * payload. Response truncated by client disconnect must not be cached.
+	 * @throws Exception
+	 */
+	public void testClientAbortNotCached() throws Exception {
+		cut = new CachingReplayRenderer(new TransparentReplayRenderer(
+			new IdentityHttpHeaderProcessor()), cache);
+		final byte[] payload = TestWARCRecordInfo.PAYLOAD_GIF;
+		WARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse(
+			"image/gif", payload);
+
+		TestWARCReader ar = new TestWARCReader(recinfo);
+		Resource resource = new WarcResource(ar.get(0), ar);
+		resource.parseHeaders();
+		TestServletOutputStream servletOutput = new AbortingServletOutputStream(
+			payload.length / 2);
+		HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+		EasyMock.expect(response.getOutputStream()).andStubReturn(servletOutput);
+		EasyMock.replay(response);
+
+		cut.renderResource(createRequest("GET"), response, wbRequest, result,
+			resource, resource, uriConverter, null);
+
+		assertEquals(payload.length / 2, servletOutput.getBytes().length);
+		assertEquals(0, cache.getResponseCount());
+
+		// next request renders full response again, which is cached
+		ar = new TestWARCReader(recinfo);
+		resource = new WarcResource(ar.get(0), ar);
+		resource.parseHeaders();
+		servletOutput = new TestServletOutputStream();
+		response = EasyMock.createNiceMock(HttpServletResponse.class);
+		EasyMock.expect(response.getOutputStream()).andStubReturn(servletOutput);
+		EasyMock.replay(response);
+
+		cut.renderResource(createRequest("GET"), response, wbRequest, result,
+			resource, resource, uriConverter, null);
+
+		assertTrue(Arrays.equals(payload, servletOutput.getBytes()));
+		assertEquals(1, cache.getResponseCount());
+	}
+
+	/**
+	 * response whose body is shorter than {@code Content-Length} (payload
+	 * read failed, for example) is not cached.
+	 * @throws Exception
+	 */
+	public void testContentLengthMismatchNotCached() throws Exception {
+		decorated.contentLength = 100;
+		assertEquals("rendered 1", render(createRequest("GET")));
+		assertEquals(0, cache.getResponseCount());
+
+		decorated.contentLength = "rendered 2".length();
+		assertEquals("rendered 2", render(createRequest("GET")));
+		assertEquals(1, cache.getResponseCount());
+	}
+
+	public void testNotCacheableRequest() throws Exception {
+		assertEquals("rendered 1", render(createRequest("POST")));
+		assertEquals("rendered 2", render(createRequest("POST")));
+
+		HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+		EasyMock.expect(request.getMethod()).andStubReturn("GET");
+		EasyMock.expect(request.getHeader("Range")).andStubReturn("bytes=0-1");
+		EasyMock.replay(request);
+		assertEquals("rendered 3", render(request));
+		assertEquals(0, cache.getResponseCount());
+		assertEquals(0, cache.getMissCount());
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.archive.io.warc.TestWARCReader;
+import org.archive.io.warc.TestWARCRecordInfo;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.charset.RotatingCharsetDetector;
+import org.archive.wayback.replay.charset.StandardCharsetDetector;
+import org.archive.wayback.replay.charset.StandardCharsetDetectorTest;
+import org.archive.wayback.resourcestore.resourcefile.WarcResource;
+
+/**
+ * Test for {@link ContentProbe}.
+ */
+public class ContentProbeTest extends TestCase {
+
+	static final String HTML = "<html><head>" +
+			"<meta charset=\"shift_jis\">" +
+			"<title>test</title></head><body></body></html>";
+
+	WaybackRequest wbRequest;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		wbRequest = WaybackRequest.createReplayRequest("http://example.com/",
+			"20150101000000", null, null);
+	}
+
+	protected static byte[] largePayload(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte)('a' + (i * 7 + i / 13) % 26);
+		}
+		return bytes;
+	}
+
+	protected static Resource createResource(byte[] payload, boolean compressed)
+			throws IOException {
+		return StandardCharsetDetectorTest.createTestResource("text/html",
+			payload, compressed);
+	}
+
+	public void testReadAhead() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = createResource(payload, false);
+		ContentProbe probe = new ContentProbe(resource);
+		assertTrue(Arrays.equals(payload, probe.getBytes()));
+		assertEquals(payload.length, probe.getLength());
+		assertTrue(probe.isComplete());
+
+		// read position is reset
+		assertTrue(Arrays.equals(payload, IOUtils.toByteArray(resource)));
+	}
+
+	public void testReadAhead_compressed() throws Exception {
+		byte[] payload = largePayload(ContentProbe.DEFAULT_PROBE_SIZE * 2);
+		Resource resource = createResource(payload, true);
+		ContentProbe probe = new ContentProbe(resource);
+		assertEquals(ContentProbe.DEFAULT_PROBE_SIZE, probe.getLength());
+		assertTrue(Arrays.equals(
+			Arrays.copyOf(payload, ContentProbe.DEFAULT_PROBE_SIZE),
+			probe.getBytes()));
+		assertFalse(probe.isComplete());
+
+		// compressed content is not consumed
+		Resource decoded = TextReplayRenderer.decodeResource(resource);
+		assertTrue(Arrays.equals(payload, IOUtils.toByteArray(decoded)));
+	}
+
+	/**
+	 * compressed payload is decoded from a fixed-size prefix. if the prefix
+	 * is not the whole compressed payload, the probe is not complete even
+	 * if it is shorter than probe size.
+	 */
+	public void testReadAhead_compressedTruncated() throws Exception {
+		// one gzip member per 16 bytes: compressed payload is several
+		// times larger than the payload.
+		byte[] payload = largePayload(ContentProbe.DEFAULT_PROBE_SIZE / 2);
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		for (int off = 0; off < payload.length; off += 16) {
+			GZIPOutputStream zout = new GZIPOutputStream(gzipped);
+			zout.write(payload, off, 16);
+			zout.close();
+		}
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		block.write(("HTTP/1.0 200 OK\r\n" +
+				"Content-Length: " + gzipped.size() + "\r\n" +
+				"Content-Type: text/html\r\n" +
+				"Content-Encoding: gzip\r\n\r\n").getBytes("UTF-8"));
+		gzipped.writeTo(block);
+		TestWARCReader ar = new TestWARCReader(new TestWARCRecordInfo(
+			block.toByteArray()));
+		WarcResource resource = new WarcResource(ar.get(0), ar);
+		resource.parseHeaders();
+
+		ContentProbe probe = new ContentProbe(resource);
+		assertTrue(probe.getLength() < payload.length);
+		assertTrue(Arrays.equals(Arrays.copyOf(payload, probe.getLength()),
+			probe.getBytes()));
+		assertFalse(probe.isComplete());
+
+		// whole compressed payload is read
+		payload = HTML.getBytes("UTF-8");
+		probe = new ContentProbe(createResource(payload, true));
+		assertTrue(Arrays.equals(payload, probe.getBytes()));
+		assertTrue(probe.isComplete());
+	}
+
+	public void testReadAhead_decodingResource() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = createResource(payload, true);
+		Resource decoded = TextReplayRenderer.decodeResource(resource);
+		ContentProbe probe = new ContentProbe(decoded);
+		assertTrue(Arrays.equals(payload, probe.getBytes()));
+		assertTrue(probe.isFor(resource));
+		assertTrue(Arrays.equals(payload, IOUtils.toByteArray(decoded)));
+	}
+
+	public void testGet() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = createResource(payload, true);
+		Resource headers = createResource(payload, false);
+
+		ContentProbe probe = ContentProbe.get(wbRequest,
+			new CompositeResource(headers, resource));
+		assertSame(probe, wbRequest.getContentProbe());
+		assertFalse(probe.isFor(headers));
+
+		// wrappers of the same payload Resource share the probe
+		assertSame(probe, ContentProbe.get(wbRequest, resource));
+		assertSame(probe, ContentProbe.get(wbRequest,
+			TextReplayRenderer.decodeResource(headers, resource)));
+
+		// another capture replaces it
+		assertNull(ContentProbe.getCached(wbRequest, headers));
+		ContentProbe probe2 = ContentProbe.get(wbRequest, headers);
+		assertNotSame(probe, probe2);
+		assertSame(probe2, wbRequest.getContentProbe());
+
+		// no caching without WaybackRequest
+		assertNotSame(ContentProbe.get(null, headers),
+			ContentProbe.get(null, headers));
+	}
+
+	/**
+	 * charset detection records sniffing results in the probe.
+	 */
+	public void testCharsetDetection() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = createResource(payload, true);
+		Resource decoded = TextReplayRenderer.decodeResource(resource);
+
+		String charset = new StandardCharsetDetector().getCharset(resource,
+			decoded, wbRequest);
+		assertEquals("shift_jis", charset);
+
+		ContentProbe probe = wbRequest.getContentProbe();
+		assertTrue(probe.isFor(resource));
+		// probe is read when META prescan step is reached
+		assertFalse(probe.isSniffed(ContentProbe.BOM_CHARSET));
+		assertEquals("shift_jis", probe.getSniffResult(ContentProbe.META_CHARSET));
+		assertFalse(probe.isSniffed(ContentProbe.DETECTED_CHARSET));
+
+		// recorded result is used
+		probe.setSniffResult(ContentProbe.META_CHARSET, "EUC-JP");
+		assertEquals("EUC-JP", new StandardCharsetDetector().getCharset(
+			resource, decoded, wbRequest));
+	}
+
+	/**
+	 * probe is not read if charset is found in BOM or HTTP header.
+	 */
+	public void testCharsetDetection_noContentSniffing() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = StandardCharsetDetectorTest.createTestResource(
+			"text/html; charset=EUC-JP", payload, false);
+		assertEquals("EUC-JP", new StandardCharsetDetector().getCharset(
+			resource, wbRequest));
+		assertNull(wbRequest.getContentProbe());
+		assertEquals("EUC-JP", new RotatingCharsetDetector().getCharset(
+			resource, wbRequest));
+		assertNull(wbRequest.getContentProbe());
+
+		byte[] bom = { (byte)0xEF, (byte)0xBB, (byte)0xBF };
+		resource = createResource(concat(bom, payload), false);
+		assertEquals("UTF-8", new StandardCharsetDetector().getCharset(
+			resource, wbRequest));
+		assertNull(wbRequest.getContentProbe());
+	}
+
+	/**
+	 * BOM of compressed payload is looked for in decoded probe.
+	 */
+	public void testCharsetDetection_compressedBOM() throws Exception {
+		byte[] bom = { (byte)0xEF, (byte)0xBB, (byte)0xBF };
+		Resource resource = createResource(concat(bom, HTML.getBytes("UTF-8")),
+			true);
+		assertTrue(ContentProbe.isEncoded(resource));
+		assertEquals("UTF-8", new StandardCharsetDetector().getCharset(
+			resource, wbRequest));
+		ContentProbe probe = wbRequest.getContentProbe();
+		assertNotNull(probe);
+		assertEquals("UTF-8", probe.getSniffResult(ContentProbe.BOM_CHARSET));
+
+		assertFalse(ContentProbe.isEncoded(
+			TextReplayRenderer.decodeResource(resource)));
+	}
+
+	/**
+	 * probe read by earlier step is used for all sniffing steps.
+	 */
+	public void testCharsetDetection_cachedProbe() throws Exception {
+		byte[] payload = HTML.getBytes("UTF-8");
+		Resource resource = StandardCharsetDetectorTest.createTestResource(
+			"text/html; charset=EUC-JP", payload, false);
+		ContentProbe probe = ContentProbe.get(wbRequest, resource);
+		assertEquals("EUC-JP", new StandardCharsetDetector().getCharset(
+			resource, wbRequest));
+		assertSame(probe, wbRequest.getContentProbe());
+		assertTrue(probe.isSniffed(ContentProbe.BOM_CHARSET));
+		assertFalse(probe.isSniffed(ContentProbe.META_CHARSET));
+	}
+
+	protected static byte[] concat(byte[] a, byte[] b) {
+		byte[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.wayback.archivalurl.ArchivalUrlReplayURIConverter;
+import org.archive.wayback.util.ByteOp;
+
+/**
+ * Compares {@link PageUrlRewriter} with the series of {@link TagMagix}
+ * passes it replaces (one per tag/attribute pair, plus {@code @import} and
+ * style {@code url()}), as done by {@code TextDocument.resolvePageUrls()}.
+ * <p>Not a unit test. Run with paths to saved HTML pages as arguments:</p>
+ * <pre>
+ * java -cp ... org.archive.wayback.replay.PageUrlRewriterBenchmark page1.html page2.html
+ * </pre>
+ * <p>Without arguments, runs with generated pages of 100, 1000 and 10000
+ * rows, each row having a link, an image and a style attribute.</p>
+ */
+public class PageUrlRewriterBenchmark {
+
+	static final String PREFIX = "http://web.archive.org/wayback/";
+	static final String TS = "2004";
+	static final String BASE = "http://foo.com/dir/";
+	static final int WARMUP = 3;
+	static final int ROUNDS = 5;
+
+	static String generate(int rows) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<html><head><link rel=\"stylesheet\" href=\"/css/a.css\">");
+		sb.append("<script src=\"/js/a.js\"></script></head><body>\n");
+		for (int i = 0; i < rows; i++) {
+			sb.append("<div class=\"row\"><a href=\"/p/").append(i);
+			sb.append(".html\">item ").append(i).append("</a> <img alt=\"x\" src=\"i");
+			sb.append(i).append(".png\"> some text here and more text ");
+			sb.append("<span style=\"color:red\">x</span></div>\n");
+		}
+		sb.append("</body></html>\n");
+		return sb.toString();
+	}
+
+	static long tagMagix(String page, ArchivalUrlReplayURIConverter converter) {
+		long start = System.nanoTime();
+		StringBuilder sb = new StringBuilder(page);
+		for (String[] tagAttr : PageUrlRewriterTest.MARKUPS) {
+			TagMagix.markupTagREURIC(sb, converter, TS, BASE, tagAttr[0],
+				tagAttr[1]);
+		}
+		TagMagix.markupCSSImports(sb, converter, TS, BASE);
+		TagMagix.markupStyleUrls(sb, converter, TS, BASE);
+		return System.nanoTime() - start;
+	}
+
+	static long rewriter(String page, ArchivalUrlReplayURIConverter converter) {
+		long start = System.nanoTime();
+		PageUrlRewriter rewriter = new PageUrlRewriter(PageUrlRewriterTest.MARKUPS);
+		rewriter.rewrite(new StringBuilder(page), converter, converter, TS,
+			BASE);
+		return System.nanoTime() - start;
+	}
+
+	static void run(String name, String page) {
+		ArchivalUrlReplayURIConverter converter = new ArchivalUrlReplayURIConverter();
+		converter.setReplayURIPrefix(PREFIX);
+		// warm up both
+		for (int round = 0; round < WARMUP; round++) {
+			tagMagix(page, converter);
+			rewriter(page, converter);
+		}
+		long tagMagixNS = Long.MAX_VALUE, rewriterNS = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			tagMagixNS = Math.min(tagMagixNS, tagMagix(page, converter));
+			rewriterNS = Math.min(rewriterNS, rewriter(page, converter));
+		}
+		System.out.printf("%s (%dKB): TagMagix %8.2fms, PageUrlRewriter %8.2fms%n",
+			name, page.length() / 1024, tagMagixNS / 1e6, rewriterNS / 1e6);
+	}
+
+	static String read(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ByteOp.copyStream(is, baos);
+			return new String(baos.toByteArray(), ByteOp.UTF8);
+		} finally {
+			is.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			for (int rows : new int[] { 100, 1000, 10000 }) {
+				run("generated-" + rows, generate(rows));
+			}
+		} else {
+			for (String arg : args) {
+				File file = new File(arg);
+				run(file.getName(), read(file));
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import junit.framework.TestCase;
+
+import org.archive.wayback.archivalurl.ArchivalUrlReplayURIConverter;
+
+/**
+ * Test for {@link PageUrlRewriter}.
+ * <p>
+ * Checks that output is identical to the series of {@link TagMagix} passes
+ * it replaces.
+ * </p>
+ */
+public class PageUrlRewriterTest extends TestCase {
+
+	static final String PREFIX = "http://web.archive.org/wayback/";
+	static final String TS = "2004";
+	static final String BASE = "http://foo.com/dir/";
+
+	static final String[][] MARKUPS = {
+			{"FRAME","SRC"},
+			{"META","URL"},
+			{"LINK","HREF"},
+			{"SCRIPT","SRC"},
+			{"IMG","SRC"},
+			{"A","HREF"},
+			{"AREA","HREF"},
+			{"OBJECT","CODEBASE"},
+			{"OBJECT","CDATA"},
+			{"APPLET","CODEBASE"},
+			{"APPLET","ARCHIVE"},
+			{"EMBED","SRC"},
+			{"IFRAME","SRC"},
+			{TagMagix.ANY_TAGNAME,"background"}
+	};
+
+	static final String[] PAGES = {
+		"<html><head><link rel=\"stylesheet\" href=\"/css/a.css\">\n" +
+		"<script src='js/a.js'></script>\n" +
+		"<style>@import \"b.css\"; body { background: url(img/bg.png) no-repeat; }</style>\n" +
+		"</head><body background=\"bg.gif\">\n" +
+		"<a href=\"page2.html\">next</a> <A HREF=http://bar.com/>bar</A>\n" +
+		"<img alt=\"x\" src=\"i.png\" data-src=\"lazy.png\"><img\nsrc=\"nl.png\">\n" +
+		"<iframe src=\"data:text/html,hello\"></iframe>\n" +
+		"<table style=\"background: url(/css/b.gif)\"><td style='b-i:url(i/b.jpg);\n'>x</td></table>\n" +
+		"<a href=\"#\" onclick=\"go()\">hash</a><a href=\"\">empty</a><a href=x>short</a>\n" +
+		"</body></html>\n",
+
+		// same attribute twice: last one wins
+		"<a href=\"one.html\" href=\"two.html\">",
+		// escaped quotes in javascript
+		"document.write(\"<link rel=\\\"stylesheet\\\" href=\\\"/css/print.css\\\" />\");",
+		// tag broken by '>' inside attribute value
+		"<a title=\"a > b\" href=\"c.html\">",
+		// nested '<'
+		"<a href=\"x.html\" <a href=\"y.html\">",
+		// @namespace is not rewritten
+		"@namespace url(\"http://www.w3.org/1999/xhtml\"); a { background: url('a.png') }",
+		"<OBJECT CODEBASE=\"/applets/\" CDATA=\"foo.dat\"></OBJECT><embed src=movie.swf>",
+		"<meta http-equiv=\"refresh\" content=\"0; URL=/moved.html\">",
+		"<frameset><frame src=\"f1.html\"><frame name=x src='f2.html'></frameset>",
+		"no markup at all",
+		"<unterminated href=\"a.html\" background=\"bg.png\"",
+	};
+
+	ArchivalUrlReplayURIConverter converter;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		converter = new ArchivalUrlReplayURIConverter();
+		converter.setReplayURIPrefix(PREFIX);
+	}
+
+	String rewriteWithTagMagix(String page) {
+		StringBuilder sb = new StringBuilder(page);
+		for (String[] tagAttr : MARKUPS) {
+			TagMagix.markupTagREURIC(sb, converter, TS, BASE, tagAttr[0],
+				tagAttr[1]);
+		}
+		TagMagix.markupCSSImports(sb, converter, TS, BASE);
+		TagMagix.markupStyleUrls(sb, converter, TS, BASE);
+		return sb.toString();
+	}
+
+	String rewrite(String page) {
+		PageUrlRewriter rewriter = new PageUrlRewriter(MARKUPS);
+		return rewriter.rewrite(new StringBuilder(page), converter, converter,
+			TS, BASE).toString();
+	}
+
+	public void testParity() {
+		for (String page : PAGES) {
+			assertEquals(page, rewriteWithTagMagix(page), rewrite(page));
+		}
+	}
+
+	public void testRewrite() {
+		assertEquals(
+			"<img alt=\"x\" src=\"" + PREFIX + TS + "/http://foo.com/dir/i.png\">",
+			rewrite("<img alt=\"x\" src=\"i.png\">"));
+		assertEquals(
+			"<div style=\"background: url(" + PREFIX + TS +
+					"/http://foo.com/bg.png)\">",
+			rewrite("<div style=\"background: url(/bg.png)\">"));
+		// unchanged page is returned as it is
+		StringBuilder sb = new StringBuilder("<p>nothing</p>");
+		assertSame(sb, new PageUrlRewriter(MARKUPS).rewrite(sb, converter,
+			converter, TS, BASE));
+	}
+
+	/**
+	 * Malformed {@code url(} whose match runs over following tags: tag
+	 * attributes are still rewritten (TagMagix would mangle the whole span).
+	 */
+	public void testTagWinsOverSpanningCssUrl() {
+		String page = "url( 'k.png' )<a href=\"x.html\"> url(z.png) ";
+		assertEquals("url( 'k.png' )<a href=\"" + PREFIX + TS +
+				"/http://foo.com/dir/x.html\"> url(z.png) ", rewrite(page));
+	}
+
+	public void testNoCSS() {
+		PageUrlRewriter rewriter = new PageUrlRewriter(MARKUPS);
+		String page = "<a href=\"a.html\" style=\"background: url(b.png)\">";
+		assertEquals(
+			"<a href=\"" + PREFIX + TS + "/http://foo.com/dir/a.html\" style=\"background: url(b.png)\">",
+			rewriter.rewrite(new StringBuilder(page), converter, null, TS,
+				BASE).toString());
+	}
+}
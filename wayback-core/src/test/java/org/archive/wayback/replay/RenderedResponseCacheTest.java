@@ -0,0 +1,173 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link RenderedResponseCache}.
+ */
+public class RenderedResponseCacheTest extends TestCase {
+
+	RenderedResponseCache cut;
+	File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		cut = new RenderedResponseCache();
+		dir = File.createTempFile("rendercache", "");
+		dir.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		cut.clear();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	static RenderedResponse response(int size) {
+		List<RenderedResponse.Header> headers = new ArrayList<RenderedResponse.Header>();
+		headers.add(new RenderedResponse.Header(RenderedResponse.SET_HEADER,
+			"Content-Type", "text/html"));
+		headers.add(new RenderedResponse.Header(RenderedResponse.ADD_DATE_HEADER,
+			"Date", "1420070400000"));
+		headers.add(new RenderedResponse.Header(
+			RenderedResponse.CHARACTER_ENCODING, null, "UTF-8"));
+		byte[] body = new byte[size];
+		Arrays.fill(body, (byte)'x');
+		return new RenderedResponse(200, headers, body);
+	}
+
+	public void testHeap() {
+		RenderedResponse r1 = response(1000);
+		cut.setMaxBytes(r1.getWeight() * 2);
+		assertNull(cut.get("a"));
+		cut.put("a", r1);
+		assertSame(r1, cut.get("a"));
+		cut.put("b", response(1000));
+		// "a" is more recently used than "b"
+		assertSame(r1, cut.get("a"));
+		cut.put("c", response(1000));
+		assertNull(cut.get("b"));
+		assertSame(r1, cut.get("a"));
+		assertNotNull(cut.get("c"));
+		assertEquals(2, cut.getResponseCount());
+		assertEquals(r1.getWeight() * 2, cut.getCurrentBytes());
+		assertEquals(4, cut.getHitCount());
+		assertEquals(2, cut.getMissCount());
+	}
+
+	public void testMaxEntryBytes() {
+		cut.setMaxEntryBytes(100);
+		cut.put("a", response(101));
+		assertNull(cut.get("a"));
+		cut.put("b", response(100));
+		assertNotNull(cut.get("b"));
+	}
+
+	public void testDisk() throws Exception {
+		cut.setDiskCacheDirectory(dir.getPath());
+		assertEquals(dir.getPath(), cut.getDiskCacheDirectory());
+		File cacheDir = new File(dir, RenderedResponseCache.SUBDIRECTORY);
+		// too large for heap tier
+		cut.setMaxBytes(10);
+		RenderedResponse r1 = response(1000);
+		cut.put("a", r1);
+		assertEquals(0, cut.getResponseCount());
+
+		RenderedResponse r2 = cut.get("a");
+		assertNotNull(r2);
+		assertEquals(1, cut.getDiskHitCount());
+		assertEquals(200, r2.getStatus());
+		assertTrue(Arrays.equals(r1.getBody(), r2.getBody()));
+		assertEquals(3, r2.getHeaders().size());
+		assertEquals("Date", r2.getHeaders().get(1).getName());
+		assertNull(r2.getHeaders().get(2).getName());
+		assertEquals("UTF-8", r2.getHeaders().get(2).getValue());
+
+		// disk tier is bounded, too
+		long size = cut.getCurrentDiskBytes();
+		cut.setMaxDiskBytes(size * 2);
+		cut.put("b", response(1000));
+		cut.put("c", response(1000));
+		assertNull(cut.get("a"));
+		assertNotNull(cut.get("c"));
+		assertEquals(size * 2, cut.getCurrentDiskBytes());
+		assertEquals(2, cacheDir.listFiles().length);
+
+		// files left from previous run are deleted
+		cut = new RenderedResponseCache();
+		cut.setDiskCacheDirectory(dir.getPath());
+		assertEquals(0, cacheDir.listFiles().length);
+		assertNull(cut.get("c"));
+	}
+
+	/**
+	 * only files in the cache's own subdirectory are deleted.
+	 */
+	public void testDiskOtherFiles() throws Exception {
+		dir.mkdirs();
+		File other = new File(dir, "other.rsp");
+		File otherTemp = new File(dir, "other.tmp");
+		assertTrue(other.createNewFile());
+		assertTrue(otherTemp.createNewFile());
+
+		cut.setDiskCacheDirectory(dir.getPath());
+		cut.put("a", response(1000));
+		cut.clear();
+		cut = new RenderedResponseCache();
+		cut.setDiskCacheDirectory(dir.getPath());
+		assertTrue(other.exists());
+		assertTrue(otherTemp.exists());
+	}
+
+	public void testSerialization() throws Exception {
+		RenderedResponse r1 = response(10);
+		ByteArrayOutputStream bao = new ByteArrayOutputStream();
+		r1.writeTo(new DataOutputStream(bao));
+		RenderedResponse r2 = RenderedResponse.readFrom(new DataInputStream(
+			new ByteArrayInputStream(bao.toByteArray())));
+		assertEquals(r1.getWeight(), r2.getWeight());
+		for (int i = 0; i < r1.getHeaders().size(); i++) {
+			RenderedResponse.Header h1 = r1.getHeaders().get(i);
+			RenderedResponse.Header h2 = r2.getHeaders().get(i);
+			assertEquals(h1.getOp(), h2.getOp());
+			assertEquals(h1.getName(), h2.getName());
+			assertEquals(h1.getValue(), h2.getValue());
+		}
+	}
+}
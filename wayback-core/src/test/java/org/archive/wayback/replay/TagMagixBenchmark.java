@@ -0,0 +1,143 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.replay;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares throughput of {@link TagMagix#getEndOfFirstTag(StringBuilder, String)}
+ * and {@link TagMagix#getTagAttr(StringBuilder, String, String)} from many
+ * threads with pattern lookup through {@code synchronized} static methods
+ * over plain {@code HashMap}s (previous implementation).
+ * <p>Not a unit test. Run with optional number of iterations per thread:</p>
+ * <pre>
+ * java -cp ... org.archive.wayback.replay.TagMagixBenchmark [iterations]
+ * </pre>
+ * <p>Each iteration looks up the end of {@code HEAD} and the {@code META}
+ * charset on a small page, like {@code TextDocument} does for every
+ * replayed page, with 1, 4, 16 and 32 threads. Gains depend on the number
+ * of cores.</p>
+ */
+public class TagMagixBenchmark {
+
+	static final int DEFAULT_ITERATIONS = 200000;
+
+	static final String PAGE = "<html><head><meta charset=utf-8>" +
+			"<title>x</title></head><body>";
+
+	/**
+	 * Previous implementation: patterns are cached in plain
+	 * {@code HashMap}s guarded by the class lock.
+	 */
+	static class SynchronizedLookup {
+		private static final String ANY_ATTR_VALUE = "(?:\"[^\">]*\")|" +
+				"(?:'[^'>]*')|(?:\\\\\"[^>\\\\]*\\\\\")|" +
+				"(?:[^ \\t\\n\\x0B\\f\\r>\"']+)";
+
+		private static final Map<String, Pattern> pcPatterns =
+			new HashMap<String, Pattern>();
+
+		private static final Map<String, Pattern> wholeTagPatterns =
+			new HashMap<String, Pattern>();
+
+		private static synchronized Pattern getPattern(String tagName,
+				String attrName) {
+			String key = tagName + "    " + attrName;
+			Pattern pc = pcPatterns.get(key);
+			if (pc == null) {
+				pc = Pattern.compile("<\\s*" + tagName + "\\s+[^>]*\\b" +
+						attrName + "\\s*=\\s*(" + ANY_ATTR_VALUE +
+						")(?:\\s|>)?", Pattern.CASE_INSENSITIVE);
+				pcPatterns.put(key, pc);
+			}
+			return pc;
+		}
+
+		private static synchronized Pattern getWholeTagPattern(String tagName) {
+			Pattern pc = wholeTagPatterns.get(tagName);
+			if (pc == null) {
+				pc = Pattern.compile("<\\s*" + tagName + "((>)|(\\s+[^>]*>))",
+					Pattern.CASE_INSENSITIVE);
+				wholeTagPatterns.put(tagName, pc);
+			}
+			return pc;
+		}
+
+		static String getTagAttr(StringBuilder page, String tag, String attr) {
+			Matcher matcher = getPattern(tag, attr).matcher(page);
+			return matcher.find() ? matcher.group(1) : null;
+		}
+
+		static int getEndOfFirstTag(StringBuilder page, String tag) {
+			Matcher matcher = getWholeTagPattern(tag).matcher(page);
+			return matcher.find() ? matcher.end() : -1;
+		}
+	}
+
+	static long run(int threads, final int iterations, final boolean current)
+			throws InterruptedException {
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					StringBuilder page = new StringBuilder(PAGE);
+					for (int n = 0; n < iterations; n++) {
+						if (current) {
+							TagMagix.getEndOfFirstTag(page, "head");
+							TagMagix.getTagAttr(page, "META", "charset");
+						} else {
+							SynchronizedLookup.getEndOfFirstTag(page, "head");
+							SynchronizedLookup.getTagAttr(page, "META", "charset");
+						}
+					}
+				}
+			};
+		}
+		long start = System.nanoTime();
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_ITERATIONS;
+		System.out.printf("%d cores%n", Runtime.getRuntime()
+			.availableProcessors());
+		for (int threads : new int[] { 1, 4, 16, 32 }) {
+			// warm up both
+			run(threads, iterations / 10, false);
+			run(threads, iterations / 10, true);
+			long syncNS = run(threads, iterations, false);
+			long currentNS = run(threads, iterations, true);
+			double lookups = 2.0 * iterations * threads;
+			System.out.printf("%2d threads: synchronized %6.0f k lookups/s, current %6.0f k lookups/s%n",
+				threads, lookups * 1e6 / syncNS, lookups * 1e6 / currentNS);
+		}
+	}
+}
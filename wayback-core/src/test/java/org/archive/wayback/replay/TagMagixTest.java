@@ -464,6 +464,46 @@ public class TagMagixTest extends TestCase {
 	}
 	
 	
+	/**
+	 * Pattern lookups from many threads, for both precompiled and
+	 * on-demand tag/attribute names.
+	 */
+	public void testConcurrentLookup() throws InterruptedException {
+		final int nthreads = 8;
+		final String[] failure = new String[1];
+		Thread[] threads = new Thread[nthreads];
+		for (int i = 0; i < nthreads; i++) {
+			final String tag = (i % 2 == 0) ? "META" : "meta" + i;
+			threads[i] = new Thread() {
+				public void run() {
+					for (int n = 0; n < 500; n++) {
+						StringBuilder sb = new StringBuilder(thePage);
+						String type = TagMagix.getTagAttrWhere(sb, "META",
+							"content", "http-equiv", "Content-Type");
+						String author = TagMagix.getTagAttrWhere(sb, "meta",
+							"CONTENT", "NAME", "Author2");
+						String none = TagMagix.getTagAttr(sb, tag, "content");
+						if (!"text/html; charset=windows-1256".equals(type) ||
+								!"Bakri Abubakr http://bayanit.com/".equals(author) ||
+								(none != null) != tag.equals("META")) {
+							synchronized (failure) {
+								failure[0] = type + "|" + author + "|" + none;
+							}
+							return;
+						}
+					}
+				}
+			};
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertNull(failure[0], failure[0]);
+	}
+
 	private void checkAttrValue(String page, String tag, String attr, 
 			String wantValue) {
 		StringBuilder sb = new StringBuilder(page);
@@ -0,0 +1,82 @@
+package org.archive.wayback.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link ThresholdOutputStream}.
+ */
+public class ThresholdOutputStreamTest extends TestCase {
+
+	ByteArrayOutputStream target;
+	int started;
+
+	ThresholdOutputStream create(int threshold) {
+		target = new ByteArrayOutputStream();
+		started = 0;
+		return new ThresholdOutputStream(threshold) {
+			@Override
+			protected OutputStream startStreaming() throws IOException {
+				started++;
+				return target;
+			}
+		};
+	}
+
+	public void testWithinThreshold() throws IOException {
+		ThresholdOutputStream tos = create(8);
+		tos.write("abcd".getBytes());
+		tos.write('e');
+		tos.write("fgh".getBytes());
+		tos.flush();
+		assertFalse(tos.isStreaming());
+		assertEquals(0, started);
+		assertEquals(0, target.size());
+		assertEquals("abcdefgh", new String(tos.toByteArray()));
+	}
+
+	public void testStreaming() throws IOException {
+		ThresholdOutputStream tos = create(8);
+		tos.write("abcdef".getBytes());
+		tos.write("ghij".getBytes());
+		assertTrue(tos.isStreaming());
+		assertEquals(1, started);
+		assertEquals("abcdefghij", target.toString());
+		tos.write('k');
+		tos.write("lm".getBytes());
+		assertEquals(1, started);
+		assertEquals("abcdefghijklm", target.toString());
+		try {
+			tos.toByteArray();
+			fail("toByteArray() succeeded while streaming");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testOutputError() throws IOException {
+		ThresholdOutputStream tos = new ThresholdOutputStream(2) {
+			@Override
+			protected OutputStream startStreaming() throws IOException {
+				return new OutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						throw new IOException("connection reset");
+					}
+				};
+			}
+		};
+		tos.write('a');
+		assertFalse(tos.isOutputError());
+		try {
+			tos.write("bcd".getBytes());
+			fail("write succeeded");
+		} catch (IOException ex) {
+			// expected
+		}
+		assertTrue(tos.isOutputError());
+	}
+}
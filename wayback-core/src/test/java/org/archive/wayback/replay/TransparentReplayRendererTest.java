@@ -5,11 +5,15 @@ package org.archive.wayback.replay;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -17,6 +21,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.io.IOUtils;
 import org.archive.io.warc.TestWARCReader;
 import org.archive.io.warc.TestWARCRecordInfo;
 import org.archive.io.warc.WARCRecord;
@@ -26,6 +31,7 @@ import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.Resource;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.resourcestore.resourcefile.ResourceFactory;
 import org.archive.wayback.resourcestore.resourcefile.WarcResource;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
@@ -257,4 +263,274 @@ public class TransparentReplayRendererTest extends TestCase {
         String output = new String(servletOutput.getBytes(), "UTF-8");
         assertEquals(payload, output);
     }
+
+    /**
+     * payload larger than copy buffer.
+     */
+    protected static byte[] largePayload() {
+        byte[] payload = new byte[10000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte)i;
+        }
+        return payload;
+    }
+
+    protected static HttpServletRequest createRangeRequest(String range, String ifRange) {
+        HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+        EasyMock.expect(request.getHeader("Range")).andStubReturn(range);
+        EasyMock.expect(request.getHeader("If-Range")).andStubReturn(ifRange);
+        EasyMock.replay(request);
+        return request;
+    }
+
+    /**
+     * write a WARC file with two response records, each as separate gzip member
+     * if {@code compress} is {@code true}.
+     * @param file file to write
+     * @param compress whether to compress records
+     * @param payload payload of the second record
+     * @return offset of the second record
+     * @throws IOException
+     */
+    protected static long writeWarcFile(File file, boolean compress, byte[] payload) throws IOException {
+        WARCRecordInfo[] recinfos = {
+            TestWARCRecordInfo.createHttpResponse("first record"),
+            TestWARCRecordInfo.createHttpResponse("application/octet-stream", payload)
+        };
+        OutputStream out = new FileOutputStream(file);
+        long offset = 0;
+        try {
+            for (WARCRecordInfo recinfo : recinfos) {
+                offset = file.length();
+                byte[] record = IOUtils.toByteArray(TestWARCReader.buildRecordContent(recinfo));
+                if (compress) {
+                    GZIPOutputStream gzout = new GZIPOutputStream(out);
+                    gzout.write(record);
+                    gzout.finish();
+                } else {
+                    out.write(record);
+                }
+                out.flush();
+            }
+        } finally {
+            out.close();
+        }
+        return offset;
+    }
+
+    protected Resource getWarcFileResource(String suffix, boolean compress, byte[] payload) throws Exception {
+        File file = File.createTempFile("TransparentReplayRendererTest", suffix);
+        file.deleteOnExit();
+        long offset = writeWarcFile(file, compress, payload);
+        return ResourceFactory.getResource(file, offset);
+    }
+
+    /**
+     * replay whole payload with {@code request}.
+     */
+    protected byte[] renderFull(HttpServletRequest request, Resource resource) throws Exception {
+        TestServletOutputStream servletOutput = new TestServletOutputStream();
+        response.setStatus(200);
+        EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader(EasyMock.<String>notNull(), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(response);
+
+        cut.renderResource(request, response, wbRequest, result,
+                resource, resource, uriConverter, results);
+
+        EasyMock.verify(response);
+        return servletOutput.getBytes();
+    }
+
+    /**
+     * replay {@code range} of payload of length {@code length}.
+     */
+    protected byte[] renderRange(Resource resource, String range, long first, long last, long length) throws Exception {
+        TestServletOutputStream servletOutput = new TestServletOutputStream();
+        response.setStatus(200);
+        response.setStatus(206);
+        EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+        response.setHeader("Content-Range", "bytes " + first + "-" + last + "/" + length);
+        response.setHeader("Content-Length", Long.toString(last - first + 1));
+        response.setHeader(EasyMock.<String>notNull(), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(response);
+
+        cut.renderResource(createRangeRequest(range, null), response, wbRequest, result,
+                resource, resource, uriConverter, results);
+
+        EasyMock.verify(response);
+        return servletOutput.getBytes();
+    }
+
+    protected void assertRange(byte[] payload, int first, int last, byte[] content) {
+        assertTrue("servlet output",
+                Arrays.equals(Arrays.copyOfRange(payload, first, last + 1), content));
+    }
+
+    public void testGetRequestedRange() throws Exception {
+        long[] r;
+        r = TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=0-99", null), 1000);
+        assertEquals(0, r[0]);
+        assertEquals(99, r[1]);
+        r = TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=900-", null), 1000);
+        assertEquals(900, r[0]);
+        assertEquals(999, r[1]);
+        r = TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=-100", null), 1000);
+        assertEquals(900, r[0]);
+        assertEquals(999, r[1]);
+        // last position past the end
+        r = TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=500-5000", null), 1000);
+        assertEquals(500, r[0]);
+        assertEquals(999, r[1]);
+        r = TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=-5000", null), 1000);
+        assertEquals(0, r[0]);
+        assertEquals(999, r[1]);
+
+        // not satisfiable
+        assertEquals(0, TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=1000-", null), 1000).length);
+        assertEquals(0, TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=-0", null), 1000).length);
+        assertEquals(0, TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=0-", null), 0).length);
+
+        // ignored
+        assertNull(TransparentReplayRenderer.getRequestedRange(null, 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest(null, null), 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=0-1,5-6", null), 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=5-1", null), 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=a-b", null), 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest("items=0-1", null), 1000));
+        assertNull(TransparentReplayRenderer.getRequestedRange(createRangeRequest("bytes=0-1", "\"etag\""), 1000));
+    }
+
+    public void testRenderResource_Range() throws Exception {
+        byte[] payload = largePayload();
+        WARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse("application/octet-stream", payload);
+        TestWARCReader ar = new TestWARCReader(recinfo);
+        Resource resource = new WarcResource(ar.get(0), ar);
+        resource.parseHeaders();
+        assertNull(resource.getPayloadChannel());
+        assertEquals(payload.length, resource.getPayloadLength());
+
+        byte[] content = renderRange(resource, "bytes=5000-9499", 5000, 9499, payload.length);
+        assertRange(payload, 5000, 9499, content);
+    }
+
+    public void testRenderResource_RangeNotSatisfiable() throws Exception {
+        byte[] payload = largePayload();
+        WARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse("application/octet-stream", payload);
+        TestWARCReader ar = new TestWARCReader(recinfo);
+        Resource resource = new WarcResource(ar.get(0), ar);
+        resource.parseHeaders();
+
+        response.setStatus(200);
+        response.setStatus(416);
+        response.setHeader("Content-Range", "bytes */" + payload.length);
+        response.setContentLength(0);
+        EasyMock.replay(response);
+
+        cut.renderResource(createRangeRequest("bytes=10000-", null), response, wbRequest, result,
+                resource, resource, uriConverter, results);
+
+        EasyMock.verify(response);
+    }
+
+    /**
+     * Range request is ignored if range support is disabled.
+     * @throws Exception
+     */
+    public void testRenderResource_RangeDisabled() throws Exception {
+        byte[] payload = largePayload();
+        WARCRecordInfo recinfo = TestWARCRecordInfo.createHttpResponse("application/octet-stream", payload);
+        TestWARCReader ar = new TestWARCReader(recinfo);
+        Resource resource = new WarcResource(ar.get(0), ar);
+        resource.parseHeaders();
+        cut.setRangeRequests(false);
+
+        TestServletOutputStream servletOutput = new TestServletOutputStream();
+        response.setStatus(200);
+        EasyMock.expect(response.getOutputStream()).andReturn(servletOutput);
+        response.setHeader(EasyMock.<String>notNull(), EasyMock.<String>notNull());
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay(response);
+
+        cut.renderResource(createRangeRequest("bytes=0-99", null), response, wbRequest, result,
+                resource, resource, uriConverter, results);
+
+        EasyMock.verify(response);
+        assertTrue("servlet output", Arrays.equals(payload, servletOutput.getBytes()));
+    }
+
+    /**
+     * payload in uncompressed WARC file is transferred from FileChannel.
+     * @throws Exception
+     */
+    public void testRenderResource_UncompressedWarcFile() throws Exception {
+        byte[] payload = largePayload();
+        Resource resource = getWarcFileResource(".warc", false, payload);
+        try {
+            assertNotNull(resource.getPayloadChannel());
+            assertEquals(payload.length, resource.getPayloadLength());
+            byte[] content = renderFull(null, resource);
+            assertTrue("servlet output", Arrays.equals(payload, content));
+        } finally {
+            resource.close();
+        }
+    }
+
+    public void testRenderResource_UncompressedWarcFileRange() throws Exception {
+        byte[] payload = largePayload();
+        Resource resource = getWarcFileResource(".warc", false, payload);
+        try {
+            byte[] content = renderRange(resource, "bytes=-4500", 5500, 9999, payload.length);
+            assertRange(payload, 5500, 9999, content);
+        } finally {
+            resource.close();
+        }
+    }
+
+    /**
+     * zero-copy is disabled: payload is read through Resource.
+     * @throws Exception
+     */
+    public void testRenderResource_UncompressedWarcFileNoZeroCopy() throws Exception {
+        byte[] payload = largePayload();
+        Resource resource = getWarcFileResource(".warc", false, payload);
+        cut.setZeroCopy(false);
+        try {
+            byte[] content = renderRange(resource, "bytes=4097-8193", 4097, 8193, payload.length);
+            assertRange(payload, 4097, 8193, content);
+        } finally {
+            resource.close();
+        }
+    }
+
+    /**
+     * payload in gzip-member WARC file is streamed through Resource.
+     * @throws Exception
+     */
+    public void testRenderResource_GzipWarcFile() throws Exception {
+        byte[] payload = largePayload();
+        Resource resource = getWarcFileResource(".warc.gz", true, payload);
+        try {
+            assertNull(resource.getPayloadChannel());
+            assertEquals(payload.length, resource.getPayloadLength());
+            byte[] content = renderFull(null, resource);
+            assertTrue("servlet output", Arrays.equals(payload, content));
+        } finally {
+            resource.close();
+        }
+    }
+
+    public void testRenderResource_GzipWarcFileRange() throws Exception {
+        byte[] payload = largePayload();
+        Resource resource = getWarcFileResource(".warc.gz", true, payload);
+        try {
+            byte[] content = renderRange(resource, "bytes=5000-", 5000, 9999, payload.length);
+            assertRange(payload, 5000, 9999, content);
+        } finally {
+            resource.close();
+        }
+    }
 }
@@ -20,6 +20,8 @@
 
 package org.archive.wayback.replay.html;
 
+import java.net.URISyntaxException;
+
 import junit.framework.TestCase;
 
 import org.archive.wayback.ReplayURIConverter;
@@ -28,6 +30,7 @@ import org.archive.wayback.ResultURIConverter;
 import org.archive.wayback.archivalurl.ArchivalUrlResultURIConverter;
 import org.archive.wayback.core.CaptureSearchResult;
 import org.archive.wayback.core.WaybackRequest;
+import org.archive.wayback.replay.ReplayContext;
 import org.archive.wayback.replay.ReplayRewriteContext;
 import org.archive.wayback.replay.ReplayURLTransformer;
 import org.easymock.EasyMock;
@@ -133,6 +136,90 @@ public class ReplayParseContextTest extends TestCase {
 		cut = ReplayParseContext.create(uriConverter, wbRequest, null, result, false);
 	}
 
+	/**
+	 * Rewrite result is memoized per URL and context flags, until base URL
+	 * changes.
+	 * @throws Exception
+	 */
+	public void testContextualizeUrl_memo() throws Exception {
+		final int[] calls = new int[1];
+		urlTransformer = new ReplayURLTransformer() {
+			@Override
+			public String transform(ReplayContext replayContext, String url,
+					String flags) {
+				calls[0]++;
+				if (url.startsWith("#"))
+					return url;
+				try {
+					return "/web/" + flags + "/" + replayContext.resolve(url);
+				} catch (URISyntaxException ex) {
+					return url;
+				}
+			}
+		};
+		EasyMock.replay(uriConverter);
+
+		cut = new ReplayParseContext(uriConverter, result, wbRequest);
+
+		assertEquals("/web/im_/http://www.example.com/top/a.gif",
+			cut.contextualizeUrl("a.gif", "im_"));
+		assertEquals("/web/im_/http://www.example.com/top/a.gif",
+			cut.contextualizeUrl("a.gif", "im_"));
+		assertEquals(1, calls[0]);
+
+		assertEquals("/web/cs_/http://www.example.com/top/a.gif",
+			cut.contextualizeUrl("a.gif", "cs_"));
+		assertEquals(2, calls[0]);
+
+		// URL not rewritten is returned as it is
+		String anchor = new String("#top");
+		assertSame(anchor, cut.contextualizeUrl(anchor, "im_"));
+		anchor = new String("#top");
+		assertSame(anchor, cut.contextualizeUrl(anchor, "im_"));
+		assertEquals(3, calls[0]);
+
+		// BASE change
+		cut.setBaseUrl("http://www.example.com/other/");
+		assertEquals("/web/im_/http://www.example.com/other/a.gif",
+			cut.contextualizeUrl("a.gif", "im_"));
+		assertEquals(4, calls[0]);
+
+		// disabled
+		cut.setUrlMemoSize(0);
+		cut.contextualizeUrl("a.gif", "im_");
+		cut.contextualizeUrl("a.gif", "im_");
+		assertEquals(6, calls[0]);
+	}
+
+	/**
+	 * URL rewrite memo is bounded in size.
+	 * @throws Exception
+	 */
+	public void testContextualizeUrl_memoSize() throws Exception {
+		final int[] calls = new int[1];
+		urlTransformer = new ReplayURLTransformer() {
+			@Override
+			public String transform(ReplayContext replayContext, String url,
+					String flags) {
+				calls[0]++;
+				return "/web/" + url;
+			}
+		};
+		EasyMock.replay(uriConverter);
+
+		cut = new ReplayParseContext(uriConverter, result, wbRequest);
+		cut.setUrlMemoSize(2);
+
+		cut.contextualizeUrl("a.gif", "");
+		cut.contextualizeUrl("b.gif", "");
+		cut.contextualizeUrl("c.gif", "");
+		assertEquals(3, calls[0]);
+		// a.gif has been evicted
+		cut.contextualizeUrl("c.gif", "");
+		cut.contextualizeUrl("a.gif", "");
+		assertEquals(4, calls[0]);
+	}
+
 	// tests for compatibility with previous versions
 
 	/**
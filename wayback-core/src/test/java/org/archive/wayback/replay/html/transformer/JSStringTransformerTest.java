@@ -24,6 +24,7 @@ import java.util.ArrayList;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.archive.wayback.ReplayURIConverter;
 import org.archive.wayback.archivalurl.ArchivalUrlReplayURIConverter;
 import org.archive.wayback.core.CaptureSearchResult;
@@ -166,6 +167,63 @@ public class JSStringTransformerTest extends TestCase {
 		}
 	}
 
+	/**
+	 * input is returned as it is if no URL is rewritten.
+	 */
+	public void testTransform_NoMatch() {
+		final String input = "var a = 1; document.write('<p>' + a + '</p>');";
+		EasyMock.replay(rpc.mock);
+
+		jst.setEscaping("JavaScript");
+		assertSame(input, jst.transform(rpc, input));
+	}
+
+	/**
+	 * direct {@link JSStringTransformer.SourceEscaping} implementations
+	 * give the same result as {@link StringEscapeUtils}, and return text
+	 * as it is if there's nothing to escape/unescape.
+	 */
+	public void testSourceEscaping() {
+		final String[] samples = {
+			"http://example.com/a/b?c=d&e=f",
+			"http:\\/\\/example.com\\u002Fimg",
+			"<a href=\"x\">it's</a>",
+			"&lt;p&gt;&amp;&quot;&#39;",
+			"caf\u00e9 \u65e5\u672c",
+			"tab\tnewline\n"
+		};
+		JSStringTransformer.SourceEscaping js = new JSStringTransformer.JavaScriptEscaping();
+		JSStringTransformer.SourceEscaping html = new JSStringTransformer.HtmlEscaping();
+		JSStringTransformer.SourceEscaping xml = new JSStringTransformer.XmlEscaping();
+		for (String text : samples) {
+			assertEquals(StringEscapeUtils.escapeJavaScript(text), js.escape(text));
+			assertEquals(StringEscapeUtils.unescapeJavaScript(text), js.unescape(text));
+			assertEquals(StringEscapeUtils.escapeHtml(text), html.escape(text));
+			assertEquals(StringEscapeUtils.unescapeHtml(text), html.unescape(text));
+			assertEquals(StringEscapeUtils.escapeXml(text), xml.escape(text));
+			assertEquals(StringEscapeUtils.unescapeXml(text), xml.unescape(text));
+		}
+
+		final String plain = "web.archive.org";
+		assertSame(plain, js.escape(plain));
+		assertSame(plain, js.unescape(plain));
+		assertSame(plain, html.escape(plain));
+		assertSame(plain, html.unescape(plain));
+		assertSame(plain, xml.escape(plain));
+		assertSame(plain, xml.unescape(plain));
+	}
+
+	/**
+	 * escaping scheme names other than JavaScript, HTML and XML are
+	 * still supported.
+	 */
+	public void testTransform_EscapingOtherName() {
+		jst.setEscaping("Java");
+		assertEquals("Java", jst.getEscaping());
+		jst.setEscaping("");
+		assertEquals("", jst.getEscaping());
+	}
+
 	/**
 	 * same as above, slashes are backslash-escaped.
 	 * @throws Exception
@@ -0,0 +1,197 @@
+package org.archive.wayback.resourceindex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.exception.ResourceIndexNotAvailableException;
+import org.archive.wayback.util.WrappedCloseableIterator;
+import org.archive.wayback.webapp.PerfStats;
+
+/**
+ * Test for {@link CompositeSearchResultSource}, serial and parallel modes.
+ */
+public class CompositeSearchResultSourceTest extends TestCase {
+
+	static final String TEST_STAT = "TestSource";
+
+	static class TestSource implements SearchResultSource {
+		final List<CaptureSearchResult> results =
+			new ArrayList<CaptureSearchResult>();
+		long delay = 0;
+		boolean fail = false;
+		RuntimeException error = null;
+		volatile int closed = 0;
+
+		TestSource(String... timestamps) {
+			for (String ts : timestamps) {
+				CaptureSearchResult result = new CaptureSearchResult();
+				result.setUrlKey("com,example)/");
+				result.setCaptureTimestamp(ts);
+				results.add(result);
+			}
+		}
+
+		public CloseableIterator<CaptureSearchResult> getPrefixIterator(
+				String prefix) throws ResourceIndexNotAvailableException {
+			PerfStats.count(TEST_STAT, 1);
+			if (delay > 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ex) {
+					// interrupted by cancel - keep going, so that
+					// iterator is closed as abandoned.
+				}
+			}
+			if (fail) {
+				throw new ResourceIndexNotAvailableException("failed");
+			}
+			if (error != null) {
+				throw error;
+			}
+			return new WrappedCloseableIterator<CaptureSearchResult>(
+					results.iterator()) {
+				@Override
+				public void close() throws IOException {
+					closed++;
+				}
+			};
+		}
+
+		public CloseableIterator<CaptureSearchResult> getPrefixReverseIterator(
+				String prefix) throws ResourceIndexNotAvailableException {
+			throw new ResourceIndexNotAvailableException("Unsupported");
+		}
+
+		public void cleanup(CloseableIterator<CaptureSearchResult> c)
+				throws IOException {
+			c.close();
+		}
+
+		public void shutdown() throws IOException {
+		}
+	}
+
+	static List<String> timestamps(CloseableIterator<CaptureSearchResult> it)
+			throws IOException {
+		List<String> list = new ArrayList<String>();
+		while (it.hasNext()) {
+			list.add(it.next().getCaptureTimestamp());
+		}
+		it.close();
+		return list;
+	}
+
+	CompositeSearchResultSource composite(SearchResultSource... sources) {
+		CompositeSearchResultSource composite = new CompositeSearchResultSource();
+		composite.setSources(new ArrayList<SearchResultSource>(
+			Arrays.asList(sources)));
+		return composite;
+	}
+
+	public void testSerialAndParallelMerge() throws Exception {
+		TestSource s1 = new TestSource("20010101000000", "20030101000000");
+		TestSource s2 = new TestSource("20020101000000");
+		TestSource s3 = new TestSource("20000101000000", "20040101000000");
+		s1.delay = 50;
+		s3.delay = 20;
+		List<String> expected = Arrays.asList("20000101000000",
+			"20010101000000", "20020101000000", "20030101000000",
+			"20040101000000");
+
+		CompositeSearchResultSource composite = composite(s1, s2, s3);
+		assertEquals(expected, timestamps(composite.getPrefixIterator("com,example)/ ")));
+
+		composite.setParallelism(3);
+		assertEquals(expected, timestamps(composite.getPrefixIterator("com,example)/ ")));
+		composite.shutdown();
+	}
+
+	/**
+	 * PerfStats recorded by sources on pool threads are added to the
+	 * calling thread.
+	 */
+	public void testParallelPerfStats() throws Exception {
+		TestSource s1 = new TestSource("20010101000000");
+		TestSource s2 = new TestSource("20020101000000");
+		TestSource s3 = new TestSource("20030101000000");
+
+		CompositeSearchResultSource composite = composite(s1, s2, s3);
+		composite.setParallelism(2);
+		for (int round = 1; round <= 2; round++) {
+			PerfStats.clearAll();
+			timestamps(composite.getPrefixIterator("com,example)/ "));
+			assertEquals(3, PerfStats.getTotal(TEST_STAT));
+		}
+		composite.shutdown();
+	}
+
+	public void testParallelTimeout() throws Exception {
+		TestSource fast = new TestSource("20010101000000");
+		TestSource slow = new TestSource("20020101000000");
+		slow.delay = 500;
+
+		CompositeSearchResultSource composite = composite(fast, slow);
+		composite.setParallelism(2);
+		composite.setTimeout(100);
+		long start = System.currentTimeMillis();
+		assertEquals(Arrays.asList("20010101000000"),
+			timestamps(composite.getPrefixIterator("com,example)/ ")));
+		assertTrue(System.currentTimeMillis() - start < 400);
+
+		// iterator opened after the deadline is closed
+		Thread.sleep(600);
+		assertEquals(1, slow.closed);
+		composite.shutdown();
+	}
+
+	public void testParallelFailures() throws Exception {
+		TestSource ok = new TestSource("20010101000000");
+		TestSource broken = new TestSource("20020101000000");
+		broken.fail = true;
+
+		CompositeSearchResultSource composite = composite(ok, broken);
+		composite.setParallelism(2);
+		assertEquals(Arrays.asList("20010101000000"),
+			timestamps(composite.getPrefixIterator("com,example)/ ")));
+
+		ok.fail = true;
+		try {
+			composite.getPrefixIterator("com,example)/ ");
+			fail("expected ResourceIndexNotAvailableException");
+		} catch (ResourceIndexNotAvailableException ex) {
+			// expected
+		}
+		composite.shutdown();
+	}
+
+	/**
+	 * RuntimeException from a source propagates as is, in both modes,
+	 * and iterators already opened are closed.
+	 */
+	public void testRuntimeException() throws Exception {
+		TestSource ok = new TestSource("20010101000000");
+		TestSource broken = new TestSource("20020101000000");
+		IllegalStateException error = new IllegalStateException("broken");
+		broken.error = error;
+
+		CompositeSearchResultSource composite = composite(ok, broken);
+		for (int parallelism : new int[] { 0, 2 }) {
+			composite.setParallelism(parallelism);
+			ok.closed = 0;
+			try {
+				composite.getPrefixIterator("com,example)/ ");
+				fail("expected IllegalStateException");
+			} catch (IllegalStateException ex) {
+				assertSame(error, ex);
+			}
+			assertEquals(1, ok.closed);
+		}
+		composite.shutdown();
+	}
+}
@@ -3,6 +3,10 @@
  */
 package org.archive.wayback.resourceindex.cdxserver;
 
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.apache.commons.lang.StringUtils;
@@ -10,7 +14,11 @@ import org.archive.cdxserver.auth.AuthToken;
 import org.archive.cdxserver.filter.CDXFilter;
 import org.archive.format.cdx.CDXFieldConstants;
 import org.archive.format.cdx.CDXLine;
+import org.archive.wayback.accesscontrol.robotstxt.RobotExclusionFilter;
+import org.archive.wayback.accesscontrol.robotstxt.redis.RobotsTxtResource;
 import org.archive.wayback.core.CaptureSearchResult;
+import org.archive.wayback.core.Resource;
+import org.archive.wayback.liveweb.LiveWebCache;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
 import org.easymock.EasyMock;
@@ -32,13 +40,48 @@ public class AccessCheckFilterTest extends TestCase {
 
 	private static class MockExclusionFilter extends ExclusionFilter {
 		ObjectFilter<CaptureSearchResult> mock;
+		boolean urlLevel = false;
 		public MockExclusionFilter(ObjectFilter<CaptureSearchResult> mock) {
 			this.mock = mock;
 		}
+		public MockExclusionFilter(ObjectFilter<CaptureSearchResult> mock, boolean urlLevel) {
+			this.mock = mock;
+			this.urlLevel = urlLevel;
+		}
 		@Override
 		public int filterObject(CaptureSearchResult o) {
 			return mock.filterObject(o);
 		}
+		@Override
+		public boolean isUrlLevel(CaptureSearchResult capture) {
+			return urlLevel;
+		}
+	}
+
+	/**
+	 * ExclusionFilter excluding captures on or after {@code embargo},
+	 * like access control oracle does with date-range rules.
+	 */
+	private static class EmbargoFilter extends ExclusionFilter {
+		final String embargo;
+		int calls = 0;
+		public EmbargoFilter(String embargo) {
+			this.embargo = embargo;
+		}
+		@Override
+		public int filterObject(CaptureSearchResult o) {
+			calls++;
+			return o.getCaptureTimestamp().compareTo(embargo) >= 0 ? FILTER_EXCLUDE
+					: FILTER_INCLUDE;
+		}
+	}
+
+	static CDXLine cdxLine(String urlkey, String timestamp, String url, String robotflags) {
+		final String cdxLine = StringUtils.join(new Object[] {
+			urlkey, timestamp, url, "text/html", 200, "DIGEST",
+			"-", robotflags, 1024, 966357, "crawl-a/crawl-a-20100429000000.warc.gz"
+		}, " ");
+		return new CDXLine(cdxLine, CDXFieldConstants.CDX_ALL_NAMES);
 	}
 	/* (non-Javadoc)
 	 * @see junit.framework.TestCase#setUp()
@@ -131,4 +174,112 @@ public class AccessCheckFilterTest extends TestCase {
 		assertTrue(result);
 		EasyMock.verify(adminFilter, robotsFilter, scopeFilter);
 	}
+
+	/**
+	 * URL-level filters are called once per {@code urlkey}.
+	 * @throws Exception
+	 */
+	public void testIncludeCapture_urlLevel() throws Exception {
+		cut = new AccessCheckFilter(authToken, new MockExclusionFilter(
+			adminFilter, true), new MockExclusionFilter(robotsFilter, true),
+			scopeFilter);
+
+		EasyMock.expect(adminFilter.filterObject(EasyMock.<CaptureSearchResult>notNull()))
+			.andReturn(ExclusionFilter.FILTER_INCLUDE).times(2);
+		EasyMock.expect(robotsFilter.filterObject(EasyMock.<CaptureSearchResult>notNull()))
+			.andReturn(ExclusionFilter.FILTER_INCLUDE);
+		EasyMock.expect(robotsFilter.filterObject(EasyMock.<CaptureSearchResult>notNull()))
+			.andReturn(ExclusionFilter.FILTER_EXCLUDE);
+		// scopeFilter is applied to every capture included
+		EasyMock.expect(scopeFilter.include(EasyMock.<CDXLine>notNull()))
+			.andReturn(true).times(3);
+
+		EasyMock.replay(adminFilter, robotsFilter, scopeFilter);
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(cut.includeCapture(cdxLine("com,example)/a",
+				"2010042912345" + i, "http://example.com/a", "-")));
+		}
+		for (int i = 0; i < 2; i++) {
+			assertFalse(cut.includeCapture(cdxLine("com,example)/b",
+				"2010042912345" + i, "http://example.com/b", "-")));
+		}
+
+		EasyMock.verify(adminFilter, robotsFilter, scopeFilter);
+	}
+
+	/**
+	 * Timestamp-dependent filter is called for every capture, and its
+	 * result is not reused for other captures of the same {@code urlkey}.
+	 * @throws Exception
+	 */
+	public void testIncludeCapture_embargo() throws Exception {
+		EmbargoFilter embargo = new EmbargoFilter("2015");
+		cut = new AccessCheckFilter(authToken, embargo,
+			new MockExclusionFilter(robotsFilter, true), null);
+
+		// robots is called once, as captures after embargo never reach it
+		EasyMock.expect(robotsFilter.filterObject(EasyMock.<CaptureSearchResult>notNull()))
+			.andReturn(ExclusionFilter.FILTER_INCLUDE);
+		EasyMock.replay(robotsFilter);
+
+		final String[] timestamps = { "20140101000000", "20160101000000",
+				"20130101000000", "20170101000000", "20140601000000" };
+		final boolean[] expected = { true, false, true, false, true };
+		for (int i = 0; i < timestamps.length; i++) {
+			CDXLine line = cdxLine("com,example)/", timestamps[i],
+				"http://example.com/", "-");
+			assertEquals(timestamps[i], expected[i], cut.includeCapture(line));
+		}
+		assertEquals(timestamps.length, embargo.calls);
+
+		EasyMock.verify(robotsFilter);
+	}
+
+	/**
+	 * With real {@link RobotExclusionFilter}, results are the same as
+	 * calling {@code filterObject} for every capture, including
+	 * {@code robots.txt} and captures with robot-ignore flag.
+	 * @throws Exception
+	 */
+	public void testIncludeCapture_robots() throws Exception {
+		final long MAX_CACHE_MS = 60000;
+		final String USER_AGENT = "ia_archiver";
+		LiveWebCache cache = EasyMock.createMock(LiveWebCache.class);
+		EasyMock.expect(cache.getCachedResource(
+			EasyMock.eq(new URL("http://example.com/robots.txt")),
+			EasyMock.eq(MAX_CACHE_MS), EasyMock.eq(true))).andAnswer(
+			new IAnswer<Resource>() {
+				@Override
+				public Resource answer() throws Throwable {
+					return new RobotsTxtResource("User-agent: *\nDisallow: /\n");
+				}
+			}).anyTimes();
+		EasyMock.replay(cache);
+
+		List<CDXLine> lines = new ArrayList<CDXLine>();
+		lines.add(cdxLine("com,example)/a", "20100101000000", "http://example.com/a", "-"));
+		lines.add(cdxLine("com,example)/a", "20110101000000", "http://example.com/a", "G"));
+		lines.add(cdxLine("com,example)/a", "20120101000000", "http://example.com/a", "-"));
+		lines.add(cdxLine("com,example)/a", "20130101000000", "http://example.com/a", "AG"));
+		lines.add(cdxLine("com,example)/robots.txt", "20100101000000", "http://example.com/robots.txt", "-"));
+		lines.add(cdxLine("com,example)/robots.txt", "20110101000000", "http://example.com/robots.txt", "-"));
+		lines.add(cdxLine("com,example)/robots.txt", "20120101000000", "http://example.com/robots.txt?a", "-"));
+
+		RobotExclusionFilter reference = new RobotExclusionFilter(cache,
+			USER_AGENT, MAX_CACHE_MS);
+		cut = new AccessCheckFilter(authToken, null, new RobotExclusionFilter(
+			cache, USER_AGENT, MAX_CACHE_MS), null);
+
+		final boolean[] expected = { false, true, false, true, true, true, false };
+		for (int i = 0; i < lines.size(); i++) {
+			CDXLine line = lines.get(i);
+			int status = reference
+				.filterObject(new AccessCheckFilter.CDXSearchResult(line));
+			assertEquals(line.toString(), expected[i],
+				status == ExclusionFilter.FILTER_INCLUDE);
+			assertEquals(line.toString(), expected[i], cut.includeCapture(line));
+		}
+		EasyMock.verify(cache);
+	}
 }
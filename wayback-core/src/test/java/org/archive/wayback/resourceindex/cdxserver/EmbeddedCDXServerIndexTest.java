@@ -39,6 +39,7 @@ import org.archive.wayback.core.CaptureSearchResults;
 import org.archive.wayback.core.SearchResults;
 import org.archive.wayback.core.WaybackRequest;
 import org.archive.wayback.exception.RobotAccessControlException;
+import org.archive.wayback.replay.TransparentReplayRendererTest.TestServletOutputStream;
 import org.archive.wayback.resourceindex.filters.ExclusionFilter;
 import org.archive.wayback.util.ObjectFilter;
 import org.archive.wayback.util.WrappedCloseableIterator;
@@ -605,6 +606,35 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Replay query looks up {@code limit} captures closest to the replay
+	 * timestamp, whether or not it is a timestamp search key.
+	 * @throws Exception
+	 */
+	public void testReplayQueryClosest() throws Exception {
+		WaybackRequest wbr = WaybackRequest.createReplayRequest(
+			"http://example.com/", "20100601000000", null, null);
+		cut.setLimit(100);
+		cut.setTimestampDedupLength(10);
+
+		Capture<CDXQuery> queryCapture = new Capture<CDXQuery>();
+		expectGetCdx(EasyMock.capture(queryCapture),
+			EasyMock.<AuthToken>anyObject(),
+			EasyMock.<CDXWriter>anyObject(), CDXLINE1);
+		EasyMock.replay(cdxServer);
+
+		@SuppressWarnings("unused")
+		SearchResults sr = cut.query(wbr);
+
+		EasyMock.verify(cdxServer);
+
+		CDXQuery query = queryCapture.getValue();
+		assertEquals("20100601000000", query.getClosest());
+		assertTrue(query.isClosestWindow());
+		assertEquals(100, query.getLimit());
+		assertEquals(10, query.getCollapseTime());
+	}
+
 	/**
 	 * {@link EmbeddedCDXServerIndex#handleRequest(HttpServletRequest, HttpServletResponse)} is
 	 * a entry point for CDXServer API. It should return all accessible cdx lines, without applying
@@ -616,8 +646,9 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 		EasyMock.expect(request.getParameter("url")).andStubReturn("http://example.com/");
 
 		HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
-		StringWriter sw = new StringWriter();
-		EasyMock.expect(response.getWriter()).andReturn(new PrintWriter(sw));
+		// batched output (default)
+		EasyMock.expect(response.getOutputStream()).andReturn(
+			new TestServletOutputStream());
 
 		// handleRequest() makes no big assumption on CDXServer's behavior.
 		// we don't need to use #expectGetCdx
@@ -779,8 +810,8 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 
 			HttpServletResponse httpResponse = EasyMock.createMock(HttpServletResponse.class);
 			// expect error response; 403 with error header containing "Robot"
-			final StringWriter output = new StringWriter();
-			EasyMock.expect(httpResponse.getWriter()).andReturn(new PrintWriter(output));
+			final TestServletOutputStream output = new TestServletOutputStream();
+			EasyMock.expect(httpResponse.getOutputStream()).andReturn(output);
 			httpResponse.setContentType(EasyMock.<String>notNull());
 			EasyMock.expectLastCall().once();
 			httpResponse.setStatus(403);
@@ -807,8 +838,8 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 
 			HttpServletResponse httpResponse = EasyMock.createMock(HttpServletResponse.class);
 			// expect 200 response = robots exclusion is disabled.
-			final StringWriter output = new StringWriter();
-			EasyMock.expect(httpResponse.getWriter()).andReturn(new PrintWriter(output));
+			final TestServletOutputStream output = new TestServletOutputStream();
+			EasyMock.expect(httpResponse.getOutputStream()).andReturn(output);
 			httpResponse.setContentType(EasyMock.<String>notNull());
 			EasyMock.expectLastCall().once();
 			//httpResponse.setStatus(200); // this is not explicitly called
@@ -821,7 +852,7 @@ public class EmbeddedCDXServerIndexTest extends TestCase {
 
 			EasyMock.verify(httpResponse);
 
-			System.out.println(output.toString());
+			System.out.println(output.getString());
 		}
 	}
 }
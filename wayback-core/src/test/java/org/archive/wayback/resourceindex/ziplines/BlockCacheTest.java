@@ -0,0 +1,108 @@
+package org.archive.wayback.resourceindex.ziplines;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link BlockCache} and its use by {@link ZiplinedBlock}.
+ */
+public class BlockCacheTest extends TestCase {
+
+	static class CountingBlockLoader implements BlockLoader {
+		final byte[] block;
+		int loads = 0;
+
+		CountingBlockLoader(byte[] block) {
+			this.block = block;
+		}
+
+		public byte[] getBlock(String url, long offset, int length)
+				throws IOException {
+			loads++;
+			return block;
+		}
+	}
+
+	static byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(baos);
+		gzos.write(text.getBytes("UTF-8"));
+		gzos.close();
+		return baos.toByteArray();
+	}
+
+	public void testLRUEviction() {
+		BlockCache cache = new BlockCache();
+		cache.setMaxBytes(3 * (100 + BlockCache.ENTRY_OVERHEAD));
+
+		cache.put("a", 0, 10, new byte[100]);
+		cache.put("a", 10, 10, new byte[100]);
+		cache.put("b", 0, 10, new byte[100]);
+		assertEquals(3, cache.getBlockCount());
+
+		// touch first block, so that second one is the eldest
+		assertNotNull(cache.get("a", 0, 10));
+
+		cache.put("c", 0, 10, new byte[100]);
+		assertEquals(3, cache.getBlockCount());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get("a", 10, 10));
+		assertNotNull(cache.get("a", 0, 10));
+		assertNotNull(cache.get("b", 0, 10));
+		assertNotNull(cache.get("c", 0, 10));
+
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	public void testByteWeighted() {
+		BlockCache cache = new BlockCache();
+		cache.setMaxBytes(1000 + 2 * BlockCache.ENTRY_OVERHEAD);
+
+		cache.put("a", 0, 10, new byte[500]);
+		cache.put("a", 10, 10, new byte[500]);
+		assertEquals(2, cache.getBlockCount());
+		// a large block pushes out both
+		cache.put("a", 20, 10, new byte[900]);
+		assertEquals(1, cache.getBlockCount());
+		assertEquals(900 + BlockCache.ENTRY_OVERHEAD, cache.getCurrentBytes());
+
+		// too large to cache at all
+		cache.put("a", 30, 10, new byte[2000]);
+		assertNull(cache.get("a", 30, 10));
+		assertNotNull(cache.get("a", 20, 10));
+	}
+
+	public void testReplace() {
+		BlockCache cache = new BlockCache();
+		cache.put("a", 0, 10, new byte[100]);
+		cache.put("a", 0, 10, new byte[200]);
+		assertEquals(1, cache.getBlockCount());
+		assertEquals(200 + BlockCache.ENTRY_OVERHEAD, cache.getCurrentBytes());
+	}
+
+	public void testZiplinedBlockUsesCache() throws IOException {
+		final String text = "a 1\nb 2\n";
+		byte[] compressed = gzip(text);
+		CountingBlockLoader loader = new CountingBlockLoader(compressed);
+		BlockCache cache = new BlockCache();
+
+		for (int i = 0; i < 3; i++) {
+			ZiplinedBlock block = new ZiplinedBlock(new String[] { "/x", "/y" },
+				0, compressed.length);
+			block.setLoader(loader);
+			block.setCache(cache);
+			BufferedReader br = block.readBlock();
+			assertEquals("a 1", br.readLine());
+			assertEquals("b 2", br.readLine());
+			assertNull(br.readLine());
+		}
+		assertEquals(1, loader.loads);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link BufferPool}.
+ * <p>
+ * Pools are static and shared. Each test uses buffer sizes no other code
+ * uses.
+ * </p>
+ */
+public class BufferPoolTest extends TestCase {
+
+	public void testReuse() {
+		byte[] b1 = BufferPool.takeBytes(1001);
+		assertEquals(1001, b1.length);
+		BufferPool.releaseBytes(b1);
+		long reused = BufferPool.getReusedCount();
+		byte[] b2 = BufferPool.takeBytes(1001);
+		assertSame(b1, b2);
+		assertEquals(reused + 1, BufferPool.getReusedCount());
+
+		// different size is different pool
+		long allocated = BufferPool.getAllocatedCount();
+		byte[] b3 = BufferPool.takeBytes(1002);
+		assertNotSame(b2, b3);
+		assertEquals(1002, b3.length);
+		assertEquals(allocated + 1, BufferPool.getAllocatedCount());
+		BufferPool.releaseBytes(b2);
+		BufferPool.releaseBytes(b3);
+
+		char[] c1 = BufferPool.takeChars(1001);
+		assertEquals(1001, c1.length);
+		BufferPool.releaseChars(c1);
+		assertSame(c1, BufferPool.takeChars(1001));
+	}
+
+	public void testBounded() {
+		List<byte[]> taken = new ArrayList<byte[]>();
+		for (int i = 0; i < BufferPool.MAX_POOLED_PER_SIZE + 5; i++) {
+			taken.add(BufferPool.takeBytes(1003));
+		}
+		for (byte[] b : taken) {
+			BufferPool.releaseBytes(b);
+		}
+		long allocated = BufferPool.getAllocatedCount();
+		for (int i = 0; i < BufferPool.MAX_POOLED_PER_SIZE; i++) {
+			assertTrue(taken.contains(BufferPool.takeBytes(1003)));
+		}
+		assertEquals(allocated, BufferPool.getAllocatedCount());
+		assertFalse(taken.contains(BufferPool.takeBytes(1003)));
+	}
+
+	public void testLargeBufferNotPooled() {
+		byte[] b = BufferPool.takeBytes(BufferPool.MAX_POOLED_BUFFER_SIZE + 1);
+		BufferPool.releaseBytes(b);
+		assertNotSame(b, BufferPool.takeBytes(BufferPool.MAX_POOLED_BUFFER_SIZE + 1));
+		BufferPool.releaseBytes(null);
+	}
+}
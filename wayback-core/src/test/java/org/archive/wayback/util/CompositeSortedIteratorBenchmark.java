@@ -0,0 +1,167 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Compares merge throughput of {@link CompositeSortedIterator} with a
+ * linear scan over component heads (previous implementation).
+ * <p>Not a unit test. Run with optional total number of keys:</p>
+ * <pre>
+ * java -cp ... org.archive.wayback.util.CompositeSortedIteratorBenchmark [keys]
+ * </pre>
+ * <p>Keys are SURT-like strings with a common prefix, spread randomly
+ * over k = 2, 16, 64 and 256 sorted components, like per-crawl CDX files
+ * of one collection.</p>
+ */
+public class CompositeSortedIteratorBenchmark {
+
+	static final int DEFAULT_KEYS = 1000000;
+	static final int ROUNDS = 5;
+
+	static final Comparator<String> NATURAL = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	/**
+	 * Previous implementation: picks the smallest head by scanning all
+	 * components for every element.
+	 */
+	static class LinearMerge implements Iterator<String> {
+		final List<Iterator<String>> components = new ArrayList<Iterator<String>>();
+		final List<String> heads = new ArrayList<String>();
+		String next;
+
+		void addComponent(Iterator<String> itr) {
+			components.add(itr);
+			heads.add(itr.hasNext() ? itr.next() : null);
+		}
+
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			int nextSource = -1;
+			for (int i = 0; i < heads.size(); i++) {
+				String head = heads.get(i);
+				if (head != null && (next == null || NATURAL.compare(next, head) > 0)) {
+					nextSource = i;
+					next = head;
+				}
+			}
+			if (nextSource >= 0) {
+				Iterator<String> itr = components.get(nextSource);
+				heads.set(nextSource, itr.hasNext() ? itr.next() : null);
+			}
+			return next != null;
+		}
+
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String n = next;
+			next = null;
+			return n;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static List<List<String>> components(int k, int total, Random rand) {
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (int i = 0; i < k; i++) {
+			lists.add(new ArrayList<String>());
+		}
+		for (int i = 0; i < total; i++) {
+			String key = "com,example)/page/" + rand.nextInt(total) + " 2010" +
+					(1000000000 + rand.nextInt(1000000000));
+			lists.get(rand.nextInt(k)).add(key);
+		}
+		for (List<String> list : lists) {
+			Collections.sort(list);
+		}
+		return lists;
+	}
+
+	static int drain(Iterator<String> itr) {
+		int count = 0;
+		while (itr.hasNext()) {
+			if (itr.next() != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	static long heap(List<List<String>> lists) {
+		long start = System.nanoTime();
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(NATURAL);
+		for (List<String> list : lists) {
+			itr.addComponent(list.iterator());
+		}
+		drain(itr);
+		return System.nanoTime() - start;
+	}
+
+	static long linear(List<List<String>> lists) {
+		long start = System.nanoTime();
+		LinearMerge itr = new LinearMerge();
+		for (List<String> list : lists) {
+			itr.addComponent(list.iterator());
+		}
+		drain(itr);
+		return System.nanoTime() - start;
+	}
+
+	static void run(int k, int total) {
+		List<List<String>> lists = components(k, total, new Random(k));
+		// warm up both
+		heap(lists);
+		linear(lists);
+		long heapNS = Long.MAX_VALUE, linearNS = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			heapNS = Math.min(heapNS, heap(lists));
+			linearNS = Math.min(linearNS, linear(lists));
+		}
+		System.out.printf("k=%3d: heap %6.0fms (%5.1f Mkeys/s), linear %6.0fms (%5.1f Mkeys/s)%n",
+			k, heapNS / 1e6, total * 1e3 / heapNS, linearNS / 1e6,
+			total * 1e3 / linearNS);
+	}
+
+	public static void main(String[] args) {
+		int total = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_KEYS;
+		for (int k : new int[] { 2, 16, 64, 256 }) {
+			run(k, total);
+		}
+	}
+}
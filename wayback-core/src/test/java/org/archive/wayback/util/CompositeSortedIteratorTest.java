@@ -0,0 +1,140 @@
+package org.archive.wayback.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Test for {@link CompositeSortedIterator}.
+ */
+public class CompositeSortedIteratorTest extends TestCase {
+
+	static final Comparator<String> NATURAL = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	static class CountingIterator extends WrappedCloseableIterator<String> {
+		int closed = 0;
+
+		CountingIterator(Iterator<String> inner) {
+			super(inner);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed++;
+		}
+	}
+
+	/**
+	 * Build {@code k} sorted lists of random keys, with plenty of
+	 * duplicates across lists.
+	 */
+	static List<List<String>> buildComponents(int k, int total, long seed) {
+		Random random = new Random(seed);
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (int i = 0; i < k; i++) {
+			lists.add(new ArrayList<String>());
+		}
+		for (int i = 0; i < total; i++) {
+			String key = String.format("com,example%05d)/", random.nextInt(total / 2 + 1));
+			lists.get(random.nextInt(k)).add(key);
+		}
+		for (List<String> list : lists) {
+			Collections.sort(list);
+		}
+		return lists;
+	}
+
+	static List<String> merge(List<List<String>> lists) {
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(NATURAL);
+		for (List<String> list : lists) {
+			itr.addComponent(list.iterator());
+		}
+		List<String> merged = new ArrayList<String>();
+		while (itr.hasNext()) {
+			merged.add(itr.next());
+		}
+		return merged;
+	}
+
+	public void testMerge() {
+		for (int k : new int[] { 1, 2, 16, 64, 256 }) {
+			List<List<String>> lists = buildComponents(k, 5000, k);
+			List<String> expected = new ArrayList<String>();
+			for (List<String> list : lists) {
+				expected.addAll(list);
+			}
+			Collections.sort(expected);
+			assertEquals("k=" + k, expected, merge(lists));
+		}
+	}
+
+	public void testEmptyComponents() {
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(NATURAL);
+		assertFalse(itr.hasNext());
+		itr.addComponent(new ArrayList<String>().iterator());
+		assertFalse(itr.hasNext());
+		List<String> one = new ArrayList<String>();
+		one.add("a");
+		itr.addComponent(one.iterator());
+		assertTrue(itr.hasNext());
+		assertEquals("a", itr.next());
+		assertFalse(itr.hasNext());
+	}
+
+	/**
+	 * Elements comparing equal are returned in the order components
+	 * were added, as the linear scan implementation did.
+	 */
+	public void testTieOrder() {
+		Comparator<String> firstChar = new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return o1.charAt(0) - o2.charAt(0);
+			}
+		};
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(firstChar);
+		String[][] components = { { "a0", "b0" }, { "a1", "c1" },
+				{ "b2" }, { "a3", "b3" } };
+		for (String[] c : components) {
+			List<String> list = new ArrayList<String>();
+			Collections.addAll(list, c);
+			itr.addComponent(list.iterator());
+		}
+		StringBuilder sb = new StringBuilder();
+		while (itr.hasNext()) {
+			sb.append(itr.next()).append(' ');
+		}
+		assertEquals("a0 a1 a3 b0 b2 b3 c1 ", sb.toString());
+	}
+
+	public void testClose() throws IOException {
+		CompositeSortedIterator<String> itr =
+			new CompositeSortedIterator<String>(NATURAL);
+		List<CountingIterator> components = new ArrayList<CountingIterator>();
+		for (int i = 0; i < 3; i++) {
+			CountingIterator ci = new CountingIterator(
+				new ArrayList<String>().iterator());
+			components.add(ci);
+			itr.addComponent(ci);
+		}
+		assertFalse(itr.hasNext());
+		itr.close();
+		for (CloseableIterator<String> ci : components) {
+			assertEquals(1, ((CountingIterator)ci).closed);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package org.archive.wayback.util.flatfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link FlatFile}, comparing memory-mapped mode and
+ * {@link SampledIndex} lookups with plain {@code RandomAccessFile}-based
+ * binary search.
+ */
+public class FlatFileTest extends TestCase {
+
+	File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("flatfile", ".cdx");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	protected void write(String content) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(content.getBytes("UTF-8"));
+		fos.close();
+	}
+
+	protected List<String> collect(Iterator<String> it, int max) {
+		List<String> list = new ArrayList<String>();
+		while (it.hasNext() && list.size() < max) {
+			list.add(it.next());
+		}
+		return list;
+	}
+
+	protected String buildSortedContent(int lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			// long lines so that file spans many 8K blocks
+			sb.append(String.format("com,example%06d)/ 2010%010d ", i / 3, i));
+			for (int j = 0; j < (i % 7) * 20; j++) {
+				sb.append('x');
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	public void testFindKeyOffsetParity() throws IOException {
+		write(buildSortedContent(3000));
+		FlatFile plain = new FlatFile(file.getAbsolutePath());
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+
+		String[] keys = { "", "a", "com,example000000)/", "com,example000500)/",
+				"com,example000500)/ 20100000001501", "com,example000999)/",
+				"com,example001000)/", "zzz" };
+		for (String key : keys) {
+			List<String> expected = collect(plain.getRecordIterator(key), 5);
+			assertEquals(key, expected, collect(mapped.getRecordIterator(key), 5));
+			assertEquals(key, plain.getLastMatchOffset(), mapped.getLastMatchOffset());
+
+			expected = collect(plain.getRecordIteratorLT(key), 5);
+			assertEquals(key, expected, collect(mapped.getRecordIteratorLT(key), 5));
+
+			expected = collect(plain.getReverseRecordIterator(key), 5);
+			assertEquals(key, expected, collect(mapped.getReverseRecordIterator(key), 5));
+		}
+	}
+
+	public void testNoTrailingNewline() throws IOException {
+		write("a 1\nb 2\r\nc 3");
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+
+		List<String> all = collect(mapped.getSequentialIterator(), 10);
+		assertEquals(3, all.size());
+		assertEquals("b 2", all.get(1));
+		assertEquals("c 3", all.get(2));
+
+		assertEquals("c 3", mapped.getRecordIterator("c").next());
+		assertFalse(mapped.getRecordIterator("d").hasNext());
+		assertEquals("c 3", mapped.getReverseRecordIterator("d").next());
+		assertEquals("a 1", mapped.getRecordIteratorLT("b").next());
+	}
+
+	public void testRemapOnChange() throws IOException {
+		write("a 1\nb 2\n");
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+		assertEquals("b 2", mapped.getRecordIterator("b").next());
+
+		write("a 1\nb 3\nc 4\n");
+		// make sure modification is detected even on coarse-grained mtime
+		file.setLastModified(file.lastModified() + 2000);
+		assertEquals("b 3", mapped.getRecordIterator("b").next());
+	}
+
+	protected SampledIndex awaitSampledIndex(FlatFile ff) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			SampledIndex idx = ff.getSampledIndex();
+			if (idx != null) return idx;
+			Thread.sleep(10);
+		}
+		fail("sampled index was not built");
+		return null;
+	}
+
+	public void testSampledIndexParity() throws Exception {
+		write(buildSortedContent(3000));
+		FlatFile plain = new FlatFile(file.getAbsolutePath());
+		FlatFile sampled = new FlatFile(file.getAbsolutePath());
+		sampled.setSampleInterval(16);
+		FlatFile sampledMapped = new FlatFile(file.getAbsolutePath());
+		sampledMapped.setSampleInterval(7);
+		sampledMapped.setMapped(true);
+		assertTrue(awaitSampledIndex(sampled).getSampleCount() > 0);
+		awaitSampledIndex(sampledMapped);
+
+		String[] keys = { "", "a", "com,example000000)/", "com,example000000)/ 2010",
+				"com,example000500)/", "com,example000500)/ 20100000001501",
+				"com,example000999)/", "com,example000999)/ 20100000002999 xx",
+				"com,example001000)/", "zzz" };
+		for (String key : keys) {
+			List<String> expected = collect(plain.getRecordIterator(key), 5);
+			assertEquals(key, expected, collect(sampled.getRecordIterator(key), 5));
+			assertEquals(key, expected, collect(sampledMapped.getRecordIterator(key), 5));
+			assertEquals(key, plain.getLastMatchOffset(), sampled.getLastMatchOffset());
+
+			expected = collect(plain.getRecordIteratorLT(key), 5);
+			assertEquals(key, expected, collect(sampled.getRecordIteratorLT(key), 5));
+			assertEquals(key, expected, collect(sampledMapped.getRecordIteratorLT(key), 5));
+
+			expected = collect(plain.getReverseRecordIterator(key), 5);
+			assertEquals(key, expected, collect(sampled.getReverseRecordIterator(key), 5));
+			assertEquals(key, expected, collect(sampledMapped.getReverseRecordIterator(key), 5));
+		}
+	}
+
+	public void testSampledIndexSidecar() throws Exception {
+		write(buildSortedContent(500));
+		File sidecar = new File(file.getAbsolutePath() + ".idx");
+		try {
+			FlatFile ff = new FlatFile(file.getAbsolutePath());
+			ff.setSampleInterval(10);
+			ff.setSampleIndexPath(sidecar.getAbsolutePath());
+			SampledIndex built = awaitSampledIndex(ff);
+			// sidecar is written after index is published
+			for (int i = 0; i < 500 && !sidecar.exists(); i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(sidecar.exists());
+
+			SampledIndex loaded = SampledIndex.load(sidecar, file, 10);
+			assertNotNull(loaded);
+			assertEquals(built.getSampleCount(), loaded.getSampleCount());
+			assertEquals(built.windowStart("com,example000100)/"),
+				loaded.windowStart("com,example000100)/"));
+			// interval mismatch
+			assertNull(SampledIndex.load(sidecar, file, 20));
+
+			// data file changed: sidecar is stale, index is rebuilt
+			write(buildSortedContent(600));
+			file.setLastModified(file.lastModified() + 2000);
+			assertNull(SampledIndex.load(sidecar, file, 10));
+			assertTrue(built.isStale(file));
+			SampledIndex rebuilt = awaitSampledIndex(ff);
+			assertEquals(60, rebuilt.getSampleCount());
+			assertEquals("com,example000199)/ 20100000000599",
+				ff.getRecordIterator("com,example000199)/ 20100000000599").next().substring(0, 34));
+		} finally {
+			sidecar.delete();
+		}
+	}
+
+	/**
+	 * index is used even if sidecar cannot be written.
+	 */
+	public void testSampledIndexSidecarNotWritable() throws Exception {
+		write(buildSortedContent(500));
+		File sidecar = new File(file.getAbsolutePath() + ".nodir",
+			"index.idx");
+		FlatFile ff = new FlatFile(file.getAbsolutePath());
+		ff.setSampleInterval(10);
+		ff.setSampleIndexPath(sidecar.getAbsolutePath());
+		SampledIndex built = awaitSampledIndex(ff);
+		assertEquals(50, built.getSampleCount());
+		assertFalse(sidecar.exists());
+		assertEquals("com,example000100)/ 20100000000300",
+			ff.getRecordIterator("com,example000100)/").next().substring(0, 34));
+	}
+
+	protected String repeat(char c, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	public void testSampleKeyUtf8Boundary() throws Exception {
+		final String pad = repeat('a', SampledIndex.MAX_KEY_LENGTH - 1);
+		byte[] buf = (pad + "\u00e9xyz").getBytes("UTF-8");
+		// 2-byte char split at MAX_KEY_LENGTH
+		assertEquals(pad, SampledIndex.sampleKey(buf,
+			SampledIndex.MAX_KEY_LENGTH));
+		// 3-byte char split after first and second bytes
+		buf = (pad + "\u3042").getBytes("UTF-8");
+		assertEquals(pad, SampledIndex.sampleKey(buf,
+			SampledIndex.MAX_KEY_LENGTH));
+		buf = (pad.substring(1) + "\u3042").getBytes("UTF-8");
+		assertEquals(pad.substring(1), SampledIndex.sampleKey(buf,
+			SampledIndex.MAX_KEY_LENGTH));
+		// complete char ending at MAX_KEY_LENGTH is kept
+		buf = (pad.substring(1) + "\u00e9").getBytes("UTF-8");
+		assertEquals(pad.substring(1) + "\u00e9", SampledIndex.sampleKey(buf,
+			SampledIndex.MAX_KEY_LENGTH));
+		buf = (pad.substring(2) + "\u3042").getBytes("UTF-8");
+		assertEquals(pad.substring(2) + "\u3042", SampledIndex.sampleKey(buf,
+			SampledIndex.MAX_KEY_LENGTH));
+	}
+
+	/**
+	 * lookup with long keys having multi-byte chars at
+	 * {@link SampledIndex#MAX_KEY_LENGTH}.
+	 */
+	public void testSampledIndexLongUtf8Keys() throws Exception {
+		final String pad = "com,example)/" +
+				repeat('a', SampledIndex.MAX_KEY_LENGTH - 14);
+		final String[] tails = { "b", "\u00e9", "\u00ff", "\u3042" };
+		StringBuilder sb = new StringBuilder();
+		for (String tail : tails) {
+			for (int i = 0; i < 3; i++) {
+				sb.append(pad).append(tail).append(i).append(" 2010 x\n");
+			}
+		}
+		write(sb.toString());
+		// plain mode does not compare non-ASCII keys as UTF-8
+		FlatFile mapped = new FlatFile(file.getAbsolutePath());
+		mapped.setMapped(true);
+		FlatFile sampled = new FlatFile(file.getAbsolutePath());
+		sampled.setSampleInterval(1);
+		awaitSampledIndex(sampled);
+		for (String tail : tails) {
+			for (int i = 0; i < 4; i++) {
+				String key = pad + tail + i;
+				List<String> expected = collect(mapped.getRecordIterator(key), 3);
+				if (i < 3) {
+					assertTrue(key, expected.get(0).startsWith(key + " "));
+				}
+				assertEquals(key, expected,
+					collect(sampled.getRecordIterator(key), 3));
+				mapped.getRecordIteratorLT(key);
+				sampled.getRecordIteratorLT(key);
+				assertEquals(key, mapped.getLastMatchOffset(),
+					sampled.getLastMatchOffset());
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ *  This file is part of the Wayback archival access software
+ *   (http://archive-access.sourceforge.net/projects/wayback/).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.wayback.util.htmllex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.htmlparser.Node;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.nodes.RemarkNode;
+import org.htmlparser.nodes.TagNode;
+import org.htmlparser.nodes.TextNode;
+
+/**
+ * Test for {@link IncrementalLexer}.
+ */
+public class IncrementalLexerTest extends TestCase {
+
+	/**
+	 * Documents whose Nodes reproduce the original text.
+	 */
+	static final String[] DOCUMENTS = {
+		"<html><head><title>test</title></head><body></body></html>",
+		"<a href=\"/foo.html\" class='x' id=y disabled>foo</a>",
+		"<a  href = \"/foo.html\"  >foo</a >",
+		"<img src=\"a.gif\"/><br/><br /><hr>",
+		"<!DOCTYPE html>\n<html>\n</html>\n",
+		"<!-- comment --><p>a</p><!----><!-- a -- b --->",
+		"<![CDATA[aaaa\nbbbb]]>",
+		"<style>/*<![CDATA[*/\n@import \"/shared.css\";\n/*]]>*/</style>",
+		"<script>for(var i=0; i<23; i++) { j+=i; }</script>",
+		"<script>a = '</div>';b='http://example.com/';</script>",
+		"<script>/</g;900>a;a<k;</script><script></script>",
+		"<SCRIPT type=\"text/javascript\">\r\n<!--\r\nx=1;\r\n//-->\r\n</SCRIPT>",
+		"a < b, c <> d, <3, </ p>",
+		"<a href=\"x>y\" title='it\"s'>",
+		"<div\nclass=\"a\"\tid=\"b\"\n>text</div>",
+		"<input value=>",
+	};
+
+	/**
+	 * Malformed documents - htmlparser closes unterminated tags.
+	 */
+	static final String[] MALFORMED = {
+		"<p<b>x</b>",
+		"<a href=\"unterminated",
+		"<!, <",
+	};
+
+	/**
+	 * Reader returning at most one char per read(), to exercise
+	 * window compaction at every possible position.
+	 */
+	static class TrickleReader extends Reader {
+		final Reader reader;
+		TrickleReader(String s) {
+			reader = new StringReader(s);
+		}
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return reader.read(cbuf, off, Math.min(len, 1));
+		}
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	static List<Node> lex(ContextAwareLexer lexer) throws Exception {
+		List<Node> nodes = new ArrayList<Node>();
+		Node node;
+		while ((node = lexer.nextNode()) != null) {
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	static List<Node> lexIncremental(Reader reader) throws Exception {
+		IncrementalLexer lexer = new IncrementalLexer(reader);
+		try {
+			return lex(new ContextAwareLexer(lexer, new ParseContext()));
+		} finally {
+			lexer.close();
+		}
+	}
+
+	static String toHtml(List<Node> nodes) {
+		StringBuilder sb = new StringBuilder();
+		for (Node node : nodes) {
+			sb.append(node.toHtml(true));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * IncrementalLexer produces the same nodes as htmlparser Lexer.
+	 * @throws Exception
+	 */
+	public void testSameAsLexer() throws Exception {
+		List<String> documents = new ArrayList<String>(Arrays.asList(DOCUMENTS));
+		documents.addAll(Arrays.asList(MALFORMED));
+		for (String html : documents) {
+			Lexer.STRICT_REMARKS = false;
+			List<Node> expected = lex(new ContextAwareLexer(new Lexer(html),
+				new ParseContext()));
+			List<Node> actual = lexIncremental(new StringReader(html));
+			assertEquals(html, expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				Node e = expected.get(i);
+				Node a = actual.get(i);
+				assertEquals(html, e.getClass(), a.getClass());
+				assertEquals(html, e.toHtml(true), a.toHtml(true));
+				assertEquals(html, e.getText(), a.getText());
+				if (e instanceof TagNode) {
+					TagNode et = (TagNode)e;
+					TagNode at = (TagNode)a;
+					assertEquals(html, et.getTagName(), at.getTagName());
+					assertEquals(html, et.isEndTag(), at.isEndTag());
+					assertEquals(html, et.isEmptyXmlTag(), at.isEmptyXmlTag());
+					assertEquals(html, et.getAttributesEx().size(),
+						at.getAttributesEx().size());
+				}
+			}
+		}
+	}
+
+	public void testRoundTrip() throws Exception {
+		for (String html : DOCUMENTS) {
+			assertEquals(html, toHtml(lexIncremental(new StringReader(html))));
+			assertEquals(html, toHtml(lexIncremental(new TrickleReader(html))));
+		}
+		for (String html : MALFORMED) {
+			assertEquals(html, toHtml(lexIncremental(new StringReader(html))),
+				toHtml(lexIncremental(new TrickleReader(html))));
+		}
+		assertEquals("<p><b>x</b>", toHtml(lexIncremental(new StringReader(
+			MALFORMED[0]))));
+	}
+
+	public void testTag() throws Exception {
+		List<Node> nodes = lexIncremental(new TrickleReader(
+			"<a  href = \"/foo.html\" id=x disabled>foo</a><br/>"));
+		assertEquals(4, nodes.size());
+		TagNode a = (TagNode)nodes.get(0);
+		assertEquals("A", a.getTagName());
+		assertFalse(a.isEndTag());
+		assertEquals("/foo.html", a.getAttribute("HREF"));
+		assertEquals("x", a.getAttribute("id"));
+		assertEquals("<a  href = \"/foo.html\" id=x disabled>", a.toHtml(true));
+
+		a.setAttribute("HREF", "/bar.html");
+		assertEquals("<a  href = \"/bar.html\" id=x disabled>", a.toHtml(true));
+
+		assertEquals("foo", ((TextNode)nodes.get(1)).getText());
+		assertTrue(((TagNode)nodes.get(2)).isEndTag());
+		assertEquals("A", ((TagNode)nodes.get(2)).getTagName());
+		TagNode br = (TagNode)nodes.get(3);
+		assertEquals("BR", br.getTagName());
+		assertTrue(br.isEmptyXmlTag());
+	}
+
+	public void testRemark() throws Exception {
+		List<Node> nodes = lexIncremental(new StringReader(
+			"<!-- comment --><!-- a -- b --->"));
+		assertEquals(2, nodes.size());
+		RemarkNode remark = (RemarkNode)nodes.get(0);
+		assertEquals(" comment ", remark.getText());
+		remark.setText(" modified ");
+		assertEquals("<!-- modified -->", remark.toHtml(true));
+		assertEquals("<!-- a -- b --->", nodes.get(1).toHtml(true));
+
+		// unterminated comment is passed through as text
+		nodes = lexIncremental(new StringReader("<p><!-- unterminated"));
+		assertEquals(2, nodes.size());
+		assertTrue(nodes.get(1) instanceof TextNode);
+		assertEquals("<!-- unterminated", nodes.get(1).getText());
+	}
+
+	/**
+	 * Processing instruction is a TagNode reproducing the original text.
+	 * (htmlparser splits it into attributes differently)
+	 * @throws Exception
+	 */
+	public void testProcessingInstruction() throws Exception {
+		final String html = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><html>";
+		List<Node> nodes = lexIncremental(new TrickleReader(html));
+		assertEquals(2, nodes.size());
+		assertTrue(nodes.get(0) instanceof TagNode);
+		assertFalse(((TagNode)nodes.get(0)).isEndTag());
+		assertEquals(html, toHtml(nodes));
+	}
+
+	public void testJsp() throws Exception {
+		List<Node> nodes = lexIncremental(new TrickleReader(
+			"<% if (a > 1) { %><p><%"));
+		assertEquals(3, nodes.size());
+		assertTrue(nodes.get(0) instanceof TagNode);
+		assertEquals("<% if (a > 1) { %>", nodes.get(0).toHtml(true));
+		assertEquals("P", ((TagNode)nodes.get(1)).getTagName());
+		assertTrue(nodes.get(2) instanceof TextNode);
+		assertEquals("<%", nodes.get(2).getText());
+	}
+
+	/**
+	 * SCRIPT content is CDATA up to {@code </} followed by a letter.
+	 * @throws Exception
+	 */
+	public void testScript() throws Exception {
+		ParseContext context = new ParseContext();
+		IncrementalLexer lexer = new IncrementalLexer(new TrickleReader(
+			"<script>if(a<b)x='</div>';</script><p>"));
+		ContextAwareLexer lex = new ContextAwareLexer(lexer, context);
+		assertEquals("SCRIPT", ((TagNode)lex.nextNode()).getTagName());
+		assertTrue(context.isInJS());
+		Node node = lex.nextNode();
+		assertTrue(node instanceof TextNode);
+		assertEquals("if(a<b)x='", node.getText());
+		assertTrue(context.isInScriptText());
+		assertEquals("DIV", ((TagNode)lex.nextNode()).getTagName());
+		assertEquals("';", lex.nextNode().getText());
+		assertTrue(context.isInScriptText());
+		TagNode end = (TagNode)lex.nextNode();
+		assertTrue(end.isEndTag());
+		assertEquals("SCRIPT", end.getTagName());
+		assertFalse(context.isInScriptText());
+		assertEquals("P", ((TagNode)lex.nextNode()).getTagName());
+		assertNull(lex.nextNode());
+		lexer.close();
+	}
+
+	/**
+	 * Window grows to hold a token larger than default size.
+	 * @throws Exception
+	 */
+	public void testLargeToken() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<p>");
+		for (int i = 0; i < IncrementalLexer.DEFAULT_BUFFER_SIZE; i++) {
+			sb.append("abc");
+		}
+		sb.append("</p><a title=\"");
+		for (int i = 0; i < IncrementalLexer.DEFAULT_BUFFER_SIZE; i++) {
+			sb.append("xyz");
+		}
+		sb.append("\">");
+		String html = sb.toString();
+		List<Node> nodes = lexIncremental(new StringReader(html));
+		assertEquals(4, nodes.size());
+		assertEquals(IncrementalLexer.DEFAULT_BUFFER_SIZE * 3,
+			nodes.get(1).getText().length());
+		assertEquals(IncrementalLexer.DEFAULT_BUFFER_SIZE * 3,
+			((TagNode)nodes.get(3)).getAttribute("title").length());
+		assertEquals(html, toHtml(nodes));
+	}
+}